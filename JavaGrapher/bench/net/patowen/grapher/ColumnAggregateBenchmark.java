@@ -0,0 +1,160 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import net.patowen.grapher.math.BatchScratch;
+import net.patowen.grapher.math.Expression;
+import net.patowen.grapher.math.ExpressionInput;
+import net.patowen.grapher.math.InvalidExpression;
+
+/**
+ * Compares the oversampled column mode of FunctionGraph with drawing a line through every
+ * sample. Both take K samples per pixel column and draw into an image the way FunctionGraph
+ * does, and the time to sample and draw each is printed. The line through every sample places
+ * each sample at the center of its column, as the column mode does, so the two images should
+ * match. How many pixels differ is printed, and so is how many differ from a line through the
+ * samples at their own x, for comparison. Run it with no arguments for the default function
+ * and sizes, or with the function of x, K, the width and the height.
+ * <p>
+ * This is a tool for developing the grapher and is not part of it. It is kept out of the src
+ * folder, so it is not built into the application, and is compiled against the built grapher to run.
+ * @author Patrick Owen
+ */
+public class ColumnAggregateBenchmark
+{
+	private static final String DEFAULT_FUNCTION = "sin(200*x)*cos(3*x)+0.3*sin(1000*x)";
+	
+	//Runs of each method, the fastest of which is reported, after as many to warm up
+	private static final int RUNS = 50;
+	
+	//Viewport of the graph
+	private static final double X_MIN = -10, X_MAX = 10, Y_MIN = -2, Y_MAX = 2;
+	
+	public static void main(String[] args)
+	{
+		String text = args.length > 0 ? args[0] : DEFAULT_FUNCTION;
+		int k = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+		int width = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		int height = args.length > 3 ? Integer.parseInt(args[3]) : 640;
+		
+		Expression f = ExpressionInput.getExpressionFromString(text, new char[] {'x', 'u', 'v'});
+		if (f instanceof InvalidExpression)
+		{
+			System.err.println("Invalid function: " + text);
+			return;
+		}
+		
+		ColumnAggregateSampler sampler = new ColumnAggregateSampler();
+		sampler.setSamplesPerColumn(k);
+		k = sampler.getSamplesPerColumn();
+		
+		BufferedImage aggregated = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		BufferedImage naive = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		long aggregatedTime = Long.MAX_VALUE, naiveTime = Long.MAX_VALUE;
+		for (int run=0; run<RUNS*2; run++)
+		{
+			long start = System.nanoTime();
+			draw(aggregated, sampler.sample(f, 0, 0, X_MIN, X_MAX, width, Y_MIN, Y_MAX, height));
+			long middle = System.nanoTime();
+			draw(naive, sampleAll(f, k, width, height, true));
+			long end = System.nanoTime();
+			
+			if (run >= RUNS)
+			{
+				aggregatedTime = Math.min(aggregatedTime, middle - start);
+				naiveTime = Math.min(naiveTime, end - middle);
+			}
+		}
+		
+		BufferedImage exact = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		draw(exact, sampleAll(f, k, width, height, false));
+		
+		int[] a = aggregated.getRGB(0, 0, width, height, null, 0, width);
+		int[] b = naive.getRGB(0, 0, width, height, null, 0, width);
+		int[] c = exact.getRGB(0, 0, width, height, null, 0, width);
+		int different = 0, differentExact = 0, ink = 0;
+		for (int i=0; i<a.length; i++)
+		{
+			if (a[i] != b[i])
+				different++;
+			if (a[i] != c[i])
+				differentExact++;
+			if ((a[i] & 0xFFFFFF) == 0)
+				ink++;
+		}
+		
+		System.out.println("f(x) = " + text + ", K = " + k + ", " + width + "x" + height + " pixels");
+		System.out.printf("Column extremes:     %.2f ms (%d points drawn)%n", aggregatedTime/1e6, width*4);
+		System.out.printf("Line through all:    %.2f ms (%d points drawn)%n", naiveTime/1e6, width*k);
+		System.out.println("Pixels drawn:        " + ink + ", of which " + different + " differ");
+		System.out.println("Against samples at their own x, " + differentExact + " differ");
+	}
+	
+	/*
+	 * Evaluates K points per column and joins every defined one to the next, placing each at the
+	 * center of its column if centered is true and at its own x otherwise.
+	 */
+	private static Path2D sampleAll(Expression f, int k, int width, int height, boolean centered)
+	{
+		int n = width*k;
+		double[][] x = new double[3][n];
+		double[] y = new double[n];
+		double xScale = (X_MAX-X_MIN)/width, yScale = height/(Y_MAX-Y_MIN);
+		for (int p=0; p<n; p++)
+			x[0][p] = X_MIN + (p+0.5)/k*xScale;
+		Arrays.fill(x[1], 0);
+		Arrays.fill(x[2], 0);
+		f.evalBatch(x, y, n, new BatchScratch());
+		
+		Path2D.Double path = new Path2D.Double();
+		boolean penDown = false;
+		for (int p=0; p<n; p++)
+		{
+			if (Double.isNaN(y[p]) || Double.isInfinite(y[p]))
+			{
+				penDown = false;
+				continue;
+			}
+			double i = centered ? p/k + 0.5 : (p+0.5)/k, j = (Y_MAX-y[p])*yScale;
+			if (penDown)
+				path.lineTo(i, j);
+			else
+				path.moveTo(i, j);
+			penDown = true;
+		}
+		return path;
+	}
+	
+	//Draws a curve in black on white, as FunctionGraph does.
+	private static void draw(BufferedImage image, Path2D path)
+	{
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, image.getWidth(), image.getHeight());
+		g.setColor(Color.BLACK);
+		g.draw(path);
+		g.dispose();
+	}
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import net.patowen.grapher.math.Expression;
+
+/**
+ * Samples a parametric curve of t adaptively, for use by both 2D and 3D parametric curves.
+ * Each coordinate is mapped to screen space by a scale and an offset, and an interval of t is
+ * subdivided when the midpoint strays too far from the chord or when the curve turns too sharply
+ * at the midpoint. Refinement is limited by a maximum depth and a total sample budget.
+ * Segments that still span a large distance at the maximum depth are treated as jumps and are
+ * not connected, as are undefined regions.
+ * @author Patrick Owen
+ */
+public class AdaptiveCurveSampler
+{
+	//Number of equal intervals of t sampled before any refinement
+	private static final int INITIAL_INTERVALS = 32;
+	
+	private static final int MAX_DEPTH = 16;
+	
+	//Allowed distance in pixels between the curve and the drawn line segment
+	private static final double TOLERANCE = 0.5;
+	
+	//Allowed turning angle in radians at the midpoint of an interval
+	private static final double MAX_ANGLE = 0.15;
+	
+	//Segments shorter than this in pixels are not refined for turning alone
+	private static final double MIN_ANGLE_LENGTH = 2;
+	
+	//Segments longer than this in pixels at the maximum depth are treated as jumps
+	private static final double JUMP_LENGTH = 64;
+	
+	private int dimensions;
+	private double[] scale, offset;
+	private double[] lower, upper;
+	
+	//State of the current sampling pass
+	private Expression[] functions;
+	private double[] args;
+	private int budget, evaluations;
+	
+	//Output
+	private int count;
+	private double[] points;
+	private boolean[] connected;
+	private boolean penDown;
+	
+	/**
+	 * Constructs an AdaptiveCurveSampler for curves with the given number of coordinates.
+	 * Every coordinate initially maps to screen space unchanged.
+	 * @param dimensions the number of coordinates of each point on the curve
+	 */
+	public AdaptiveCurveSampler(int dimensions)
+	{
+		this.dimensions = dimensions;
+		scale = new double[dimensions];
+		offset = new double[dimensions];
+		lower = new double[dimensions];
+		upper = new double[dimensions];
+		for (int d=0; d<dimensions; d++)
+		{
+			scale[d] = 1;
+			lower[d] = Double.NEGATIVE_INFINITY;
+			upper[d] = Double.POSITIVE_INFINITY;
+		}
+		
+		args = new double[3];
+		points = new double[256*dimensions];
+		connected = new boolean[256];
+	}
+	
+	/**
+	 * Sets how the given coordinate maps to screen space, in which all tolerances are measured in pixels.
+	 * @param dimension the index of the coordinate
+	 * @param scale the number of pixels per unit
+	 * @param offset the position in pixels of the coordinate 0
+	 */
+	public void setProjection(int dimension, double scale, double offset)
+	{
+		this.scale[dimension] = scale;
+		this.offset[dimension] = offset;
+	}
+	
+	/**
+	 * Sets the visible range of the given coordinate in screen space. Intervals that lie entirely
+	 * outside the visible range are not refined.
+	 * @param dimension the index of the coordinate
+	 * @param lower the lowest visible position in pixels
+	 * @param upper the highest visible position in pixels
+	 */
+	public void setVisibleRange(int dimension, double lower, double upper)
+	{
+		this.lower[dimension] = lower;
+		this.upper[dimension] = upper;
+	}
+	
+	/**
+	 * Samples the curve whose coordinates are given by functions of (t, u, v). The results
+	 * can be read with <code>getCount</code>, <code>getCoordinate</code>, and <code>isConnected</code>.
+	 * @param functions one function for each coordinate
+	 * @param u the value of the u parameter
+	 * @param v the value of the v parameter
+	 * @param tMin the start of the range of t
+	 * @param tMax the end of the range of t
+	 * @param maxSamples the largest number of points the curve may be sampled at
+	 */
+	public void sample(Expression[] functions, double u, double v, double tMin, double tMax, int maxSamples)
+	{
+		this.functions = functions;
+		args[1] = u;
+		args[2] = v;
+		count = 0;
+		evaluations = 0;
+		penDown = false;
+		
+		int intervals = Math.max(1, Math.min(INITIAL_INTERVALS, maxSamples-1));
+		int extra = Math.max(0, maxSamples-intervals-1); //Samples available for refinement
+		
+		Sample s0 = evaluate(tMin);
+		addPoint(s0, false);
+		for (int k=1; k<=intervals; k++)
+		{
+			//Each interval gets an equal share of the budget plus whatever its predecessors left over.
+			budget = (int)((long)extra*k/intervals) + k+1;
+			Sample s1 = evaluate(tMin + (tMax-tMin)*k/intervals);
+			refine(s0, s1, 0);
+			s0 = s1;
+		}
+		
+		this.functions = null;
+	}
+	
+	/**
+	 * Returns the number of points produced by the last call to <code>sample</code>.
+	 * @return the number of points
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+	
+	/**
+	 * Returns the given coordinate of the point of the given index, in the curve's own coordinates
+	 * rather than screen space.
+	 * @param index the index of the point
+	 * @param dimension the index of the coordinate
+	 * @return the coordinate
+	 */
+	public double getCoordinate(int index, int dimension)
+	{
+		return points[index*dimensions + dimension];
+	}
+	
+	/**
+	 * Returns whether the point of the given index should be joined to the point before it.
+	 * @param index the index of the point
+	 * @return whether the point is connected to its predecessor
+	 */
+	public boolean isConnected(int index)
+	{
+		return connected[index];
+	}
+	
+	/*
+	 * Subdivides the interval between the two samples until it is flat enough, the budget
+	 * runs out, or the maximum depth is reached, and then adds it to the output.
+	 */
+	private void refine(Sample s0, Sample s1, int depth)
+	{
+		if (evaluations >= budget)
+		{
+			addPoint(s1, s0.finite && s1.finite);
+			return;
+		}
+		
+		Sample sm = evaluate((s0.t + s1.t)/2);
+		if (!needsSplit(s0, sm, s1))
+		{
+			//The midpoint was paid for, so it is kept even though the interval is flat.
+			addPoint(sm, s0.finite && sm.finite);
+			addPoint(s1, sm.finite && s1.finite);
+		}
+		else if (depth+1 < MAX_DEPTH)
+		{
+			refine(s0, sm, depth+1);
+			refine(sm, s1, depth+1);
+		}
+		else
+		{
+			//Still not flat at the maximum depth, so long segments are jumps.
+			addPoint(sm, s0.finite && sm.finite && distance(s0, sm) <= JUMP_LENGTH);
+			addPoint(s1, sm.finite && s1.finite && distance(sm, s1) <= JUMP_LENGTH);
+		}
+	}
+	
+	//Returns whether the interval between s0 and s1 with midpoint sm should be subdivided.
+	private boolean needsSplit(Sample s0, Sample sm, Sample s1)
+	{
+		//Narrow down the boundaries of undefined regions.
+		if (s0.finite != s1.finite || s0.finite != sm.finite)
+			return true;
+		if (!s0.finite)
+			return false;
+		
+		//Nothing to refine if the interval is out of view, judging by its endpoints and midpoint
+		for (int d=0; d<dimensions; d++)
+		{
+			if (s0.screen[d] < lower[d] && sm.screen[d] < lower[d] && s1.screen[d] < lower[d])
+				return false;
+			if (s0.screen[d] > upper[d] && sm.screen[d] > upper[d] && s1.screen[d] > upper[d])
+				return false;
+		}
+		
+		//Chord error: distance from the midpoint to the chord
+		double chordLengthSq = 0, dot = 0;
+		for (int d=0; d<dimensions; d++)
+		{
+			double c = s1.screen[d] - s0.screen[d];
+			chordLengthSq += c*c;
+			dot += (sm.screen[d] - s0.screen[d])*c;
+		}
+		double errorSq = 0;
+		double along = chordLengthSq > 0 ? dot/chordLengthSq : 0;
+		for (int d=0; d<dimensions; d++)
+		{
+			double e = sm.screen[d] - s0.screen[d] - along*(s1.screen[d] - s0.screen[d]);
+			errorSq += e*e;
+		}
+		if (errorSq > TOLERANCE*TOLERANCE)
+			return true;
+		
+		//Turning angle between the two halves
+		double l1 = distance(s0, sm), l2 = distance(sm, s1);
+		if (l1 + l2 > MIN_ANGLE_LENGTH && l1 > 0 && l2 > 0)
+		{
+			double cos = 0;
+			for (int d=0; d<dimensions; d++)
+				cos += (sm.screen[d] - s0.screen[d])*(s1.screen[d] - sm.screen[d]);
+			cos /= l1*l2;
+			if (cos < Math.cos(MAX_ANGLE))
+				return true;
+		}
+		
+		return false;
+	}
+	
+	//Returns the distance in pixels between two samples.
+	private double distance(Sample s0, Sample s1)
+	{
+		double sum = 0;
+		for (int d=0; d<dimensions; d++)
+		{
+			double c = s1.screen[d] - s0.screen[d];
+			sum += c*c;
+		}
+		return Math.sqrt(sum);
+	}
+	
+	//Evaluates every coordinate of the curve at t.
+	private Sample evaluate(double t)
+	{
+		Sample s = new Sample(t, dimensions);
+		args[0] = t;
+		s.finite = true;
+		for (int d=0; d<dimensions; d++)
+		{
+			double value = functions[d].eval(args);
+			s.point[d] = value;
+			s.screen[d] = value*scale[d] + offset[d];
+			if (Double.isNaN(value) || Double.isInfinite(value))
+				s.finite = false;
+		}
+		evaluations++;
+		return s;
+	}
+	
+	//Appends a sample to the output, skipping undefined points.
+	private void addPoint(Sample s, boolean connect)
+	{
+		if (!s.finite)
+		{
+			penDown = false;
+			return;
+		}
+		
+		if (count == connected.length)
+		{
+			double[] newPoints = new double[points.length*2];
+			System.arraycopy(points, 0, newPoints, 0, points.length);
+			points = newPoints;
+			boolean[] newConnected = new boolean[connected.length*2];
+			System.arraycopy(connected, 0, newConnected, 0, connected.length);
+			connected = newConnected;
+		}
+		
+		System.arraycopy(s.point, 0, points, count*dimensions, dimensions);
+		connected[count] = connect && penDown;
+		count++;
+		penDown = true;
+	}
+	
+	//A point on the curve in both its own coordinates and screen space
+	private static class Sample
+	{
+		public final double t;
+		public final double[] point, screen;
+		public boolean finite;
+		
+		public Sample(double t, int dimensions)
+		{
+			this.t = t;
+			point = new double[dimensions];
+			screen = new double[dimensions];
+		}
+	}
+}
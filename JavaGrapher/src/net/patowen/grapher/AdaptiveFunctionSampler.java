@@ -0,0 +1,294 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.awt.geom.Path2D;
+
+import net.patowen.grapher.math.Expression;
+
+/**
+ * Samples a function of x adaptively in screen space. The x-range is split into
+ * coarse intervals, and each interval is subdivided until the curve is flat to within
+ * a fraction of a pixel, judged both by the midpoint's deviation from the chord and
+ * by the derivatives at the endpoints. Jumps that the derivatives cannot explain are
+ * treated as discontinuities or asymptotes and are not connected.
+ * @author Patrick Owen
+ */
+public class AdaptiveFunctionSampler
+{
+	//Spacing in pixels of the initial, unrefined samples
+	private static final double INITIAL_SPACING = 8;
+	
+	//Intervals narrower than this in pixels are never subdivided
+	private static final double MIN_WIDTH = 0.25;
+	
+	//Allowed deviation in pixels between the curve and the drawn line segment
+	private static final double TOLERANCE = 0.5;
+	
+	private static final int MAX_DEPTH = 20;
+	
+	//Points further than this many pixels off screen are clamped to keep Java2D happy
+	private static final double CLAMP = 100000;
+	
+	/**
+	 * The default number of evaluations allowed per pixel column each time the curve is sampled.
+	 */
+	public static final int DEFAULT_BUDGET_PER_PIXEL = 16;
+	
+	private int budgetPerPixel;
+	
+	//State of the current sampling pass
+	private Expression function;
+	private double[] args;
+	private double xMin, xScale; //x = xMin + i/xScale
+	private double yMax, yScale; //j = (yMax - y)*yScale
+	private int height;
+	private int evaluations, budget;
+	
+	private Path2D.Double path;
+	private boolean penDown;
+	
+	/**
+	 * Constructs an AdaptiveFunctionSampler with the default evaluation budget.
+	 */
+	public AdaptiveFunctionSampler()
+	{
+		budgetPerPixel = DEFAULT_BUDGET_PER_PIXEL;
+		args = new double[3];
+	}
+	
+	/**
+	 * Sets how many evaluations of the function, counting derivatives, are allowed
+	 * per pixel column in one sampling pass. Once the budget is spent, the remaining
+	 * intervals are drawn without further refinement.
+	 * @param budget the number of evaluations allowed per pixel column
+	 */
+	public void setBudgetPerPixel(int budget)
+	{
+		budgetPerPixel = budget;
+	}
+	
+	/**
+	 * Returns the number of evaluations, counting derivatives, used by the last call to <code>sample</code>.
+	 * @return the number of evaluations used
+	 */
+	public int getEvaluationCount()
+	{
+		return evaluations;
+	}
+	
+	/**
+	 * Samples the given function of (x, u, v) across the given viewport and returns the
+	 * resulting curve in pixel coordinates.
+	 * @param f the function to sample
+	 * @param u the value of the u parameter
+	 * @param v the value of the v parameter
+	 * @param xMin the x-coordinate of the left edge of the viewport
+	 * @param xMax the x-coordinate of the right edge of the viewport
+	 * @param width the width of the viewport in pixels
+	 * @param yMin the y-coordinate of the bottom edge of the viewport
+	 * @param yMax the y-coordinate of the top edge of the viewport
+	 * @param height the height of the viewport in pixels
+	 * @return the sampled curve, with gaps at discontinuities and undefined regions
+	 */
+	public Path2D sample(Expression f, double u, double v,
+			double xMin, double xMax, int width, double yMin, double yMax, int height)
+	{
+		function = f;
+		args[1] = u;
+		args[2] = v;
+		this.xMin = xMin;
+		xScale = width/(xMax-xMin);
+		this.yMax = yMax;
+		yScale = height/(yMax-yMin);
+		this.height = height;
+		
+		path = new Path2D.Double();
+		penDown = false;
+		evaluations = 0;
+		
+		int intervals = Math.max(1, (int)Math.ceil(width/INITIAL_SPACING));
+		int totalBudget = budgetPerPixel*Math.max(width, 1);
+		budget = 0;
+		
+		Sample s0 = evaluate(0);
+		moveTo(s0);
+		for (int k=1; k<=intervals; k++)
+		{
+			//Each interval gets an equal share of the budget plus whatever its predecessors left over.
+			budget = (int)((long)totalBudget*k/intervals);
+			Sample s1 = evaluate((double)width*k/intervals);
+			refine(s0, s1, 0);
+			s0 = s1;
+		}
+		
+		Path2D result = path;
+		path = null;
+		function = null;
+		return result;
+	}
+	
+	/*
+	 * Subdivides the interval between the two samples until it is flat enough, the budget
+	 * runs out, or it becomes too narrow, and then adds it to the path.
+	 */
+	private void refine(Sample s0, Sample s1, int depth)
+	{
+		double w = s1.i - s0.i;
+		boolean canSplit = depth < MAX_DEPTH && w > MIN_WIDTH && evaluations+2 <= budget;
+		
+		if (canSplit)
+		{
+			Sample sm = evaluate((s0.i + s1.i)/2);
+			if (needsSplit(s0, sm, s1))
+			{
+				refine(s0, sm, depth+1);
+				refine(sm, s1, depth+1);
+				return;
+			}
+		}
+		
+		//The interval is final. Intervals that are too narrow to split are checked for jumps.
+		if (!s0.isFinite() || !s1.isFinite())
+			breakTo(s1);
+		else if (w <= MIN_WIDTH*2 && isJump(s0, s1))
+			breakTo(s1);
+		else
+			lineTo(s1);
+	}
+	
+	//Returns whether the interval between s0 and s1 with midpoint sm should be subdivided.
+	private boolean needsSplit(Sample s0, Sample sm, Sample s1)
+	{
+		boolean f0 = s0.isFinite(), fm = sm.isFinite(), f1 = s1.isFinite();
+		
+		//Narrow down the boundaries of undefined regions.
+		if (f0 != f1 || f0 != fm)
+			return true;
+		if (!f0)
+			return false;
+		
+		//Midpoint deviation from the chord
+		if (Math.abs(sm.j - (s0.j + s1.j)/2) > TOLERANCE)
+			return true;
+		
+		/*
+		 * Deviation predicted by the derivatives. A cubic with these endpoint slopes strays from the chord by
+		 * up to |d0-d1|*w/8 at its midpoint, which catches oscillations whose midpoint happens to lie on the chord.
+		 */
+		if (!Double.isNaN(s0.slope) && !Double.isNaN(s1.slope))
+		{
+			double w = s1.i - s0.i;
+			if (Math.abs(s0.slope - s1.slope)*w/8 > TOLERANCE)
+				return true;
+		}
+		
+		return false;
+	}
+	
+	/*
+	 * Returns whether an interval too narrow to subdivide crosses a discontinuity or asymptote. The
+	 * jump is compared to the rise that the derivatives at either end can account for.
+	 */
+	private boolean isJump(Sample s0, Sample s1)
+	{
+		double w = s1.i - s0.i;
+		double rise = s1.j - s0.j;
+		if (Math.abs(rise) <= 2*TOLERANCE)
+			return false;
+		
+		//Without derivatives, only a jump across a good part of the screen is treated as a break.
+		if (Double.isNaN(s0.slope) || Double.isNaN(s1.slope))
+			return Math.abs(rise) > height/4;
+		
+		//The chord goes the opposite way of both tangents, as in tan(x) or 1/x.
+		if (rise*s0.slope < 0 && rise*s1.slope < 0)
+			return true;
+		
+		//The tangents cannot account for the size of the jump, as in floor(x).
+		double explained = Math.max(Math.abs(s0.slope), Math.abs(s1.slope))*w*2 + 2*TOLERANCE;
+		return Math.abs(rise) > explained;
+	}
+	
+	//Evaluates the function and its derivative at the pixel column i.
+	private Sample evaluate(double i)
+	{
+		args[0] = xMin + i/xScale;
+		double y = function.eval(args);
+		double dy = function.derivative(args, 0);
+		evaluations += 2;
+		
+		double j = (yMax - y)*yScale;
+		double slope = -dy*yScale/xScale; //dj/di
+		return new Sample(i, j, slope);
+	}
+	
+	private void moveTo(Sample s)
+	{
+		if (s.isFinite())
+		{
+			path.moveTo(s.i, clamp(s.j));
+			penDown = true;
+		}
+		else
+		{
+			penDown = false;
+		}
+	}
+	
+	private void lineTo(Sample s)
+	{
+		if (penDown)
+			path.lineTo(s.i, clamp(s.j));
+		else
+			moveTo(s);
+	}
+	
+	//Lifts the pen and starts the curve again at the given sample.
+	private void breakTo(Sample s)
+	{
+		penDown = false;
+		moveTo(s);
+	}
+	
+	private double clamp(double j)
+	{
+		if (j < -CLAMP) return -CLAMP;
+		if (j > CLAMP) return CLAMP;
+		return j;
+	}
+	
+	//A point on the curve in pixel coordinates, with the slope of the curve in pixel space.
+	private static class Sample
+	{
+		public final double i, j, slope;
+		
+		public Sample(double i, double j, double slope)
+		{
+			this.i = i;
+			this.j = j;
+			this.slope = slope;
+		}
+		
+		public boolean isFinite()
+		{
+			return !Double.isNaN(j) && !Double.isInfinite(j);
+		}
+	}
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tessellates a parametric surface adaptively. The parameter domain is covered by a coarse grid
+ * of square cells, and each cell is split into four until the surface is flat enough across it,
+ * judged by the center's deviation from the corners, by the change in the tangents along each
+ * edge, and by the angle between the normals at the corners. The cells then form a restricted
+ * quadtree: cells are split further until neighbors differ by at most one level, and each cell
+ * with a finer neighbor is drawn as a fan that includes the midpoints of the edges it shares,
+ * so the triangles meet without cracks. Every sample lies on the grid of the given resolution,
+ * which is the finest the surface can be split to, and each is evaluated only once.
+ * Subclasses provide the surface by implementing <code>evaluate</code>.
+ * @author Patrick Owen
+ */
+public abstract class AdaptiveSurfaceTessellator
+{
+	//Cells of the initial grid are no smaller than needed for this many of them along the shorter side
+	private static final int MIN_COARSE_CELLS = 8;
+	
+	//Allowed deviation between the surface and its triangles, as a fraction of the size of the surface
+	private static final double TOLERANCE = 0.001;
+	
+	//Largest angle between the normals of a cell's corners before it is split
+	private static final double MAX_ANGLE = Math.toRadians(15);
+	
+	//Doubles per sample: the position, then the partial derivatives with respect to s and to t
+	private static final int SAMPLE_SIZE = 9;
+	
+	//State of the current tessellation
+	private double sMin, sScale, tMin, tScale; //s = sMin + i*sScale
+	private int levels, latticeS, latticeT;
+	private Cell[][] roots;
+	private double tolerance;
+	
+	//Samples by the position of their lattice point, and their data by ID
+	private Map<Long, Integer> ids;
+	private double[] samples;
+	private int sampleCount;
+	private double[] sample;
+	
+	/**
+	 * Constructs an AdaptiveSurfaceTessellator.
+	 */
+	public AdaptiveSurfaceTessellator()
+	{
+		ids = new HashMap<Long, Integer>();
+		samples = new double[0];
+		sample = new double[SAMPLE_SIZE];
+	}
+	
+	/**
+	 * Evaluates the surface at the given parameters. Called only from <code>tessellate</code>.
+	 * @param s the first parameter
+	 * @param t the second parameter
+	 * @param sample where to put the x, y, and z of the point, then its partial derivatives
+	 * with respect to s, then its partial derivatives with respect to t
+	 */
+	protected abstract void evaluate(double s, double t, double[] sample);
+	
+	/**
+	 * Returns the number of points evaluated by the last call to <code>tessellate</code>.
+	 * @return the number of points evaluated
+	 */
+	public int getEvaluationCount()
+	{
+		return sampleCount;
+	}
+	
+	/**
+	 * Tessellates the surface over the given domain and adds its triangles to the mesh.
+	 * @param mesh the mesh to add the triangles to
+	 * @param sMin the lower bound of s
+	 * @param sMax the upper bound of s
+	 * @param sRes the largest number of intervals along s
+	 * @param tMin the lower bound of t
+	 * @param tMax the upper bound of t
+	 * @param tRes the largest number of intervals along t
+	 * @throws java.util.concurrent.CancellationException if the build is cancelled
+	 */
+	public void tessellate(Mesh mesh, double sMin, double sMax, int sRes, double tMin, double tMax, int tRes)
+	{
+		//The finest grid is rounded up to whole coarse cells.
+		levels = 0;
+		while (Math.min(sRes, tRes) >> (levels+1) >= MIN_COARSE_CELLS)
+			levels++;
+		int coarseS = (sRes + (1<<levels) - 1) >> levels, coarseT = (tRes + (1<<levels) - 1) >> levels;
+		latticeS = coarseS << levels;
+		latticeT = coarseT << levels;
+		
+		this.sMin = sMin;
+		this.tMin = tMin;
+		sScale = (sMax-sMin)/latticeS;
+		tScale = (tMax-tMin)/latticeT;
+		
+		ids.clear();
+		sampleCount = 0;
+		
+		roots = new Cell[coarseS][coarseT];
+		for (int i=0; i<coarseS; i++)
+			for (int j=0; j<coarseT; j++)
+				roots[i][j] = new Cell(levels, i<<levels, j<<levels);
+		
+		findTolerance();
+		refine();
+		balance();
+		emit(mesh);
+		
+		roots = null;
+		ids.clear();
+	}
+	
+	//Sets the tolerance from the size of the surface, as seen from the corners of the coarse cells.
+	private void findTolerance()
+	{
+		double[] min = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+		double[] max = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+		
+		for (int i=0; i<=latticeS; i+=1<<levels)
+		{
+			MeshBuilder.checkCancelled();
+			for (int j=0; j<=latticeT; j+=1<<levels)
+			{
+				int id = getSample(i, j);
+				if (!isFinite(id))
+					continue;
+				for (int k=0; k<3; k++)
+				{
+					min[k] = Math.min(min[k], samples[id*SAMPLE_SIZE+k]);
+					max[k] = Math.max(max[k], samples[id*SAMPLE_SIZE+k]);
+				}
+			}
+		}
+		
+		double size = 0;
+		for (int k=0; k<3; k++)
+			if (max[k] >= min[k])
+				size += (max[k]-min[k])*(max[k]-min[k]);
+		tolerance = Math.sqrt(size)*TOLERANCE;
+	}
+	
+	//Splits cells until each is flat enough or as small as the finest grid allows.
+	private void refine()
+	{
+		Deque<Cell> queue = new ArrayDeque<Cell>();
+		for (Cell[] column:roots)
+			for (Cell cell:column)
+				queue.add(cell);
+		
+		int count = 0;
+		while (!queue.isEmpty())
+		{
+			if (++count % 256 == 0)
+				MeshBuilder.checkCancelled();
+			
+			Cell cell = queue.poll();
+			if (cell.level > 0 && needsSplit(cell))
+			{
+				cell.split();
+				for (Cell child:cell.children)
+					queue.add(child);
+			}
+		}
+	}
+	
+	//Splits cells until the sizes of neighboring cells differ by at most a factor of two.
+	private void balance()
+	{
+		boolean changed = true;
+		while (changed)
+		{
+			MeshBuilder.checkCancelled();
+			changed = false;
+			for (Cell cell:getLeaves())
+			{
+				int size = 1<<cell.level;
+				Cell[] neighbors = {findLeaf(cell.i, cell.j-1), findLeaf(cell.i+size, cell.j),
+						findLeaf(cell.i, cell.j+size), findLeaf(cell.i-1, cell.j)};
+				for (Cell neighbor:neighbors)
+				{
+					if (neighbor != null && neighbor.children == null && neighbor.level > cell.level+1)
+					{
+						neighbor.split();
+						changed = true;
+					}
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Adds the triangles of every cell to the mesh. Cells without finer neighbors are drawn as two triangles,
+	 * and the rest as a fan around their center. Triangles touching an undefined sample are left out.
+	 */
+	private void emit(Mesh mesh)
+	{
+		int[] order = new int[64];
+		int oc = 0; //orderCounter
+		int[] ring = new int[8];
+		
+		for (Cell cell:getLeaves())
+		{
+			int size = 1<<cell.level, half = size/2;
+			int i0 = cell.i, j0 = cell.j, i1 = cell.i+size, j1 = cell.j+size;
+			
+			//The boundary, counterclockwise, with the midpoints of edges shared with finer cells
+			int rc = 0; //ringCounter
+			ring[rc++] = getSample(i0, j0);
+			if (isFinerAt(cell, i0, j0-1)) ring[rc++] = getSample(i0+half, j0);
+			ring[rc++] = getSample(i1, j0);
+			if (isFinerAt(cell, i1, j0)) ring[rc++] = getSample(i1, j0+half);
+			ring[rc++] = getSample(i1, j1);
+			if (isFinerAt(cell, i0, j1)) ring[rc++] = getSample(i0+half, j1);
+			ring[rc++] = getSample(i0, j1);
+			if (isFinerAt(cell, i0-1, j0)) ring[rc++] = getSample(i0, j0+half);
+			
+			if (order.length < oc + rc*3)
+			{
+				int[] larger = new int[Math.max(order.length*2, oc + rc*3)];
+				System.arraycopy(order, 0, larger, 0, oc);
+				order = larger;
+			}
+			
+			if (rc == 4)
+			{
+				oc = addTriangle(order, oc, ring[0], ring[1], ring[2]);
+				oc = addTriangle(order, oc, ring[0], ring[2], ring[3]);
+			}
+			else
+			{
+				int center = getSample(i0+half, j0+half);
+				for (int k=0; k<rc; k++)
+					oc = addTriangle(order, oc, center, ring[k], ring[(k+1)%rc]);
+			}
+		}
+		
+		//Vertices and normals, interleaved
+		FloatBuffer vertices = mesh.newFloatBuffer(sampleCount*6);
+		for (int id=0; id<sampleCount; id++)
+		{
+			int sc = id*SAMPLE_SIZE;
+			double nx, ny, nz, n;
+			nx = samples[sc+4]*samples[sc+8] - samples[sc+5]*samples[sc+7];
+			ny = samples[sc+5]*samples[sc+6] - samples[sc+3]*samples[sc+8];
+			nz = samples[sc+3]*samples[sc+7] - samples[sc+4]*samples[sc+6];
+			n = Math.sqrt(nx*nx + ny*ny + nz*nz);
+			
+			vertices.put((float)samples[sc]);
+			vertices.put((float)samples[sc+1]);
+			vertices.put((float)samples[sc+2]);
+			
+			vertices.put((float)(nx/n));
+			vertices.put((float)(ny/n));
+			vertices.put((float)(nz/n));
+		}
+		vertices.rewind();
+		
+		IntBuffer orderBuffer = mesh.newIntBuffer(oc);
+		orderBuffer.put(order, 0, oc);
+		orderBuffer.rewind();
+		
+		//Parameters of each sample, from its lattice point, for picking
+		float[] parameters = null;
+		if (mesh.isPickable())
+		{
+			parameters = new float[sampleCount*2];
+			for (Map.Entry<Long, Integer> entry:ids.entrySet())
+			{
+				long i = entry.getKey()/(latticeT+1), j = entry.getKey()%(latticeT+1);
+				parameters[entry.getValue()*2] = (float)(sMin + i*sScale);
+				parameters[entry.getValue()*2+1] = (float)(tMin + j*tScale);
+			}
+		}
+		
+		mesh.addTriangles(vertices, orderBuffer, oc, parameters);
+	}
+	
+	//Adds a triangle to the order if all its corners are defined, returning the new orderCounter.
+	private int addTriangle(int[] order, int oc, int a, int b, int c)
+	{
+		if (!isFinite(a) || !isFinite(b) || !isFinite(c))
+			return oc;
+		order[oc++] = a; order[oc++] = b; order[oc++] = c;
+		return oc;
+	}
+	
+	//Returns whether the cell containing the given lattice point is smaller than the given cell.
+	private boolean isFinerAt(Cell cell, int i, int j)
+	{
+		Cell neighbor = findLeaf(i, j);
+		return neighbor != null && neighbor.level < cell.level;
+	}
+	
+	//Returns whether the given cell needs to be split.
+	private boolean needsSplit(Cell cell)
+	{
+		int size = 1<<cell.level, half = size/2;
+		int a = getSample(cell.i, cell.j), b = getSample(cell.i+size, cell.j);
+		int c = getSample(cell.i, cell.j+size), d = getSample(cell.i+size, cell.j+size);
+		int m = getSample(cell.i+half, cell.j+half);
+		
+		//Narrow down the boundaries of undefined regions.
+		boolean finite = isFinite(a);
+		if (isFinite(b) != finite || isFinite(c) != finite || isFinite(d) != finite || isFinite(m) != finite)
+			return true;
+		if (!finite)
+			return false;
+		
+		//Deviation of the center from the average of the corners
+		double deviation = 0;
+		for (int k=0; k<3; k++)
+		{
+			double average = (get(a,k) + get(b,k) + get(c,k) + get(d,k))/4;
+			deviation += (get(m,k)-average)*(get(m,k)-average);
+		}
+		if (Math.sqrt(deviation) > tolerance)
+			return true;
+		
+		/*
+		 * Deviation predicted by the derivatives. A cubic with these tangents at the ends of an edge strays
+		 * from the chord by up to |d0-d1|*w/8 at its midpoint, which catches ripples the center misses.
+		 */
+		double ws = size*Math.abs(sScale), wt = size*Math.abs(tScale);
+		if (tangentChange(a, b, 3)*ws/8 > tolerance || tangentChange(c, d, 3)*ws/8 > tolerance)
+			return true;
+		if (tangentChange(a, c, 6)*wt/8 > tolerance || tangentChange(b, d, 6)*wt/8 > tolerance)
+			return true;
+		
+		//Curvature, from the angles between the normals
+		double cosMax = Math.cos(MAX_ANGLE);
+		int[] corners = {a, b, d, c};
+		for (int k=0; k<4; k++)
+		{
+			if (cosNormals(corners[k], corners[(k+1)%4]) < cosMax || cosNormals(corners[k], m) < cosMax)
+				return true;
+		}
+		
+		return false;
+	}
+	
+	//Returns the length of the difference between the tangents of two samples, starting at the given offset.
+	private double tangentChange(int a, int b, int offset)
+	{
+		double change = 0;
+		for (int k=offset; k<offset+3; k++)
+			change += (get(a,k)-get(b,k))*(get(a,k)-get(b,k));
+		return Math.sqrt(change);
+	}
+	
+	//Returns the cosine of the angle between the normals of two samples.
+	private double cosNormals(int a, int b)
+	{
+		double[] na = normal(a), nb = normal(b);
+		double dot = na[0]*nb[0] + na[1]*nb[1] + na[2]*nb[2];
+		double length = Math.sqrt((na[0]*na[0] + na[1]*na[1] + na[2]*na[2])*(nb[0]*nb[0] + nb[1]*nb[1] + nb[2]*nb[2]));
+		return dot/length;
+	}
+	
+	//Returns the unnormalized normal of a sample.
+	private double[] normal(int id)
+	{
+		return new double[] {
+				get(id,4)*get(id,8) - get(id,5)*get(id,7),
+				get(id,5)*get(id,6) - get(id,3)*get(id,8),
+				get(id,3)*get(id,7) - get(id,4)*get(id,6)};
+	}
+	
+	//Returns the leaf containing the given lattice point, or null if it is outside the domain.
+	private Cell findLeaf(int i, int j)
+	{
+		if (i < 0 || j < 0 || i >= latticeS || j >= latticeT)
+			return null;
+		
+		Cell cell = roots[i>>levels][j>>levels];
+		while (cell.children != null)
+		{
+			int half = 1<<(cell.level-1);
+			cell = cell.children[(i >= cell.i+half ? 1 : 0) + (j >= cell.j+half ? 2 : 0)];
+		}
+		return cell;
+	}
+	
+	//Returns every cell that has not been split.
+	private List<Cell> getLeaves()
+	{
+		List<Cell> leaves = new ArrayList<Cell>();
+		Deque<Cell> stack = new ArrayDeque<Cell>();
+		for (Cell[] column:roots)
+			for (Cell cell:column)
+				stack.push(cell);
+		
+		while (!stack.isEmpty())
+		{
+			Cell cell = stack.pop();
+			if (cell.children == null)
+				leaves.add(cell);
+			else
+				for (Cell child:cell.children)
+					stack.push(child);
+		}
+		return leaves;
+	}
+	
+	//Returns the ID of the sample at the given lattice point, evaluating it if it is new.
+	private int getSample(int i, int j)
+	{
+		long key = (long)i*(latticeT+1) + j;
+		Integer id = ids.get(key);
+		if (id != null)
+			return id;
+		
+		evaluate(sMin + i*sScale, tMin + j*tScale, sample);
+		if (samples.length < (sampleCount+1)*SAMPLE_SIZE)
+		{
+			double[] larger = new double[Math.max(samples.length*2, 64*SAMPLE_SIZE)];
+			System.arraycopy(samples, 0, larger, 0, sampleCount*SAMPLE_SIZE);
+			samples = larger;
+		}
+		System.arraycopy(sample, 0, samples, sampleCount*SAMPLE_SIZE, SAMPLE_SIZE);
+		ids.put(key, sampleCount);
+		return sampleCount++;
+	}
+	
+	private double get(int id, int k)
+	{
+		return samples[id*SAMPLE_SIZE + k];
+	}
+	
+	//Returns whether the position of a sample is defined.
+	private boolean isFinite(int id)
+	{
+		for (int k=0; k<3; k++)
+		{
+			double value = get(id, k);
+			if (Double.isNaN(value) || Double.isInfinite(value))
+				return false;
+		}
+		return true;
+	}
+	
+	//A square of the lattice, 2^level points wide, whose lowest corner is at (i, j)
+	private static class Cell
+	{
+		public final int level, i, j;
+		public Cell[] children;
+		
+		public Cell(int level, int i, int j)
+		{
+			this.level = level;
+			this.i = i;
+			this.j = j;
+		}
+		
+		//Splits the cell into four, ordered by s and then t.
+		public void split()
+		{
+			int half = 1<<(level-1);
+			children = new Cell[] {new Cell(level-1, i, j), new Cell(level-1, i+half, j),
+					new Cell(level-1, i, j+half), new Cell(level-1, i+half, j+half)};
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import static net.patowen.grapher.Graph3D.AUTO_RESOLUTION;
+
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * The part of the Bounds window of a 3D graph that controls automatic resolution. It holds
+ * the check box that turns it on, the rebuild budget, and the resolutions the graph was last
+ * built with, which are kept up to date as the graph is rebuilt. The budget field still has to
+ * be linked by the window, and <code>apply</code> called when the window's bounds are applied.
+ * @author Patrick Owen
+ */
+public class AutoResolutionPanel extends JPanel
+{
+	private static final long serialVersionUID = 1L;
+	
+	private Graph3D graph;
+	private int[] indices;
+	
+	private JCheckBox autoButton;
+	private JLabel budgetLabel, builtLabel;
+	private JTextField budgetField;
+	
+	/**
+	 * Constructs an AutoResolutionPanel for the given graph.
+	 * @param graph the graph to control
+	 * @param indices the indices of the graph's resolution parameters, in the order they should be shown
+	 */
+	public AutoResolutionPanel(Graph3D graph, int... indices)
+	{
+		this.graph = graph;
+		this.indices = indices;
+		setLayout(new GridBagLayout());
+		
+		autoButton = new JCheckBox("Automatic resolution", graph.getInt(AUTO_RESOLUTION) != 0);
+		autoButton.setToolTipText("Chooses the largest resolution that can be rebuilt within the budget.");
+		budgetLabel = new JLabel("Rebuild budget (ms): ");
+		budgetField = new JTextField(10);
+		builtLabel = new JLabel();
+		
+		autoButton.addActionListener(new ActionListener()
+		{
+			public void actionPerformed(ActionEvent e)
+			{
+				budgetField.setEnabled(autoButton.isSelected());
+			}
+		});
+		budgetField.setEnabled(autoButton.isSelected());
+		
+		graph.setResolutionListener(new ChangeListener()
+		{
+			public void stateChanged(ChangeEvent e)
+			{
+				updateBuiltLabel();
+			}
+		});
+		updateBuiltLabel();
+		
+		GridBagConstraints c = new GridBagConstraints();
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.gridx = 0; c.gridy = 0; add(autoButton, c);
+		c.gridx = 1; add(budgetLabel, c);
+		c.gridx = 2; add(budgetField, c);
+		
+		c.gridx = 0; c.gridy = 1; c.gridwidth = 3; add(builtLabel, c);
+	}
+	
+	/**
+	 * Returns the text field holding the rebuild budget, so that it can be linked to the graph.
+	 * @return the budget field
+	 */
+	public JTextField getBudgetField()
+	{
+		return budgetField;
+	}
+	
+	/**
+	 * Turns automatic resolution on or off to match the check box.
+	 */
+	public void apply()
+	{
+		graph.setInt(AUTO_RESOLUTION, autoButton.isSelected() ? 1 : 0);
+	}
+	
+	//Shows the resolutions the graph was last built with.
+	private void updateBuiltLabel()
+	{
+		StringBuilder text = new StringBuilder("Built with resolution ");
+		for (int i=0; i<indices.length; i++)
+		{
+			if (i > 0)
+				text.append(" x ");
+			text.append(graph.getBuiltResolution(indices[i]));
+		}
+		builtLabel.setText(text.toString());
+	}
+}
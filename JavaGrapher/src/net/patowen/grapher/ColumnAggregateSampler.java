@@ -0,0 +1,192 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+import net.patowen.grapher.math.BatchScratch;
+import net.patowen.grapher.math.Expression;
+
+/**
+ * Samples a function of x several times per pixel column and reduces each column to
+ * its first, last, minimum, and maximum values. Drawing the vertical span of each column
+ * and joining the last value of each column to the first value of the next lights up the
+ * same pixels as drawing a line through every sample, so dense signals are plotted
+ * without aliasing at a fixed cost of K evaluations per column.
+ * @author Patrick Owen
+ */
+public class ColumnAggregateSampler
+{
+	/**
+	 * The default number of samples taken in each pixel column.
+	 */
+	public static final int DEFAULT_SAMPLES_PER_COLUMN = 8;
+	
+	/**
+	 * The largest number of samples taken in each pixel column, which bounds the cost of a frame.
+	 */
+	public static final int MAX_SAMPLES_PER_COLUMN = 256;
+	
+	//Number of points evaluated in each call to evalBatch
+	private static final int BATCH_SIZE = 4096;
+	
+	//Points further than this many pixels off screen are clamped to keep Java2D happy
+	private static final double CLAMP = 100000;
+	
+	private int samplesPerColumn;
+	
+	private double[][] batch;
+	private double[] values;
+	private BatchScratch scratch;
+	
+	/**
+	 * Constructs a ColumnAggregateSampler with the default number of samples per column.
+	 */
+	public ColumnAggregateSampler()
+	{
+		samplesPerColumn = DEFAULT_SAMPLES_PER_COLUMN;
+		batch = new double[3][BATCH_SIZE];
+		values = new double[BATCH_SIZE];
+		scratch = new BatchScratch();
+	}
+	
+	/**
+	 * Sets the number of samples taken in each pixel column. Values outside 1 to
+	 * MAX_SAMPLES_PER_COLUMN are clamped to that range.
+	 * @param k the number of samples per column
+	 */
+	public void setSamplesPerColumn(int k)
+	{
+		samplesPerColumn = Math.max(1, Math.min(k, MAX_SAMPLES_PER_COLUMN));
+	}
+	
+	/**
+	 * Returns the number of samples taken in each pixel column.
+	 * @return the number of samples per column
+	 */
+	public int getSamplesPerColumn()
+	{
+		return samplesPerColumn;
+	}
+	
+	/**
+	 * Samples the given function of (x, u, v) across the given viewport and returns the
+	 * aggregated curve in pixel coordinates.
+	 * @param f the function to sample
+	 * @param u the value of the u parameter
+	 * @param v the value of the v parameter
+	 * @param xMin the x-coordinate of the left edge of the viewport
+	 * @param xMax the x-coordinate of the right edge of the viewport
+	 * @param width the width of the viewport in pixels
+	 * @param yMin the y-coordinate of the bottom edge of the viewport
+	 * @param yMax the y-coordinate of the top edge of the viewport
+	 * @param height the height of the viewport in pixels
+	 * @return the aggregated curve, with gaps where no sample in a column is defined
+	 */
+	public Path2D sample(Expression f, double u, double v,
+			double xMin, double xMax, int width, double yMin, double yMax, int height)
+	{
+		Path2D.Double path = new Path2D.Double();
+		int k = samplesPerColumn;
+		int columnsPerBatch = Math.max(1, BATCH_SIZE/k);
+		if (columnsPerBatch*k > values.length)
+		{
+			batch = new double[3][columnsPerBatch*k];
+			values = new double[columnsPerBatch*k];
+		}
+		
+		double xScale = (xMax-xMin)/width;
+		double yScale = height/(yMax-yMin);
+		boolean penDown = false;
+		
+		for (int start=0; start<width; start+=columnsPerBatch)
+		{
+			int columns = Math.min(columnsPerBatch, width-start);
+			int n = columns*k;
+			
+			//Samples sit at the centers of K equal slices of each column.
+			for (int p=0; p<n; p++)
+				batch[0][p] = xMin + (start + (p+0.5)/k)*xScale;
+			Arrays.fill(batch[1], 0, n, u);
+			Arrays.fill(batch[2], 0, n, v);
+			
+			f.evalBatch(batch, values, n, scratch);
+			
+			for (int c=0; c<columns; c++)
+			{
+				int first = -1, last = -1, min = -1, max = -1;
+				for (int p=c*k; p<(c+1)*k; p++)
+				{
+					double y = values[p];
+					if (Double.isNaN(y) || Double.isInfinite(y))
+						continue;
+					if (first == -1) first = p;
+					last = p;
+					if (min == -1 || y < values[min]) min = p;
+					if (max == -1 || y > values[max]) max = p;
+				}
+				
+				if (first == -1)
+				{
+					penDown = false;
+					continue;
+				}
+				
+				/*
+				 * The extremes are joined in the order they were sampled, all at the center of the column.
+				 * A sample that is more than one of them is added once, since Java2D draws a segment of
+				 * no length as an extra pixel.
+				 */
+				int low = Math.min(min, max), high = Math.max(min, max);
+				penDown = addPoint(path, start, first, k, yMax, yScale, penDown);
+				if (low != first)
+					addPoint(path, start, low, k, yMax, yScale, true);
+				if (high != low)
+					addPoint(path, start, high, k, yMax, yScale, true);
+				if (last != high)
+					addPoint(path, start, last, k, yMax, yScale, true);
+			}
+		}
+		
+		return path;
+	}
+	
+	/*
+	 * Adds the sample at index p of the current batch to the path, joining it to the previous
+	 * point if connected is true, and returns true since the pen is now down.
+	 */
+	private boolean addPoint(Path2D.Double path, int start, int p, int k, double yMax, double yScale, boolean connected)
+	{
+		double i = start + p/k + 0.5;
+		double j = clamp((yMax-values[p])*yScale);
+		if (connected)
+			path.lineTo(i, j);
+		else
+			path.moveTo(i, j);
+		return true;
+	}
+	
+	private double clamp(double j)
+	{
+		if (j < -CLAMP) return -CLAMP;
+		if (j > CLAMP) return CLAMP;
+		return j;
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import static net.patowen.grapher.CrossSectionGraph3D.*;
+
+import net.patowen.grapher.math.Expression;
+
+/**
+ * Builds the solid of a CrossSectionGraph3D, with the chosen cross section between the two functions.
+ * @author Patrick Owen
+ */
+public class CrossSectionGraph3DBuilder extends MeshBuilder
+{
+	//Function values
+	private Expression function1;
+	private Expression function2;
+	
+	//Info for future drawing
+	private double[] y1, y2;
+	private double[] dx1, dx2;
+	
+	//Graph bounds
+	private double xMin, xMax;
+	private int xRes, circRes;
+	private boolean gridNormals;
+	
+	private int crossSection;
+	
+	protected void defineParameters(GraphParameters parameters)
+	{
+		parameters.defineExpression(0);
+		parameters.defineExpression(1);
+		parameters.defineDouble(X_MIN, -1, BOUNDS);
+		parameters.defineDouble(X_MAX, 1, BOUNDS);
+		parameters.defineInt(X_RES, 50, RESOLUTION);
+		parameters.defineInt(CIRC_RES, 50, RESOLUTION);
+		parameters.defineInt(CROSS_SECTION, CS_CIRC, DATA);
+	}
+	
+	protected void buildMesh(GraphState state, Mesh mesh)
+	{
+		readState(state);
+		
+		if (function1 != null && function2 != null)
+		{
+			y1 = new double[xRes+1];
+			y2 = new double[xRes+1];
+			dx1 = new double[xRes+1];
+			dx2 = new double[xRes+1];
+			
+			new RowLoop()
+			{
+				protected void row(int i)
+				{
+					double x = xMin + (xMax-xMin)*i/xRes;
+					y1[i] = value1(x);
+					y2[i] = value2(x);
+					if (!gridNormals)
+					{
+						dx1[i] = partialX1(x);
+						dx2[i] = partialX2(x);
+					}
+				}
+			}.run(0, xRes+1);
+			
+			if (gridNormals)
+			{
+				//Derivatives are only needed at the ends and next to undefined values.
+				GridNormals.slopes(y1, (xMax-xMin)/xRes, dx1);
+				GridNormals.slopes(y2, (xMax-xMin)/xRes, dx2);
+				for (int i=0; i<=xRes; i++)
+				{
+					double x = xMin + (xMax-xMin)*i/xRes;
+					if (Double.isNaN(dx1[i])) dx1[i] = partialX1(x);
+					if (Double.isNaN(dx2[i])) dx2[i] = partialX2(x);
+				}
+			}
+			
+			generateArrays(mesh);
+		}
+	}
+	
+	//Sweeps the cross section between the two functions and fills in its shape at both ends.
+	private void generateArrays(Mesh mesh)
+	{
+		ProfileSweep sweep = new ProfileSweep(getProfile(), xRes, false);
+		ProfileSweep.Layer layer = sweep.addLayer();
+		
+		//The cross section runs from y1 to y2, so its center and half-width follow the two functions.
+		for (int i=0; i<=xRes; i++)
+		{
+			layer.axial[i] = xMin + (xMax-xMin)*i/xRes;
+			layer.axialSlope[i] = 1;
+			layer.center[i] = (y1[i]+y2[i])/2; layer.centerSlope[i] = (dx1[i]+dx2[i])/2;
+			layer.scale[i] = (y2[i]-y1[i])/2; layer.scaleSlope[i] = (dx2[i]-dx1[i])/2;
+		}
+		
+		sweep.sweep(mesh);
+		sweep.addFanCaps(mesh);
+	}
+	
+	/*
+	 * Returns the active cross section, from -1 to 1 along the y-axis. Vertices with
+	 * two different sets of normals are listed twice, once for each set of normals. This
+	 * is why a square has 8 vertices and a triangle has 6 vertices.
+	 */
+	private ProfileSweep.Profile getProfile()
+	{
+		switch (crossSection)
+		{
+		case CS_CIRC: return ProfileSweep.circle(circRes);
+		case CS_SEMICIRC: return ProfileSweep.semicircle(circRes);
+		case CS_SQUARE: return ProfileSweep.square();
+		case CS_SQUARE_CENTER: return ProfileSweep.squareCenter();
+		case CS_TRI: return ProfileSweep.triangle();
+		default: throw new IllegalArgumentException("Invalid index");
+		}
+	}
+	
+	//Returns the value of y1 at the x-position specified.
+	private double value1(double x)
+	{
+		return function1.eval(new double[]{x, u, v});
+	}
+	
+	//Returns the value of y2 at the x-position specified.
+	private double value2(double x)
+	{
+		return function2.eval(new double[]{x, u, v});
+	}
+	
+	//Returns the derivative of y1 at the x-position specified.
+	private double partialX1(double x)
+	{
+		return function1.derivative(new double[]{x, u, v}, 0);
+	}
+	
+	//Returns the derivative of y2 at the x-position specified.
+	private double partialX2(double x)
+	{
+		return function2.derivative(new double[]{x, u, v}, 0);
+	}
+	
+	//Copies everything the update depends on from the snapshot being built.
+	private void readState(GraphState state)
+	{
+		function1 = state.getExpression(0);
+		function2 = state.getExpression(1);
+		xMin = state.getDouble(X_MIN);
+		xMax = state.getDouble(X_MAX);
+		xRes = scaleResolution(state, X_RES);
+		crossSection = state.getInt(CROSS_SECTION);
+		gridNormals = state.getInt(GRID_NORMALS) != 0;
+		
+		//Only round cross sections have a resolution to scale.
+		if (crossSection == CS_CIRC || crossSection == CS_SEMICIRC)
+			circRes = scaleResolution(state, CIRC_RES);
+		else
+			circRes = state.getInt(CIRC_RES);
+	}
+}
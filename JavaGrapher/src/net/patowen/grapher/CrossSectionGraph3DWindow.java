@@ -28,6 +28,7 @@ import java.io.IOException;
 
 import javax.swing.ButtonGroup;
 import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JMenu;
@@ -47,10 +48,12 @@ public class CrossSectionGraph3DWindow extends GraphWindow implements ActionList
 	
 	private JLabel xMinLabel, xMaxLabel, xResLabel, circResLabel, xCenterLabel, yCenterLabel, zCenterLabel;
 	private JTextField xMinField, xMaxField, xResField, rotResField, xCenterField, yCenterField, zCenterField;
+	private AutoResolutionPanel autoPanel;
 	
 	private JMenu csMenu;
 	private ButtonGroup csButtonGroup;
 	private JRadioButtonMenuItem csCirc, csSemicirc, csSquare, csSquareCenter, csTri;
+	private JCheckBoxMenuItem gridNormalsButton;
 	
 	/**
 	 * Initializes a CrossSectionGraph3DWindow.
@@ -67,6 +70,7 @@ public class CrossSectionGraph3DWindow extends GraphWindow implements ActionList
 		createPresetLinkInt("x-res", X_RES); createPresetLinkInt("rot-res", CIRC_RES);
 		createPresetLinkDouble("x-center", X_CENTER); createPresetLinkDouble("y-center", Y_CENTER);
 		createPresetLinkDouble("z-center", Z_CENTER); createPresetLinkDouble("view-dist", VIEW_DISTANCE);
+		createPresetLinkInt("auto-res", AUTO_RESOLUTION); createPresetLinkDouble("rebuild-budget", REBUILD_BUDGET);
 		
 		presetNames = new String[] {"Circular"};
 		presetFiles = new String[] {"cross3d1.txt"};
@@ -86,7 +90,11 @@ public class CrossSectionGraph3DWindow extends GraphWindow implements ActionList
 		
 		setTextFields(new String[]{"y1 = ", "y2 = "}, false);
 		
+		gridNormalsButton = new JCheckBoxMenuItem("Normals from Grid", false);
+		gridNormalsButton.addActionListener(this);
+		
 		initialize();
+		graphMenu.add(gridNormalsButton);
 		
 		csMenu = new JMenu("Cross Section");
 		csButtonGroup = new ButtonGroup();
@@ -135,6 +143,9 @@ public class CrossSectionGraph3DWindow extends GraphWindow implements ActionList
 		createLinkDouble(xCenterField, X_CENTER); createLinkDouble(yCenterField, Y_CENTER);
 		createLinkDouble(zCenterField, Z_CENTER);
 		
+		autoPanel = new AutoResolutionPanel((Graph3D)graph, X_RES, CIRC_RES);
+		createLinkDouble(autoPanel.getBudgetField(), REBUILD_BUDGET);
+		
 		setBoundsApplyButton = new JButton("Apply");
 		
 		GridBagConstraints c = new GridBagConstraints();
@@ -157,8 +168,15 @@ public class CrossSectionGraph3DWindow extends GraphWindow implements ActionList
 		c.gridx = 0; c.gridy = 3; win.add(zCenterLabel, c);
 		c.gridx = 1; win.add(zCenterField,c);
 		
+		c.gridx = 0; c.gridy = 4; c.gridwidth = 4; win.add(autoPanel, c);
+		
 		c.fill = GridBagConstraints.NONE;
-		c.gridx = 0; c.gridy = 4; c.gridwidth = 4; win.add(setBoundsApplyButton,c);
+		c.gridx = 0; c.gridy = 5; win.add(setBoundsApplyButton,c);
+	}
+	
+	protected void applyBounds()
+	{
+		autoPanel.apply();
 	}
 	
 	public void actionPerformed(ActionEvent e)
@@ -170,6 +188,7 @@ public class CrossSectionGraph3DWindow extends GraphWindow implements ActionList
 		else if (e.getSource() == csSquare) ((CrossSectionGraph3D)graph).setCrossSection(CS_SQUARE);
 		else if (e.getSource() == csSquareCenter) ((CrossSectionGraph3D)graph).setCrossSection(CS_SQUARE_CENTER);
 		else if (e.getSource() == csTri) ((CrossSectionGraph3D)graph).setCrossSection(CS_TRI);
+		else if (e.getSource() == gridNormalsButton) ((CrossSectionGraph3D)graph).setGridNormals(gridNormalsButton.isSelected());
 	}
 	
 	protected void saveData(FileWriter w) throws IOException
@@ -182,18 +201,30 @@ public class CrossSectionGraph3DWindow extends GraphWindow implements ActionList
 		else if (csTri.isSelected()) w.append("triangle");
 		
 		w.append(System.getProperty("line.separator"));
+		
+		w.append("grid-normals: ");
+		if (gridNormalsButton.isSelected()) w.append("true");
+		else w.append("false");
+		
+		w.append(System.getProperty("line.separator"));
 	}
 	
 	protected void loadData(String name, String value)
 	{
+		CrossSectionGraph3D graph = (CrossSectionGraph3D)(this.graph);
+		
 		if (name.equals("cross-section"))
 		{
-			CrossSectionGraph3D graph = (CrossSectionGraph3D)(this.graph);
 			if (value.equals("circle")) {csCirc.setSelected(true); graph.setCrossSection(CS_CIRC);}
 			else if (value.equals("semicircle")) {csSemicirc.setSelected(true); graph.setCrossSection(CS_SEMICIRC);}
 			else if (value.equals("square-base")) {csSquare.setSelected(true); graph.setCrossSection(CS_SQUARE);}
 			else if (value.equals("square-center")) {csSquareCenter.setSelected(true); graph.setCrossSection(CS_SQUARE_CENTER);}
 			else if (value.equals("triangle")) {csTri.setSelected(true); graph.setCrossSection(CS_TRI);}
 		}
+		else if (name.equals("grid-normals"))
+		{
+			if (value.equals("true")) {gridNormalsButton.setSelected(true); graph.setGridNormals(true);}
+			else if (value.equals("false")) {gridNormalsButton.setSelected(false); graph.setGridNormals(false);}
+		}
 	}
 }
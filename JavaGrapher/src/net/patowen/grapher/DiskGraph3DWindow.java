@@ -22,6 +22,8 @@ import static net.patowen.grapher.DiskGraph3D.ROT_RES;
 import static net.patowen.grapher.DiskGraph3D.X_MAX;
 import static net.patowen.grapher.DiskGraph3D.X_MIN;
 import static net.patowen.grapher.DiskGraph3D.X_RES;
+import static net.patowen.grapher.Graph3D.AUTO_RESOLUTION;
+import static net.patowen.grapher.Graph3D.REBUILD_BUDGET;
 import static net.patowen.grapher.Graph3D.VIEW_DISTANCE;
 import static net.patowen.grapher.Graph3D.X_CENTER;
 import static net.patowen.grapher.Graph3D.Y_CENTER;
@@ -30,9 +32,13 @@ import static net.patowen.grapher.Graph3D.Z_CENTER;
 import java.awt.BorderLayout;
 import java.awt.GridBagConstraints;
 import java.awt.Window;
+import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.FileWriter;
+import java.io.IOException;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -46,8 +52,11 @@ public class DiskGraph3DWindow extends GraphWindow implements ActionListener
 {
 	private static final long serialVersionUID = 1L;
 	
+	private JCheckBoxMenuItem gridNormalsButton;
+	
 	private JLabel xMinLabel, xMaxLabel, xResLabel, rotResLabel, xCenterLabel, yCenterLabel, zCenterLabel;
 	private JTextField xMinField, xMaxField, xResField, rotResField, xCenterField, yCenterField, zCenterField;
+	private AutoResolutionPanel autoPanel;
 	
 	/**
 	 * Initializes a DiskGraph3DWindow.
@@ -64,6 +73,7 @@ public class DiskGraph3DWindow extends GraphWindow implements ActionListener
 		createPresetLinkInt("x-res", X_RES); createPresetLinkInt("rot-res", ROT_RES);
 		createPresetLinkDouble("x-center", X_CENTER); createPresetLinkDouble("y-center", Y_CENTER);
 		createPresetLinkDouble("z-center", Z_CENTER); createPresetLinkDouble("view-dist", VIEW_DISTANCE);
+		createPresetLinkInt("auto-res", AUTO_RESOLUTION); createPresetLinkDouble("rebuild-budget", REBUILD_BUDGET);
 		
 		try
 		{
@@ -80,7 +90,11 @@ public class DiskGraph3DWindow extends GraphWindow implements ActionListener
 		
 		setTextFields(new String[]{"y1 = ", "y2 = "}, false);
 		
+		gridNormalsButton = new JCheckBoxMenuItem("Normals from Grid", false);
+		gridNormalsButton.addActionListener(this);
+		
 		initialize();
+		graphMenu.add(gridNormalsButton);
 	}
 	
 	public void prepareBoundsWindow(JDialog win)
@@ -103,6 +117,9 @@ public class DiskGraph3DWindow extends GraphWindow implements ActionListener
 		createLinkDouble(xCenterField, X_CENTER); createLinkDouble(yCenterField, Y_CENTER);
 		createLinkDouble(zCenterField, Z_CENTER);
 		
+		autoPanel = new AutoResolutionPanel((Graph3D)graph, X_RES, ROT_RES);
+		createLinkDouble(autoPanel.getBudgetField(), REBUILD_BUDGET);
+		
 		setBoundsApplyButton = new JButton("Apply");
 		
 		GridBagConstraints c = new GridBagConstraints();
@@ -125,7 +142,44 @@ public class DiskGraph3DWindow extends GraphWindow implements ActionListener
 		c.gridx = 0; c.gridy = 3; win.add(zCenterLabel, c);
 		c.gridx = 1; win.add(zCenterField,c);
 		
+		c.gridx = 0; c.gridy = 4; c.gridwidth = 4; win.add(autoPanel, c);
+		
 		c.fill = GridBagConstraints.NONE;
-		c.gridx = 0; c.gridy = 4; c.gridwidth = 4; win.add(setBoundsApplyButton,c);
+		c.gridx = 0; c.gridy = 5; win.add(setBoundsApplyButton,c);
+	}
+	
+	protected void applyBounds()
+	{
+		autoPanel.apply();
+	}
+	
+	public void actionPerformed(ActionEvent e)
+	{
+		super.actionPerformed(e);
+		
+		if (e.getSource() == gridNormalsButton)
+		{
+			((DiskGraph3D)graph).setGridNormals(gridNormalsButton.isSelected());
+		}
+	}
+	
+	protected void saveData(FileWriter w) throws IOException
+	{
+		w.append("grid-normals: ");
+		if (gridNormalsButton.isSelected()) w.append("true");
+		else w.append("false");
+		
+		w.append(System.getProperty("line.separator"));
+	}
+	
+	protected void loadData(String name, String value)
+	{
+		DiskGraph3D graph = (DiskGraph3D)(this.graph);
+		
+		if (name.equals("grid-normals"))
+		{
+			if (value.equals("true")) {gridNormalsButton.setSelected(true); graph.setGridNormals(true);}
+			else if (value.equals("false")) {gridNormalsButton.setSelected(false); graph.setGridNormals(false);}
+		}
 	}
 }
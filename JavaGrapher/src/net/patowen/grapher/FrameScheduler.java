@@ -0,0 +1,206 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.awt.DisplayMode;
+import java.awt.EventQueue;
+import java.awt.GraphicsConfiguration;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+/**
+ * Decides when a graph is drawn. Anything that needs the graph drawn again requests a frame, and
+ * requests made before that frame is drawn are served by it, so a burst of mouse events draws once.
+ * Frames are drawn at most once per refresh of the screen, and not at all if nothing was requested.
+ * The scheduler also keeps statistics about the frames that have been drawn.
+ * <p>
+ * Frames are requested and drawn on the event dispatch thread. Frame times can be recorded from
+ * any thread.
+ * @author Patrick Owen
+ */
+public class FrameScheduler
+{
+	//Refresh rate assumed when the screen does not report one
+	private static final int DEFAULT_REFRESH_RATE = 60;
+	
+	//Number of recent frames the statistics are taken over
+	private static final int FRAMES_KEPT = 120;
+	
+	private final Runnable draw;
+	private Timer timer;
+	private volatile long interval; //Shortest time between the starts of two frames, in nanoseconds
+	private boolean pending; //A frame has been requested but not drawn
+	private long lastFrame; //When the last frame was started
+	
+	//Statistics, with the most recent frames in a ring
+	private long requested, drawn;
+	private long[] starts, times;
+	
+	/**
+	 * Constructs a FrameScheduler that draws at the default refresh rate until told otherwise.
+	 * @param draw draws a frame
+	 */
+	public FrameScheduler(Runnable draw)
+	{
+		this.draw = draw;
+		timer = new Timer(0, new ActionListener()
+		{
+			public void actionPerformed(ActionEvent e)
+			{
+				frame();
+			}
+		});
+		timer.setRepeats(false);
+		interval = 1000000000L/DEFAULT_REFRESH_RATE;
+		pending = false;
+		lastFrame = System.nanoTime() - interval;
+		
+		requested = 0;
+		drawn = 0;
+		starts = new long[FRAMES_KEPT];
+		times = new long[FRAMES_KEPT];
+	}
+	
+	/**
+	 * Paces frames to the refresh rate of the screen the graph is shown on.
+	 * @param config the configuration of the graph's screen, or null to use the default rate
+	 */
+	public void setScreen(GraphicsConfiguration config)
+	{
+		int rate = DisplayMode.REFRESH_RATE_UNKNOWN;
+		if (config != null)
+			rate = config.getDevice().getDisplayMode().getRefreshRate();
+		if (rate == DisplayMode.REFRESH_RATE_UNKNOWN)
+			rate = DEFAULT_REFRESH_RATE;
+		interval = 1000000000L/rate;
+	}
+	
+	/**
+	 * Requests a frame. It is drawn right away if the last one was at least a refresh ago and after
+	 * the next refresh otherwise, and any other requests made until then are merged into it.
+	 */
+	public void request()
+	{
+		synchronized (this)
+		{
+			requested++;
+		}
+		if (pending)
+			return;
+		pending = true;
+		
+		long wait = lastFrame + interval - System.nanoTime();
+		if (wait <= 0)
+		{
+			EventQueue.invokeLater(new Runnable()
+			{
+				public void run()
+				{
+					frame();
+				}
+			});
+		}
+		else
+		{
+			timer.setInitialDelay((int)((wait + 999999)/1000000));
+			timer.restart();
+		}
+	}
+	
+	//Draws the requested frame.
+	private void frame()
+	{
+		if (!pending)
+			return;
+		pending = false;
+		lastFrame = System.nanoTime();
+		draw.run();
+	}
+	
+	/**
+	 * Records how long a frame took to draw.
+	 * @param start when drawing started, from System.nanoTime()
+	 * @param time the time taken in nanoseconds
+	 */
+	public synchronized void recordFrame(long start, long time)
+	{
+		int k = (int)(drawn % FRAMES_KEPT);
+		starts[k] = start;
+		times[k] = time;
+		drawn++;
+	}
+	
+	/**
+	 * Returns statistics of the frames drawn so far, with times taken over the most recent frames.
+	 * @return the statistics
+	 */
+	public synchronized Statistics getStatistics()
+	{
+		int count = (int)Math.min(drawn, FRAMES_KEPT);
+		long total = 0, longest = 0;
+		for (int k=0; k<count; k++)
+		{
+			total += times[k];
+			longest = Math.max(longest, times[k]);
+		}
+		
+		double averageTime = count == 0 ? 0 : total/1e6/count;
+		double rate = 0;
+		if (count > 1)
+		{
+			long first = starts[(int)((drawn - count) % FRAMES_KEPT)], last = starts[(int)((drawn - 1) % FRAMES_KEPT)];
+			if (last > first)
+				rate = (count - 1)*1e9/(last - first);
+		}
+		return new Statistics(requested, drawn, averageTime, longest/1e6, rate);
+	}
+	
+	/**
+	 * A summary of the frames drawn by a graph.
+	 * @author Patrick Owen
+	 */
+	public static class Statistics
+	{
+		//Frames asked for and frames drawn. Requests merged into another frame are counted but not drawn.
+		public final long requested, drawn;
+		
+		//Time spent drawing recent frames, in milliseconds
+		public final double averageTime, longestTime;
+		
+		//Rate at which recent frames were drawn, in frames per second
+		public final double rate;
+		
+		public Statistics(long requested, long drawn, double averageTime, double longestTime, double rate)
+		{
+			this.requested = requested;
+			this.drawn = drawn;
+			this.averageTime = averageTime;
+			this.longestTime = longestTime;
+			this.rate = rate;
+		}
+		
+		public String toString()
+		{
+			return String.format("%d of %d frames drawn, %.2f ms average, %.2f ms longest, %.1f frames per second",
+					drawn, requested, averageTime, longestTime, rate);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+
+/**
+ * The region a perspective camera shows, bounded by six planes, for skipping geometry that lies
+ * entirely outside the view. It is found from the same parameters that are passed to
+ * gluPerspective and gluLookAt, so it needs no OpenGL and nothing is read back from it.
+ * @author Patrick Owen
+ */
+public class Frustum
+{
+	//Four coefficients per plane, with points in view on the non-negative side of every one
+	private final double[] planes;
+	
+	/**
+	 * Constructs the Frustum of a camera set up as gluPerspective and gluLookAt would set it up.
+	 * @param fovy the field of view in the y direction, in degrees
+	 * @param aspect the width of the view divided by its height
+	 * @param zNear the distance to the near clipping plane
+	 * @param zFar the distance to the far clipping plane
+	 * @param eye the position of the eye
+	 * @param center the point looked at
+	 * @param up the up direction
+	 */
+	public Frustum(double fovy, double aspect, double zNear, double zFar, double[] eye, double[] center, double[] up)
+	{
+		//The forward, sideways and up directions of the view, as gluLookAt finds them
+		double[] f = normalize(center[0]-eye[0], center[1]-eye[1], center[2]-eye[2]);
+		double[] s = normalize(f[1]*up[2] - f[2]*up[1], f[2]*up[0] - f[0]*up[2], f[0]*up[1] - f[1]*up[0]);
+		double[] u = {s[1]*f[2] - s[2]*f[1], s[2]*f[0] - s[0]*f[2], s[0]*f[1] - s[1]*f[0]};
+		
+		//Slopes of the sides of the view, sideways and up, per unit forward
+		double tanY = Math.tan(Math.toRadians(fovy)/2), tanX = tanY*aspect;
+		
+		planes = new double[24];
+		setPlane(0, f, 1, s, 0, eye, -zNear);
+		setPlane(1, f, -1, s, 0, eye, zFar);
+		setPlane(2, f, tanX, s, 1, eye, 0);
+		setPlane(3, f, tanX, s, -1, eye, 0);
+		setPlane(4, f, tanY, u, 1, eye, 0);
+		setPlane(5, f, tanY, u, -1, eye, 0);
+	}
+	
+	/**
+	 * Returns whether any of a bounding box is on the inside of every plane. Boxes partly in view
+	 * are always visible, and some that are near a corner of the view but outside it are too.
+	 * @param bounds the smallest x, y and z of the box followed by the largest
+	 * @return whether the box may be in view
+	 */
+	public boolean isVisible(float[] bounds)
+	{
+		for (int p=0; p<planes.length; p+=4)
+		{
+			//The corner furthest along the plane's normal
+			double x = planes[p] > 0 ? bounds[3] : bounds[0];
+			double y = planes[p+1] > 0 ? bounds[4] : bounds[1];
+			double z = planes[p+2] > 0 ? bounds[5] : bounds[2];
+			if (planes[p]*x + planes[p+1]*y + planes[p+2]*z + planes[p+3] < 0)
+				return false;
+		}
+		return true;
+	}
+	
+	/*
+	 * Sets plane p to the points whose offset d from the eye has scale*(f.d) + sign*(side.d) + offset >= 0.
+	 * The near and far planes have a sign of 0, and the others pass through the eye.
+	 */
+	private void setPlane(int p, double[] f, double scale, double[] side, double sign, double[] eye, double offset)
+	{
+		double d = offset;
+		for (int k=0; k<3; k++)
+		{
+			planes[p*4+k] = scale*f[k] + sign*side[k];
+			d -= planes[p*4+k]*eye[k];
+		}
+		planes[p*4+3] = d;
+	}
+	
+	//Returns a vector scaled to length 1.
+	private static double[] normalize(double x, double y, double z)
+	{
+		double n = Math.sqrt(x*x + y*y + z*z);
+		return new double[] {x/n, y/n, z/n};
+	}
+}
@@ -21,7 +21,6 @@ package net.patowen.grapher;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.geom.Line2D;
 
 import net.patowen.grapher.math.Expression;
 
@@ -32,47 +31,58 @@ import net.patowen.grapher.math.Expression;
 public class FunctionGraph extends Graph2D
 {
 	private static final long serialVersionUID = 1L;
-	private Expression function;
+	
+	public static final int SAMPLES_PER_COLUMN = 100;
+	
+	private AdaptiveFunctionSampler sampler;
+	private ColumnAggregateSampler columnSampler;
+	private boolean oversampling;
 	
 	public FunctionGraph()
 	{
 		super();
 		
-		function = null;
+		defineExpression(0);
+		defineInt(SAMPLES_PER_COLUMN, ColumnAggregateSampler.DEFAULT_SAMPLES_PER_COLUMN, RESOLUTION);
+		
+		sampler = new AdaptiveFunctionSampler();
+		columnSampler = new ColumnAggregateSampler();
+		oversampling = false;
 		
 		repaint();
 	}
 	
-	public Expression getExpression(int index)
-	{
-		return function;
-	}
-	
-	public void setExpression(int index, Expression e)
+	/**
+	 * Sets whether the graph is drawn from several samples per pixel column reduced to
+	 * their extremes, rather than from adaptively placed samples. This is slower on smooth
+	 * functions but draws rapidly oscillating functions without aliasing.
+	 * @param enabled whether the columns should be oversampled
+	 */
+	public void setOversampling(boolean enabled)
 	{
-		function = e;
+		if (oversampling != enabled)
+			invalidate(RESOLUTION);
+		oversampling = enabled;
+		updateGraph();
 	}
 	
-	public void paintGraph(Graphics g)
+	public void paintGraph(Graphics g, GraphState state)
 	{
-		super.paintGraph(g);
+		super.paintGraph(g, state);
 		Graphics2D g2 = (Graphics2D)g;
+		Expression function = state.getExpression(0);
 		
 		//Graph
 		if (function != null)
 		{
 			g2.setColor(Color.BLACK);
-			double x1, x2, y1, y2;
-			for (int i=0; i<getWidth()-1; i++)
-			{
-				//Actual values
-				x1 = getX(i);
-				x2 = getX(i+1);
-				y1 = function.eval(new double[]{x1, u, v});
-				y2 = function.eval(new double[]{x2, u, v});
-				if (!Double.isNaN(y1) && !Double.isNaN(y2) && !Double.isInfinite(y1) && !Double.isInfinite(y2))
-					g2.draw(new Line2D.Double(i, getJ(y1), (i+1), getJ(y2)));
-			}
+			columnSampler.setSamplesPerColumn(state.getInt(SAMPLES_PER_COLUMN));
+			if (oversampling)
+				g2.draw(columnSampler.sample(function, u, v, getX(0), getX(getWidth()), getWidth(),
+						getY(getHeight()), getY(0), getHeight()));
+			else
+				g2.draw(sampler.sample(function, u, v, getX(0), getX(getWidth()), getWidth(),
+						getY(getHeight()), getY(0), getHeight()));
 		}
 	}
 }
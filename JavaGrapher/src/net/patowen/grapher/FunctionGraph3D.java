@@ -18,16 +18,10 @@
  */
 
 package net.patowen.grapher;
-import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
-
 import com.jogamp.opengl.GL2;
 
-import net.patowen.grapher.math.Expression;
 import static com.jogamp.opengl.GL2.*;
 
-import com.jogamp.common.nio.Buffers;
-
 /**
  * Represents a 3D function graph. The manual contains information regarding this graph type.
  * @author Patrick Owen
@@ -36,214 +30,46 @@ public class FunctionGraph3D extends Graph3D
 {
 	private static final long serialVersionUID = 1973139872093412258L;
 	
-	public static final int X_MIN = 100, Y_MIN = 101, X_MAX = 102, Y_MAX = 103, X_RES = 104, Y_RES = 105;
-	
-	//Function values
-	private Expression function;
-	
-	//Info for future drawing
-	private double[][] z;
-	private double[][] dx;
-	private double[][] dy;
-	
-	//Graph bounds
-	private double xMin, yMin, xMax, yMax;
-	private int xRes, yRes;
-	
-	//Vertex buffers
-	private int orderBufferLength;
-	private IntBuffer orderBuffer;
-	private FloatBuffer vertexBuffer;
-	private FloatBuffer normalBuffer;
+	public static final int X_MIN = 100, Y_MIN = 101, X_MAX = 102, Y_MAX = 103, X_RES = 104, Y_RES = 105, ADAPTIVE = 106,
+			CONTOURS = 107;
 	
 	/**
 	 * Constructs a FunctionGraph3D and initializes its defaults.
 	 */
 	public FunctionGraph3D()
 	{
-		function = null;
-		xMin = -1; yMin = -1; xMax = 1; yMax = 1;
-		xRes = 50; yRes = 50;
-	}
-	
-	public void glInitSpecial(GL2 gl)
-	{
-		gl.glEnableClientState(GL_VERTEX_ARRAY);
-		gl.glEnableClientState(GL_NORMAL_ARRAY);
-	}
-	
-	public void renderGraph(GL2 gl)
-	{
-		if (function != null)
-		{
-			gl.glVertexPointer(3, GL_FLOAT, 0, vertexBuffer);
-			gl.glNormalPointer(GL_FLOAT, 0, normalBuffer);
-			gl.glDrawElements(GL_TRIANGLES, orderBufferLength, GL_UNSIGNED_INT, orderBuffer);
-		}
-	}
-	
-	public void update(GL2 gl)
-	{
-		if (function != null)
-		{
-			z = new double[xRes+1][yRes+1];
-			dx = new double[xRes+1][yRes+1];
-			dy = new double[xRes+1][yRes+1];
-			
-			for (int i=0; i<=xRes; i++)
-				for (int j=0; j<=yRes; j++)
-				{
-					double x = xMin + (xMax-xMin)*i/xRes, y = yMin + (yMax-yMin)*j/yRes;
-					z[i][j] = value(x,y);
-					dx[i][j] = partialX(x,y);
-					dy[i][j] = partialY(x,y);
-				}
-			
-			generateArrays(gl);
-		}
-	}
-	
-	//Fills all the buffers with the correct information for glDrawElements to draw the correct figure.
-	private void generateArrays(GL2 gl)
-	{
-		float[] vertices = new float[(xRes+1)*(yRes+1)*3];
-		float[] normals = new float[(xRes+1)*(yRes+1)*3];
-		int vc = 0; //vertexCounter
-		int nc = 0; //normalCounter
-		
-		int[][] vertexID = new int[xRes+1][yRes+1];
-		int vic = 0; //vertexIDCounter
-		
-		int[] order = new int[xRes*yRes*6];
-		int oc = 0; //orderCounter
-		
-		for (int i=0; i<=xRes; i++)
-			for (int j=0; j<=yRes; j++)
-			{
-				vertexID[i][j] = -1;
-			}
-		
-		//Vertices and normals.
-		for (int i=0; i<=xRes; i++)
-			for (int j=0; j<=yRes; j++)
-			{
-				double x = xMin + (xMax-xMin)*i/xRes, y = yMin + (yMax-yMin)*j/yRes;
-				
-				double nx, ny, nz, n;
-				nx = -dx[i][j]; ny = -dy[i][j]; nz = 1;
-				n = Math.sqrt(nx*nx + ny*ny + nz*nz);
-				
-				vertices[vc++] = (float)x;
-				vertices[vc++] = (float)y;
-				vertices[vc++] = (float)z[i][j];
-				
-				normals[nc++] = (float)(nx/n);
-				normals[nc++] = (float)(ny/n);
-				normals[nc++] = (float)(nz/n);
-				
-				vertexID[i][j] = vic++;
-			}
-		
-		//Order
-		for (int i=0; i<xRes; i++)
-			for (int j=0; j<yRes; j++)
-			{
-				if (vertexID[i][j] < 0 || vertexID[i+1][j] < 0 || vertexID[i+1][j+1] < 0 || vertexID[i][j+1] < 0)
-					continue;
-				
-				order[oc++] = vertexID[i][j];
-				order[oc++] = vertexID[i+1][j];
-				order[oc++] = vertexID[i+1][j+1];
-				
-				order[oc++] = vertexID[i][j];
-				order[oc++] = vertexID[i+1][j+1];
-				order[oc++] = vertexID[i][j+1];
-			}
-		
-		vertexBuffer = Buffers.newDirectFloatBuffer(vertices.length);
-		vertexBuffer.put(vertices);
-		vertexBuffer.rewind();
-		
-		normalBuffer = Buffers.newDirectFloatBuffer(normals.length);
-		normalBuffer.put(normals);
-		normalBuffer.rewind();
-		
-		orderBuffer = Buffers.newDirectIntBuffer(order.length);
-		orderBuffer.put(order);
-		orderBuffer.rewind();
-		
-		orderBufferLength = oc;
-	}
-	
-	//Returns the value of z at the specified position.
-	private double value(double x, double y)
-	{
-		return function.eval(new double[]{x, y, u, v});
-	}
-	
-	//Returns the partial derivative with respect to x at the specified position.
-	private double partialX(double x, double y)
-	{
-		return function.derivative(new double[]{x, y, u, v}, 0);
-	}
-	
-	//Returns the partial derivative with respect to y at the specified position.
-	private double partialY(double x, double y)
-	{
-		return function.derivative(new double[]{x, y, u, v}, 1);
-	}
-	
-	public void setExpression(int index, Expression e)
-	{
-		function = e;
+		super(new FunctionGraph3DBuilder());
 	}
 	
-	public Expression getExpression(int index)
-	{
-		return function;
-	}
-	
-	public void setDouble(int index, double value)
-	{
-		switch (index)
-		{
-		case X_MIN: xMin = value; break;
-		case Y_MIN: yMin = value; break;
-		case X_MAX: xMax = value; break;
-		case Y_MAX: yMax = value; break;
-		default: super.setDouble(index, value);
-		}
-	}
-	
-	public void setInt(int index, int value)
+	/**
+	 * Sets whether the surface is tessellated adaptively, with smaller triangles where it curves more
+	 * and x-res and y-res as the finest resolution, rather than as a uniform grid.
+	 * @param enabled whether the surface should be tessellated adaptively
+	 */
+	public void setAdaptive(boolean enabled)
 	{
-		switch (index)
-		{
-		case X_RES: xRes = value; break;
-		case Y_RES: yRes = value; break;
-		default: super.setInt(index, value);
-		}
+		setInt(ADAPTIVE, enabled ? 1 : 0);
+		updateGraph();
 	}
 	
-	public double getDouble(int index)
+	/**
+	 * Sets the number of contour lines drawn on the surface, at evenly spaced values of z over the
+	 * range of z of the grid. The range is found from the heights the grid samples anyway. When the
+	 * grid keeps its shape and only the number of lines changes, the lines are traced from each chunk
+	 * as it is built. Otherwise they are traced once the grid is finished, from the heights the graph
+	 * remembers of it, and only grids too large to remember have their heights evaluated again. Lines
+	 * are not drawn when the surface is tessellated adaptively, since it has no grid.
+	 * @param levels the number of contour lines, or 0 for none
+	 */
+	public void setContours(int levels)
 	{
-		switch (index)
-		{
-		case X_MIN: return xMin;
-		case Y_MIN: return yMin;
-		case X_MAX: return xMax;
-		case Y_MAX: return yMax;
-		default: return super.getDouble(index);
-		}
+		setInt(CONTOURS, levels);
+		updateGraph();
 	}
 	
-	public int getInt(int index)
+	public void glInitSpecial(GL2 gl)
 	{
-		switch (index)
-		{
-		case X_RES: return xRes;
-		case Y_RES: return yRes;
-		default: return super.getInt(index);
-		}
+		gl.glEnableClientState(GL_VERTEX_ARRAY);
+		gl.glEnableClientState(GL_NORMAL_ARRAY);
 	}
 }
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import static net.patowen.grapher.FunctionGraph3D.*;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import net.patowen.grapher.math.Expression;
+
+/**
+ * Builds the surface of a FunctionGraph3D, either as a grid with optional contour lines or tessellated adaptively.
+ * @author Patrick Owen
+ */
+public class FunctionGraph3DBuilder extends MeshBuilder
+{
+	//Function values
+	private Expression function;
+	
+	//Graph bounds
+	private double xMin, yMin, xMax, yMax;
+	private int xRes, yRes;
+	private boolean adaptive;
+	private int contours;
+	
+	private AdaptiveSurfaceTessellator tessellator;
+	private GridSampleCache samples; //Heights and normals of the last grid
+	
+	//Range of z of the last grid with contour lines, and everything it depends on
+	private Object rangeKey;
+	private double rangeMin, rangeMax;
+	
+	/**
+	 * Constructs a FunctionGraph3DBuilder with nothing sampled yet.
+	 */
+	public FunctionGraph3DBuilder()
+	{
+		tessellator = new AdaptiveSurfaceTessellator()
+		{
+			protected void evaluate(double x, double y, double[] sample)
+			{
+				sample[0] = x; sample[1] = y; sample[2] = value(x,y);
+				sample[3] = 1; sample[4] = 0; sample[5] = partialX(x,y);
+				sample[6] = 0; sample[7] = 1; sample[8] = partialY(x,y);
+			}
+		};
+		samples = new GridSampleCache(4);
+	}
+	
+	protected void defineParameters(GraphParameters parameters)
+	{
+		parameters.defineExpression(0);
+		parameters.defineDouble(X_MIN, -1, BOUNDS);
+		parameters.defineDouble(Y_MIN, -1, BOUNDS);
+		parameters.defineDouble(X_MAX, 1, BOUNDS);
+		parameters.defineDouble(Y_MAX, 1, BOUNDS);
+		parameters.defineInt(X_RES, 50, RESOLUTION);
+		parameters.defineInt(Y_RES, 50, RESOLUTION);
+		parameters.defineInt(ADAPTIVE, 0, RESOLUTION);
+		parameters.defineInt(CONTOURS, 0, RESOLUTION);
+	}
+	
+	protected void buildMesh(GraphState state, Mesh mesh)
+	{
+		readState(state);
+		
+		if (function != null && adaptive)
+			tessellator.tessellate(mesh, xMin, xMax, xRes, yMin, yMax, yRes);
+		else if (function != null)
+			generateArrays(mesh);
+	}
+	
+	/*
+	 * Samples the function straight into the mesh's buffers, filling them with the correct information
+	 * for glDrawElements to draw the correct figure. The grid is built in chunks, so very high
+	 * resolutions need no more memory at once than a streamed mesh allows. Points that the last
+	 * grid already sampled, such as after the bounds are moved, are copied rather than evaluated.
+	 * Contour lines are spaced over the range of z of the grid. If the last grid with lines had the
+	 * same shape, its range is used and the lines are traced from each chunk before it is added to
+	 * the mesh. Otherwise, the range is found from the chunks as they are added, and the lines are
+	 * traced once the grid is finished.
+	 */
+	private void generateArrays(Mesh mesh)
+	{
+		samples.start(Arrays.<Object>asList(function, u, v), xMin, xMax, xRes, yMin, yMax, yRes);
+		
+		final Object key = Arrays.<Object>asList(function, u, v, xMin, xMax, xRes, yMin, yMax, yRes);
+		final GridContours lines = contours > 0 && key.equals(rangeKey) ? new GridContours(rangeMin, rangeMax, contours) : null;
+		final double[] range = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+		
+		//Vertices and normals, interleaved
+		new GridChunks.Vertices()
+		{
+			protected void vertex(int i, int j, FloatBuffer vertices, int vc)
+			{
+				double x = xMin + (xMax-xMin)*i/xRes, y = yMin + (yMax-yMin)*j/yRes;
+				
+				vertices.put(vc, (float)x);
+				vertices.put(vc+1, (float)y);
+				if (!samples.load(i, j, vertices, vc+2))
+				{
+					double nx, ny, nz, n;
+					nx = -partialX(x,y); ny = -partialY(x,y); nz = 1;
+					n = Math.sqrt(nx*nx + ny*ny + nz*nz);
+					
+					vertices.put(vc+2, (float)value(x,y));
+					
+					vertices.put(vc+3, (float)(nx/n));
+					vertices.put(vc+4, (float)(ny/n));
+					vertices.put(vc+5, (float)(nz/n));
+					
+					samples.store(i, j, vertices, vc+2);
+				}
+			}
+			
+			protected void addChunk(Mesh mesh, FloatBuffer vertices, int startI, int startJ, int rows, int columns)
+			{
+				//The chunk is read first, since a streamed mesh may let go of the vertices once it has them.
+				if (lines != null)
+					lines.addChunk(mesh, vertices, rows, columns);
+				else if (contours > 0)
+					findRange(vertices, (rows+1)*(columns+1), range);
+				super.addChunk(mesh, vertices, startI, startJ, rows, columns);
+			}
+		}.build(mesh, xRes, yRes);
+		
+		samples.finish();
+		
+		if (contours > 0 && lines == null)
+		{
+			traceContours(mesh, new GridContours(range[0], range[1], contours));
+			rangeKey = key;
+			rangeMin = range[0];
+			rangeMax = range[1];
+		}
+	}
+	
+	//Widens a range of z to include the finite heights of the vertices of a chunk.
+	private static void findRange(FloatBuffer vertices, int count, double[] range)
+	{
+		for (int n=0; n<count; n++)
+		{
+			float z = vertices.get(n*6+2);
+			if (Float.isNaN(z) || Float.isInfinite(z))
+				continue;
+			range[0] = Math.min(range[0], z);
+			range[1] = Math.max(range[1], z);
+		}
+	}
+	
+	/*
+	 * Traces the contour lines of the finished grid, one chunk at a time, from the heights the sample
+	 * cache remembers of it. Heights of a grid too large for the cache are evaluated again.
+	 */
+	private void traceContours(Mesh mesh, GridContours lines)
+	{
+		final int size = GridChunks.CHUNK_SIZE;
+		final FloatBuffer vertices = FloatBuffer.allocate((size+1)*(size+1)*6);
+		for (int startI=0; startI<xRes; startI+=size)
+		{
+			for (int startJ=0; startJ<yRes; startJ+=size)
+			{
+				final int firstI = startI, firstJ = startJ;
+				final int rows = Math.min(size, xRes-startI), columns = Math.min(size, yRes-startJ);
+				new RowLoop()
+				{
+					protected void row(int i)
+					{
+						double[] sample = new double[4];
+						int vc = i*(columns+1)*6; //vertexCounter
+						for (int j=0; j<=columns; j++)
+						{
+							double x = xMin + (xMax-xMin)*(firstI+i)/xRes, y = yMin + (yMax-yMin)*(firstJ+j)/yRes;
+							vertices.put(vc, (float)x);
+							vertices.put(vc+1, (float)y);
+							if (samples.loadFinished(firstI+i, firstJ+j, sample, 0))
+								vertices.put(vc+2, (float)sample[0]);
+							else
+								vertices.put(vc+2, (float)value(x,y));
+							vc += 6;
+						}
+					}
+				}.run(0, rows+1);
+				
+				lines.addChunk(mesh, vertices, rows, columns);
+			}
+		}
+	}
+	
+	//Returns the value of z at the specified position.
+	private double value(double x, double y)
+	{
+		return function.eval(new double[]{x, y, u, v});
+	}
+	
+	//Returns the partial derivative with respect to x at the specified position.
+	private double partialX(double x, double y)
+	{
+		return function.derivative(new double[]{x, y, u, v}, 0);
+	}
+	
+	//Returns the partial derivative with respect to y at the specified position.
+	private double partialY(double x, double y)
+	{
+		return function.derivative(new double[]{x, y, u, v}, 1);
+	}
+	
+	//Copies everything the update depends on from the snapshot being built.
+	private void readState(GraphState state)
+	{
+		function = state.getExpression(0);
+		xMin = state.getDouble(X_MIN);
+		yMin = state.getDouble(Y_MIN);
+		xMax = state.getDouble(X_MAX);
+		yMax = state.getDouble(Y_MAX);
+		xRes = scaleResolution(state, X_RES);
+		yRes = scaleResolution(state, Y_RES);
+		adaptive = state.getInt(ADAPTIVE) != 0;
+		contours = state.getInt(CONTOURS);
+	}
+}
@@ -23,11 +23,16 @@ import static net.patowen.grapher.FunctionGraph3D.*;
 import java.awt.BorderLayout;
 import java.awt.GridBagConstraints;
 import java.awt.Window;
+import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.FileWriter;
+import java.io.IOException;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
+import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JTextField;
 
@@ -40,8 +45,15 @@ public class FunctionGraph3DWindow extends GraphWindow implements ActionListener
 {
 	private static final long serialVersionUID = 1L;
 	
-	private JLabel xMinLabel, xMaxLabel, yMinLabel, yMaxLabel, xResLabel, yResLabel, xCenterLabel, yCenterLabel, zCenterLabel;
-	private JTextField xMinField, xMaxField, yMinField, yMaxField, xResField, yResField, xCenterField, yCenterField, zCenterField;
+	//Values of u and of v in a precomputed sweep
+	private static final int SWEEP_STEPS = 21;
+	
+	private JCheckBoxMenuItem adaptiveButton, sweepBlendingButton;
+	private JMenuItem sweepButton;
+	
+	private JLabel xMinLabel, xMaxLabel, yMinLabel, yMaxLabel, xResLabel, yResLabel, xCenterLabel, yCenterLabel, zCenterLabel, contoursLabel;
+	private JTextField xMinField, xMaxField, yMinField, yMaxField, xResField, yResField, xCenterField, yCenterField, zCenterField, contoursField;
+	private AutoResolutionPanel autoPanel;
 	
 	/**
 	 * Initializes a FunctionGraph3DWindow.
@@ -59,6 +71,8 @@ public class FunctionGraph3DWindow extends GraphWindow implements ActionListener
 		createPresetLinkInt("x-res", X_RES); createPresetLinkInt("y-res", Y_RES);
 		createPresetLinkDouble("x-center", X_CENTER); createPresetLinkDouble("y-center", Y_CENTER);
 		createPresetLinkDouble("z-center", Z_CENTER); createPresetLinkDouble("view-dist", VIEW_DISTANCE);
+		createPresetLinkInt("auto-res", AUTO_RESOLUTION); createPresetLinkDouble("rebuild-budget", REBUILD_BUDGET);
+		createPresetLinkInt("contours", CONTOURS);
 		
 		presetNames = new String[] {"Hyperbolic Paraboloid", "Quartic Function", "Bumpy Surface"};
 		presetFiles = new String[] {"fun3d1.txt", "fun3d2.txt", "fun3d3.txt"};
@@ -78,7 +92,18 @@ public class FunctionGraph3DWindow extends GraphWindow implements ActionListener
 		
 		setTextFields(new String[]{"z = "}, false);
 		
+		adaptiveButton = new JCheckBoxMenuItem("Adaptive Tessellation", false);
+		adaptiveButton.addActionListener(this);
+		sweepButton = new JMenuItem("Precompute u/v Sweep");
+		sweepButton.setToolTipText("Builds the graph for many values of u and v, so that dragging them is instant.");
+		sweepButton.addActionListener(this);
+		sweepBlendingButton = new JCheckBoxMenuItem("Blend Swept Meshes", false);
+		sweepBlendingButton.addActionListener(this);
+		
 		initialize();
+		graphMenu.add(adaptiveButton);
+		graphMenu.add(sweepButton);
+		graphMenu.add(sweepBlendingButton);
 	}
 	
 	public void prepareBoundsWindow(JDialog win)
@@ -87,22 +112,25 @@ public class FunctionGraph3DWindow extends GraphWindow implements ActionListener
 		yMinLabel = new JLabel("y-min: "); yMaxLabel = new JLabel("y-max: ");
 		xResLabel = new JLabel("x-resolution: "); yResLabel = new JLabel("y-resolution: ");
 		xCenterLabel = new JLabel("x-center (view): "); yCenterLabel = new JLabel("y-center (view): ");
-		zCenterLabel = new JLabel("z-center (view): ");
+		zCenterLabel = new JLabel("z-center (view): "); contoursLabel = new JLabel("contour lines: ");
 		
 		alignLabels(xMinLabel, xMaxLabel, yMinLabel, yMaxLabel, xResLabel, yResLabel,
-				xCenterLabel, yCenterLabel, zCenterLabel);
+				xCenterLabel, yCenterLabel, zCenterLabel, contoursLabel);
 		
 		xMinField = new JTextField(10); xMaxField = new JTextField(10);
 		yMinField = new JTextField(10); yMaxField = new JTextField(10);
 		xResField = new JTextField(10); yResField = new JTextField(10);
 		xCenterField = new JTextField(10); yCenterField = new JTextField(10);
-		zCenterField = new JTextField(10);
+		zCenterField = new JTextField(10); contoursField = new JTextField(10);
 		
 		createLinkDouble(xMinField, FunctionGraph3D.X_MIN); createLinkDouble(xMaxField, FunctionGraph3D.X_MAX);
 		createLinkDouble(yMinField, FunctionGraph3D.Y_MIN); createLinkDouble(yMaxField, FunctionGraph3D.Y_MAX);
 		createLinkInt(xResField, FunctionGraph3D.X_RES); createLinkInt(yResField, FunctionGraph3D.Y_RES);
 		createLinkDouble(xCenterField, FunctionGraph3D.X_CENTER); createLinkDouble(yCenterField, FunctionGraph3D.Y_CENTER);
-		createLinkDouble(zCenterField, FunctionGraph3D.Z_CENTER);
+		createLinkDouble(zCenterField, FunctionGraph3D.Z_CENTER); createLinkInt(contoursField, FunctionGraph3D.CONTOURS);
+		
+		autoPanel = new AutoResolutionPanel((Graph3D)graph, X_RES, Y_RES);
+		createLinkDouble(autoPanel.getBudgetField(), REBUILD_BUDGET);
 		
 		setBoundsApplyButton = new JButton("Apply");
 		
@@ -130,8 +158,66 @@ public class FunctionGraph3DWindow extends GraphWindow implements ActionListener
 		
 		c.gridx = 0; c.gridy = 4; win.add(zCenterLabel, c);
 		c.gridx = 1; win.add(zCenterField,c);
+		c.gridx = 2; win.add(contoursLabel,c);
+		c.gridx = 3; win.add(contoursField,c);
+		
+		c.gridx = 0; c.gridy = 5; c.gridwidth = 4; win.add(autoPanel, c);
 		
 		c.fill = GridBagConstraints.NONE;
-		c.gridx = 0; c.gridy = 5; c.gridwidth = 4; win.add(setBoundsApplyButton,c);
+		c.gridx = 0; c.gridy = 6; win.add(setBoundsApplyButton,c);
+	}
+	
+	protected void applyBounds()
+	{
+		autoPanel.apply();
+	}
+	
+	public void actionPerformed(ActionEvent e)
+	{
+		super.actionPerformed(e);
+		
+		if (e.getSource() == adaptiveButton)
+		{
+			((FunctionGraph3D)graph).setAdaptive(adaptiveButton.isSelected());
+		}
+		else if (e.getSource() == sweepButton)
+		{
+			((FunctionGraph3D)graph).precomputeSweep(SWEEP_STEPS);
+		}
+		else if (e.getSource() == sweepBlendingButton)
+		{
+			((FunctionGraph3D)graph).setSweepBlending(sweepBlendingButton.isSelected());
+		}
+	}
+	
+	protected void saveData(FileWriter w) throws IOException
+	{
+		w.append("adaptive: ");
+		if (adaptiveButton.isSelected()) w.append("true");
+		else w.append("false");
+		
+		w.append(System.getProperty("line.separator"));
+		
+		w.append("blend-sweep: ");
+		if (sweepBlendingButton.isSelected()) w.append("true");
+		else w.append("false");
+		
+		w.append(System.getProperty("line.separator"));
+	}
+	
+	protected void loadData(String name, String value)
+	{
+		FunctionGraph3D graph = (FunctionGraph3D)(this.graph);
+		
+		if (name.equals("adaptive"))
+		{
+			if (value.equals("true")) {adaptiveButton.setSelected(true); graph.setAdaptive(true);}
+			else if (value.equals("false")) {adaptiveButton.setSelected(false); graph.setAdaptive(false);}
+		}
+		else if (name.equals("blend-sweep"))
+		{
+			if (value.equals("true")) {sweepBlendingButton.setSelected(true); graph.setSweepBlending(true);}
+			else if (value.equals("false")) {sweepBlendingButton.setSelected(false); graph.setSweepBlending(false);}
+		}
 	}
 }
@@ -22,9 +22,13 @@ import static net.patowen.grapher.FunctionGraph.*;
 
 import java.awt.GridBagConstraints;
 import java.awt.Window;
+import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.FileWriter;
+import java.io.IOException;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JTextField;
@@ -37,8 +41,10 @@ public class FunctionGraphWindow extends GraphWindow implements ActionListener
 {
 	private static final long serialVersionUID = 1L;
 	
-	private JLabel xMinLabel, xMaxLabel, yMinLabel, yMaxLabel, xScaleLabel, yScaleLabel;
-	private JTextField xMinField, xMaxField, yMinField, yMaxField, xScaleField, yScaleField;
+	private JCheckBoxMenuItem oversamplingButton;
+	
+	private JLabel xMinLabel, xMaxLabel, yMinLabel, yMaxLabel, xScaleLabel, yScaleLabel, samplesLabel;
+	private JTextField xMinField, xMaxField, yMinField, yMaxField, xScaleField, yScaleField, samplesField;
 	
 	/**
 	 * Initializes a FunctionGraphWindow.
@@ -53,15 +59,20 @@ public class FunctionGraphWindow extends GraphWindow implements ActionListener
 		createPresetLinkDouble("x-min", X_MIN); createPresetLinkDouble("x-max", X_MAX);
 		createPresetLinkDouble("y-min", Y_MIN); createPresetLinkDouble("y-max", Y_MAX);
 		createPresetLinkDouble("x-scale", X_SCALE); createPresetLinkDouble("y-scale", Y_SCALE);
+		createPresetLinkInt("column-samples", SAMPLES_PER_COLUMN);
 		
 		presetNames = new String[] {"sin(x^2)", "x*sin(1/x)", "sin(x)+u*sin(2x)"};
 		presetFiles = new String[] {"fun1.txt", "fun2.txt", "fun3.txt"};
 		
 		graph = new FunctionGraph();
 		
+		oversamplingButton = new JCheckBoxMenuItem("Oversample Columns", false);
+		oversamplingButton.addActionListener(this);
+		
 		setTextFields(new String[] {"y = "}, false);
 		
 		initialize();
+		graphMenu.add(oversamplingButton);
 	}
 	
 	public void prepareBoundsWindow(JDialog win)
@@ -69,16 +80,19 @@ public class FunctionGraphWindow extends GraphWindow implements ActionListener
 		xMinLabel = new JLabel("x-min: "); xMaxLabel = new JLabel("x-max: ");
 		yMinLabel = new JLabel("y-min: "); yMaxLabel = new JLabel("y-max: ");
 		xScaleLabel = new JLabel("x-scale: "); yScaleLabel = new JLabel("y-scale: ");
+		samplesLabel = new JLabel("Samples per column: ");
 		
-		alignLabels(xMinLabel, xMaxLabel, yMinLabel, yMaxLabel, xScaleLabel, yScaleLabel);
+		alignLabels(xMinLabel, xMaxLabel, yMinLabel, yMaxLabel, xScaleLabel, yScaleLabel, samplesLabel);
 		
 		xMinField = new JTextField(10); xMaxField = new JTextField(10);
 		yMinField = new JTextField(10); yMaxField = new JTextField(10);
 		xScaleField = new JTextField(10); yScaleField = new JTextField(10);
+		samplesField = new JTextField(10);
 		
 		createLinkDouble(xMinField, Graph2D.X_MIN); createLinkDouble(xMaxField, Graph2D.X_MAX);
 		createLinkDouble(yMinField, Graph2D.Y_MIN); createLinkDouble(yMaxField, Graph2D.Y_MAX);
 		createLinkDouble(xScaleField, Graph2D.X_SCALE); createLinkDouble(yScaleField, Graph2D.Y_SCALE);
+		createLinkInt(samplesField, FunctionGraph.SAMPLES_PER_COLUMN);
 		
 		setBoundsApplyButton = new JButton("Apply");
 		
@@ -100,7 +114,40 @@ public class FunctionGraphWindow extends GraphWindow implements ActionListener
 		c.gridx = 2; win.add(yScaleLabel,c);
 		c.gridx = 3; win.add(yScaleField,c);
 		
+		c.gridx = 0; c.gridy = 3; win.add(samplesLabel, c);
+		c.gridx = 1; win.add(samplesField,c);
+		
 		c.fill = GridBagConstraints.NONE;
-		c.gridx = 0; c.gridy = 3; c.gridwidth = 4; win.add(setBoundsApplyButton,c);
+		c.gridx = 0; c.gridy = 4; c.gridwidth = 4; win.add(setBoundsApplyButton,c);
+	}
+	
+	public void actionPerformed(ActionEvent e)
+	{
+		super.actionPerformed(e);
+		
+		if (e.getSource() == oversamplingButton)
+		{
+			((FunctionGraph)graph).setOversampling(oversamplingButton.isSelected());
+		}
+	}
+	
+	protected void saveData(FileWriter w) throws IOException
+	{
+		w.append("oversampled: ");
+		if (oversamplingButton.isSelected()) w.append("true");
+		else w.append("false");
+		
+		w.append(System.getProperty("line.separator"));
+	}
+	
+	protected void loadData(String name, String value)
+	{
+		FunctionGraph graph = (FunctionGraph)(this.graph);
+		
+		if (name.equals("oversampled"))
+		{
+			if (value.equals("true")) {oversamplingButton.setSelected(true); graph.setOversampling(true);}
+			else if (value.equals("false")) {oversamplingButton.setSelected(false); graph.setOversampling(false);}
+		}
 	}
 }
@@ -30,7 +30,7 @@ import net.patowen.grapher.math.Expression;
 public class GeneralGraph extends Graph2D
 {
 	private static final long serialVersionUID = 1L;
-	private Expression function;
+	private Expression function; //Copied from the snapshot being drawn
 	private boolean inversion;
 	
 	/**
@@ -40,22 +40,12 @@ public class GeneralGraph extends Graph2D
 	{
 		super();
 		
+		defineExpression(0);
 		function = null;
 		
 		repaint();
 	}
 	
-	public Expression getExpression(int index)
-	{
-		return function;
-	}
-	
-	public void setExpression(int index, Expression e)
-	{
-		function = e;
-		repaint();
-	}
-	
 	/**
 	 * Sets whether the graph will display the inverted version of
 	 * the given function.
@@ -63,12 +53,14 @@ public class GeneralGraph extends Graph2D
 	public void setInversion(boolean invert)
 	{
 		inversion = invert;
-		repaint();
+		invalidate(DATA);
+		updateGraph();
 	}
 	
-	public void paintGraph(Graphics g)
+	public void paintGraph(Graphics g, GraphState state)
 	{
-		super.paintGraph(g);
+		super.paintGraph(g, state);
+		function = state.getExpression(0);
 		
 		//Graph
 		g.setColor(Color.BLACK);
@@ -27,6 +27,17 @@ import net.patowen.grapher.math.Expression;
  */
 public interface Graph
 {
+	/*
+	 * Flags for invalidate. Changes covered by DATA, BOUNDS, RESOLUTION, and PARAMS_UV require
+	 * the expressions to be evaluated again, while STYLE and CAMERA only require a redraw.
+	 */
+	public static final int DATA = 1, BOUNDS = 2, RESOLUTION = 4, PARAMS_UV = 8, STYLE = 16, CAMERA = 32;
+	
+	/**
+	 * The flags for all changes that require the expressions to be evaluated again.
+	 */
+	public static final int RESAMPLE = DATA | BOUNDS | RESOLUTION | PARAMS_UV;
+	
 	/**
 	 * Sets whether axes are shown on this graph.
 	 * @param enabled whether axes should be shown on this graph
@@ -43,6 +54,7 @@ public interface Graph
 	/**
 	 * Sets the Expression of the specified index that the graph uses to
 	 * plot data.
+	 * The change takes effect the next time the graph is updated.
 	 * @param index the index of the Expression to modify
 	 * @param e the new Expression
 	 */
@@ -60,6 +72,7 @@ public interface Graph
 	
 	/**
 	 * Sets the parameter of the specified index that holds a double to the specified value.
+	 * The change takes effect the next time the graph is updated.
 	 * @param index the specified index
 	 * @param value the new value
 	 */
@@ -67,6 +80,7 @@ public interface Graph
 	
 	/**
 	 * Sets the parameter of the specified index that holds an integer to the specified value.
+	 * The change takes effect the next time the graph is updated.
 	 * @param index the specified index
 	 * @param value the new value
 	 */
@@ -87,7 +101,18 @@ public interface Graph
 	public int getInt(int index);
 	
 	/**
-	 * Refreshes and redraws the graph.
+	 * Marks parts of the graph as out of date so that the next call to <code>updateGraph</code>
+	 * refreshes them. Setters mark their own changes, so this is only needed for changes the graph
+	 * cannot see.
+	 * @param flags a combination of the flags <code>DATA</code>, <code>BOUNDS</code>, <code>RESOLUTION</code>,
+	 * <code>PARAMS_UV</code>, <code>STYLE</code>, and <code>CAMERA</code>
+	 */
+	public void invalidate(int flags);
+	
+	/**
+	 * Publishes every change made since the last update as a single snapshot, then refreshes
+	 * and redraws the graph from it. Only the parts marked out of date are recomputed, so
+	 * the expressions are evaluated only if something they depend on has changed.
 	 */
 	public void updateGraph();
 }
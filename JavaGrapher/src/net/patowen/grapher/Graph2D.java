@@ -18,9 +18,11 @@
  */
 
 package net.patowen.grapher;
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.awt.event.MouseAdapter;
@@ -32,6 +34,8 @@ import java.awt.image.BufferedImage;
 
 import javax.swing.JPanel;
 
+import net.patowen.grapher.math.Expression;
+
 /**
  * Provides a template for all 2D graphs.
  * @author Patrick Owen
@@ -46,12 +50,17 @@ public abstract class Graph2D extends JPanel implements Graph, ComponentListener
 	
 	/*
 	 * u and v are the mouse x and y coordinates when the user is dynamically
-	 * editing the graph.
+	 * editing the graph. Like the bounds below, they are copied from the published
+	 * snapshot each time the graph is updated.
 	 */
 	protected double u, v;
 	
 	private double xMin, xMax, xScale;
 	private double yMin, yMax, yScale;
+	
+	//Edited parameters and published snapshots
+	private GraphParameters parameters;
+	private long paintedRevision;
 	private int axisLength;
 	private boolean mouseView, showAxes;
 	
@@ -63,6 +72,9 @@ public abstract class Graph2D extends JPanel implements Graph, ComponentListener
 	private BufferedImage graphImage;
 	private BufferedImage nextImage;
 	
+	//The graph itself on a transparent background, kept between updates that only change the axes
+	private BufferedImage dataImage;
+	
 	/**
 	 * Constructs a Graph2D with all its default parameters.
 	 */
@@ -71,19 +83,20 @@ public abstract class Graph2D extends JPanel implements Graph, ComponentListener
 		setPreferredSize(new Dimension(DEFAULT_WIDTH, DEFAULT_HEIGHT));
 		setFocusable(true);
 		
-		xMin = -10;
-		xMax = 10;
-		yMin = -10;
-		yMax = 10;
-		xScale = 1;
-		yScale = 1;
+		parameters = new GraphParameters();
+		defineDouble(X_MIN, -10, BOUNDS);
+		defineDouble(X_MAX, 10, BOUNDS);
+		defineDouble(Y_MIN, -10, BOUNDS);
+		defineDouble(Y_MAX, 10, BOUNDS);
+		defineDouble(X_SCALE, 1, STYLE);
+		defineDouble(Y_SCALE, 1, STYLE);
+		readState(parameters.getState());
+		paintedRevision = -1;
+		
 		axisLength = 5;
 		mouseView = true;
 		showAxes = true;
 		
-		u = 0;
-		v = 0;
-		
 		//Add mouse controls
 		addMouseListener(new MouseAdapter()
 		{
@@ -122,16 +135,12 @@ public abstract class Graph2D extends JPanel implements Graph, ComponentListener
 					double xDiff = -(getX(e.getX())-getX(mouseX));
 					double yDiff = -(getY(e.getY())-getY(mouseY));
 					
-					xMin += xDiff; xMax += xDiff;
-					yMin += yDiff; yMax += yDiff;
+					setView(xMin+xDiff, xMax+xDiff, yMin+yDiff, yMax+yDiff);
 				}
 				else if (mouseButton == MouseEvent.BUTTON3)
 				{
 					double factor = Math.pow(mouseSensitivityDistance, e.getY()-mouseY);
-					xMin = (xMin-mouseXBase)*factor+mouseXBase;
-					yMin = (yMin-mouseYBase)*factor+mouseYBase;
-					xMax = (xMax-mouseXBase)*factor+mouseXBase;
-					yMax = (yMax-mouseYBase)*factor+mouseYBase;
+					zoomView(factor);
 				}
 				
 				mouseX = e.getX();
@@ -148,10 +157,7 @@ public abstract class Graph2D extends JPanel implements Graph, ComponentListener
 				double factor = Math.pow(scrollSensitivityDistance, e.getWheelRotation());
 				mouseXBase = getX(e.getX());
 				mouseYBase = getY(e.getY());
-				xMin = (xMin-mouseXBase)*factor+mouseXBase;
-				yMin = (yMin-mouseYBase)*factor+mouseYBase;
-				xMax = (xMax-mouseXBase)*factor+mouseXBase;
-				yMax = (yMax-mouseYBase)*factor+mouseYBase;
+				zoomView(factor);
 				
 				updateGraph();
 			}
@@ -171,23 +177,14 @@ public abstract class Graph2D extends JPanel implements Graph, ComponentListener
 	}
 	
 	/**
-	 * Draws the graph and its axes. Override this method
-	 * and include a call to <code>super(g)</code> to make sure
-	 * the axes remain.
+	 * Draws the graph onto a transparent layer. The background and axes are drawn
+	 * separately, so this is only called when the expressions need to be evaluated again.
+	 * Override this method and include a call to <code>super.paintGraph(g, state)</code>.
+	 * @param g the Graphics object of the layer
+	 * @param state the snapshot to draw, which holds the expressions and parameters
 	 */
-	public void paintGraph(Graphics g)
+	public void paintGraph(Graphics g, GraphState state)
 	{
-		//Background
-		g.setColor(Color.WHITE);
-		g.fillRect(0, 0, getWidth(), getHeight());
-		
-		//Axes
-		if (showAxes)
-		{
-			g.setColor(Color.BLACK);
-			drawAxes(g);
-		}
-		
 		//Graph
 		g.setColor(Color.BLACK);
 	}
@@ -229,14 +226,43 @@ public abstract class Graph2D extends JPanel implements Graph, ComponentListener
 	//Sets u and v properly given the mouse coordinates x and y relative to the viewport.
 	private void setMouseCoordinates(double x, double y)
 	{
-		u = x;
-		v = y;
+		parameters.setUV(x, y);
 		updateGraph();
 	}
 	
+	//Moves the viewport to the given bounds.
+	private void setView(double newXMin, double newXMax, double newYMin, double newYMax)
+	{
+		parameters.setDouble(X_MIN, newXMin);
+		parameters.setDouble(X_MAX, newXMax);
+		parameters.setDouble(Y_MIN, newYMin);
+		parameters.setDouble(Y_MAX, newYMax);
+	}
+	
+	//Scales the viewport by the given factor about the point (mouseXBase, mouseYBase).
+	private void zoomView(double factor)
+	{
+		setView((xMin-mouseXBase)*factor+mouseXBase, (xMax-mouseXBase)*factor+mouseXBase,
+				(yMin-mouseYBase)*factor+mouseYBase, (yMax-mouseYBase)*factor+mouseYBase);
+	}
+	
+	//Copies the values used for drawing and converting coordinates from a snapshot.
+	private void readState(GraphState state)
+	{
+		xMin = state.getDouble(X_MIN);
+		xMax = state.getDouble(X_MAX);
+		xScale = state.getDouble(X_SCALE);
+		yMin = state.getDouble(Y_MIN);
+		yMax = state.getDouble(Y_MAX);
+		yScale = state.getDouble(Y_SCALE);
+		u = state.getU();
+		v = state.getV();
+	}
+	
 	public void setShowAxes(boolean showAxes)
 	{
 		this.showAxes = showAxes;
+		invalidate(STYLE);
 		updateGraph();
 	}
 	
@@ -289,46 +315,108 @@ public abstract class Graph2D extends JPanel implements Graph, ComponentListener
 		return (y-yMax)/(yMin-yMax)*getHeight();
 	}
 	
+	/**
+	 * Adds a parameter that holds a double. Call this from the constructor.
+	 * @param index the index of the parameter
+	 * @param value the default value of the parameter
+	 * @param flags the parts of the graph that need refreshing when the parameter changes
+	 */
+	protected void defineDouble(int index, double value, int flags)
+	{
+		parameters.defineDouble(index, value, flags);
+	}
+	
+	/**
+	 * Adds a parameter that holds an integer. Call this from the constructor.
+	 * @param index the index of the parameter
+	 * @param value the default value of the parameter
+	 * @param flags the parts of the graph that need refreshing when the parameter changes
+	 */
+	protected void defineInt(int index, int value, int flags)
+	{
+		parameters.defineInt(index, value, flags);
+	}
+	
+	/**
+	 * Adds an expression, which starts out null. Call this from the constructor.
+	 * @param index the index of the expression
+	 */
+	protected void defineExpression(int index)
+	{
+		parameters.defineExpression(index);
+	}
+	
+	public void setExpression(int index, Expression e)
+	{
+		parameters.setExpression(index, e);
+	}
+	
+	public Expression getExpression(int index)
+	{
+		return parameters.getExpression(index);
+	}
+	
 	public void setDouble(int index, double value)
 	{
-		switch (index)
-		{
-		case X_MIN: xMin = value; break;
-		case X_MAX: xMax = value; break;
-		case X_SCALE: xScale = value; break;
-		case Y_MIN: yMin = value; break;
-		case Y_MAX: yMax = value; break;
-		case Y_SCALE: yScale = value; break;
-		}
+		parameters.setDouble(index, value);
 	}
 	
 	public void setInt(int index, int value)
 	{
-		throw new IllegalArgumentException("Invalid index");
+		parameters.setInt(index, value);
 	}
 	
 	public double getDouble(int index)
 	{
-		switch (index)
-		{
-		case X_MIN: return xMin;
-		case X_MAX: return xMax;
-		case X_SCALE: return xScale;
-		case Y_MIN: return yMin;
-		case Y_MAX: return yMax;
-		case Y_SCALE: return yScale;
-		default: throw new IllegalArgumentException("Invalid index");
-		}
+		return parameters.getDouble(index);
 	}
 	
 	public int getInt(int index)
 	{
-		throw new IllegalArgumentException("Invalid index");
+		return parameters.getInt(index);
+	}
+	
+	public void invalidate(int flags)
+	{
+		parameters.invalidate(flags);
 	}
 	
 	public void updateGraph()
 	{
-		paintGraph(nextImage.getGraphics());
+		GraphState state = parameters.publish();
+		readState(state);
+		if (nextImage == null)
+			return;
+		
+		//Only the data layer depends on the expressions.
+		if (state.getDataRevision() != paintedRevision)
+		{
+			Graphics2D g = dataImage.createGraphics();
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, getWidth(), getHeight());
+			g.setComposite(AlphaComposite.SrcOver);
+			paintGraph(g, state);
+			g.dispose();
+			paintedRevision = state.getDataRevision();
+		}
+		
+		Graphics g = nextImage.getGraphics();
+		
+		//Background
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, getWidth(), getHeight());
+		
+		//Axes
+		if (showAxes)
+		{
+			g.setColor(Color.BLACK);
+			drawAxes(g);
+		}
+		
+		//Graph
+		g.drawImage(dataImage, 0, 0, null);
+		g.dispose();
+		
 		BufferedImage temp = graphImage;
 		graphImage = nextImage;
 		nextImage = temp;
@@ -343,6 +431,8 @@ public abstract class Graph2D extends JPanel implements Graph, ComponentListener
 	{
 		graphImage = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
 		nextImage = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+		dataImage = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB);
+		invalidate(RESOLUTION);
 		updateGraph();
 	}
 	
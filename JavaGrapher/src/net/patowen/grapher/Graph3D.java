@@ -18,11 +18,17 @@
  */
 
 package net.patowen.grapher;
+import static com.jogamp.opengl.GL.GL_BLEND;
 import static com.jogamp.opengl.GL.GL_COLOR_BUFFER_BIT;
 import static com.jogamp.opengl.GL.GL_DEPTH_BUFFER_BIT;
 import static com.jogamp.opengl.GL.GL_DEPTH_TEST;
 import static com.jogamp.opengl.GL.GL_FRONT_AND_BACK;
+import static com.jogamp.opengl.GL.GL_LEQUAL;
+import static com.jogamp.opengl.GL.GL_LESS;
 import static com.jogamp.opengl.GL.GL_LINES;
+import static com.jogamp.opengl.GL.GL_ONE_MINUS_SRC_ALPHA;
+import static com.jogamp.opengl.GL.GL_POLYGON_OFFSET_FILL;
+import static com.jogamp.opengl.GL.GL_SRC_ALPHA;
 import static com.jogamp.opengl.GL2ES1.GL_LIGHT_MODEL_AMBIENT;
 import static com.jogamp.opengl.GL2ES1.GL_LIGHT_MODEL_TWO_SIDE;
 import static com.jogamp.opengl.fixedfunc.GLLightingFunc.GL_AMBIENT;
@@ -35,11 +41,36 @@ import static com.jogamp.opengl.fixedfunc.GLMatrixFunc.GL_MODELVIEW;
 import static com.jogamp.opengl.fixedfunc.GLMatrixFunc.GL_PROJECTION;
 
 import java.awt.Dimension;
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.GLAutoDrawable;
@@ -47,6 +78,8 @@ import com.jogamp.opengl.GLEventListener;
 import com.jogamp.opengl.awt.GLCanvas;
 import com.jogamp.opengl.glu.GLU;
 
+import net.patowen.grapher.math.Expression;
+
 /**
  * Provides a template for all 3D graphs.
  * @author Patrick Owen
@@ -57,13 +90,29 @@ public abstract class Graph3D extends GLCanvas implements Graph
 	
 	private static final int DEFAULT_WIDTH = 640, DEFAULT_HEIGHT = 640;
 	
+	//Time a build may take while u and v are dragged, in nanoseconds
+	private static final long FRAME_BUDGET = 25000000;
+	
+	//Material of meshes that do not set their own color
+	private static final float[] WHITE = {1, 1, 1, 1};
+	
+	//Milliseconds the mouse must rest during a drag before the graph is built at full detail
+	private static final int SETTLE_DELAY = 250;
+	
+	//Bytes of vertex data a build may have waiting to be uploaded before it waits for the GL thread
+	private static final long MAX_PENDING_BYTES = 32*1024*1024;
+	
+	//Bytes of meshes kept for dragging u and v
+	private static final long SWEEP_CACHE_BYTES = 256*1024*1024;
+	
 	public static final int X_CENTER = 0, Y_CENTER = 1, Z_CENTER = 2, VIEW_DISTANCE = 3;
+	public static final int AUTO_RESOLUTION = 4, REBUILD_BUDGET = 5, GRID_NORMALS = 6, PICKING = 7;
 	
-	/*
-	 * u and v are the mouse x and y coordinates when the user is dynamically
-	 * editing the graph.
-	 */
-	protected double u, v;
+	//Builds the meshes without OpenGL, on the builder thread
+	private MeshBuilder meshBuilder;
+	
+	//u and v of the build in progress, which differ from the snapshot's for meshes swept in advance
+	private double u, v;
 	
 	//Camera controls
 	private double mouseSensitivityAngle = 0.01;
@@ -72,7 +121,7 @@ public abstract class Graph3D extends GLCanvas implements Graph
 //	private double mouseSensitivityCenter = 0.002;
 	private int mouseX, mouseY, mouseButton;
 	private boolean mouseView, showAxes;
-	protected boolean axesInverted; //axesInverted switches y and z axes
+	private boolean axesInverted; //axesInverted switches y and z axes
 	
 	//Camera position
 	private double horizontalDir;
@@ -80,20 +129,71 @@ public abstract class Graph3D extends GLCanvas implements Graph
 	private double distance;
 	private double centerX, centerY, centerZ;
 	
-	//Used to update the graph
-	private boolean updateFlag;
+	//Edited parameters and published snapshots
+	private GraphParameters parameters;
+	
+	//Background mesh building
+	private ThreadPoolExecutor builder;
+	private Future<?> build;
+	private long requestedRevision;
+	private boolean requestedPreview;
+	private AtomicReference<Mesh> buildingMesh; //Streamed to the GL thread while it is built
+	private AtomicReference<Mesh> builtMesh; //Finished but not yet displayed
+	private Queue<Mesh> discardedMeshes; //No longer needed, freed by the GL thread
+	private Mesh mesh; //Displayed, owned by the GL thread
+	private MeshBuffers meshBuffers; //Buffers of released meshes, and indices of grids on the GL side
+	private Runnable redraw;
+	private FrameScheduler frames;
+	private boolean inputPending; //Mouse input waiting to be published with the next frame
+	private GLU glu;
+	private Frustum frustum; //What the camera of the current frame shows, set by the GL thread
+	private boolean picking; //Set by the builder thread while it builds a mesh to pick on
+	
+	//Level of detail while dragging u and v, and automatic resolution
+	private boolean previewing;
+	private Timer settle;
+	private ResolutionChooser resolutions; //Used by the builder thread
+	private Map<Integer, Integer> builtResolutions; //Resolutions of the last full build
+	private ChangeListener resolutionListener;
+	
+	//Picking the point under the mouse
+	private volatile MeshPicker picker; //For the last full build, or null
+	private volatile boolean tooLargeToPick; //The last full build had too many triangles to pick
+	private volatile ChangeListener pickListener;
+	private MeshPicker.Hit pick;
+	
+	//Meshes built in advance for dragging u and v
+	private SweepCache sweeps;
+	private volatile boolean showingSweep, sweepBlending;
+	private Mesh[] sweptMeshes; //Chosen by the GL thread
+	private double[] sweptWeights;
 	
 	/**
 	 * Constructs a Graph3D with all its default parameters.
+	 * @param meshBuilder the builder of the graph's meshes, which also defines its parameters
 	 */
-	public Graph3D()
-	{		
+	protected Graph3D(MeshBuilder meshBuilder)
+	{
+		this.meshBuilder = meshBuilder;
 		setPreferredSize(new Dimension(DEFAULT_WIDTH, DEFAULT_HEIGHT));
 		setFocusable(true);
 		
 		mouseView = true;
 		showAxes = true;
-		axesInverted = false;
+		axesInverted = meshBuilder.isAxesInverted();
+		
+		//A canvas that is not showing is not drawn, so a mesh being built must not wait for it to upload parts.
+		addHierarchyListener(new HierarchyListener()
+		{
+			public void hierarchyChanged(HierarchyEvent e)
+			{
+				if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) == 0 || isShowing())
+					return;
+				Mesh building = buildingMesh.get();
+				if (building != null)
+					building.stopStreaming();
+			}
+		});
 		
 		addGLEventListener(new GLEventListener()
 		{
@@ -103,9 +203,15 @@ public abstract class Graph3D extends GLCanvas implements Graph
 			{
 				GL2 gl = drawable.getGL().getGL2();
 				gl.glClearColor(0, 0, 0, 1);
+				glu = new GLU();
+				frames.setScreen(getGraphicsConfiguration());
 				
 				gl.glEnable(GL_DEPTH_TEST);
 				
+				//Pushes surfaces back slightly so that lines drawn on them, such as contours, are not hidden
+				gl.glEnable(GL_POLYGON_OFFSET_FILL);
+				gl.glPolygonOffset(1, 1);
+				
 				//Makes lighting more realistic. Uncomment this for realistic shading (gamma correction)
 				//gl.glEnable(GL_FRAMEBUFFER_SRGB);
 				
@@ -117,16 +223,40 @@ public abstract class Graph3D extends GLCanvas implements Graph
 				gl.glLightfv(GL_LIGHT0, GL_DIFFUSE, new float[] {0.9f, 0.9f, 0.9f, 1}, 0);
 				gl.glLightfv(GL_LIGHT0, GL_AMBIENT, new float[] {0.1f, 0.1f, 0.1f, 1}, 0);
 				
-				update(gl);
+				requestMesh(parameters.getState(), false);
 				
 				glInitSpecial(gl);
 			}
 			
-			public void dispose(GLAutoDrawable drawable) {}
+			public void dispose(GLAutoDrawable drawable)
+			{
+				//Buffer objects go away with the context, so the mesh is built again if there is a new one.
+				GL2 gl = drawable.getGL().getGL2();
+				mesh.dispose(gl);
+				mesh = new Mesh();
+				
+				freeDiscardedMeshes(gl);
+				Mesh built = builtMesh.getAndSet(null);
+				if (built != null)
+					built.dispose(gl);
+				Mesh building = buildingMesh.get();
+				if (building != null)
+				{
+					building.forgetUploads(gl);
+					building.stopStreaming();
+				}
+				sweeps.clear();
+				for (Mesh unused:sweeps.takeDropped())
+					unused.dispose(gl);
+				meshBuffers.disposeIndices(gl);
+				forgetMesh();
+			}
 			
 			public void display(GLAutoDrawable drawable)
 			{
+				long start = System.nanoTime();
 				render(drawable.getGL().getGL2());
+				frames.recordFrame(start, System.nanoTime() - start);
 			}
 		});
 		
@@ -151,6 +281,16 @@ public abstract class Graph3D extends GLCanvas implements Graph
 					setMouseCoordinates(e.getX(), e.getY());
 				}
 			}
+			
+			public void mouseReleased(MouseEvent e)
+			{
+				settleDrag();
+			}
+			
+			public void mouseExited(MouseEvent e)
+			{
+				updatePick(-1, -1);
+			}
 		});
 		
 		addMouseMotionListener(new MouseMotionAdapter()
@@ -172,7 +312,7 @@ public abstract class Graph3D extends GLCanvas implements Graph
 				}
 				else if (mouseButton == MouseEvent.BUTTON3) //Zoom
 				{
-					distance *= Math.pow(mouseSensitivityDistance, e.getY()-mouseY);
+					setDouble(VIEW_DISTANCE, getDouble(VIEW_DISTANCE)*Math.pow(mouseSensitivityDistance, e.getY()-mouseY));
 				}
 				else if (mouseButton == MouseEvent.BUTTON2) //Move camera
 				{
@@ -185,7 +325,13 @@ public abstract class Graph3D extends GLCanvas implements Graph
 				mouseX = e.getX();
 				mouseY = e.getY();
 				
-				display();
+				invalidate(CAMERA);
+				updateLater();
+			}
+			
+			public void mouseMoved(MouseEvent e)
+			{
+				updatePick(e.getX(), e.getY());
 			}
 		});
 		
@@ -193,32 +339,544 @@ public abstract class Graph3D extends GLCanvas implements Graph
 		{
 			public void mouseWheelMoved(MouseWheelEvent e)
 			{
-				distance *= Math.pow(scrollSensitivityDistance, e.getWheelRotation());
+				setDouble(VIEW_DISTANCE, getDouble(VIEW_DISTANCE)*Math.pow(scrollSensitivityDistance, e.getWheelRotation()));
 				
+				updateLater();
+			}
+		});
+		
+		horizontalDir = HeadlessGraph.DEFAULT_HORIZONTAL_DIR;
+		verticalDir = HeadlessGraph.DEFAULT_VERTICAL_DIR;
+		
+		parameters = new GraphParameters();
+		meshBuilder.define(parameters);
+		parameters.defineInt(AUTO_RESOLUTION, 0, RESOLUTION);
+		parameters.defineDouble(REBUILD_BUDGET, 50, RESOLUTION);
+		parameters.defineInt(PICKING, 0, RESOLUTION);
+		readState(parameters.getState());
+		
+		//One thread per graph, so that a graph's builds never overlap
+		builder = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "Mesh builder");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		builder.allowCoreThreadTimeOut(true);
+		requestedRevision = -1;
+		buildingMesh = new AtomicReference<Mesh>();
+		builtMesh = new AtomicReference<Mesh>();
+		discardedMeshes = new ConcurrentLinkedQueue<Mesh>();
+		mesh = new Mesh();
+		meshBuffers = new MeshBuffers();
+		redraw = new Runnable()
+		{
+			public void run()
+			{
+				frames.request();
+			}
+		};
+		frames = new FrameScheduler(new Runnable()
+		{
+			public void run()
+			{
+				if (inputPending)
+				{
+					inputPending = false;
+					publish();
+				}
 				display();
 			}
 		});
+		inputPending = false;
 		
-		horizontalDir = Math.PI/4;
-		verticalDir = Math.PI/6;
-		distance = 4;
-		centerX = 0;
-		centerY = 0;
-		centerZ = 0;
+		previewing = false;
+		settle = new Timer(SETTLE_DELAY, new ActionListener()
+		{
+			public void actionPerformed(ActionEvent e)
+			{
+				settleDrag();
+			}
+		});
+		settle.setRepeats(false);
+		resolutions = meshBuilder.getResolutions();
+		builtResolutions = new HashMap<Integer, Integer>();
+		resolutionListener = null;
+		picker = null;
+		tooLargeToPick = false;
+		pickListener = null;
+		pick = null;
 		
-		updateFlag = false;
+		sweeps = new SweepCache(SWEEP_CACHE_BYTES);
+		showingSweep = false;
+		sweepBlending = false;
+		sweptMeshes = new Mesh[4];
+		sweptWeights = new double[4];
 	}
 	
 	public void updateGraph()
 	{
-		updateFlag = true;
-		display();
+		inputPending = false;
+		publish();
+		frames.request();
+	}
+	
+	/**
+	 * Returns statistics of the frames this graph has drawn, such as how long they took and how
+	 * many requests for frames were merged.
+	 * @return the statistics
+	 */
+	public FrameScheduler.Statistics getFrameStatistics()
+	{
+		return frames.getStatistics();
+	}
+	
+	/**
+	 * Sets whether normals are found from the sampled positions around each vertex rather than from
+	 * derivatives of the expressions, for graphs that support it. This makes builds several times
+	 * cheaper, and derivatives are still used on the edges of the graph.
+	 * @param enabled whether normals should come from the sampled positions
+	 */
+	public void setGridNormals(boolean enabled)
+	{
+		setInt(GRID_NORMALS, enabled ? 1 : 0);
+		updateGraph();
+	}
+	
+	/**
+	 * Builds meshes in the background for a lattice of values of u and v, each running from -1 to 1, so that
+	 * dragging u and v shows the nearest of them at once instead of building a mesh at reduced detail. The
+	 * meshes are kept, as many as fit, until something other than u and v changes. Builds for edits made
+	 * in the meantime are not held up by the sweep.
+	 * @param steps the number of values of u and of v, at least 2
+	 */
+	public void precomputeSweep(int steps)
+	{
+		GraphState state = parameters.getState();
+		sweeps.start(state.getShapeRevision(), steps);
+		sweep(state, steps, 0);
+	}
+	
+	/**
+	 * Sets whether dragging u and v between the points of a precomputed sweep fades between the
+	 * meshes of the four points around it, rather than showing only the nearest one.
+	 * @param enabled whether to blend neighbouring meshes
+	 */
+	public void setSweepBlending(boolean enabled)
+	{
+		sweepBlending = enabled;
+		frames.request();
+	}
+	
+	/**
+	 * Draws the graph into an image without OpenGL, as it would look in a view of the given size with
+	 * the current camera. The mesh is built again at the configured resolutions on the thread that
+	 * builds the graph, after any builds already waiting there, and each part is drawn with a
+	 * SoftwareRenderer as soon as it is built, so this also works for graphs that are never shown
+	 * and no copy of the whole mesh is kept. Meshes being dragged through with u and v are drawn as
+	 * the mesh for the current u and v, without blending. Where OpenGL cannot be loaded at all, a
+	 * HeadlessGraph draws the graph the same way.
+	 * @param width the width of the image in pixels
+	 * @param height the height of the image in pixels
+	 * @return the image
+	 * @throws InterruptedException if the thread is interrupted while waiting for the mesh
+	 */
+	public BufferedImage renderImage(int width, int height) throws InterruptedException
+	{
+		final GraphState state = parameters.getState();
+		final SoftwareRenderer renderer = HeadlessGraph.newRenderer(state, horizontalDir, verticalDir, showAxes, axesInverted, width, height);
+		Future<?> drawing = builder.submit(new Runnable()
+		{
+			public void run()
+			{
+				buildInto(state, HeadlessGraph.drawParts(renderer));
+			}
+		});
+		
+		try
+		{
+			drawing.get();
+		}
+		catch (InterruptedException e)
+		{
+			drawing.cancel(true);
+			throw e;
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error)e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		
+		return renderer.finish();
+	}
+	
+	/**
+	 * Writes the triangles of the graph, including any caps, to a file in the background. The mesh
+	 * is built again on the thread that builds the graph, after any builds already waiting there, and
+	 * each part is written as soon as it is built, so a mesh far too large to hold in memory can be
+	 * exported. Builds of the graph wait until the file is written.
+	 * <p>
+	 * The mesh is built at the configured resolutions, as the options of the graph set them. This is
+	 * the full detail even while automatic resolution or dragging u and v show the graph at a lower
+	 * one, so the file can have many more triangles than are on the screen. The number written so
+	 * far can be read from the exporter, and cancelling the returned task stops the export and
+	 * deletes the unfinished file.
+	 * @param exporter an exporter that has not started, for the format to write
+	 * @param file the file to write
+	 * @return the task, which fails with an IOException if the file cannot be written
+	 */
+	public Future<?> exportMesh(final MeshExporter exporter, final File file)
+	{
+		final GraphState state = parameters.getState();
+		return builder.submit(new Callable<Void>()
+		{
+			public Void call() throws IOException
+			{
+				exporter.start(file);
+				boolean built = false;
+				try
+				{
+					buildInto(state, exporter);
+					built = true;
+				}
+				finally
+				{
+					if (!built)
+						exporter.cancel();
+				}
+				exporter.finish();
+				return null;
+			}
+		});
+	}
+	
+	/*
+	 * Builds the mesh for the given snapshot at the configured resolutions and hands each part to
+	 * the sink as it is built, for drawing or writing without OpenGL. Called on the builder thread.
+	 */
+	private void buildInto(GraphState state, Mesh.Sink sink)
+	{
+		u = state.getU();
+		v = state.getV();
+		resolutions.startBuild(1);
+		
+		Mesh mesh = new Mesh(meshBuffers);
+		mesh.streamTo(sink);
+		try
+		{
+			buildMesh(state, mesh);
+		}
+		finally
+		{
+			mesh.release();
+		}
+	}
+	
+	//Builds a mesh for the given snapshot with the u, v and detail already chosen.
+	private Mesh buildMesh(GraphState state, Mesh mesh)
+	{
+		meshBuilder.setViewHeight(getHeight());
+		return meshBuilder.build(state, u, v, mesh);
+	}
+	
+	/*
+	 * Returns a new, empty mesh for the builder to fill. Its buffers are reused from meshes that
+	 * are no longer displayed. While the canvas is showing, the mesh is streamed, so the GL thread
+	 * uploads its parts as they are added, and adding parts waits for it once too much is waiting.
+	 * A canvas that is not showing is never drawn, so its meshes are kept whole on the client side
+	 * until it is, and a mesh whose canvas stops showing while it is built stops being streamed.
+	 */
+	private Mesh newMesh()
+	{
+		Mesh mesh = new Mesh(meshBuffers);
+		mesh.setPickable(picking);
+		mesh.stream(MAX_PENDING_BYTES, new Runnable()
+		{
+			public void run()
+			{
+				EventQueue.invokeLater(redraw);
+			}
+		});
+		buildingMesh.set(mesh);
+		
+		//Checked after the mesh is set, so that the hierarchy listener stops it if the canvas is hidden from now on.
+		if (!isShowing())
+			mesh.stopStreaming();
+		return mesh;
+	}
+	
+	/**
+	 * Returns the resolution the displayed graph was last fully built with, which differs from the
+	 * configured value when automatic resolution is on.
+	 * @param index The index of the parameter holding the resolution.
+	 * @return the number of intervals built with
+	 */
+	public int getBuiltResolution(int index)
+	{
+		Integer resolution = builtResolutions.get(index);
+		return resolution == null ? getInt(index) : resolution;
+	}
+	
+	/**
+	 * Sets the listener told whenever the graph has been fully built with new resolutions.
+	 * @param listener The listener, or null for none.
+	 */
+	public void setResolutionListener(ChangeListener listener)
+	{
+		resolutionListener = listener;
+	}
+	
+	/**
+	 * Sets whether the point of the graph under the mouse is found. While it is, every full build
+	 * keeps a copy of its triangles and is followed by a bounding volume hierarchy over them, built
+	 * in the background, to find the point quickly. Meshes with more than Mesh.MAX_PICK_TRIANGLES
+	 * triangles are not picked, since the copy and the hierarchy would take too much memory.
+	 * Changing it rebuilds the graph.
+	 * @param enabled whether the point under the mouse should be found
+	 */
+	public void setPicking(boolean enabled)
+	{
+		setInt(PICKING, enabled ? 1 : 0);
+		if (!enabled)
+		{
+			picker = null;
+			pick = null;
+		}
+		updateGraph();
+	}
+	
+	/**
+	 * Returns whether the point under the mouse cannot be found because the displayed graph has more
+	 * than Mesh.MAX_PICK_TRIANGLES triangles.
+	 * @return whether the graph is too large to pick
+	 */
+	public boolean isTooLargeToPick()
+	{
+		return tooLargeToPick;
 	}
 	
 	/**
-	 * Updates the graph but does not yet display the updated graph.
+	 * Sets the listener told whenever the point of the graph under the mouse changes, which can be read
+	 * with <code>getPick</code>. The point is only found while picking is turned on with <code>setPicking</code>.
+	 * @param listener The listener, or null for none.
+	 */
+	public void setPickListener(ChangeListener listener)
+	{
+		pickListener = listener;
+	}
+	
+	/**
+	 * Returns the point of the graph under the mouse, with the parameters of the surface there if the
+	 * graph knows them. Meshes being built or swept in advance for dragging u and v cannot be picked.
+	 * @return the point, or null if the mouse is not over the graph
+	 */
+	public MeshPicker.Hit getPick()
+	{
+		return pick;
+	}
+	
+	//Hands a mesh that will not be displayed to the GL thread to free, since parts of it may have been uploaded.
+	private void discard(Mesh unused)
+	{
+		buildingMesh.compareAndSet(unused, null);
+		discardedMeshes.add(unused);
+		EventQueue.invokeLater(redraw);
+	}
+	
+	//Frees the meshes that have been discarded. Called on the GL thread.
+	private void freeDiscardedMeshes(GL2 gl)
+	{
+		Mesh unused;
+		while ((unused = discardedMeshes.poll()) != null)
+			unused.dispose(gl);
+	}
+	
+	/*
+	 * Queues the build of one lattice point of a sweep, which queues the next point once it is done,
+	 * so that builds requested in the meantime run between them rather than after the whole sweep.
+	 */
+	private void sweep(final GraphState state, final int steps, final int point)
+	{
+		builder.submit(new Runnable()
+		{
+			public void run()
+			{
+				long shape = state.getShapeRevision();
+				int i = point/steps, j = point%steps;
+				if (point >= steps*steps || !sweeps.isCurrent(shape, steps))
+					return;
+				
+				if (!sweeps.contains(i, j))
+				{
+					u = sweeps.getValue(i);
+					v = sweeps.getValue(j);
+					
+					Mesh swept;
+					try
+					{
+						double detail = 1;
+						if (state.getInt(AUTO_RESOLUTION) != 0)
+							detail = resolutions.fitDetail(state.getDouble(REBUILD_BUDGET)*1000000);
+						resolutions.startBuild(detail);
+						swept = buildMesh(state, newMesh());
+					}
+					catch (CancellationException e)
+					{
+						Mesh partial = buildingMesh.getAndSet(null);
+						if (partial != null)
+							discard(partial);
+						return;
+					}
+					buildingMesh.compareAndSet(swept, null);
+					sweeps.add(shape, i, j, swept);
+					EventQueue.invokeLater(redraw);
+				}
+				
+				sweep(state, steps, point+1);
+			}
+		});
+	}
+	
+	//Goes back to showing built meshes once the mesh for the current values of u and v has been handed over.
+	private synchronized void stopShowingSweep(long dataRevision)
+	{
+		if (!previewing && dataRevision == requestedRevision)
+			showingSweep = false;
+	}
+	
+	//Makes the next request build a mesh even if the data has not changed.
+	private synchronized void forgetMesh()
+	{
+		requestedRevision = -1;
+	}
+	
+	//Ends a drag of u and v, building the graph at full detail.
+	private void settleDrag()
+	{
+		settle.stop();
+		if (previewing)
+		{
+			previewing = false;
+			updateGraph();
+		}
+	}
+	
+	/*
+	 * Builds a mesh and records how long it took. Called on the builder thread once the
+	 * detail of the build has been chosen.
 	 */
-	protected abstract void update(GL2 gl);
+	private Mesh timedBuild(GraphState state)
+	{
+		long start = System.nanoTime();
+		Mesh mesh = buildMesh(state, newMesh());
+		resolutions.finishBuild(state, System.nanoTime() - start);
+		return mesh;
+	}
+	
+	/*
+	 * Starts building a mesh for the given snapshot in the background if its data has not been
+	 * built yet, cancelling any build in progress. The GL thread keeps drawing the previous mesh
+	 * until the new one is complete. Preview builds are made at reduced detail, and a full build
+	 * is requested again for the same data once the preview is no longer wanted. With automatic
+	 * resolution, full builds are given the largest detail that fits the rebuild budget.
+	 */
+	private synchronized void requestMesh(final GraphState state, final boolean preview)
+	{
+		if (state.getDataRevision() == requestedRevision && (preview || !requestedPreview))
+			return;
+		requestedRevision = state.getDataRevision();
+		requestedPreview = preview;
+		
+		if (build != null)
+			build.cancel(true);
+		
+		build = builder.submit(new Runnable()
+		{
+			public void run()
+			{
+				u = state.getU();
+				v = state.getV();
+				
+				Mesh next;
+				try
+				{
+					double detail = 1;
+					if (state.getInt(AUTO_RESOLUTION) != 0)
+					{
+						//New expressions can be much faster or slower to evaluate, so their cost is measured first.
+						if (resolutions.needsCalibration(state))
+						{
+							resolutions.startCalibration();
+							discard(timedBuild(state));
+						}
+						detail = resolutions.fitDetail(state.getDouble(REBUILD_BUDGET)*1000000);
+					}
+					if (preview)
+						detail = Math.min(detail, resolutions.fitDetail(FRAME_BUDGET));
+					
+					resolutions.startBuild(detail);
+					picking = !preview && state.getInt(PICKING) != 0;
+					next = timedBuild(state);
+				}
+				catch (CancellationException e)
+				{
+					Mesh partial = buildingMesh.getAndSet(null);
+					if (partial != null)
+						discard(partial);
+					return;
+				}
+				finally
+				{
+					picking = false;
+				}
+				final Map<Integer, Integer> chosen = preview ? null : resolutions.getChosen();
+				
+				//Builds for a graph run one at a time, so the newest build is always handed over last.
+				buildingMesh.compareAndSet(next, null);
+				Mesh skipped = builtMesh.getAndSet(next);
+				if (skipped != null)
+					discard(skipped);
+				EventQueue.invokeLater(new Runnable()
+				{
+					public void run()
+					{
+						if (!preview)
+							stopShowingSweep(state.getDataRevision());
+						frames.request();
+						
+						if (chosen != null && !chosen.equals(builtResolutions))
+						{
+							builtResolutions = chosen;
+							if (resolutionListener != null)
+								resolutionListener.stateChanged(new ChangeEvent(Graph3D.this));
+						}
+					}
+				});
+				
+				//The displayed mesh can be picked once its triangles are sorted into a hierarchy.
+				picker = null;
+				tooLargeToPick = next.isTooLargeToPick();
+				if (next.isPickable())
+				{
+					try
+					{
+						picker = new MeshPicker(next.takePickSurfaces());
+					}
+					catch (CancellationException e)
+					{
+						//A newer build will be picked on instead.
+					}
+				}
+			}
+		});
+	}
 	
 	/**
 	 * Initializes GL-related attributes other than the defaults.
@@ -227,49 +885,172 @@ public abstract class Graph3D extends GLCanvas implements Graph
 	protected abstract void glInitSpecial(GL2 gl);
 	
 	/**
-	 * Renders the graph. All the proper transformations of the view have already happened. 3D graphs
-	 * generally use derivatives to choose the proper shading.
+	 * Renders the graph. All the proper transformations of the view have already happened. By default,
+	 * this draws the most recently built mesh.
 	 * @param gl The GL2 object used to render the graph.
+	 * @param mesh The mesh to draw.
 	 */
-	protected abstract void renderGraph(GL2 gl);
+	protected void renderGraph(GL2 gl, Mesh mesh)
+	{
+		mesh.render(gl, frustum);
+	}
+	
+	/*
+	 * Draws the meshes chosen from a sweep. Several meshes are faded together by drawing each over
+	 * the ones before with the share of the total weight so far that is its own.
+	 */
+	private void renderSwept(GL2 gl, int count)
+	{
+		if (count == 1)
+		{
+			renderGraph(gl, sweptMeshes[0]);
+			return;
+		}
+		
+		gl.glEnable(GL_BLEND);
+		gl.glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+		gl.glDepthFunc(GL_LEQUAL);
+		
+		double total = 0;
+		for (int k=0; k<count; k++)
+		{
+			total += sweptWeights[k];
+			gl.glMaterialfv(GL_FRONT_AND_BACK, GL_AMBIENT_AND_DIFFUSE, new float[] {1, 1, 1, (float)(sweptWeights[k]/total)}, 0);
+			renderGraph(gl, sweptMeshes[k]);
+		}
+		
+		gl.glMaterialfv(GL_FRONT_AND_BACK, GL_AMBIENT_AND_DIFFUSE, WHITE, 0);
+		gl.glDepthFunc(GL_LESS);
+		gl.glDisable(GL_BLEND);
+	}
 	
 	//Sets u and v properly given the mouse coordinates x and y relative to the viewport.
 	private void setMouseCoordinates(double x, double y)
 	{
-		u = 2*x/getWidth() - 1;
-		v = 1 - 2*y/getHeight();
-		updateGraph();
-		display();
+		//Build quickly while the mouse moves, and in full once it rests.
+		previewing = true;
+		settle.restart();
+		parameters.setUV(2*x/getWidth() - 1, 1 - 2*y/getHeight());
+		updateLater();
+	}
+	
+	/*
+	 * Updates the graph with the next frame rather than right away, so that all the mouse events
+	 * until then are published as one snapshot and start at most one build.
+	 */
+	private void updateLater()
+	{
+		inputPending = true;
+		frames.request();
+	}
+	
+	//Publishes the edited parameters and requests a mesh for them.
+	private void publish()
+	{
+		GraphState state = parameters.publish();
+		sweeps.clearUnless(state.getShapeRevision());
+		
+		//While u and v are dragged, meshes swept in advance stand in for preview builds.
+		if (previewing && sweeps.covers(state))
+			showingSweep = true;
+		else
+			requestMesh(state, previewing);
+	}
+	
+	//Copies the values used for rendering from a snapshot.
+	private void readState(GraphState state)
+	{
+		centerX = state.getDouble(X_CENTER);
+		centerY = state.getDouble(Y_CENTER);
+		centerZ = state.getDouble(Z_CENTER);
+		distance = state.getDouble(VIEW_DISTANCE);
+	}
+	
+	/*
+	 * Finds the point of the graph under the mouse by casting a ray through it from the eye, with the
+	 * camera the graph was last drawn with, and tells the pick listener. Coordinates outside the
+	 * view clear the point.
+	 */
+	private void updatePick(int x, int y)
+	{
+		ChangeListener listener = pickListener;
+		if (listener == null)
+			return;
+		
+		MeshPicker current = picker;
+		pick = null;
+		if (current != null && !showingSweep && x >= 0 && y >= 0)
+		{
+			double[] camera = getCamera(centerX, centerY, centerZ, distance);
+			double fx = centerX-camera[0], fy = centerY-camera[1], fz = centerZ-camera[2];
+			double f = Math.sqrt(fx*fx + fy*fy + fz*fz);
+			fx /= f; fy /= f; fz /= f;
+			
+			//The sideways and up directions of the view, as gluLookAt finds them
+			double sx = fy*camera[5] - fz*camera[4], sy = fz*camera[3] - fx*camera[5], sz = fx*camera[4] - fy*camera[3];
+			double s = Math.sqrt(sx*sx + sy*sy + sz*sz);
+			sx /= s; sy /= s; sz /= s;
+			double ux = sy*fz - sz*fy, uy = sz*fx - sx*fz, uz = sx*fy - sy*fx;
+			
+			//The direction is one unit along the view, so the distance along the ray is the depth that is clipped.
+			double scale = Math.tan(Math.toRadians(45)/2);
+			double across = (2*(x+0.5)/getWidth() - 1)*scale*getWidth()/getHeight(), up = (1 - 2*(y+0.5)/getHeight())*scale;
+			pick = current.pick(camera[0], camera[1], camera[2],
+					fx + across*sx + up*ux, fy + across*sy + up*uy, fz + across*sz + up*uz,
+					distance/20, distance*50);
+		}
+		listener.stateChanged(new ChangeEvent(this));
+	}
+	
+	/*
+	 * Returns the position of the eye followed by the up direction, for a camera at the given
+	 * distance from the given center in the direction the mouse has turned it to.
+	 */
+	private double[] getCamera(double x, double y, double z, double distance)
+	{
+		return HeadlessGraph.getCamera(x, y, z, distance, horizontalDir, verticalDir);
 	}
 	
 	/*
 	 * Renders the graph by setting everything up, showing axes if appropriate,
-	 * and calling the renderGraph method, which is implemented by subclasses.
+	 * and calling the renderGraph method with the most recently built mesh.
 	 */
 	private void render(GL2 gl)
 	{
-		if (updateFlag)
+		readState(parameters.getState());
+		
+		//Upload what has been built so far of the next mesh, and free meshes that are no longer needed.
+		freeDiscardedMeshes(gl);
+		Mesh building = buildingMesh.get();
+		if (building != null)
+			building.upload(gl);
+		for (Mesh swept:sweeps.takeAdded())
+			swept.upload(gl);
+		for (Mesh unused:sweeps.takeDropped())
+			unused.dispose(gl);
+		
+		//Swap in a newly built mesh, if there is one.
+		Mesh next = builtMesh.getAndSet(null);
+		if (next != null)
 		{
-			updateFlag = false;
-			update(gl);
+			mesh.dispose(gl);
+			mesh = next;
 		}
 		
 		gl.glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 		gl.glMatrixMode(GL_PROJECTION);
 		gl.glLoadIdentity();
-		GLU glu = new GLU();
-		
-		glu.gluPerspective(45, (double)getWidth()/getHeight(), distance/20, distance*50);
+		double aspect = (double)getWidth()/getHeight();
+		glu.gluPerspective(45, aspect, distance/20, distance*50);
 		
 		gl.glMatrixMode(GL_MODELVIEW);
 		gl.glLoadIdentity();
-		glu.gluLookAt(centerX+distance*Math.cos(horizontalDir)*Math.cos(verticalDir),
-				centerY+distance*Math.sin(horizontalDir)*Math.cos(verticalDir),
-				centerZ+distance*Math.sin(verticalDir),
-				centerX, centerY, centerZ,
-				-Math.cos(horizontalDir)*Math.sin(verticalDir),
-				-Math.sin(horizontalDir)*Math.sin(verticalDir),
-				Math.cos(verticalDir));
+		double[] camera = getCamera(centerX, centerY, centerZ, distance);
+		glu.gluLookAt(camera[0], camera[1], camera[2], centerX, centerY, centerZ, camera[3], camera[4], camera[5]);
+		
+		//Found from the camera rather than read back from OpenGL, which would wait for the GPU
+		frustum = new Frustum(45, aspect, distance/20, distance*50, new double[] {camera[0], camera[1], camera[2]},
+				new double[] {centerX, centerY, centerZ}, new double[] {camera[3], camera[4], camera[5]});
 		
 		if (showAxes)
 		{
@@ -307,42 +1088,47 @@ public abstract class Graph3D extends GLCanvas implements Graph
 			gl.glEnable(GL_LIGHTING);
 		}
 		
-		gl.glMaterialfv(GL_FRONT_AND_BACK, GL_AMBIENT_AND_DIFFUSE, new float[] {1, 1, 1, 1}, 0);
-		renderGraph(gl);
+		gl.glMaterialfv(GL_FRONT_AND_BACK, GL_AMBIENT_AND_DIFFUSE, WHITE, 0);
+		int swept = showingSweep ? sweeps.choose(parameters.getState(), sweepBlending, sweptMeshes, sweptWeights) : 0;
+		if (swept > 0)
+			renderSwept(gl, swept);
+		else
+			renderGraph(gl, mesh);
+	}
+	
+	public void setExpression(int index, Expression e)
+	{
+		parameters.setExpression(index, e);
+	}
+	
+	public Expression getExpression(int index)
+	{
+		return parameters.getExpression(index);
 	}
 	
 	public void setDouble(int index, double value)
 	{
-		switch (index)
-		{
-		case X_CENTER: centerX = value; break;
-		case Y_CENTER: centerY = value; break;
-		case Z_CENTER: centerZ = value; break;
-		case VIEW_DISTANCE: distance = value; break;
-		default: throw new IllegalArgumentException("Invalid index");
-		}
+		parameters.setDouble(index, value);
 	}
 	
 	public void setInt(int index, int value)
 	{
-		throw new IllegalArgumentException("Invalid index");
+		parameters.setInt(index, value);
 	}
 	
 	public double getDouble(int index)
 	{
-		switch (index)
-		{
-		case X_CENTER: return centerX;
-		case Y_CENTER: return centerY;
-		case Z_CENTER: return centerZ;
-		case VIEW_DISTANCE: return distance;
-		default: throw new IllegalArgumentException("Invalid index");
-		}
+		return parameters.getDouble(index);
 	}
 	
 	public int getInt(int index)
 	{
-		throw new IllegalArgumentException("Invalid index");
+		return parameters.getInt(index);
+	}
+	
+	public void invalidate(int flags)
+	{
+		parameters.invalidate(flags);
 	}
 	
 	public void setMouseView(boolean newMouseView)
@@ -353,6 +1139,7 @@ public abstract class Graph3D extends GLCanvas implements Graph
 	public void setShowAxes(boolean enabled)
 	{
 		showAxes = enabled;
+		invalidate(STYLE);
 		updateGraph();
 	}
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.patowen.grapher.math.Expression;
+
+/**
+ * Holds the parameters, u and v, and expressions of a graph while they are being edited, and
+ * publishes them as immutable <code>GraphState</code> snapshots. Every edit made between two
+ * calls to <code>publish</code> belongs to the same transaction, so a batch of changes leads to
+ * a single snapshot and a single re-render. Edits must come from the event dispatch thread, but
+ * the published snapshot can be read from any thread.
+ * @author Patrick Owen
+ */
+public class GraphParameters
+{
+	private Map<Integer, Double> doubles;
+	private Map<Integer, Integer> ints;
+	private Map<Integer, Expression> expressions;
+	private Map<Integer, Integer> flags; //What each parameter invalidates when it changes
+	private double u, v;
+	
+	//Changes since the last published snapshot
+	private int changes;
+	
+	private AtomicReference<GraphState> state;
+	
+	/**
+	 * Constructs a GraphParameters with no parameters or expressions.
+	 */
+	public GraphParameters()
+	{
+		doubles = new HashMap<Integer, Double>();
+		ints = new HashMap<Integer, Integer>();
+		expressions = new HashMap<Integer, Expression>();
+		flags = new HashMap<Integer, Integer>();
+		u = 0;
+		v = 0;
+		changes = 0;
+		
+		state = new AtomicReference<GraphState>();
+		refresh();
+	}
+	
+	/**
+	 * Adds a parameter that holds a double. Definitions take effect immediately, since they
+	 * are only made while the graph is being constructed.
+	 * @param index the index of the parameter
+	 * @param value the default value of the parameter
+	 * @param flags the parts of the graph that need refreshing when the parameter changes
+	 */
+	public void defineDouble(int index, double value, int flags)
+	{
+		doubles.put(index, value);
+		this.flags.put(index, flags);
+		refresh();
+	}
+	
+	/**
+	 * Adds a parameter that holds an integer. Definitions take effect immediately, since they
+	 * are only made while the graph is being constructed.
+	 * @param index the index of the parameter
+	 * @param value the default value of the parameter
+	 * @param flags the parts of the graph that need refreshing when the parameter changes
+	 */
+	public void defineInt(int index, int value, int flags)
+	{
+		ints.put(index, value);
+		this.flags.put(index, flags);
+		refresh();
+	}
+	
+	/**
+	 * Adds an expression, which starts out null.
+	 * @param index the index of the expression
+	 */
+	public void defineExpression(int index)
+	{
+		expressions.put(index, null);
+		refresh();
+	}
+	
+	/**
+	 * Sets the parameter of the specified index that holds a double. Nothing is invalidated
+	 * if the value does not change.
+	 * @param index the specified index
+	 * @param value the new value
+	 */
+	public void setDouble(int index, double value)
+	{
+		if (getDouble(index) != value)
+			invalidate(flags.get(index));
+		doubles.put(index, value);
+	}
+	
+	/**
+	 * Sets the parameter of the specified index that holds an integer. Nothing is invalidated
+	 * if the value does not change.
+	 * @param index the specified index
+	 * @param value the new value
+	 */
+	public void setInt(int index, int value)
+	{
+		if (getInt(index) != value)
+			invalidate(flags.get(index));
+		ints.put(index, value);
+	}
+	
+	/**
+	 * Sets the Expression of the specified index.
+	 * @param index the index of the Expression
+	 * @param e the new Expression
+	 * @throws IllegalArgumentException if no Expression was defined at the index
+	 */
+	public void setExpression(int index, Expression e)
+	{
+		//Only defined expressions can be set, so that a snapshot never holds one the graph does not read.
+		if (!expressions.containsKey(index)) throw new IllegalArgumentException("Invalid index");
+		expressions.put(index, e);
+		invalidate(Graph.DATA);
+	}
+	
+	/**
+	 * Sets the u and v parameters.
+	 * @param u the new value of u
+	 * @param v the new value of v
+	 */
+	public void setUV(double u, double v)
+	{
+		if (this.u != u || this.v != v)
+			invalidate(Graph.PARAMS_UV);
+		this.u = u;
+		this.v = v;
+	}
+	
+	/**
+	 * Returns the edited value of the parameter of the specified index that holds a double.
+	 * @param index the specified index
+	 * @return the value of the parameter
+	 */
+	public double getDouble(int index)
+	{
+		Double value = doubles.get(index);
+		if (value == null) throw new IllegalArgumentException("Invalid index");
+		return value;
+	}
+	
+	/**
+	 * Returns the edited value of the parameter of the specified index that holds an integer.
+	 * @param index the specified index
+	 * @return the value of the parameter
+	 */
+	public int getInt(int index)
+	{
+		Integer value = ints.get(index);
+		if (value == null) throw new IllegalArgumentException("Invalid index");
+		return value;
+	}
+	
+	/**
+	 * Returns the edited Expression of the specified index.
+	 * @param index the index of the Expression
+	 * @return the Expression
+	 */
+	public Expression getExpression(int index)
+	{
+		if (!expressions.containsKey(index)) throw new IllegalArgumentException("Invalid index");
+		return expressions.get(index);
+	}
+	
+	/**
+	 * Marks parts of the graph as out of date for changes the parameters cannot see.
+	 * @param flags a combination of the flags declared in <code>Graph</code>
+	 */
+	public void invalidate(int flags)
+	{
+		changes |= flags;
+	}
+	
+	/**
+	 * Returns whether anything has changed since the last published snapshot.
+	 * @return whether there are unpublished changes
+	 */
+	public boolean hasChanges()
+	{
+		return changes != 0;
+	}
+	
+	/**
+	 * Ends the current transaction by publishing the edited values as a new snapshot.
+	 * @return the new snapshot
+	 */
+	public GraphState publish()
+	{
+		GraphState previous = state.get();
+		long revision = previous.getRevision() + 1;
+		long dataRevision = (changes & Graph.RESAMPLE) != 0 ? revision : previous.getDataRevision();
+		long shapeRevision = (changes & Graph.RESAMPLE & ~Graph.PARAMS_UV) != 0 ? revision : previous.getShapeRevision();
+		GraphState next = new GraphState(doubles, ints, expressions, u, v, revision, dataRevision, shapeRevision);
+		changes = 0;
+		state.set(next);
+		return next;
+	}
+	
+	/**
+	 * Returns the most recently published snapshot.
+	 * @return the published snapshot
+	 */
+	public GraphState getState()
+	{
+		return state.get();
+	}
+	
+	//Replaces the published snapshot after a definition without starting a new revision.
+	private void refresh()
+	{
+		GraphState previous = state.get();
+		long revision = previous == null ? 0 : previous.getRevision();
+		state.set(new GraphState(doubles, ints, expressions, u, v, revision, revision, revision));
+	}
+}
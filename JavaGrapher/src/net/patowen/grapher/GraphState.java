@@ -0,0 +1,158 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.patowen.grapher.math.Expression;
+
+/**
+ * An immutable snapshot of the parameters, u and v, and expressions of a graph. Snapshots
+ * are published by <code>GraphParameters</code>, and rendering reads everything it needs
+ * from a single snapshot so that it sees a consistent set of values no matter what the user
+ * edits in the meantime.
+ * @author Patrick Owen
+ */
+public final class GraphState
+{
+	private final Map<Integer, Double> doubles;
+	private final Map<Integer, Integer> ints;
+	private final Map<Integer, Expression> expressions;
+	private final double u, v;
+	private final long revision, dataRevision, shapeRevision;
+	
+	/**
+	 * Constructs a GraphState from copies of the given values.
+	 * @param doubles the parameters that hold doubles, by index
+	 * @param ints the parameters that hold integers, by index
+	 * @param expressions the expressions, by index
+	 * @param u the value of the u parameter
+	 * @param v the value of the v parameter
+	 * @param revision the number of the snapshot
+	 * @param dataRevision the number of the last snapshot whose changes required resampling
+	 * @param shapeRevision the number of the last snapshot whose changes other than to u and v required resampling
+	 */
+	GraphState(Map<Integer, Double> doubles, Map<Integer, Integer> ints, Map<Integer, Expression> expressions,
+			double u, double v, long revision, long dataRevision, long shapeRevision)
+	{
+		this.doubles = new HashMap<Integer, Double>(doubles);
+		this.ints = new HashMap<Integer, Integer>(ints);
+		this.expressions = new HashMap<Integer, Expression>(expressions);
+		this.u = u;
+		this.v = v;
+		this.revision = revision;
+		this.dataRevision = dataRevision;
+		this.shapeRevision = shapeRevision;
+	}
+	
+	/**
+	 * Returns the value of the parameter of the specified index that holds a double.
+	 * @param index the specified index
+	 * @return the value of the parameter
+	 */
+	public double getDouble(int index)
+	{
+		Double value = doubles.get(index);
+		if (value == null) throw new IllegalArgumentException("Invalid index");
+		return value;
+	}
+	
+	/**
+	 * Returns the value of the parameter of the specified index that holds an integer.
+	 * @param index the specified index
+	 * @return the value of the parameter
+	 */
+	public int getInt(int index)
+	{
+		Integer value = ints.get(index);
+		if (value == null) throw new IllegalArgumentException("Invalid index");
+		return value;
+	}
+	
+	/**
+	 * Returns the Expression of the specified index, which is null if it has not been set.
+	 * @param index the index of the Expression
+	 * @return the Expression
+	 */
+	public Expression getExpression(int index)
+	{
+		if (!expressions.containsKey(index)) throw new IllegalArgumentException("Invalid index");
+		return expressions.get(index);
+	}
+	
+	/**
+	 * Returns whether this snapshot has the same expressions as another one.
+	 * @param other the other snapshot
+	 * @return whether every expression is the same
+	 */
+	public boolean hasSameExpressions(GraphState other)
+	{
+		return expressions.equals(other.expressions);
+	}
+	
+	/**
+	 * Returns the value of the u parameter.
+	 * @return the value of u
+	 */
+	public double getU()
+	{
+		return u;
+	}
+	
+	/**
+	 * Returns the value of the v parameter.
+	 * @return the value of v
+	 */
+	public double getV()
+	{
+		return v;
+	}
+	
+	/**
+	 * Returns the number of this snapshot, which increases each time a snapshot is published.
+	 * @return the revision of this snapshot
+	 */
+	public long getRevision()
+	{
+		return revision;
+	}
+	
+	/**
+	 * Returns the revision of the latest snapshot, up to this one, that was published with changes
+	 * requiring the expressions to be evaluated again. Renderers compare it to the value they last
+	 * sampled with to decide whether to resample.
+	 * @return the revision of the data in this snapshot
+	 */
+	public long getDataRevision()
+	{
+		return dataRevision;
+	}
+	
+	/**
+	 * Returns the revision of the latest snapshot, up to this one, that was published with changes
+	 * other than to u and v requiring the expressions to be evaluated again. Snapshots with the same
+	 * shape revision differ in at most u and v, so meshes built for one u and v can stand in for another.
+	 * @return the revision of the data in this snapshot, other than u and v
+	 */
+	public long getShapeRevision()
+	{
+		return shapeRevision;
+	}
+}
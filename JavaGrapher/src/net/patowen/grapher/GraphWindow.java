@@ -36,6 +36,9 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Scanner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.prefs.Preferences;
 
 import javax.swing.ButtonGroup;
@@ -52,9 +55,14 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JRadioButtonMenuItem;
 import javax.swing.JTextField;
+import javax.swing.ProgressMonitor;
 import javax.swing.SwingConstants;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.filechooser.FileSystemView;
 
 import net.patowen.grapher.math.Expression;
@@ -93,6 +101,8 @@ public abstract class GraphWindow extends JDialog implements ActionListener
 	
 	private JMenuItem setBoundsButton;
 	private JCheckBoxMenuItem axesButton;
+	private JMenuItem exportMeshButton; //Only for 3D graphs
+	private JCheckBoxMenuItem pickButton; //Only for 3D graphs
 	
 	//Preset menu
 	private JMenu presetsMenu;
@@ -105,10 +115,18 @@ public abstract class GraphWindow extends JDialog implements ActionListener
 	private JPanel expressionPanel;
 	private JLabel[] expressionLabel;
 	private JTextField[] expressionField;
+	private String[] appliedText; //Text each expression was last set from
 	private JButton expressionApplyButton;
 	
+	/**
+	 * Whether expression fields may be left blank, which sets their expressions to null.
+	 */
+	protected boolean blankExpressions;
+	
 	private JCheckBox viewButton;
 	
+	private JLabel statusBar; //The point under the mouse, only for 3D graphs
+	
 	private JDialog setBoundsWindow;
 	
 	/**
@@ -156,6 +174,18 @@ public abstract class GraphWindow extends JDialog implements ActionListener
 	 * @param labelAtRight whether the label should be to the right of the text field
 	 */
 	protected void setTextFields(String[] text, boolean labelAtRight)
+	{
+		setTextFields(text, labelAtRight, 1);
+	}
+	
+	/**
+	 * Initializes the text fields where the user types in the expressions to be graphed, with several
+	 * fields in each row.
+	 * @param text an array that determines what the labels for the text fields should be
+	 * @param labelAtRight whether the label should be to the right of the text field
+	 * @param columns the number of text fields in each row
+	 */
+	protected void setTextFields(String[] text, boolean labelAtRight, int columns)
 	{
 		expressionPanel = new JPanel();
 		expressionPanel.setLayout(new GridBagLayout());
@@ -165,6 +195,7 @@ public abstract class GraphWindow extends JDialog implements ActionListener
 		numExpressions = text.length;
 		expressionField = new JTextField[numExpressions];
 		expressionLabel = new JLabel[numExpressions];
+		appliedText = new String[numExpressions];
 		
 		for (int i=0; i<numExpressions; i++)
 		{
@@ -191,33 +222,30 @@ public abstract class GraphWindow extends JDialog implements ActionListener
 				public void keyPressed(KeyEvent e)
 				{
 					if (e.getKeyCode() == KeyEvent.VK_ENTER && expressionApplyButton.isEnabled())
-					{
-						for (int i=0; i<numExpressions; i++)
-							graph.setExpression(i, ExpressionInput.getExpressionFromString(expressionField[i].getText(), variableList));
-						graph.updateGraph();
-					}
+						applyExpressions();
 				}
 			});
 			
+			int column = (i%columns)*2;
 			if (!labelAtRight)
 			{
-				c.gridx = 0; c.gridy = i; c.weightx = 0; c.fill = GridBagConstraints.NONE;
+				c.gridx = column; c.gridy = i/columns; c.weightx = 0; c.fill = GridBagConstraints.NONE;
 				expressionPanel.add(expressionLabel[i], c);
-				c.gridx = 1; c.weightx = 1; c.fill = GridBagConstraints.HORIZONTAL;
+				c.gridx = column+1; c.weightx = 1; c.fill = GridBagConstraints.HORIZONTAL;
 				expressionPanel.add(expressionField[i], c);
 			}
 			else
 			{
-				c.gridx = 0; c.gridy = i; c.weightx = 1; c.fill = GridBagConstraints.HORIZONTAL;
+				c.gridx = column; c.gridy = i/columns; c.weightx = 1; c.fill = GridBagConstraints.HORIZONTAL;
 				expressionPanel.add(expressionField[i], c);
-				c.gridx = 1; c.weightx = 0; c.fill = GridBagConstraints.NONE;
+				c.gridx = column+1; c.weightx = 0; c.fill = GridBagConstraints.NONE;
 				expressionPanel.add(expressionLabel[i], c);
 			}
 		}
 		
 		expressionApplyButton = new JButton("Apply");
 		expressionApplyButton.setEnabled(false);
-		c.gridx = 2; c.gridy = 0; c.gridheight = numExpressions; c.weightx = 0; c.fill = GridBagConstraints.VERTICAL;
+		c.gridx = columns*2; c.gridy = 0; c.gridheight = (numExpressions+columns-1)/columns; c.weightx = 0; c.fill = GridBagConstraints.VERTICAL;
 		expressionPanel.add(expressionApplyButton, c);
 	}
 	
@@ -236,6 +264,26 @@ public abstract class GraphWindow extends JDialog implements ActionListener
 		
 		graphMenu.add(setBoundsButton);
 		graphMenu.add(axesButton);
+		if (graph instanceof Graph3D)
+		{
+			exportMeshButton = new JMenuItem("Export Mesh");
+			graphMenu.add(exportMeshButton);
+			exportMeshButton.addActionListener(this);
+			
+			pickButton = new JCheckBoxMenuItem("Show Point Under Mouse", false);
+			pickButton.setToolTipText("Shows the coordinates of the point of the graph under the mouse below the graph.");
+			graphMenu.add(pickButton);
+			pickButton.addActionListener(this);
+			
+			statusBar = new JLabel(" ");
+			((Graph3D)graph).setPickListener(new ChangeListener()
+			{
+				public void stateChanged(ChangeEvent e)
+				{
+					showPick();
+				}
+			});
+		}
 		menuBar.add(graphMenu);
 		
 		initializePresetsMenu();
@@ -253,7 +301,15 @@ public abstract class GraphWindow extends JDialog implements ActionListener
 			throw new IllegalArgumentException("Graph must be a Component.");
 		
 		add(expressionPanel, BorderLayout.NORTH);
-		add(viewButton, BorderLayout.SOUTH);
+		if (statusBar == null)
+			add(viewButton, BorderLayout.SOUTH);
+		else
+		{
+			JPanel southPanel = new JPanel(new BorderLayout());
+			southPanel.add(viewButton, BorderLayout.NORTH);
+			southPanel.add(statusBar, BorderLayout.SOUTH);
+			add(southPanel, BorderLayout.SOUTH);
+		}
 		setJMenuBar(menuBar);
 		pack();
 		setLocationRelativeTo(getParent());
@@ -405,6 +461,123 @@ public abstract class GraphWindow extends JDialog implements ActionListener
 		}
 	}
 	
+	//Shows the point of a 3D graph under the mouse below the graph.
+	private void showPick()
+	{
+		Graph3D graph3D = (Graph3D)graph;
+		MeshPicker.Hit hit = graph3D.getPick();
+		if (!pickButton.isSelected())
+			statusBar.setText(" ");
+		else if (graph3D.isTooLargeToPick())
+			statusBar.setText("The graph has too many triangles to find the point under the mouse.");
+		else if (hit == null)
+			statusBar.setText(" ");
+		else if (Double.isNaN(hit.s))
+			statusBar.setText(String.format("x = %.4g, y = %.4g, z = %.4g", hit.x, hit.y, hit.z));
+		else
+			statusBar.setText(String.format("x = %.4g, y = %.4g, z = %.4g, s = %.4g, t = %.4g", hit.x, hit.y, hit.z, hit.s, hit.t));
+	}
+	
+	private void exportMeshWithDialog()
+	{
+		//In the order of the formats of MeshExporter
+		FileNameExtensionFilter[] filters = new FileNameExtensionFilter[] {
+				new FileNameExtensionFilter("Binary STL files", "stl"),
+				new FileNameExtensionFilter("Binary PLY files", "ply"),
+				new FileNameExtensionFilter("OBJ files", "obj")};
+		
+		JFileChooser fc = new JFileChooser(defaultPresetPath);
+		fc.setAcceptAllFileFilterUsed(false);
+		for (FileNameExtensionFilter filter:filters)
+			fc.addChoosableFileFilter(filter);
+		fc.setFileFilter(filters[MeshExporter.STL]);
+		
+		if (fc.showSaveDialog(this) == JFileChooser.APPROVE_OPTION && fc.getSelectedFile() != null)
+		{
+			//The format is chosen by the extension typed, or else by the filter.
+			String fName = fc.getSelectedFile().getPath();
+			int format = -1;
+			for (int i=0; i<filters.length; i++)
+			{
+				if (fName.toLowerCase().endsWith("." + MeshExporter.getExtension(i)))
+					format = i;
+			}
+			if (format == -1)
+			{
+				format = MeshExporter.STL;
+				for (int i=0; i<filters.length; i++)
+				{
+					if (fc.getFileFilter() == filters[i])
+						format = i;
+				}
+				fName = fName + "." + MeshExporter.getExtension(format);
+			}
+			
+			File f = new File(fName);
+			defaultPresetPath = f.getParentFile();
+			savePreferences();
+			
+			if (f.exists())
+			{
+				int option = JOptionPane.showConfirmDialog(this,
+						"Are you sure you want to overwrite " + f.getName() + "?",
+						"Overwriting " + f.getName(), JOptionPane.YES_NO_OPTION);
+				if (option == JOptionPane.NO_OPTION)
+					return;
+			}
+			
+			exportMesh(f, format);
+		}
+	}
+	
+	/*
+	 * Exports the mesh of the graph in the background, showing the triangles written until it is done or
+	 * cancelled. The mesh is written as it is built, so how many triangles there are in all is not known.
+	 */
+	private void exportMesh(File file, int format)
+	{
+		final MeshExporter exporter = new MeshExporter(format);
+		final Future<?> export = ((Graph3D)graph).exportMesh(exporter, file);
+		final ProgressMonitor monitor = new ProgressMonitor(this, "Exporting " + file.getName(), "", 0, 100);
+		
+		final Timer timer = new Timer(100, null);
+		timer.addActionListener(new ActionListener()
+		{
+			public void actionPerformed(ActionEvent e)
+			{
+				if (monitor.isCanceled())
+					export.cancel(true);
+				if (!export.isDone())
+				{
+					monitor.setNote(exporter.getTriangles() + " triangles written");
+					monitor.setProgress(0);
+					return;
+				}
+				
+				timer.stop();
+				monitor.close();
+				try
+				{
+					export.get();
+					JOptionPane.showMessageDialog(GraphWindow.this, "Mesh exported successfully", "Exported", JOptionPane.INFORMATION_MESSAGE);
+				}
+				catch (CancellationException ex)
+				{
+					//The unfinished file has been deleted.
+				}
+				catch (InterruptedException ex)
+				{
+					//Not possible, since the export is done.
+				}
+				catch (ExecutionException ex)
+				{
+					JOptionPane.showMessageDialog(GraphWindow.this, "Failed to export the mesh in this location", "Export failed", JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		});
+		timer.start();
+	}
+	
 	private void loadPresetWithDialog()
 	{
 		JFileChooser fc = new JFileChooser(defaultPresetPath);
@@ -525,11 +698,32 @@ public abstract class GraphWindow extends JDialog implements ActionListener
 		
 		updateExpressionApplyButton();
 		if (expressionApplyButton.isEnabled())
+			applyExpressions();
+	}
+	
+	/*
+	 * Sets the expressions whose text has changed since they were last set and updates the graph.
+	 * Expressions that are typed in again unchanged are kept, so graphs can tell that they are the same.
+	 */
+	private void applyExpressions()
+	{
+		for (int i=0; i<numExpressions; i++)
 		{
-			for (int i=0; i<numExpressions; i++)
-				graph.setExpression(i, ExpressionInput.getExpressionFromString(expressionField[i].getText(), variableList));
-			graph.updateGraph();
+			String text = expressionField[i].getText();
+			if (text.equals(appliedText[i]))
+				continue;
+			appliedText[i] = text;
+			graph.setExpression(i, parseExpression(text));
 		}
+		graph.updateGraph();
+	}
+	
+	//Returns the expression typed into a field, which is null if the field is blank and that is allowed.
+	private Expression parseExpression(String text)
+	{
+		if (blankExpressions && text.trim().isEmpty())
+			return null;
+		return ExpressionInput.getExpressionFromString(text, variableList);
 	}
 	
 	/**
@@ -616,9 +810,7 @@ public abstract class GraphWindow extends JDialog implements ActionListener
 	{
 		if (e.getSource() == expressionApplyButton)
 		{
-			for (int i=0; i<numExpressions; i++)
-				graph.setExpression(i, ExpressionInput.getExpressionFromString(expressionField[i].getText(), variableList));
-			graph.updateGraph();
+			applyExpressions();
 		}
 		else if (e.getSource() == setBoundsButton)
 		{
@@ -646,6 +838,15 @@ public abstract class GraphWindow extends JDialog implements ActionListener
 		{
 			savePresetWithDialog();
 		}
+		else if (e.getSource() == exportMeshButton)
+		{
+			exportMeshWithDialog();
+		}
+		else if (e.getSource() == pickButton)
+		{
+			((Graph3D)graph).setPicking(pickButton.isSelected());
+			showPick();
+		}
 		else if (e.getSource() == viewButton)
 		{
 			graph.setMouseView(viewButton.isSelected());
@@ -678,7 +879,7 @@ public abstract class GraphWindow extends JDialog implements ActionListener
 	{
 		for (JTextField field:expressionField)
 		{
-			Expression e = ExpressionInput.getExpressionFromString(field.getText(), variableList);
+			Expression e = parseExpression(field.getText());
 			if (e instanceof InvalidExpression)
 			{
 				expressionApplyButton.setEnabled(false);
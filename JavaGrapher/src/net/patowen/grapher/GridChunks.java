@@ -0,0 +1,250 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.nio.FloatBuffer;
+
+/**
+ * Samples a grid of lit vertices in square chunks, each of which is added to a mesh as its own
+ * part with its own bounding box. A chunk has few enough vertices for 16-bit indices, so chunks of
+ * the same size share their indices, and no buffer or count grows with the whole grid, which can
+ * be far larger than would fit in one buffer. Neighbouring chunks both sample the vertices along
+ * their shared edge. Each chunk is added as soon as it is filled, so a streamed mesh can upload it
+ * and reuse its buffer for a later chunk.
+ * <p>
+ * Normals can either be computed with each vertex, by extending <code>GridChunks.Vertices</code>, or
+ * found from the positions of the vertices around it with <code>GridNormals</code>, by extending
+ * <code>GridChunks.Positions</code>. In the latter case, the positions of a chunk are sampled with a
+ * ring of one vertex around it, so that chunks are shaded the same way on either side of their edges,
+ * and only the edges of the whole grid need normals computed another way.
+ * Chunks added to a pickable mesh also record the parameters of their vertices, if known.
+ * @author Patrick Owen
+ */
+public abstract class GridChunks
+{
+	//Cells along each side of a full chunk, the most for which every vertex of the chunk has a 16-bit index
+	public static final int CHUNK_SIZE = 255;
+	
+	/**
+	 * Finds the parameters of the surface at a vertex, for picking. By default they are not known.
+	 * @param i the row of the vertex in the whole grid
+	 * @param j the column of the vertex in the whole grid
+	 * @param parameters the array to write s and t to
+	 * @param index the position in the array of the vertex's two floats
+	 * @return whether the parameters are known, the same for every vertex
+	 */
+	protected boolean parameters(int i, int j, float[] parameters, int index)
+	{
+		return false;
+	}
+	
+	/**
+	 * Samples every vertex of the grid and adds the chunks to the mesh.
+	 * @param mesh the mesh to add the chunks to
+	 * @param rows the number of cells along i
+	 * @param columns the number of cells along j
+	 */
+	public void build(Mesh mesh, int rows, int columns)
+	{
+		for (int i=0; i<rows; i+=CHUNK_SIZE)
+			for (int j=0; j<columns; j+=CHUNK_SIZE)
+				buildChunk(mesh, i, j, Math.min(CHUNK_SIZE, rows-i), Math.min(CHUNK_SIZE, columns-j), rows, columns);
+	}
+	
+	/**
+	 * Samples the chunk whose first vertex is (startI, startJ) and adds it to the mesh.
+	 * @param mesh the mesh to add the chunk to
+	 * @param startI the row of the chunk's first vertex in the whole grid
+	 * @param startJ the column of the chunk's first vertex in the whole grid
+	 * @param rows the number of cells of the chunk along i
+	 * @param columns the number of cells of the chunk along j
+	 * @param gridRows the number of cells of the whole grid along i
+	 * @param gridColumns the number of cells of the whole grid along j
+	 */
+	protected abstract void buildChunk(Mesh mesh, int startI, int startJ, int rows, int columns, int gridRows, int gridColumns);
+	
+	/**
+	 * Adds a filled chunk to the mesh, with the parameters of its vertices if they are needed.
+	 * @param mesh the mesh to add the chunk to
+	 * @param vertices the positions and normals of the chunk's vertices
+	 * @param startI the row of the chunk's first vertex in the whole grid
+	 * @param startJ the column of the chunk's first vertex in the whole grid
+	 * @param rows the number of cells of the chunk along i
+	 * @param columns the number of cells of the chunk along j
+	 */
+	protected void addChunk(Mesh mesh, FloatBuffer vertices, int startI, int startJ, int rows, int columns)
+	{
+		mesh.addTriangles(vertices, GridTopology.get(rows, columns, 1), findParameters(mesh, startI, startJ, rows, columns));
+	}
+	
+	/**
+	 * Returns the parameters of every vertex of a chunk, for adding the chunk to a mesh.
+	 * @param mesh the mesh the chunk is added to
+	 * @param startI the row of the chunk's first vertex in the whole grid
+	 * @param startJ the column of the chunk's first vertex in the whole grid
+	 * @param rows the number of cells of the chunk along i
+	 * @param columns the number of cells of the chunk along j
+	 * @return s and t of each vertex, or null if the mesh is not pickable or they are not known
+	 */
+	protected float[] findParameters(Mesh mesh, int startI, int startJ, int rows, int columns)
+	{
+		if (!mesh.isPickable())
+			return null;
+		
+		float[] parameters = new float[(rows+1)*(columns+1)*2];
+		int pc = 0; //parameterCounter
+		for (int i=0; i<=rows; i++)
+		{
+			for (int j=0; j<=columns; j++)
+			{
+				if (!parameters(startI+i, startJ+j, parameters, pc))
+					return null;
+				pc += 2;
+			}
+		}
+		return parameters;
+	}
+	
+	/**
+	 * Chunks whose vertices are computed with their normals.
+	 * @author Patrick Owen
+	 */
+	public static abstract class Vertices extends GridChunks
+	{
+		/**
+		 * Computes one vertex. Vertices of the same chunk are computed on different threads at the same time.
+		 * @param i the row of the vertex in the whole grid
+		 * @param j the column of the vertex in the whole grid
+		 * @param vertices the buffer to write the position and normal to
+		 * @param index the position in the buffer of the vertex's six floats
+		 */
+		protected abstract void vertex(int i, int j, FloatBuffer vertices, int index);
+		
+		protected void buildChunk(Mesh mesh, final int startI, final int startJ, int rows, final int columns,
+				int gridRows, int gridColumns)
+		{
+			final FloatBuffer vertices = mesh.newFloatBuffer((rows+1)*(columns+1)*6);
+			
+			//Each row starts at a known place, so rows can be filled in any order.
+			new RowLoop()
+			{
+				protected void row(int i)
+				{
+					int vc = i*(columns+1)*6; //vertexCounter
+					for (int j=0; j<=columns; j++)
+					{
+						vertex(startI+i, startJ+j, vertices, vc);
+						vc += 6;
+					}
+				}
+			}.run(0, rows+1);
+			
+			addChunk(mesh, vertices, startI, startJ, rows, columns);
+		}
+	}
+	
+	/**
+	 * Chunks whose positions are computed first, with normals found from the positions around each vertex.
+	 * @author Patrick Owen
+	 */
+	public static abstract class Positions extends GridChunks
+	{
+		/**
+		 * Computes the position of a vertex. Vertices are computed on different threads at the same time.
+		 * @param i the row of the vertex in the whole grid
+		 * @param j the column of the vertex in the whole grid
+		 * @param positions the array to write the position to
+		 * @param index the position in the array of the vertex's three doubles
+		 */
+		protected abstract void position(int i, int j, double[] positions, int index);
+		
+		/**
+		 * Computes the normal of a vertex that the positions around it do not give a normal for.
+		 * @param i the row of the vertex in the whole grid
+		 * @param j the column of the vertex in the whole grid
+		 * @param normal filled with the unit normal
+		 */
+		protected abstract void normal(int i, int j, double[] normal);
+		
+		/**
+		 * Called once the position and normal of a vertex are in the chunk's buffer, so that they can be
+		 * remembered. Does nothing by default.
+		 * @param i the row of the vertex in the whole grid
+		 * @param j the column of the vertex in the whole grid
+		 * @param vertices the buffer holding the position and normal
+		 * @param index the position in the buffer of the vertex's six floats
+		 */
+		protected void filled(int i, int j, FloatBuffer vertices, int index) {}
+		
+		//Samples the positions of a chunk and the ring around it, and adds the chunk with normals found from them.
+		protected void buildChunk(Mesh mesh, final int startI, final int startJ, int rows, final int columns,
+				final int gridRows, final int gridColumns)
+		{
+			//Point (r, c) of the ring is vertex (startI+r-1, startJ+c-1), and is undefined outside the grid.
+			final int ringColumns = columns+3;
+			final double[] positions = new double[(rows+3)*ringColumns*3];
+			new RowLoop()
+			{
+				protected void row(int r)
+				{
+					int i = startI+r-1;
+					for (int c=0; c<ringColumns; c++)
+					{
+						int j = startJ+c-1, index = (r*ringColumns + c)*3;
+						if (i < 0 || i > gridRows || j < 0 || j > gridColumns)
+						{
+							positions[index] = positions[index+1] = positions[index+2] = Double.NaN;
+							continue;
+						}
+						position(i, j, positions, index);
+					}
+				}
+			}.run(0, rows+3);
+			
+			final FloatBuffer vertices = mesh.newFloatBuffer((rows+1)*(columns+1)*6);
+			new RowLoop()
+			{
+				protected void row(int i)
+				{
+					int vc = i*(columns+1)*6; //vertexCounter
+					double[] normal = new double[3];
+					for (int j=0; j<=columns; j++)
+					{
+						int index = ((i+1)*ringColumns + j+1)*3;
+						if (!GridNormals.fromPositions(positions, index, ringColumns*3, normal))
+							normal(startI+i, startJ+j, normal);
+						
+						vertices.put(vc, (float)positions[index]);
+						vertices.put(vc+1, (float)positions[index+1]);
+						vertices.put(vc+2, (float)positions[index+2]);
+						
+						vertices.put(vc+3, (float)normal[0]);
+						vertices.put(vc+4, (float)normal[1]);
+						vertices.put(vc+5, (float)normal[2]);
+						
+						filled(startI+i, startJ+j, vertices, vc);
+						vc += 6;
+					}
+				}
+			}.run(0, rows+1);
+			
+			addChunk(mesh, vertices, startI, startJ, rows, columns);
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Finds contour lines of a surface z = f(x, y) from heights that have already been sampled on
+ * a grid, without evaluating the expression itself. Each square of the grid is split
+ * along the same diagonal as the triangles GridTopology draws it with, and each level crosses a
+ * triangle in a straight segment between two of its edges, as in marching squares. The segments
+ * therefore lie exactly on the drawn surface, and no square has two ways of being crossed.
+ * <p>
+ * Lines are traced one chunk of the grid at a time, from the chunk's own vertices, so no copy of
+ * the whole grid is kept. Chunks share their edge vertices, so every square of a chunk has all of
+ * its corners in that chunk.
+ * @author Patrick Owen
+ */
+public final class GridContours
+{
+	//Color of the lines, dark enough to stand out on the lit surface
+	private static final float[] COLOR = {0.15f, 0.15f, 0.4f};
+	
+	//Floats per vertex, as in lit parts of a mesh
+	private static final int STRIDE = 6;
+	
+	private final double low, step;
+	private final int levels;
+	
+	/**
+	 * Constructs a GridContours with lines at evenly spaced heights between two extremes, neither
+	 * of which is given a line.
+	 * @param min the lowest height
+	 * @param max the highest height
+	 * @param levels the number of heights to draw lines at
+	 */
+	public GridContours(double min, double max, int levels)
+	{
+		low = min;
+		step = (max-min)/(levels+1);
+		this.levels = min < max ? levels : 0;
+	}
+	
+	/**
+	 * Adds the contour lines of one chunk of a grid to a mesh. Squares with a corner that is not
+	 * finite have no lines.
+	 * @param mesh the mesh to add the lines to
+	 * @param vertices the positions and normals of the chunk's vertices, with point (i, j) at index (i*(columns+1) + j)*6
+	 * @param rows the number of cells of the chunk along i
+	 * @param columns the number of cells of the chunk along j
+	 * @throws java.util.concurrent.CancellationException if the build is cancelled
+	 */
+	public void addChunk(Mesh mesh, final FloatBuffer vertices, int rows, final int columns)
+	{
+		if (levels <= 0)
+			return;
+		
+		//Each row of squares has its own list of segments, two points of three floats each.
+		final float[][] segments = new float[rows][];
+		final int[] counts = new int[rows];
+		new RowLoop()
+		{
+			protected void row(int i)
+			{
+				float[] rowSegments = new float[48];
+				int sc = 0; //segmentCounter
+				double[] corners = new double[12];
+				for (int j=0; j<columns; j++)
+				{
+					//Corners (i, j), (i+1, j), (i+1, j+1) and (i, j+1), as GridTopology splits them
+					setCorner(corners, 0, i, j);
+					setCorner(corners, 1, i+1, j);
+					setCorner(corners, 2, i+1, j+1);
+					setCorner(corners, 3, i, j+1);
+					
+					for (int triangle=0; triangle<2; triangle++)
+					{
+						int a = 0, b = triangle == 0 ? 1 : 2, c = triangle == 0 ? 2 : 3;
+						double za = corners[a*3+2], zb = corners[b*3+2], zc = corners[c*3+2];
+						if (Double.isNaN(za+zb+zc) || Double.isInfinite(za+zb+zc))
+							continue;
+						
+						int first = Math.max(1, (int)Math.ceil((Math.min(za, Math.min(zb, zc)) - low)/step));
+						int last = Math.min(levels, (int)Math.floor((Math.max(za, Math.max(zb, zc)) - low)/step));
+						for (int k=first; k<=last; k++)
+						{
+							if (rowSegments.length < sc+6)
+								rowSegments = Arrays.copyOf(rowSegments, rowSegments.length*2);
+							sc = crossTriangle(corners, a, b, c, low + k*step, rowSegments, sc);
+						}
+					}
+				}
+				segments[i] = rowSegments;
+				counts[i] = sc;
+			}
+			
+			//Sets the position of a corner of the square from the chunk's vertices.
+			private void setCorner(double[] corners, int corner, int i, int j)
+			{
+				int s = (i*(columns+1) + j)*STRIDE;
+				corners[corner*3] = vertices.get(s);
+				corners[corner*3+1] = vertices.get(s+1);
+				corners[corner*3+2] = vertices.get(s+2);
+			}
+		}.run(0, rows);
+		
+		int total = 0;
+		for (int i=0; i<rows; i++)
+			total += counts[i];
+		if (total == 0)
+			return;
+		
+		FloatBuffer lines = mesh.newFloatBuffer(total);
+		for (int i=0; i<rows; i++)
+			lines.put(segments[i], 0, counts[i]);
+		lines.rewind();
+		
+		IntBuffer order = mesh.newIntBuffer(total/3);
+		for (int n=0; n<total/3; n++)
+			order.put(n, n);
+		
+		mesh.addLines(lines, order, total/3, COLOR[0], COLOR[1], COLOR[2]);
+	}
+	
+	/*
+	 * Adds the segment where a level crosses a triangle, and returns the new segmentCounter. A level
+	 * that crosses a triangle at all crosses exactly two of its edges, and one that does not crosses none.
+	 */
+	private static int crossTriangle(double[] corners, int a, int b, int c, double level, float[] segments, int sc)
+	{
+		sc = crossEdge(corners, a, b, level, segments, sc);
+		sc = crossEdge(corners, b, c, level, segments, sc);
+		return crossEdge(corners, c, a, level, segments, sc);
+	}
+	
+	//Adds the point where a level crosses an edge, if it does, and returns the new segmentCounter.
+	private static int crossEdge(double[] corners, int p, int q, double level, float[] segments, int sc)
+	{
+		double zp = corners[p*3+2], zq = corners[q*3+2];
+		if ((zp >= level) == (zq >= level))
+			return sc;
+		
+		double t = (level-zp)/(zq-zp);
+		segments[sc] = (float)(corners[p*3] + (corners[q*3]-corners[p*3])*t);
+		segments[sc+1] = (float)(corners[p*3+1] + (corners[q*3+1]-corners[p*3+1])*t);
+		segments[sc+2] = (float)level;
+		return sc+3;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+
+/**
+ * Finds normals from positions that have already been sampled, by central differences, rather
+ * than by evaluating derivatives of the expressions. Derivatives cost about as much as the values
+ * themselves for each variable, so this makes a build several times cheaper. Points on the edge
+ * of a grid, and points whose neighbours are undefined or lie in a line, have no normal here, and
+ * their graphs evaluate derivatives for them instead.
+ * @author Patrick Owen
+ */
+public final class GridNormals
+{
+	//Tangents at a smaller angle than this, in radians, do not give a reliable normal
+	private static final double DEGENERATE = 1e-6;
+	
+	private GridNormals() {}
+	
+	/**
+	 * Finds the normal at a point of a grid from the positions of its four neighbours.
+	 * The normal points the same way as the cross product of the tangent along the rows
+	 * with the tangent along the columns.
+	 * @param positions the positions of the grid, three doubles each
+	 * @param index the position in the array of the point's x-coordinate
+	 * @param rowStride the distance in the array from a point to the one in the next row
+	 * @param normal filled with the unit normal
+	 * @return whether a normal was found
+	 */
+	public static boolean fromPositions(double[] positions, int index, int rowStride, double[] normal)
+	{
+		double ax = positions[index+rowStride] - positions[index-rowStride];
+		double ay = positions[index+rowStride+1] - positions[index-rowStride+1];
+		double az = positions[index+rowStride+2] - positions[index-rowStride+2];
+		
+		double bx = positions[index+3] - positions[index-3];
+		double by = positions[index+4] - positions[index-2];
+		double bz = positions[index+5] - positions[index-1];
+		
+		double nx = ay*bz - az*by, ny = az*bx - ax*bz, nz = ax*by - ay*bx;
+		double n = Math.sqrt(nx*nx + ny*ny + nz*nz);
+		double limit = DEGENERATE*Math.sqrt((ax*ax + ay*ay + az*az)*(bx*bx + by*by + bz*bz));
+		if (!(n > limit) || Double.isInfinite(n))
+			return false;
+		
+		normal[0] = nx/n;
+		normal[1] = ny/n;
+		normal[2] = nz/n;
+		return true;
+	}
+	
+	/**
+	 * Finds the slope of an evenly sampled function at each sample from the samples on either side.
+	 * The slope is NaN at the ends and next to undefined samples.
+	 * @param values the samples
+	 * @param spacing the distance between samples
+	 * @param slopes filled with the slopes, with the same length as the samples
+	 */
+	public static void slopes(double[] values, double spacing, double[] slopes)
+	{
+		for (int i=0; i<values.length; i++)
+		{
+			if (i == 0 || i == values.length-1)
+				slopes[i] = Double.NaN;
+			else
+				slopes[i] = (values[i+1] - values[i-1])/(2*spacing);
+			
+			if (Double.isInfinite(slopes[i]))
+				slopes[i] = Double.NaN;
+		}
+	}
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.nio.FloatBuffer;
+
+/**
+ * Remembers the samples of the last grid a graph was built with, so that a new grid that shares
+ * points with it only evaluates the points that are new. This is the case when the bounds are
+ * moved by a whole number of intervals, when the resolution is doubled, or when the new bounds
+ * lie inside the old ones on the same lattice. Each row and column of the new grid is matched to
+ * one of the old grid by its position on the old lattice, allowing for rounding, and a point is
+ * reused if both its row and its column have a match. Grids are only compared if they have the
+ * same key, which holds everything else the samples depend on, such as the expressions and the
+ * values of u and v. Each sample is a fixed number of floats.
+ * <p>
+ * The first floats of a sample, such as its position, can depend on the key alone while the rest,
+ * such as its normal, also depend on how they were found. Grids are then also given a variant, and
+ * a grid of another variant with the same key still gives the shared floats of its samples.
+ * <p>
+ * Used by one build at a time. Different rows may be loaded and stored on different threads.
+ * @author Patrick Owen
+ * @see GridChunks
+ */
+public class GridSampleCache
+{
+	//Largest number of points remembered, so that very large grids are built without a cache
+	private static final int MAX_SAMPLES = 1 << 20;
+	
+	//How far a point may be from the old lattice, in intervals, and still be reused
+	private static final double TOLERANCE = 1e-6;
+	
+	private final int width, shared;
+	
+	//The grid being built
+	private Object key, variant;
+	private double iMin, iMax, jMin, jMax;
+	private int rows, columns;
+	private float[] current;
+	private int[] oldRows, oldColumns; //Matching row or column of the old grid, or -1
+	private boolean sameVariant; //Whether whole samples of the old grid can be reused
+	
+	//The last grid that was finished
+	private Object oldKey, oldVariant;
+	private double oldIMin, oldIMax, oldJMin, oldJMax;
+	private int oldRowCount, oldColumnCount;
+	private float[] old;
+	private boolean finished; //Whether the last finished grid is the one that was just built
+	
+	/**
+	 * Constructs an empty GridSampleCache whose samples depend only on the key.
+	 * @param width the number of floats in each sample
+	 */
+	public GridSampleCache(int width)
+	{
+		this(width, width);
+	}
+	
+	/**
+	 * Constructs an empty GridSampleCache whose samples begin with floats shared between variants.
+	 * @param width the number of floats in each sample
+	 * @param shared the number of floats at the start of each sample that depend only on the key
+	 */
+	public GridSampleCache(int width, int shared)
+	{
+		this.width = width;
+		this.shared = shared;
+		key = null;
+		variant = null;
+		current = null;
+		oldKey = null;
+		oldVariant = null;
+		old = null;
+	}
+	
+	/**
+	 * Starts a grid, matching its rows and columns to the last finished grid if the keys are equal.
+	 * Point (i, j) of the grid is at iMin + (iMax-iMin)*i/rows and jMin + (jMax-jMin)*j/columns.
+	 * @param key everything other than the position of a point that its sample depends on
+	 * @param iMin the first value of i
+	 * @param iMax the last value of i
+	 * @param rows the number of intervals along i
+	 * @param jMin the first value of j
+	 * @param jMax the last value of j
+	 * @param columns the number of intervals along j
+	 */
+	public void start(Object key, double iMin, double iMax, int rows, double jMin, double jMax, int columns)
+	{
+		start(key, null, iMin, iMax, rows, jMin, jMax, columns);
+	}
+	
+	/**
+	 * Starts a grid of a variant, matching its rows and columns to the last finished grid if the keys
+	 * are equal. Whole samples are only reused if the variants are equal too.
+	 * @param key everything other than the position of a point that its sample depends on
+	 * @param variant what the floats after the shared ones also depend on, or null
+	 * @param iMin the first value of i
+	 * @param iMax the last value of i
+	 * @param rows the number of intervals along i
+	 * @param jMin the first value of j
+	 * @param jMax the last value of j
+	 * @param columns the number of intervals along j
+	 */
+	public void start(Object key, Object variant, double iMin, double iMax, int rows, double jMin, double jMax, int columns)
+	{
+		this.key = key;
+		this.variant = variant;
+		this.iMin = iMin; this.iMax = iMax; this.rows = rows;
+		this.jMin = jMin; this.jMax = jMax; this.columns = columns;
+		finished = false;
+		
+		long samples = (long)(rows+1)*(columns+1);
+		if (samples > MAX_SAMPLES)
+		{
+			current = null;
+		}
+		else if (current == null || current.length < samples*width)
+		{
+			current = new float[(int)samples*width];
+		}
+		
+		boolean reusable = old != null && key.equals(oldKey);
+		sameVariant = variant == null ? oldVariant == null : variant.equals(oldVariant);
+		oldRows = match(iMin, iMax, rows, oldIMin, oldIMax, oldRowCount, reusable);
+		oldColumns = match(jMin, jMax, columns, oldJMin, oldJMax, oldColumnCount, reusable);
+	}
+	
+	/**
+	 * Copies the sample of a point from the last finished grid, if it has one.
+	 * @param i the row of the point in the grid being built
+	 * @param j the column of the point in the grid being built
+	 * @param buffer the buffer to copy the sample to
+	 * @param index the position in the buffer of the sample's first float
+	 * @return whether the point was sampled before and has been copied
+	 */
+	public boolean load(int i, int j, FloatBuffer buffer, int index)
+	{
+		int from = find(i, j);
+		if (from == -1 || !sameVariant)
+			return false;
+		
+		for (int k=0; k<width; k++)
+			buffer.put(index+k, old[from+k]);
+		store(i, j, buffer, index);
+		return true;
+	}
+	
+	/**
+	 * Copies the shared floats of the sample of a point from the last finished grid, if it has one,
+	 * whatever its variant. The rest of the sample is left to the caller, who then stores it.
+	 * @param i the row of the point in the grid being built
+	 * @param j the column of the point in the grid being built
+	 * @param buffer the buffer to copy the floats to
+	 * @param index the position in the buffer of the sample's first float
+	 * @return whether the point was sampled before and its shared floats have been copied
+	 */
+	public boolean loadShared(int i, int j, FloatBuffer buffer, int index)
+	{
+		int from = find(i, j);
+		if (from == -1)
+			return false;
+		
+		for (int k=0; k<shared; k++)
+			buffer.put(index+k, old[from+k]);
+		return true;
+	}
+	
+	/**
+	 * Copies the shared floats of the sample of a point from the last finished grid into an array of
+	 * doubles, if it has one, whatever its variant.
+	 * @param i the row of the point in the grid being built
+	 * @param j the column of the point in the grid being built
+	 * @param array the array to copy the floats to
+	 * @param index the position in the array of the sample's first value
+	 * @return whether the point was sampled before and its shared floats have been copied
+	 */
+	public boolean loadShared(int i, int j, double[] array, int index)
+	{
+		int from = find(i, j);
+		if (from == -1)
+			return false;
+		
+		for (int k=0; k<shared; k++)
+			array[index+k] = old[from+k];
+		return true;
+	}
+	
+	//Returns where the sample of a point of the grid being built is in the last finished grid, or -1 if it has none.
+	private int find(int i, int j)
+	{
+		int oldI = oldRows[i], oldJ = oldColumns[j];
+		if (oldI == -1 || oldJ == -1)
+			return -1;
+		return (oldI*(oldColumnCount+1) + oldJ)*width;
+	}
+	
+	/**
+	 * Remembers the sample of a point of the grid being built.
+	 * @param i the row of the point
+	 * @param j the column of the point
+	 * @param buffer the buffer holding the sample
+	 * @param index the position in the buffer of the sample's first float
+	 */
+	public void store(int i, int j, FloatBuffer buffer, int index)
+	{
+		if (current == null)
+			return;
+		
+		int to = (i*(columns+1) + j)*width;
+		for (int k=0; k<width; k++)
+			current[to+k] = buffer.get(index+k);
+	}
+	
+	/**
+	 * Makes the grid being built the one later grids are matched against. Not called for a build
+	 * that was cancelled, so the grid is only remembered if every point was stored.
+	 */
+	public void finish()
+	{
+		if (current == null)
+			return;
+		
+		//The old samples are not needed anymore, so their array holds the next grid.
+		float[] swap = old;
+		old = current;
+		current = swap;
+		
+		oldKey = key;
+		oldVariant = variant;
+		oldIMin = iMin; oldIMax = iMax; oldRowCount = rows;
+		oldJMin = jMin; oldJMax = jMax; oldColumnCount = columns;
+		finished = true;
+	}
+	
+	/**
+	 * Copies the shared floats of the sample of a point of the grid that was just finished into an
+	 * array of doubles, so that the grid can be read again after it is built. Grids too large to be
+	 * remembered have no samples.
+	 * @param i the row of the point in the finished grid
+	 * @param j the column of the point in the finished grid
+	 * @param array the array to copy the floats to
+	 * @param index the position in the array of the sample's first value
+	 * @return whether the grid was remembered and the floats have been copied
+	 */
+	public boolean loadFinished(int i, int j, double[] array, int index)
+	{
+		if (!finished)
+			return false;
+		
+		int from = (i*(oldColumnCount+1) + j)*width;
+		for (int k=0; k<shared; k++)
+			array[index+k] = old[from+k];
+		return true;
+	}
+	
+	/*
+	 * Returns, for each point along one axis of a new grid, the index of the point of the old grid
+	 * at the same position, or -1 if there is none.
+	 */
+	private static int[] match(double min, double max, int count, double oldMin, double oldMax, int oldCount, boolean reusable)
+	{
+		int[] matches = new int[count+1];
+		for (int n=0; n<=count; n++)
+		{
+			matches[n] = -1;
+			if (!reusable || oldMax == oldMin)
+				continue;
+			
+			double position = min + (max-min)*n/count;
+			double oldN = (position-oldMin)*oldCount/(oldMax-oldMin);
+			long nearest = Math.round(oldN);
+			if (Math.abs(oldN-nearest) <= TOLERANCE && nearest >= 0 && nearest <= oldCount)
+				matches[n] = (int)nearest;
+		}
+		return matches;
+	}
+}
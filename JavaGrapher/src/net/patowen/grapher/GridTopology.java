@@ -0,0 +1,160 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import static com.jogamp.opengl.GL.GL_UNSIGNED_INT;
+import static com.jogamp.opengl.GL.GL_UNSIGNED_SHORT;
+
+import java.nio.Buffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.jogamp.common.nio.Buffers;
+
+/**
+ * The triangle indices of a grid of vertices. They depend only on the size of the grid, so
+ * they are built once per size and shared by every graph and window that draws a grid of that
+ * size. Only the vertex data is rebuilt when a graph changes. The vertex in row i and column j
+ * of layer l has the ID (i*(columns+1) + j)*layers + l, so graphs that draw two surfaces at once
+ * can interleave their vertices. Indices are 16-bit when the number of vertices allows it.
+ * @author Patrick Owen
+ */
+public class GridTopology
+{
+	//Number of grid sizes kept, most recently used first
+	private static final int CACHE_SIZE = 16;
+	
+	private static final Map<String, GridTopology> cache = new LinkedHashMap<String, GridTopology>(CACHE_SIZE, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1973139872093412258L;
+		
+		protected boolean removeEldestEntry(Map.Entry<String, GridTopology> eldest)
+		{
+			return size() > CACHE_SIZE;
+		}
+	};
+	
+	private String key;
+	private Buffer indices;
+	private int indexType;
+	private int count;
+	
+	/**
+	 * Returns the topology of a grid with the given number of cells, building it if it is not cached.
+	 * The grid has (rows+1)*(columns+1) vertices in each layer.
+	 * @param rows the number of cells along i
+	 * @param columns the number of cells along j
+	 * @param layers the number of surfaces whose vertices are interleaved
+	 * @return the shared topology, which must not be modified
+	 */
+	public static GridTopology get(int rows, int columns, int layers)
+	{
+		String key = rows + "," + columns + "," + layers;
+		synchronized (cache)
+		{
+			GridTopology topology = cache.get(key);
+			if (topology == null)
+			{
+				topology = new GridTopology(key, rows, columns, layers);
+				cache.put(key, topology);
+			}
+			return topology;
+		}
+	}
+	
+	//Builds the two triangles of every cell of every layer.
+	private GridTopology(String key, int rows, int columns, int layers)
+	{
+		this.key = key;
+		count = rows*columns*layers*6;
+		
+		ShortBuffer shortIndices = null;
+		IntBuffer intIndices = null;
+		if ((rows+1)*(columns+1)*layers <= 65536)
+		{
+			shortIndices = Buffers.newDirectShortBuffer(count);
+			indices = shortIndices;
+			indexType = GL_UNSIGNED_SHORT;
+		}
+		else
+		{
+			intIndices = Buffers.newDirectIntBuffer(count);
+			indices = intIndices;
+			indexType = GL_UNSIGNED_INT;
+		}
+		
+		int oc = 0; //orderCounter
+		int[] cell = new int[6];
+		for (int i=0; i<rows; i++)
+			for (int j=0; j<columns; j++)
+				for (int l=0; l<layers; l++)
+				{
+					int v1 = (i*(columns+1) + j)*layers + l, v2 = v1 + (columns+1)*layers; //(i, j) and (i+1, j)
+					
+					cell[0] = v1; cell[1] = v2; cell[2] = v2+layers;
+					cell[3] = v1; cell[4] = v2+layers; cell[5] = v1+layers;
+					
+					for (int k=0; k<6; k++)
+					{
+						if (shortIndices != null)
+							shortIndices.put(oc++, (short)cell[k]);
+						else
+							intIndices.put(oc++, cell[k]);
+					}
+				}
+	}
+	
+	/**
+	 * Returns the size of the grid as a key, which is the same for every topology of the same size.
+	 * @return the rows, columns and layers of the grid
+	 */
+	public String getKey()
+	{
+		return key;
+	}
+	
+	/**
+	 * Returns the indices of the vertices of each triangle. The buffer is shared, so its position must not be changed.
+	 * @return the indices, ready for glDrawElements
+	 */
+	public Buffer getIndices()
+	{
+		return indices;
+	}
+	
+	/**
+	 * Returns the type of the indices.
+	 * @return GL_UNSIGNED_SHORT or GL_UNSIGNED_INT
+	 */
+	public int getIndexType()
+	{
+		return indexType;
+	}
+	
+	/**
+	 * Returns the number of indices.
+	 * @return the number of indices, which is three times the number of triangles
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+}
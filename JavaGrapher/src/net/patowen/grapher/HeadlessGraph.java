@@ -0,0 +1,291 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import net.patowen.grapher.math.Expression;
+import net.patowen.grapher.math.ExpressionInput;
+import net.patowen.grapher.math.InvalidExpression;
+
+/**
+ * A 3D graph without a window or OpenGL, for drawing thumbnails or rendering graphs in batches on
+ * machines without a display. It holds the parameters of a graph and builds it with the same
+ * MeshBuilder a Graph3D uses, at the configured resolutions, and draws the mesh with a
+ * SoftwareRenderer as Graph3D would draw it before the camera is turned, or writes it to a file with
+ * a MeshExporter. Graph3D draws and exports its own meshes the same way. It needs the JOGL jars for
+ * their buffer utilities, but not their native libraries or a display. From the command line, it draws
+ * a function or parametric graph to a PNG file, or writes its mesh if the file ends in .stl, .ply or .obj:
+ * <pre>
+ * java net.patowen.grapher.HeadlessGraph function width height file.png z
+ * java net.patowen.grapher.HeadlessGraph parametric width height file.png x y z
+ * </pre>
+ * @author Patrick Owen
+ */
+public class HeadlessGraph
+{
+	//Direction the camera looks from until the mouse turns it
+	public static final double DEFAULT_HORIZONTAL_DIR = Math.PI/4, DEFAULT_VERTICAL_DIR = Math.PI/6;
+	
+	private MeshBuilder builder;
+	private GraphParameters parameters;
+	private double horizontalDir, verticalDir;
+	private boolean showAxes;
+	
+	/**
+	 * Constructs a HeadlessGraph with the parameters of the given builder at their defaults.
+	 * @param builder the builder of the type of graph to draw
+	 */
+	public HeadlessGraph(MeshBuilder builder)
+	{
+		this.builder = builder;
+		parameters = new GraphParameters();
+		builder.define(parameters);
+		horizontalDir = DEFAULT_HORIZONTAL_DIR;
+		verticalDir = DEFAULT_VERTICAL_DIR;
+		showAxes = true;
+	}
+	
+	public void setExpression(int index, Expression e)
+	{
+		parameters.setExpression(index, e);
+	}
+	
+	public void setDouble(int index, double value)
+	{
+		parameters.setDouble(index, value);
+	}
+	
+	public void setInt(int index, int value)
+	{
+		parameters.setInt(index, value);
+	}
+	
+	public void setShowAxes(boolean enabled)
+	{
+		showAxes = enabled;
+	}
+	
+	/**
+	 * Sets the direction the camera looks at the graph from, as the mouse would turn it.
+	 * @param horizontalDir the angle around the z-axis, in radians
+	 * @param verticalDir the angle above the xy-plane, in radians
+	 */
+	public void setView(double horizontalDir, double verticalDir)
+	{
+		this.horizontalDir = horizontalDir;
+		this.verticalDir = verticalDir;
+	}
+	
+	/**
+	 * Builds the graph on the calling thread and draws it into an image, drawing each part as soon
+	 * as it is built.
+	 * @param width the width of the image in pixels
+	 * @param height the height of the image in pixels
+	 * @return the image
+	 * @throws java.util.concurrent.CancellationException if the thread is interrupted
+	 */
+	public BufferedImage renderImage(int width, int height)
+	{
+		GraphState state = parameters.publish();
+		SoftwareRenderer renderer = newRenderer(state, horizontalDir, verticalDir, showAxes, builder.isAxesInverted(), width, height);
+		builder.setViewHeight(height);
+		buildInto(state, drawParts(renderer));
+		return renderer.finish();
+	}
+	
+	/**
+	 * Builds the graph on the calling thread and writes its triangles to a file, writing each part as
+	 * soon as it is built, so that meshes too large to hold in memory can be written.
+	 * @param exporter an exporter that has not started, for the format to write
+	 * @param file the file to write
+	 * @throws IOException if the file cannot be written
+	 * @throws java.util.concurrent.CancellationException if the thread is interrupted
+	 */
+	public void exportMesh(MeshExporter exporter, File file) throws IOException
+	{
+		GraphState state = parameters.publish();
+		exporter.start(file);
+		boolean built = false;
+		try
+		{
+			buildInto(state, exporter);
+			built = true;
+		}
+		finally
+		{
+			if (!built)
+				exporter.cancel();
+		}
+		exporter.finish();
+	}
+	
+	//Builds the graph at the configured resolutions, handing each part to the sink as it is built.
+	private void buildInto(GraphState state, Mesh.Sink sink)
+	{
+		builder.getResolutions().startBuild(1);
+		Mesh mesh = new Mesh();
+		mesh.streamTo(sink);
+		builder.build(state, state.getU(), state.getV(), mesh);
+		mesh.release();
+	}
+	
+	/**
+	 * Returns a SoftwareRenderer with the camera of the given snapshot, which has drawn the axes.
+	 * @param state the snapshot the mesh is built from
+	 * @param horizontalDir the angle of the camera around the z-axis, in radians
+	 * @param verticalDir the angle of the camera above the xy-plane, in radians
+	 * @param showAxes whether to draw the axes
+	 * @param axesInverted whether the y and z axes are switched
+	 * @param width the width of the image in pixels
+	 * @param height the height of the image in pixels
+	 * @return the renderer
+	 */
+	public static SoftwareRenderer newRenderer(GraphState state, double horizontalDir, double verticalDir,
+			boolean showAxes, boolean axesInverted, int width, int height)
+	{
+		double x = state.getDouble(Graph3D.X_CENTER), y = state.getDouble(Graph3D.Y_CENTER), z = state.getDouble(Graph3D.Z_CENTER);
+		double distance = state.getDouble(Graph3D.VIEW_DISTANCE);
+		double[] camera = getCamera(x, y, z, distance, horizontalDir, verticalDir);
+		
+		SoftwareRenderer renderer = new SoftwareRenderer(width, height);
+		renderer.perspective(45, (double)width/height, distance/20, distance*50);
+		renderer.lookAt(camera[0], camera[1], camera[2], x, y, z, camera[3], camera[4], camera[5]);
+		
+		if (showAxes)
+		{
+			double dist = Math.max(Math.abs(x), Math.max(Math.abs(y), Math.abs(z))) + distance;
+			renderer.drawLine(0, 0, 0, dist, 0, 0, 1, 0, 0);
+			renderer.drawLine(0, 0, 0, 0, dist, 0, 0, axesInverted ? 0 : 1, axesInverted ? 1 : 0);
+			renderer.drawLine(0, 0, 0, 0, 0, dist, 0, axesInverted ? 1 : 0, axesInverted ? 0 : 1);
+		}
+		
+		return renderer;
+	}
+	
+	/**
+	 * Returns a sink that draws each part of a mesh with a renderer.
+	 * @param renderer the renderer to draw with
+	 * @return the sink
+	 */
+	public static Mesh.Sink drawParts(final SoftwareRenderer renderer)
+	{
+		return new Mesh.Sink()
+		{
+			public void add(Mesh part)
+			{
+				part.render(renderer);
+			}
+		};
+	}
+	
+	/**
+	 * Returns the position of the eye followed by the up direction, for a camera at the given
+	 * distance from the given center in the given direction.
+	 * @param x the x-coordinate of the center
+	 * @param y the y-coordinate of the center
+	 * @param z the z-coordinate of the center
+	 * @param distance the distance from the center to the eye
+	 * @param horizontalDir the angle around the z-axis, in radians
+	 * @param verticalDir the angle above the xy-plane, in radians
+	 * @return the eye's x, y and z followed by the up direction's
+	 */
+	public static double[] getCamera(double x, double y, double z, double distance, double horizontalDir, double verticalDir)
+	{
+		double cosH = Math.cos(horizontalDir), sinH = Math.sin(horizontalDir);
+		double cosV = Math.cos(verticalDir), sinV = Math.sin(verticalDir);
+		return new double[] {x+distance*cosH*cosV, y+distance*sinH*cosV, z+distance*sinV, -cosH*sinV, -sinH*sinV, cosV};
+	}
+	
+	/**
+	 * Draws a function or parametric graph to a PNG file, or writes its mesh to an STL, PLY or OBJ file,
+	 * with the default bounds and resolutions.
+	 * @param args the type of graph, the width and height of the image, the file, and the expressions
+	 */
+	public static void main(String[] args)
+	{
+		if (args.length < 5)
+		{
+			System.err.println("Usage: HeadlessGraph function width height file.png z");
+			System.err.println("       HeadlessGraph parametric width height file.png x y z");
+			System.exit(2);
+		}
+		
+		HeadlessGraph graph;
+		char[] variables;
+		int expressions;
+		if (args[0].equals("function"))
+		{
+			graph = new HeadlessGraph(new FunctionGraph3DBuilder());
+			variables = new char[] {'x', 'y', 'u', 'v'};
+			expressions = 1;
+		}
+		else if (args[0].equals("parametric"))
+		{
+			graph = new HeadlessGraph(new ParaGraph3DBuilder());
+			variables = new char[] {'s', 't', 'u', 'v'};
+			expressions = 3;
+		}
+		else
+		{
+			System.err.println("Unknown type of graph: " + args[0]);
+			System.exit(2);
+			return;
+		}
+		
+		if (args.length != 4 + expressions)
+		{
+			System.err.println("A " + args[0] + " graph needs " + expressions + " expressions.");
+			System.exit(2);
+		}
+		for (int i=0; i<expressions; i++)
+		{
+			Expression e = ExpressionInput.getExpressionFromString(args[4+i], variables);
+			if (e instanceof InvalidExpression)
+			{
+				System.err.println("Invalid expression: " + args[4+i]);
+				System.exit(1);
+			}
+			graph.setExpression(i, e);
+		}
+		
+		File file = new File(args[3]);
+		try
+		{
+			for (int format=0; format<=MeshExporter.OBJ; format++)
+			{
+				if (args[3].toLowerCase().endsWith("." + MeshExporter.getExtension(format)))
+				{
+					graph.exportMesh(new MeshExporter(format), file);
+					return;
+				}
+			}
+			ImageIO.write(graph.renderImage(Integer.parseInt(args[1]), Integer.parseInt(args[2])), "png", file);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Cannot write " + args[3] + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
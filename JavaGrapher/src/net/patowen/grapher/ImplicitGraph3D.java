@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import com.jogamp.opengl.GL2;
+import static com.jogamp.opengl.GL2.*;
+
+/**
+ * Represents an implicit 3D graph, the surface where an expression of x, y and z is zero.
+ * It is the 3D counterpart of the general graph.
+ * @author Patrick Owen
+ */
+public class ImplicitGraph3D extends Graph3D
+{
+	private static final long serialVersionUID = 1973139872093412258L;
+	
+	public static final int X_MIN = 100, X_MAX = 101, Y_MIN = 102, Y_MAX = 103, Z_MIN = 104, Z_MAX = 105,
+			X_RES = 106, Y_RES = 107, Z_RES = 108;
+	
+	/**
+	 * Constructs an ImplicitGraph3D and initializes its defaults.
+	 */
+	public ImplicitGraph3D()
+	{
+		super(new ImplicitGraph3DBuilder());
+	}
+	
+	public void glInitSpecial(GL2 gl)
+	{
+		gl.glEnableClientState(GL_VERTEX_ARRAY);
+		gl.glEnableClientState(GL_NORMAL_ARRAY);
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import static net.patowen.grapher.ImplicitGraph3D.*;
+
+import java.util.Arrays;
+
+import net.patowen.grapher.math.BatchScratch;
+import net.patowen.grapher.math.Expression;
+
+/**
+ * Builds the surface of an ImplicitGraph3D with an ImplicitPolygonizer.
+ * @author Patrick Owen
+ */
+public class ImplicitGraph3DBuilder extends MeshBuilder
+{
+	//Function values
+	private Expression function;
+	
+	//Graph bounds
+	private double xMin, xMax, yMin, yMax, zMin, zMax;
+	private int xRes, yRes, zRes;
+	
+	private ImplicitPolygonizer polygonizer;
+	
+	/**
+	 * Constructs a ImplicitGraph3DBuilder with nothing sampled yet.
+	 */
+	public ImplicitGraph3DBuilder()
+	{
+		polygonizer = new ImplicitPolygonizer()
+		{
+			protected void evaluate(double[][] points, double[] values, int n)
+			{
+				double[] us = new double[n], vs = new double[n];
+				Arrays.fill(us, u);
+				Arrays.fill(vs, v);
+				function.evalBatch(new double[][] {points[0], points[1], points[2], us, vs}, values, n, new BatchScratch());
+			}
+			
+			protected void gradient(double x, double y, double z, double[] gradient)
+			{
+				double[] point = {x, y, z, u, v};
+				gradient[0] = function.derivative(point, 0);
+				gradient[1] = function.derivative(point, 1);
+				gradient[2] = function.derivative(point, 2);
+			}
+		};
+	}
+	
+	protected void defineParameters(GraphParameters parameters)
+	{
+		parameters.defineExpression(0);
+		parameters.defineDouble(X_MIN, -1, BOUNDS);
+		parameters.defineDouble(X_MAX, 1, BOUNDS);
+		parameters.defineDouble(Y_MIN, -1, BOUNDS);
+		parameters.defineDouble(Y_MAX, 1, BOUNDS);
+		parameters.defineDouble(Z_MIN, -1, BOUNDS);
+		parameters.defineDouble(Z_MAX, 1, BOUNDS);
+		parameters.defineInt(X_RES, 64, RESOLUTION);
+		parameters.defineInt(Y_RES, 64, RESOLUTION);
+		parameters.defineInt(Z_RES, 64, RESOLUTION);
+	}
+	
+	protected void buildMesh(GraphState state, Mesh mesh)
+	{
+		readState(state);
+		
+		if (function != null)
+			polygonizer.polygonize(mesh, xMin, xMax, xRes, yMin, yMax, yRes, zMin, zMax, zRes);
+	}
+	
+	//Copies everything the update depends on from the snapshot being built.
+	private void readState(GraphState state)
+	{
+		function = state.getExpression(0);
+		xMin = state.getDouble(X_MIN);
+		xMax = state.getDouble(X_MAX);
+		yMin = state.getDouble(Y_MIN);
+		yMax = state.getDouble(Y_MAX);
+		zMin = state.getDouble(Z_MIN);
+		zMax = state.getDouble(Z_MAX);
+		xRes = scaleResolution(state, X_RES);
+		yRes = scaleResolution(state, Y_RES);
+		zRes = scaleResolution(state, Z_RES);
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import static net.patowen.grapher.ImplicitGraph3D.*;
+
+import java.awt.BorderLayout;
+import java.awt.GridBagConstraints;
+import java.awt.Window;
+import java.awt.event.ActionListener;
+
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JTextField;
+
+/**
+ * Represents the window for an implicit 3D graph. The manual contains information regarding this graph type.
+ * @author Patrick Owen
+ */
+public class ImplicitGraph3DWindow extends GraphWindow implements ActionListener
+{
+	private static final long serialVersionUID = 1L;
+	
+	private JLabel xMinLabel, xMaxLabel, yMinLabel, yMaxLabel, zMinLabel, zMaxLabel, xResLabel, yResLabel, zResLabel,
+			xCenterLabel, yCenterLabel, zCenterLabel;
+	private JTextField xMinField, xMaxField, yMinField, yMaxField, zMinField, zMaxField, xResField, yResField, zResField,
+			xCenterField, yCenterField, zCenterField;
+	private AutoResolutionPanel autoPanel;
+	
+	/**
+	 * Initializes an ImplicitGraph3DWindow.
+	 * @param owner the owner of the window.
+	 */
+	public ImplicitGraph3DWindow(Window owner)
+	{
+		super(owner, "Implicit 3D Graph");
+		setLayout(new BorderLayout());
+		
+		variableList = new char[] {'x', 'y', 'z', 'u', 'v'};
+		
+		createPresetLinkDouble("x-min", X_MIN); createPresetLinkDouble("x-max", X_MAX);
+		createPresetLinkDouble("y-min", Y_MIN); createPresetLinkDouble("y-max", Y_MAX);
+		createPresetLinkDouble("z-min", Z_MIN); createPresetLinkDouble("z-max", Z_MAX);
+		createPresetLinkInt("x-res", X_RES); createPresetLinkInt("y-res", Y_RES); createPresetLinkInt("z-res", Z_RES);
+		createPresetLinkDouble("x-center", X_CENTER); createPresetLinkDouble("y-center", Y_CENTER);
+		createPresetLinkDouble("z-center", Z_CENTER); createPresetLinkDouble("view-dist", VIEW_DISTANCE);
+		createPresetLinkInt("auto-res", AUTO_RESOLUTION); createPresetLinkDouble("rebuild-budget", REBUILD_BUDGET);
+		
+		presetNames = new String[] {"Sphere", "Torus", "Gyroid"};
+		presetFiles = new String[] {"imp3d1.txt", "imp3d2.txt", "imp3d3.txt"};
+		
+		try
+		{
+			graph = new ImplicitGraph3D();
+		}
+		catch (UnsatisfiedLinkError e)
+		{
+			JOptionPane.showMessageDialog(this, "The program cannot load its native libraries.\nUnless the" +
+					" jar file was messed with, this should not have happened.\nPlease contact Patrick Owen" +
+					" at superlala32@gmail.com", "Error", JOptionPane.ERROR_MESSAGE);
+			dispose();
+			throw e;
+		}
+		
+		setTextFields(new String[] {" = 0"}, true);
+		
+		initialize();
+	}
+	
+	public void prepareBoundsWindow(JDialog win)
+	{
+		xMinLabel = new JLabel("x-min: "); xMaxLabel = new JLabel("x-max: ");
+		yMinLabel = new JLabel("y-min: "); yMaxLabel = new JLabel("y-max: ");
+		zMinLabel = new JLabel("z-min: "); zMaxLabel = new JLabel("z-max: ");
+		xResLabel = new JLabel("x-resolution: "); yResLabel = new JLabel("y-resolution: ");
+		zResLabel = new JLabel("z-resolution: ");
+		xCenterLabel = new JLabel("x-center (view): "); yCenterLabel = new JLabel("y-center (view): ");
+		zCenterLabel = new JLabel("z-center (view): ");
+		
+		alignLabels(xMinLabel, xMaxLabel, yMinLabel, yMaxLabel, zMinLabel, zMaxLabel, xResLabel, yResLabel, zResLabel,
+				xCenterLabel, yCenterLabel, zCenterLabel);
+		
+		xMinField = new JTextField(10); xMaxField = new JTextField(10);
+		yMinField = new JTextField(10); yMaxField = new JTextField(10);
+		zMinField = new JTextField(10); zMaxField = new JTextField(10);
+		xResField = new JTextField(10); yResField = new JTextField(10);
+		zResField = new JTextField(10);
+		xCenterField = new JTextField(10); yCenterField = new JTextField(10);
+		zCenterField = new JTextField(10);
+		
+		createLinkDouble(xMinField, X_MIN); createLinkDouble(xMaxField, X_MAX);
+		createLinkDouble(yMinField, Y_MIN); createLinkDouble(yMaxField, Y_MAX);
+		createLinkDouble(zMinField, Z_MIN); createLinkDouble(zMaxField, Z_MAX);
+		createLinkInt(xResField, X_RES); createLinkInt(yResField, Y_RES); createLinkInt(zResField, Z_RES);
+		createLinkDouble(xCenterField, X_CENTER); createLinkDouble(yCenterField, Y_CENTER);
+		createLinkDouble(zCenterField, Z_CENTER);
+		
+		autoPanel = new AutoResolutionPanel((Graph3D)graph, X_RES, Y_RES, Z_RES);
+		createLinkDouble(autoPanel.getBudgetField(), REBUILD_BUDGET);
+		
+		setBoundsApplyButton = new JButton("Apply");
+		
+		GridBagConstraints c = new GridBagConstraints();
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.gridx = 0; c.gridy = 0; win.add(xMinLabel, c);
+		c.gridx = 1; win.add(xMinField,c);
+		c.gridx = 2; win.add(xMaxLabel,c);
+		c.gridx = 3; win.add(xMaxField,c);
+		
+		c.gridx = 0; c.gridy = 1; win.add(yMinLabel, c);
+		c.gridx = 1; win.add(yMinField,c);
+		c.gridx = 2; win.add(yMaxLabel,c);
+		c.gridx = 3; win.add(yMaxField,c);
+		
+		c.gridx = 0; c.gridy = 2; win.add(zMinLabel, c);
+		c.gridx = 1; win.add(zMinField,c);
+		c.gridx = 2; win.add(zMaxLabel,c);
+		c.gridx = 3; win.add(zMaxField,c);
+		
+		c.gridx = 0; c.gridy = 3; win.add(xResLabel, c);
+		c.gridx = 1; win.add(xResField,c);
+		c.gridx = 2; win.add(yResLabel,c);
+		c.gridx = 3; win.add(yResField,c);
+		
+		c.gridx = 0; c.gridy = 4; win.add(zResLabel, c);
+		c.gridx = 1; win.add(zResField,c);
+		
+		c.gridx = 0; c.gridy = 5; win.add(xCenterLabel, c);
+		c.gridx = 1; win.add(xCenterField,c);
+		c.gridx = 2; win.add(yCenterLabel,c);
+		c.gridx = 3; win.add(yCenterField,c);
+		
+		c.gridx = 0; c.gridy = 6; win.add(zCenterLabel, c);
+		c.gridx = 1; win.add(zCenterField,c);
+		
+		c.gridx = 0; c.gridy = 7; c.gridwidth = 4; win.add(autoPanel, c);
+		
+		c.fill = GridBagConstraints.NONE;
+		c.gridx = 0; c.gridy = 8; win.add(setBoundsApplyButton,c);
+	}
+	
+	protected void applyBounds()
+	{
+		autoPanel.apply();
+	}
+}
@@ -0,0 +1,464 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Polygonizes the surface where a function of x, y and z is zero, within a box split into a grid
+ * of cells. The box is covered by a sparse octree: each node checks whether the surface can pass
+ * through it, from the signs of the function at its corners and center and from how fast the function
+ * changes there, and only nodes that may hold the surface are split. The nodes left at the smallest
+ * size are sampled densely, each on its own thread, and every cell with corners of both signs is split
+ * into six tetrahedra that are polygonized on their own (marching tetrahedra). The vertices on the edges
+ * of the grid are shared between triangles by looking them up by edge in a LongIntMap.
+ * Subclasses provide the function by implementing <code>evaluate</code> and <code>gradient</code>,
+ * which are called from several threads at once.
+ * @author Patrick Owen
+ */
+public abstract class ImplicitPolygonizer
+{
+	//Cells along each side of the smallest nodes, which are sampled densely
+	private static final int LEAF_SIZE = 8;
+	
+	//How much faster than its gradient at the center the function may change across a node that is skipped
+	private static final double MARGIN = 2;
+	
+	/*
+	 * Tetrahedra of a cell, as corners (bit 0 for +x, bit 1 for +y and bit 2 for +z) along each path
+	 * from corner 0 to corner 7 that moves along one axis at a time. Every cell is split the same way,
+	 * so the faces of the tetrahedra of neighboring cells match.
+	 */
+	private static final int[][] TETRAHEDRA = {
+		{0, 1, 3, 7}, {0, 1, 5, 7}, {0, 2, 3, 7}, {0, 2, 6, 7}, {0, 4, 5, 7}, {0, 4, 6, 7}};
+	
+	//State of the current polygonization
+	private double xMin, xMax, yMin, yMax, zMin, zMax;
+	private int xRes, yRes, zRes;
+	
+	/**
+	 * Evaluates the function at many points at once. Points where it is undefined are set to Double.NaN.
+	 * @param points the x-, y- and z-coordinates of the points, as three arrays
+	 * @param values the array that receives the value at each point
+	 * @param n the number of points
+	 */
+	protected abstract void evaluate(double[][] points, double[] values, int n);
+	
+	/**
+	 * Finds the gradient of the function at a point.
+	 * @param x the x-coordinate of the point
+	 * @param y the y-coordinate of the point
+	 * @param z the z-coordinate of the point
+	 * @param gradient the array that receives the three partial derivatives
+	 */
+	protected abstract void gradient(double x, double y, double z, double[] gradient);
+	
+	/**
+	 * Adds the surface where the function is zero within the given box to the mesh. Its normals
+	 * point along the gradient, toward where the function is positive.
+	 * @param mesh the mesh to add the surface to
+	 * @param xMin the smallest x-coordinate of the box
+	 * @param xMax the largest x-coordinate of the box
+	 * @param xRes the number of cells along the x-axis
+	 * @param yMin the smallest y-coordinate of the box
+	 * @param yMax the largest y-coordinate of the box
+	 * @param yRes the number of cells along the y-axis
+	 * @param zMin the smallest z-coordinate of the box
+	 * @param zMax the largest z-coordinate of the box
+	 * @param zRes the number of cells along the z-axis
+	 */
+	public void polygonize(Mesh mesh, double xMin, double xMax, int xRes,
+			double yMin, double yMax, int yRes, double zMin, double zMax, int zRes)
+	{
+		this.xMin = xMin; this.xMax = xMax; this.xRes = xRes;
+		this.yMin = yMin; this.yMax = yMax; this.yRes = yRes;
+		this.zMin = zMin; this.zMax = zMax; this.zRes = zRes;
+		
+		int size = LEAF_SIZE;
+		while (size < Math.max(xRes, Math.max(yRes, zRes)))
+			size *= 2;
+		
+		//Corners of the nodes of the current level, three ints per node
+		int[] nodes = {0, 0, 0};
+		while (true)
+		{
+			final int[] level = nodes;
+			final int levelSize = size;
+			final boolean[] kept = new boolean[level.length/3];
+			new RowLoop()
+			{
+				protected void row(int n)
+				{
+					kept[n] = mayContainSurface(level[n*3], level[n*3+1], level[n*3+2], levelSize);
+				}
+			}.run(0, kept.length);
+			
+			if (size == LEAF_SIZE)
+			{
+				nodes = compact(level, kept);
+				break;
+			}
+			
+			size /= 2;
+			nodes = split(level, kept, size);
+		}
+		
+		final int[] leaves = nodes;
+		final Block[] blocks = new Block[leaves.length/3];
+		new RowLoop()
+		{
+			protected void row(int n)
+			{
+				blocks[n] = polygonizeLeaf(leaves[n*3], leaves[n*3+1], leaves[n*3+2]);
+			}
+		}.run(0, blocks.length);
+		
+		addToMesh(mesh, blocks);
+	}
+	
+	/*
+	 * Returns whether the surface may pass through the node with the given corner and size. It cannot if the function has
+	 * the same sign at the node's corners and center and, going by its gradient at the center, is too far from zero to
+	 * reach it anywhere in the node.
+	 */
+	private boolean mayContainSurface(int i0, int j0, int k0, int size)
+	{
+		int i1 = Math.min(i0+size, xRes), j1 = Math.min(j0+size, yRes), k1 = Math.min(k0+size, zRes);
+		double[][] points = new double[3][9];
+		double[] values = new double[9];
+		
+		for (int corner=0; corner<8; corner++)
+		{
+			points[0][corner] = x((corner & 1) == 0 ? i0 : i1);
+			points[1][corner] = y((corner & 2) == 0 ? j0 : j1);
+			points[2][corner] = z((corner & 4) == 0 ? k0 : k1);
+		}
+		double cx = (x(i0)+x(i1))/2, cy = (y(j0)+y(j1))/2, cz = (z(k0)+z(k1))/2;
+		points[0][8] = cx; points[1][8] = cy; points[2][8] = cz;
+		evaluate(points, values, 9);
+		
+		double center = values[8];
+		if (!isFinite(center) || center == 0)
+			return true;
+		for (int corner=0; corner<8; corner++)
+			if (!isFinite(values[corner]) || values[corner] == 0 || (values[corner] > 0) != (center > 0))
+				return true;
+		
+		double[] gradient = new double[3];
+		gradient(cx, cy, cz, gradient);
+		double slope = Math.sqrt(gradient[0]*gradient[0] + gradient[1]*gradient[1] + gradient[2]*gradient[2]);
+		if (!isFinite(slope))
+			return true;
+		
+		double dx = x(i1)-x(i0), dy = y(j1)-y(j0), dz = z(k1)-z(k0);
+		double halfDiagonal = Math.sqrt(dx*dx + dy*dy + dz*dz)/2;
+		return Math.abs(center) <= MARGIN*slope*halfDiagonal;
+	}
+	
+	//Returns the nodes that were kept.
+	private static int[] compact(int[] nodes, boolean[] kept)
+	{
+		int[] result = new int[nodes.length];
+		int count = 0;
+		for (int n=0; n<kept.length; n++)
+		{
+			if (!kept[n])
+				continue;
+			result[count++] = nodes[n*3]; result[count++] = nodes[n*3+1]; result[count++] = nodes[n*3+2];
+		}
+		return Arrays.copyOf(result, count);
+	}
+	
+	//Returns the children of the nodes that were kept, leaving out those outside the grid.
+	private int[] split(int[] nodes, boolean[] kept, int childSize)
+	{
+		int[] result = new int[nodes.length*8];
+		int count = 0;
+		for (int n=0; n<kept.length; n++)
+		{
+			if (!kept[n])
+				continue;
+			for (int child=0; child<8; child++)
+			{
+				int i = nodes[n*3] + ((child & 1) == 0 ? 0 : childSize);
+				int j = nodes[n*3+1] + ((child & 2) == 0 ? 0 : childSize);
+				int k = nodes[n*3+2] + ((child & 4) == 0 ? 0 : childSize);
+				if (i >= xRes || j >= yRes || k >= zRes)
+					continue;
+				result[count++] = i; result[count++] = j; result[count++] = k;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+	
+	//Samples the smallest node with the given corner at every point of the grid and polygonizes its cells.
+	private Block polygonizeLeaf(int i0, int j0, int k0)
+	{
+		int ni = Math.min(LEAF_SIZE, xRes-i0)+1, nj = Math.min(LEAF_SIZE, yRes-j0)+1, nk = Math.min(LEAF_SIZE, zRes-k0)+1;
+		int n = ni*nj*nk;
+		double[][] points = new double[3][n];
+		double[] values = new double[n];
+		
+		for (int a=0; a<ni; a++)
+		{
+			for (int b=0; b<nj; b++)
+			{
+				for (int c=0; c<nk; c++)
+				{
+					int p = (a*nj + b)*nk + c;
+					points[0][p] = x(i0+a); points[1][p] = y(j0+b); points[2][p] = z(k0+c);
+				}
+			}
+		}
+		evaluate(points, values, n);
+		
+		Block block = new Block();
+		double[] corners = new double[8];
+		for (int a=0; a<ni-1; a++)
+		{
+			for (int b=0; b<nj-1; b++)
+			{
+				for (int c=0; c<nk-1; c++)
+				{
+					int positive = 0;
+					boolean defined = true;
+					for (int corner=0; corner<8; corner++)
+					{
+						double value = values[((a + (corner & 1))*nj + b + ((corner >> 1) & 1))*nk + c + ((corner >> 2) & 1)];
+						corners[corner] = value;
+						if (!isFinite(value)) defined = false;
+						else if (value > 0) positive++;
+					}
+					
+					if (defined && positive != 0 && positive != 8)
+					{
+						for (int[] tetrahedron:TETRAHEDRA)
+							polygonizeTetrahedron(block, i0+a, j0+b, k0+c, tetrahedron, corners);
+					}
+				}
+			}
+		}
+		
+		return block;
+	}
+	
+	/*
+	 * Adds the triangles where the surface crosses one tetrahedron of the cell with the given corner. The surface
+	 * separates the corners where the function is positive from the rest, so it is a triangle around a corner
+	 * that differs from the other three, or a quadrilateral between two pairs of corners.
+	 */
+	private void polygonizeTetrahedron(Block block, int i, int j, int k, int[] tetrahedron, double[] corners)
+	{
+		int[] positive = block.positive, negative = block.negative;
+		int p = 0, n = 0;
+		for (int corner:tetrahedron)
+		{
+			if (corners[corner] > 0) positive[p++] = corner;
+			else negative[n++] = corner;
+		}
+		
+		if (p == 1 || p == 3)
+		{
+			int[] lone = p == 1 ? positive : negative, rest = p == 1 ? negative : positive;
+			int v1 = edgeVertex(block, i, j, k, lone[0], rest[0], corners);
+			int v2 = edgeVertex(block, i, j, k, lone[0], rest[1], corners);
+			int v3 = edgeVertex(block, i, j, k, lone[0], rest[2], corners);
+			block.addTriangle(v1, v2, v3);
+		}
+		else if (p == 2)
+		{
+			int v1 = edgeVertex(block, i, j, k, positive[0], negative[0], corners);
+			int v2 = edgeVertex(block, i, j, k, positive[0], negative[1], corners);
+			int v3 = edgeVertex(block, i, j, k, positive[1], negative[1], corners);
+			int v4 = edgeVertex(block, i, j, k, positive[1], negative[0], corners);
+			block.addTriangle(v1, v2, v3);
+			block.addTriangle(v1, v3, v4);
+		}
+	}
+	
+	/*
+	 * Returns the index within the block of the vertex where the surface crosses the edge between two corners of the cell
+	 * with the given corner, adding it if the block does not have it yet. The edges of the tetrahedra all point toward
+	 * positive x, y and z, so an edge is named by its lower end and its direction.
+	 */
+	private int edgeVertex(Block block, int i, int j, int k, int corner1, int corner2, double[] corners)
+	{
+		int low = Integer.bitCount(corner1) < Integer.bitCount(corner2) ? corner1 : corner2;
+		int high = low == corner1 ? corner2 : corner1;
+		
+		int li = i + (low & 1), lj = j + ((low >> 1) & 1), lk = k + ((low >> 2) & 1);
+		int hi = i + (high & 1), hj = j + ((high >> 1) & 1), hk = k + ((high >> 2) & 1);
+		long key = ((((long)li*(yRes+1) + lj)*(zRes+1) + lk) << 3) | (high & ~low);
+		
+		int existing = block.edges.putIfAbsent(key, block.vertexCount);
+		if (existing != -1)
+			return existing;
+		
+		//The function is positive at one end and not at the other, so the division is safe.
+		double f1 = corners[low], f2 = corners[high];
+		double t = f1/(f1-f2);
+		double x = x(li) + (x(hi)-x(li))*t, y = y(lj) + (y(hj)-y(lj))*t, z = z(lk) + (z(hk)-z(lk))*t;
+		
+		//Where the gradient is not defined, the normal points along the edge toward the positive end.
+		double[] gradient = block.gradient;
+		gradient(x, y, z, gradient);
+		double n = Math.sqrt(gradient[0]*gradient[0] + gradient[1]*gradient[1] + gradient[2]*gradient[2]);
+		if (!isFinite(n) || n == 0)
+		{
+			double sign = f2 > 0 ? 1 : -1;
+			gradient[0] = sign*(x(hi)-x(li)); gradient[1] = sign*(y(hj)-y(lj)); gradient[2] = sign*(z(hk)-z(lk));
+			n = Math.sqrt(gradient[0]*gradient[0] + gradient[1]*gradient[1] + gradient[2]*gradient[2]);
+		}
+		
+		block.addVertex(key, x, y, z, gradient[0]/n, gradient[1]/n, gradient[2]/n);
+		return block.vertexCount-1;
+	}
+	
+	/*
+	 * Gives every vertex of the blocks its index in the mesh, sharing the vertices on the edges between blocks,
+	 * and copies the blocks into the mesh's buffers.
+	 */
+	private void addToMesh(Mesh mesh, final Block[] blocks)
+	{
+		int vertices = 0;
+		for (Block block:blocks)
+			vertices += block.vertexCount;
+		
+		LongIntMap shared = new LongIntMap(vertices);
+		final int[] orderOffsets = new int[blocks.length];
+		int vertexCount = 0, indexCount = 0;
+		for (int n=0; n<blocks.length; n++)
+		{
+			Block block = blocks[n];
+			block.remap = new int[block.vertexCount];
+			block.owned = new boolean[block.vertexCount];
+			for (int v=0; v<block.vertexCount; v++)
+			{
+				int existing = shared.putIfAbsent(block.keys[v], vertexCount);
+				block.owned[v] = existing == -1;
+				block.remap[v] = existing == -1 ? vertexCount++ : existing;
+			}
+			orderOffsets[n] = indexCount;
+			indexCount += block.indexCount;
+		}
+		
+		if (indexCount == 0)
+			return;
+		
+		final FloatBuffer vertexBuffer = mesh.newFloatBuffer(vertexCount*6);
+		final IntBuffer order = mesh.newIntBuffer(indexCount);
+		new RowLoop()
+		{
+			protected void row(int n)
+			{
+				Block block = blocks[n];
+				for (int v=0; v<block.vertexCount; v++)
+				{
+					if (!block.owned[v])
+						continue;
+					for (int f=0; f<6; f++)
+						vertexBuffer.put(block.remap[v]*6 + f, block.data[v*6 + f]);
+				}
+				for (int o=0; o<block.indexCount; o++)
+					order.put(orderOffsets[n] + o, block.remap[block.order[o]]);
+			}
+		}.run(0, blocks.length);
+		
+		mesh.addTriangles(vertexBuffer, order, indexCount);
+	}
+	
+	//Returns the x-coordinate of the given index of the grid.
+	private double x(int i)
+	{
+		return xMin + (xMax-xMin)*i/xRes;
+	}
+	
+	//Returns the y-coordinate of the given index of the grid.
+	private double y(int j)
+	{
+		return yMin + (yMax-yMin)*j/yRes;
+	}
+	
+	//Returns the z-coordinate of the given index of the grid.
+	private double z(int k)
+	{
+		return zMin + (zMax-zMin)*k/zRes;
+	}
+	
+	//Returns whether the number is neither infinite nor NaN.
+	private static boolean isFinite(double value)
+	{
+		return !Double.isNaN(value) && !Double.isInfinite(value);
+	}
+	
+	//The triangles of one of the smallest nodes, with vertices of its own
+	private static class Block
+	{
+		//Vertices by the edge they lie on, then their edges, positions and normals
+		public LongIntMap edges = new LongIntMap(64);
+		public long[] keys = new long[64];
+		public float[] data = new float[64*6];
+		public int vertexCount;
+		
+		public int[] order = new int[192];
+		public int indexCount;
+		
+		//Space for the corners of a tetrahedron and for a gradient
+		public int[] positive = new int[4], negative = new int[4];
+		public double[] gradient = new double[3];
+		
+		//Indices of the vertices in the mesh, and whether this block is the one that copies each
+		public int[] remap;
+		public boolean[] owned;
+		
+		public void addVertex(long key, double x, double y, double z, double nx, double ny, double nz)
+		{
+			if (vertexCount == keys.length)
+			{
+				keys = Arrays.copyOf(keys, vertexCount*2);
+				data = Arrays.copyOf(data, vertexCount*12);
+			}
+			keys[vertexCount] = key;
+			int vc = vertexCount*6; //vertexCounter
+			data[vc] = (float)x; data[vc+1] = (float)y; data[vc+2] = (float)z;
+			data[vc+3] = (float)nx; data[vc+4] = (float)ny; data[vc+5] = (float)nz;
+			vertexCount++;
+		}
+		
+		//Adds a triangle, turning it so that its front faces the side its normals point to.
+		public void addTriangle(int v1, int v2, int v3)
+		{
+			if (indexCount+3 > order.length)
+				order = Arrays.copyOf(order, order.length*2);
+			
+			float ax = data[v2*6]-data[v1*6], ay = data[v2*6+1]-data[v1*6+1], az = data[v2*6+2]-data[v1*6+2];
+			float bx = data[v3*6]-data[v1*6], by = data[v3*6+1]-data[v1*6+1], bz = data[v3*6+2]-data[v1*6+2];
+			float nx = data[v1*6+3]+data[v2*6+3]+data[v3*6+3];
+			float ny = data[v1*6+4]+data[v2*6+4]+data[v3*6+4];
+			float nz = data[v1*6+5]+data[v2*6+5]+data[v3*6+5];
+			boolean flip = (ay*bz-az*by)*nx + (az*bx-ax*bz)*ny + (ax*by-ay*bx)*nz < 0;
+			
+			order[indexCount++] = v1;
+			order[indexCount++] = flip ? v3 : v2;
+			order[indexCount++] = flip ? v2 : v3;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.util.Arrays;
+
+/**
+ * A map from non-negative longs to ints that stores its entries in two flat arrays, with no
+ * object per entry. It is meant for deduplicating vertices by a key that encodes where they
+ * come from, such as the edge of a grid they lie on, where a HashMap would box every key.
+ * Collisions are resolved by linear probing.
+ * @author Patrick Owen
+ */
+public class LongIntMap
+{
+	//Marks an empty slot, which no key can equal since keys are non-negative
+	private static final long EMPTY = -1;
+	
+	private long[] keys;
+	private int[] values;
+	private int size, mask;
+	
+	/**
+	 * Constructs an empty LongIntMap with room for the given number of entries before it grows.
+	 * @param expected the number of entries expected
+	 */
+	public LongIntMap(int expected)
+	{
+		int capacity = Integer.highestOneBit(Math.max(4, expected*2-1))*2;
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		mask = capacity-1;
+		size = 0;
+	}
+	
+	/**
+	 * Returns the value of the given key.
+	 * @param key the key, at least 0
+	 * @return the value, or -1 if the key is not in the map
+	 */
+	public int get(long key)
+	{
+		for (int slot = hash(key) & mask; ; slot = (slot+1) & mask)
+		{
+			if (keys[slot] == key)
+				return values[slot];
+			if (keys[slot] == EMPTY)
+				return -1;
+		}
+	}
+	
+	/**
+	 * Adds the given key with the given value, unless the key is already in the map.
+	 * @param key the key, at least 0
+	 * @param value the value to give the key if it is new
+	 * @return the value the key already had, or -1 if it was added
+	 */
+	public int putIfAbsent(long key, int value)
+	{
+		int slot = hash(key) & mask;
+		while (keys[slot] != EMPTY)
+		{
+			if (keys[slot] == key)
+				return values[slot];
+			slot = (slot+1) & mask;
+		}
+		
+		keys[slot] = key;
+		values[slot] = value;
+		size++;
+		if (size*2 > keys.length)
+			grow();
+		return -1;
+	}
+	
+	/**
+	 * Returns the number of keys in the map.
+	 * @return the number of keys
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Removes every key from the map, keeping its capacity.
+	 */
+	public void clear()
+	{
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+	
+	//Doubles the capacity, keeping every entry.
+	private void grow()
+	{
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[oldKeys.length*2];
+		values = new int[oldKeys.length*2];
+		Arrays.fill(keys, EMPTY);
+		mask = keys.length-1;
+		
+		for (int i=0; i<oldKeys.length; i++)
+		{
+			if (oldKeys[i] == EMPTY)
+				continue;
+			int slot = hash(oldKeys[i]) & mask;
+			while (keys[slot] != EMPTY)
+				slot = (slot+1) & mask;
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+		}
+	}
+	
+	//Spreads the bits of a key so that keys of neighboring vertices land in different slots.
+	private static int hash(long key)
+	{
+		key *= 0x9E3779B97F4A7C15L;
+		return (int)(key ^ (key >>> 32));
+	}
+}
@@ -60,6 +60,8 @@ public class MainFrame extends JFrame implements ActionListener
 	private JMenuItem newFunctionGraph3D;
 	private JMenuItem newParaCurve3D;
 	private JMenuItem newParaGraph3D;
+	private JMenuItem newImplicitGraph3D;
+	private JMenuItem newSceneGraph3D;
 	private JMenuItem newDiskGraph3D;
 	private JMenuItem newShellGraph3D;
 	private JMenuItem newCrossSectionGraph3D;
@@ -112,6 +114,8 @@ public class MainFrame extends JFrame implements ActionListener
 		newFunctionGraph3D = new JMenuItem("New 3D Function Graph");
 		newParaCurve3D = new JMenuItem("New 3D Parametric Curve");
 		newParaGraph3D = new JMenuItem("New 3D Parametric Surface");
+		newImplicitGraph3D = new JMenuItem("New Implicit 3D Graph");
+		newSceneGraph3D = new JMenuItem("New 3D Scene");
 		newDiskGraph3D = new JMenuItem("New Disk/Washer Graph");
 		newShellGraph3D = new JMenuItem("New Cylindrical Shell Graph");
 		newCrossSectionGraph3D = new JMenuItem("New Cross Section Graph");
@@ -122,6 +126,8 @@ public class MainFrame extends JFrame implements ActionListener
 		addItem(newFunctionGraph3D);
 		addItem(newParaCurve3D);
 		addItem(newParaGraph3D);
+		addItem(newImplicitGraph3D);
+		addItem(newSceneGraph3D);
 		fileMenu.addSeparator();
 		addItem(newDiskGraph3D);
 		addItem(newShellGraph3D);
@@ -293,6 +299,16 @@ public class MainFrame extends JFrame implements ActionListener
 		new ParaGraph3DWindow(this);
 	}
 	
+	private void showImplicitGraph3D()
+	{
+		new ImplicitGraph3DWindow(this);
+	}
+	
+	private void showSceneGraph3D()
+	{
+		new SceneGraph3DWindow(this);
+	}
+	
 	private void showDiskGraph3D()
 	{
 		new DiskGraph3DWindow(this);
@@ -322,6 +338,10 @@ public class MainFrame extends JFrame implements ActionListener
 			showParaCurve3D();
 		else if (e.getSource() == newParaGraph3D)
 			showParaGraph3D();
+		else if (e.getSource() == newImplicitGraph3D)
+			showImplicitGraph3D();
+		else if (e.getSource() == newSceneGraph3D)
+			showSceneGraph3D();
 		else if (e.getSource() == newDiskGraph3D)
 			showDiskGraph3D();
 		else if (e.getSource() == newShellGraph3D)
@@ -0,0 +1,823 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import static com.jogamp.opengl.GL.GL_ARRAY_BUFFER;
+import static com.jogamp.opengl.GL.GL_ELEMENT_ARRAY_BUFFER;
+import static com.jogamp.opengl.GL.GL_FLOAT;
+import static com.jogamp.opengl.GL.GL_FRONT_AND_BACK;
+import static com.jogamp.opengl.GL.GL_LINES;
+import static com.jogamp.opengl.GL.GL_STATIC_DRAW;
+import static com.jogamp.opengl.GL.GL_TRIANGLES;
+import static com.jogamp.opengl.GL.GL_UNSIGNED_INT;
+import static com.jogamp.opengl.GL.GL_UNSIGNED_SHORT;
+import static com.jogamp.opengl.fixedfunc.GLLightingFunc.GL_AMBIENT_AND_DIFFUSE;
+import static com.jogamp.opengl.fixedfunc.GLLightingFunc.GL_LIGHTING;
+import static com.jogamp.opengl.fixedfunc.GLPointerFunc.GL_NORMAL_ARRAY;
+import static com.jogamp.opengl.fixedfunc.GLPointerFunc.GL_VERTEX_ARRAY;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.opengl.GL2;
+
+/**
+ * The geometry of a 3D graph, ready to be drawn. Meshes are built away from the GL thread
+ * and handed over whole once they are complete, so they are not modified after being built.
+ * Parts are uploaded into buffer objects by the GL thread, at the latest the first time the
+ * mesh is drawn, and every later frame draws from those. Lit vertices are stored interleaved,
+ * with the three floats of the position followed by the three floats of the normal.
+ * A mesh's buffers can come from a <code>MeshBuffers</code>, in which case they are returned
+ * to it once they have been uploaded or the mesh is released. Each buffer belongs to one part.
+ * Grids of the same size share their indices, and parts of such grids in meshes with a MeshBuffers
+ * share one buffer object of indices from it as well, so the indices of a grid are uploaded once.
+ * <p>
+ * Every part keeps the bounding box of its vertices, and parts that lie entirely outside the
+ * view are not drawn. A mesh that is too large to keep in client memory can be streamed, in
+ * which case the GL thread uploads its parts while it is still being built. A pickable mesh also
+ * keeps a copy of the positions of its triangles, which outlives the upload, for a MeshPicker.
+ * Only so many triangles are kept, and a mesh with more stops being pickable. A mesh that is
+ * written to a file or drawn without OpenGL can instead hand each part to a <code>Mesh.Sink</code>
+ * as it is added and keep none of them.
+ * <p>
+ * Several surfaces or curves of different colors can share one part, with each color drawn from
+ * its own range of the part's indices. They are uploaded as one buffer and drawn with one draw
+ * call per color, without binding anything in between.
+ * @author Patrick Owen
+ */
+public class Mesh
+{
+	/**
+	 * The most triangles a pickable mesh keeps for picking. Their copy and the MeshPicker built over
+	 * them take about a hundred bytes per triangle, so larger meshes are not picked.
+	 */
+	public static final int MAX_PICK_TRIANGLES = 1 << 20;
+	
+	//Floats per vertex of lit parts, and the size of a float
+	private static final int LIT_STRIDE = 6, FLOAT_SIZE = 4;
+	private static final float[] WHITE = {1, 1, 1, 1};
+	
+	private List<Part> parts;
+	
+	//Bytes of vertex and index data of every part
+	private long size;
+	
+	//Streaming, with the bytes of vertex data added but not yet uploaded
+	private long pending, maxPending;
+	private Runnable requestUpload;
+	
+	//Where parts go as they are added instead of being kept, if anywhere
+	private Sink sink;
+	
+	//Where the buffers came from and go back to, if anywhere
+	private MeshBuffers buffers;
+	private List<FloatBuffer> floatBuffers;
+	private List<IntBuffer> intBuffers;
+	
+	//Triangles kept for picking, or null if the mesh is not pickable
+	private List<MeshPicker.Surface> pickSurfaces;
+	private int pickTriangles;
+	private boolean tooLargeToPick;
+	
+	/**
+	 * Constructs an empty Mesh, which draws nothing.
+	 */
+	public Mesh()
+	{
+		this(null);
+	}
+	
+	/**
+	 * Constructs an empty Mesh whose buffers are taken from and returned to the given MeshBuffers.
+	 * @param buffers the source of reusable buffers, or null to always allocate new ones
+	 */
+	public Mesh(MeshBuffers buffers)
+	{
+		parts = new ArrayList<Part>();
+		this.buffers = buffers;
+		floatBuffers = new ArrayList<FloatBuffer>();
+		intBuffers = new ArrayList<IntBuffer>();
+		size = 0;
+		pending = 0;
+		maxPending = Long.MAX_VALUE;
+		requestUpload = null;
+		sink = null;
+		pickSurfaces = null;
+		pickTriangles = 0;
+		tooLargeToPick = false;
+	}
+	
+	/**
+	 * Limits how much vertex data of this mesh waits on the client side to be uploaded, so that a
+	 * mesh far larger than the memory available can be built. Once more than the given number of
+	 * bytes are waiting, adding a part asks for an upload and waits until <code>upload</code> has
+	 * been called on the GL thread or streaming is stopped.
+	 * @param maxPending the number of bytes of vertex data that may wait to be uploaded
+	 * @param requestUpload called on the building thread to ask for <code>upload</code> to be called
+	 */
+	public synchronized void stream(long maxPending, Runnable requestUpload)
+	{
+		this.maxPending = maxPending;
+		this.requestUpload = requestUpload;
+	}
+	
+	/**
+	 * Stops streaming the mesh, so that parts that are added wait on the client side to be uploaded
+	 * the next time the mesh is drawn, however many there are. A building thread waiting for an upload
+	 * continues. This is for when <code>upload</code> will not be called, such as when nothing draws.
+	 */
+	public synchronized void stopStreaming()
+	{
+		maxPending = Long.MAX_VALUE;
+		requestUpload = null;
+		notifyAll();
+	}
+	
+	/**
+	 * Hands every part added to this mesh from now on to the given sink, as a mesh of its own, instead
+	 * of keeping it. The part's buffers are returned to be reused as soon as the sink is done with them,
+	 * so no more than one part is held at a time however large the mesh is. Parts are handed over one
+	 * at a time, on the thread that adds them.
+	 * @param sink what receives the parts
+	 */
+	public synchronized void streamTo(Sink sink)
+	{
+		this.sink = sink;
+	}
+	
+	/**
+	 * Sets whether the mesh keeps a copy of the positions of the triangles added to it from now on,
+	 * to be taken with <code>takePickSurfaces</code>. Once more than MAX_PICK_TRIANGLES have been
+	 * added, the copy is dropped and the mesh stops being pickable.
+	 * @param pickable whether the mesh should keep its triangles for picking
+	 */
+	public synchronized void setPickable(boolean pickable)
+	{
+		pickSurfaces = pickable ? new ArrayList<MeshPicker.Surface>() : null;
+		pickTriangles = 0;
+		tooLargeToPick = false;
+	}
+	
+	/**
+	 * Returns whether the mesh keeps a copy of its triangles for picking, so that builders
+	 * know whether to work out the parameters of their vertices.
+	 * @return whether the mesh is pickable
+	 */
+	public synchronized boolean isPickable()
+	{
+		return pickSurfaces != null;
+	}
+	
+	/**
+	 * Returns whether the mesh stopped being pickable because it has more than MAX_PICK_TRIANGLES triangles.
+	 * @return whether the mesh is too large to pick
+	 */
+	public synchronized boolean isTooLargeToPick()
+	{
+		return tooLargeToPick;
+	}
+	
+	/**
+	 * Returns the triangles kept for picking since the last call and stops keeping them.
+	 * @return the triangles of each part, or an empty list if the mesh is not pickable
+	 */
+	public synchronized List<MeshPicker.Surface> takePickSurfaces()
+	{
+		if (pickSurfaces == null)
+			return new ArrayList<MeshPicker.Surface>();
+		
+		List<MeshPicker.Surface> taken = pickSurfaces;
+		pickSurfaces = new ArrayList<MeshPicker.Surface>();
+		return taken;
+	}
+	
+	/**
+	 * Returns a direct buffer to be filled and then added to this mesh. The buffer's position is 0,
+	 * its limit is the requested size, and its contents are undefined. Different threads may write
+	 * to different parts of the buffer with absolute puts.
+	 * @param size the number of floats needed
+	 * @return the buffer
+	 */
+	public FloatBuffer newFloatBuffer(int size)
+	{
+		FloatBuffer buffer = buffers == null ? Buffers.newDirectFloatBuffer(size) : buffers.getFloats(size);
+		floatBuffers.add(buffer);
+		return buffer;
+	}
+	
+	/**
+	 * Returns a direct buffer to be filled and then added to this mesh. The buffer's position is 0,
+	 * its limit is the requested size, and its contents are undefined. Different threads may write
+	 * to different parts of the buffer with absolute puts.
+	 * @param size the number of ints needed
+	 * @return the buffer
+	 */
+	public IntBuffer newIntBuffer(int size)
+	{
+		IntBuffer buffer = buffers == null ? Buffers.newDirectIntBuffer(size) : buffers.getInts(size);
+		intBuffers.add(buffer);
+		return buffer;
+	}
+	
+	/**
+	 * Returns a buffer for this mesh that holds the given positions and normals interleaved.
+	 * This is for small parts that are simpler to build as two separate arrays.
+	 * @param vertices the positions of the vertices, three floats each
+	 * @param normals the normals of the vertices, three floats each
+	 * @return the interleaved buffer
+	 */
+	public FloatBuffer interleave(float[] vertices, float[] normals)
+	{
+		FloatBuffer buffer = newFloatBuffer(vertices.length*2);
+		for (int i=0; i<vertices.length; i+=3)
+		{
+			buffer.put(vertices, i, 3);
+			buffer.put(normals, i, 3);
+		}
+		buffer.rewind();
+		return buffer;
+	}
+	
+	/**
+	 * Returns this mesh's buffers for reuse by later meshes. Only for meshes that were never drawn,
+	 * since the buffer objects of a drawn mesh are freed with <code>dispose</code> on the GL thread.
+	 */
+	public synchronized void release()
+	{
+		recycleBuffers();
+		parts.clear();
+		size = 0;
+		pending = 0;
+	}
+	
+	//Returns the client-side buffers to be reused.
+	private void recycleBuffers()
+	{
+		if (buffers != null)
+		{
+			for (FloatBuffer buffer:floatBuffers)
+				buffers.recycle(buffer);
+			for (IntBuffer buffer:intBuffers)
+				buffers.recycle(buffer);
+		}
+		floatBuffers.clear();
+		intBuffers.clear();
+	}
+	
+	//Returns a client-side buffer of this mesh to be reused once its part no longer needs it.
+	private void recycle(Buffer buffer)
+	{
+		for (int i=0; i<floatBuffers.size(); i++)
+		{
+			if (floatBuffers.get(i) == buffer)
+			{
+				FloatBuffer removed = floatBuffers.remove(i);
+				if (buffers != null)
+					buffers.recycle(removed);
+				return;
+			}
+		}
+		for (int i=0; i<intBuffers.size(); i++)
+		{
+			if (intBuffers.get(i) == buffer)
+			{
+				IntBuffer removed = intBuffers.remove(i);
+				if (buffers != null)
+					buffers.recycle(removed);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Adds lit triangles to the mesh.
+	 * @param vertices the positions and normals of the vertices, six floats each
+	 * @param order the indices of the vertices of each triangle
+	 * @param count the number of indices to draw
+	 */
+	public void addTriangles(FloatBuffer vertices, IntBuffer order, int count)
+	{
+		addTriangles(vertices, order, count, null);
+	}
+	
+	/**
+	 * Adds lit triangles to the mesh, along with the parameters of the surface at each vertex for picking.
+	 * @param vertices the positions and normals of the vertices, six floats each
+	 * @param order the indices of the vertices of each triangle
+	 * @param count the number of indices to draw
+	 * @param parameters the s and t of each vertex, or null if they are not known
+	 */
+	public void addTriangles(FloatBuffer vertices, IntBuffer order, int count, float[] parameters)
+	{
+		Part part = new Part(GL_TRIANGLES, vertices, true, order, GL_UNSIGNED_INT, count);
+		keepForPicking(part, parameters);
+		addPart(part);
+	}
+	
+	/**
+	 * Adds lit triangles to the mesh, connecting a grid of vertices with shared indices.
+	 * @param vertices the positions and normals of the vertices, six floats each, in the order given by the topology
+	 * @param topology the triangles of the grid
+	 */
+	public void addTriangles(FloatBuffer vertices, GridTopology topology)
+	{
+		addTriangles(vertices, topology, null);
+	}
+	
+	/**
+	 * Adds lit triangles to the mesh, connecting a grid of vertices with shared indices, along with
+	 * the parameters of the surface at each vertex for picking.
+	 * @param vertices the positions and normals of the vertices, six floats each, in the order given by the topology
+	 * @param topology the triangles of the grid
+	 * @param parameters the s and t of each vertex, or null if they are not known
+	 */
+	public void addTriangles(FloatBuffer vertices, GridTopology topology, float[] parameters)
+	{
+		Part part = new Part(GL_TRIANGLES, vertices, true, topology.getIndices(), topology.getIndexType(), topology.getCount());
+		part.topology = topology;
+		keepForPicking(part, parameters);
+		addPart(part);
+	}
+	
+	/**
+	 * Adds lit triangles of one color to the mesh, connecting a grid of vertices with shared indices,
+	 * along with the parameters of the surface at each vertex for picking.
+	 * @param vertices the positions and normals of the vertices, six floats each, in the order given by the topology
+	 * @param topology the triangles of the grid
+	 * @param parameters the s and t of each vertex, or null if they are not known
+	 * @param r the red component of the color, from 0 to 1
+	 * @param g the green component of the color, from 0 to 1
+	 * @param b the blue component of the color, from 0 to 1
+	 */
+	public void addTriangles(FloatBuffer vertices, GridTopology topology, float[] parameters, float r, float g, float b)
+	{
+		Part part = new Part(GL_TRIANGLES, vertices, true, topology.getIndices(), topology.getIndexType(), topology.getCount());
+		part.topology = topology;
+		part.setColors(new int[] {topology.getCount()}, new float[] {r, g, b});
+		keepForPicking(part, parameters);
+		addPart(part);
+	}
+	
+	/**
+	 * Adds lit triangles of several colors to the mesh, sharing one buffer of vertices and one of indices.
+	 * The triangles of each color are a range of the indices, which ends where the next one starts.
+	 * @param vertices the positions and normals of the vertices, six floats each
+	 * @param order the indices of the vertices of each triangle
+	 * @param ends the index after the last index of each color, in increasing order
+	 * @param colors the red, green and blue components of each color, from 0 to 1
+	 * @param parameters the s and t of each vertex, or null if they are not known
+	 */
+	public void addTriangles(FloatBuffer vertices, IntBuffer order, int[] ends, float[] colors, float[] parameters)
+	{
+		Part part = new Part(GL_TRIANGLES, vertices, true, order, GL_UNSIGNED_INT, ends[ends.length-1]);
+		part.setColors(ends, colors);
+		keepForPicking(part, parameters);
+		addPart(part);
+	}
+	
+	/**
+	 * Adds unlit white line segments to the mesh.
+	 * @param vertices the positions of the vertices, three floats each
+	 * @param order the indices of the endpoints of each segment
+	 * @param count the number of indices to draw
+	 */
+	public void addLines(FloatBuffer vertices, IntBuffer order, int count)
+	{
+		addLines(vertices, order, count, 1, 1, 1);
+	}
+	
+	/**
+	 * Adds unlit line segments of the given color to the mesh.
+	 * @param vertices the positions of the vertices, three floats each
+	 * @param order the indices of the endpoints of each segment
+	 * @param count the number of indices to draw
+	 * @param r the red component of the color, from 0 to 1
+	 * @param g the green component of the color, from 0 to 1
+	 * @param b the blue component of the color, from 0 to 1
+	 */
+	public void addLines(FloatBuffer vertices, IntBuffer order, int count, float r, float g, float b)
+	{
+		addLines(vertices, order, new int[] {count}, new float[] {r, g, b});
+	}
+	
+	/**
+	 * Adds unlit line segments of several colors to the mesh, sharing one buffer of vertices and one of
+	 * indices. The segments of each color are a range of the indices, which ends where the next one starts.
+	 * @param vertices the positions of the vertices, three floats each
+	 * @param order the indices of the endpoints of each segment
+	 * @param ends the index after the last index of each color, in increasing order
+	 * @param colors the red, green and blue components of each color, from 0 to 1
+	 */
+	public void addLines(FloatBuffer vertices, IntBuffer order, int[] ends, float[] colors)
+	{
+		Part part = new Part(GL_LINES, vertices, false, order, GL_UNSIGNED_INT, ends[ends.length-1]);
+		part.setColors(ends, colors);
+		addPart(part);
+	}
+	
+	//Copies the triangles of a part if the mesh is pickable, without holding the lock while copying.
+	private void keepForPicking(Part part, float[] parameters)
+	{
+		synchronized (this)
+		{
+			if (pickSurfaces == null)
+				return;
+			
+			pickTriangles += part.count/3;
+			if (pickTriangles > MAX_PICK_TRIANGLES)
+			{
+				pickSurfaces = null;
+				tooLargeToPick = true;
+				return;
+			}
+		}
+		
+		MeshPicker.Surface surface = new MeshPicker.Surface(part.vertices, part.order, part.count, parameters);
+		synchronized (this)
+		{
+			if (pickSurfaces != null)
+				pickSurfaces.add(surface);
+		}
+	}
+	
+	/*
+	 * Adds a part, waiting for the parts before it to be uploaded if this mesh is streamed and has
+	 * too much waiting already. The wait ends early if the building thread is interrupted. With a
+	 * sink, the part is handed to it and its buffers are reused instead.
+	 */
+	private synchronized void addPart(Part part)
+	{
+		size += (long)part.vertices.limit()*FLOAT_SIZE;
+		if (!sharesIndices(part))
+			size += (long)part.count*(part.indexType == GL_UNSIGNED_SHORT ? 2 : 4);
+		if (sink != null)
+		{
+			Mesh single = new Mesh();
+			single.parts.add(part);
+			try
+			{
+				sink.add(single);
+			}
+			finally
+			{
+				recycle(part.vertices);
+				recycle(part.order);
+			}
+			return;
+		}
+		
+		parts.add(part);
+		pending += (long)part.vertices.limit()*FLOAT_SIZE;
+		
+		while (requestUpload != null && pending > maxPending)
+		{
+			requestUpload.run();
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new CancellationException();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the amount of memory the mesh takes up once it is uploaded. Indices shared with other
+	 * meshes are not counted.
+	 * @return the number of bytes of vertex and index data
+	 */
+	public synchronized long getSize()
+	{
+		return size;
+	}
+	
+	/**
+	 * Draws the mesh with the current transformations, uploading any parts that have not been
+	 * uploaded yet. Parts outside the view are skipped. Must be called on the GL thread.
+	 * @param gl the GL2 object used to draw the mesh
+	 * @param frustum what the current transformations show
+	 */
+	public synchronized void render(GL2 gl, Frustum frustum)
+	{
+		upload(gl);
+		
+		for (Part part:parts)
+		{
+			if (part.bounds == null || !frustum.isVisible(part.bounds))
+				continue;
+			
+			gl.glBindBuffer(GL_ARRAY_BUFFER, part.vertexBuffer);
+			gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, part.indexBuffer);
+			gl.glEnableClientState(GL_VERTEX_ARRAY);
+			
+			if (part.lit)
+			{
+				gl.glEnableClientState(GL_NORMAL_ARRAY);
+				gl.glVertexPointer(3, GL_FLOAT, LIT_STRIDE*FLOAT_SIZE, 0);
+				gl.glNormalPointer(GL_FLOAT, LIT_STRIDE*FLOAT_SIZE, 3*FLOAT_SIZE);
+				draw(gl, part);
+			}
+			else
+			{
+				gl.glDisableClientState(GL_NORMAL_ARRAY);
+				gl.glVertexPointer(3, GL_FLOAT, 0, 0);
+				gl.glDisable(GL_LIGHTING);
+				draw(gl, part);
+				gl.glEnable(GL_LIGHTING);
+			}
+		}
+		
+		gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+		gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+	
+	/*
+	 * Draws the indices of a bound part, one range per color if it has colors. Lit parts without
+	 * colors are drawn in the current material, and lit parts with colors leave it white.
+	 */
+	private static void draw(GL2 gl, Part part)
+	{
+		if (part.colors == null)
+		{
+			gl.glDrawElements(part.mode, part.count, part.indexType, 0);
+			return;
+		}
+		
+		int indexSize = part.indexType == GL_UNSIGNED_SHORT ? 2 : 4;
+		int start = 0;
+		for (int k=0; k<part.ends.length; k++)
+		{
+			float r = part.colors[k*3], g = part.colors[k*3+1], b = part.colors[k*3+2];
+			if (part.lit)
+				gl.glMaterialfv(GL_FRONT_AND_BACK, GL_AMBIENT_AND_DIFFUSE, new float[] {r, g, b, 1}, 0);
+			else
+				gl.glColor3f(r, g, b);
+			gl.glDrawElements(part.mode, part.ends[k]-start, part.indexType, (long)start*indexSize);
+			start = part.ends[k];
+		}
+		
+		if (part.lit)
+			gl.glMaterialfv(GL_FRONT_AND_BACK, GL_AMBIENT_AND_DIFFUSE, WHITE, 0);
+	}
+	
+	/**
+	 * Draws the mesh with a software renderer, in the colors <code>render</code> draws it with.
+	 * Only parts that have not been uploaded are drawn, since uploading discards the client-side
+	 * buffers, so this is for meshes that are never drawn with OpenGL.
+	 * @param renderer the renderer to draw the mesh with
+	 */
+	public synchronized void render(SoftwareRenderer renderer)
+	{
+		for (Part part:parts)
+		{
+			if (part.vertices == null)
+				continue;
+			
+			if (part.colors == null)
+				renderer.drawTriangles(part.vertices, part.order, part.count);
+			else if (part.lit)
+				renderer.drawTriangles(part.vertices, part.order, part.ends, part.colors);
+			else
+				renderer.drawLines(part.vertices, part.order, part.ends, part.colors);
+		}
+	}
+	
+	/**
+	 * Writes the triangles of the mesh, including any caps, with an exporter. Lines are left out, since
+	 * they have no surface. As with the software renderer, only parts that have not been uploaded
+	 * are written.
+	 * @param exporter the exporter to write the triangles with, which has been started
+	 * @throws IOException if the triangles cannot be written
+	 */
+	public synchronized void export(MeshExporter exporter) throws IOException
+	{
+		for (Part part:parts)
+		{
+			if (part.vertices != null && part.mode == GL_TRIANGLES)
+				exporter.addTriangles(part.vertices, part.order, part.count);
+		}
+	}
+	
+	/**
+	 * Frees the buffer objects of the parts that have been uploaded and returns the buffers of the rest.
+	 * The mesh must not be drawn afterwards. Must be called on the GL thread.
+	 * @param gl the GL2 object the mesh was drawn with
+	 */
+	public synchronized void dispose(GL2 gl)
+	{
+		forgetUploads(gl);
+		release();
+	}
+	
+	/**
+	 * Frees the buffer objects of the parts that have been uploaded and removes those parts, leaving
+	 * any buffers still being filled alone. This is for a mesh still being built when the GL context
+	 * goes away, which is built again afterwards. Must be called on the GL thread.
+	 * @param gl the GL2 object the parts were uploaded with
+	 */
+	public synchronized void forgetUploads(GL2 gl)
+	{
+		List<Part> uploaded = new ArrayList<Part>();
+		for (Part part:parts)
+			if (part.vertexBuffer != 0)
+				uploaded.add(part);
+		
+		//Shared indices are given back rather than deleted.
+		int[] names = new int[uploaded.size()*2];
+		int n = 0;
+		for (Part part:uploaded)
+		{
+			names[n++] = part.vertexBuffer;
+			if (sharesIndices(part))
+				buffers.releaseIndices(gl, part.topology);
+			else
+				names[n++] = part.indexBuffer;
+		}
+		if (n > 0)
+			gl.glDeleteBuffers(n, names, 0);
+		parts.removeAll(uploaded);
+	}
+	
+	/**
+	 * Copies every part that has not been uploaded yet into buffer objects. The client-side buffers
+	 * are not needed afterwards, so they go straight back to be reused, and a building thread waiting
+	 * for them to be uploaded continues. Must be called on the GL thread.
+	 * @param gl the GL2 object used to draw the mesh
+	 */
+	public synchronized void upload(GL2 gl)
+	{
+		List<Part> waiting = new ArrayList<Part>();
+		for (Part part:parts)
+			if (part.vertexBuffer == 0)
+				waiting.add(part);
+		if (waiting.isEmpty())
+			return;
+		
+		//Grids share the indices of their size, which are only uploaded the first time.
+		int owned = 0;
+		for (Part part:waiting)
+			if (!sharesIndices(part))
+				owned++;
+		int[] names = new int[waiting.size() + owned];
+		gl.glGenBuffers(names.length, names, 0);
+		
+		int n = 0;
+		for (Part part:waiting)
+		{
+			part.vertexBuffer = names[n++];
+			
+			gl.glBindBuffer(GL_ARRAY_BUFFER, part.vertexBuffer);
+			gl.glBufferData(GL_ARRAY_BUFFER, (long)part.vertices.limit()*FLOAT_SIZE, part.vertices, GL_STATIC_DRAW);
+			
+			if (sharesIndices(part))
+			{
+				part.indexBuffer = buffers.acquireIndices(gl, part.topology);
+			}
+			else
+			{
+				part.indexBuffer = names[n++];
+				int indexSize = part.indexType == GL_UNSIGNED_SHORT ? 2 : 4;
+				gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, part.indexBuffer);
+				gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, (long)part.count*indexSize, part.order, GL_STATIC_DRAW);
+			}
+			
+			recycle(part.vertices);
+			recycle(part.order);
+			part.vertices = null;
+			part.order = null;
+		}
+		
+		gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+		gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+		
+		pending = 0;
+		notifyAll();
+	}
+	
+	//Returns whether a part draws the shared buffer object of its grid's indices rather than one of its own.
+	private boolean sharesIndices(Part part)
+	{
+		return part.topology != null && buffers != null;
+	}
+	
+	/**
+	 * Receives the parts of a mesh as they are added, for meshes that are written or drawn as they
+	 * are built rather than kept.
+	 * @author Patrick Owen
+	 */
+	public static interface Sink
+	{
+		/**
+		 * Writes or draws a part. The part's buffers are reused once this returns, so it must not be kept.
+		 * @param part a mesh holding only the part
+		 */
+		public void add(Mesh part);
+	}
+	
+	//One draw call's worth of geometry
+	private static class Part
+	{
+		public final int mode;
+		public final boolean lit;
+		public final int indexType;
+		public final int count;
+		
+		//Smallest x, y and z of the vertices followed by the largest, or null if none are finite
+		public final float[] bounds;
+		
+		//The index after the last index of each color, and the colors, or null for the current material
+		public int[] ends;
+		public float[] colors;
+		
+		//Client-side data until it is uploaded
+		public FloatBuffer vertices;
+		public Buffer order;
+		
+		//Buffer objects once it is uploaded
+		public int vertexBuffer, indexBuffer;
+		
+		//The grid whose shared indices the part draws, or null if its indices are its own
+		public GridTopology topology;
+		
+		public Part(int mode, FloatBuffer vertices, boolean lit, Buffer order, int indexType, int count)
+		{
+			this.mode = mode;
+			this.vertices = vertices;
+			this.lit = lit;
+			this.order = order;
+			this.indexType = indexType;
+			this.count = count;
+			bounds = findBounds(vertices, lit ? LIT_STRIDE : 3);
+			ends = null;
+			colors = null;
+		}
+		
+		//Sets the colors of the ranges of indices, joining neighbouring ranges of the same color so that they are drawn together.
+		public void setColors(int[] ends, float[] colors)
+		{
+			int n = 0;
+			this.ends = new int[ends.length];
+			this.colors = new float[ends.length*3];
+			for (int k=0; k<ends.length; k++)
+			{
+				boolean same = n > 0 && colors[k*3] == this.colors[n*3-3] && colors[k*3+1] == this.colors[n*3-2]
+						&& colors[k*3+2] == this.colors[n*3-1];
+				if (!same)
+				{
+					System.arraycopy(colors, k*3, this.colors, n*3, 3);
+					n++;
+				}
+				this.ends[n-1] = ends[k];
+			}
+			this.ends = Arrays.copyOf(this.ends, n);
+			this.colors = Arrays.copyOf(this.colors, n*3);
+		}
+		
+		//Returns the bounding box of the finite positions in a buffer of vertices.
+		private static float[] findBounds(FloatBuffer vertices, int stride)
+		{
+			float[] bounds = null;
+			for (int i=0; i+2<vertices.limit(); i+=stride)
+			{
+				float x = vertices.get(i), y = vertices.get(i+1), z = vertices.get(i+2);
+				if (Float.isNaN(x+y+z) || Float.isInfinite(x+y+z))
+					continue;
+				
+				if (bounds == null)
+				{
+					bounds = new float[] {x, y, z, x, y, z};
+					continue;
+				}
+				bounds[0] = Math.min(bounds[0], x); bounds[1] = Math.min(bounds[1], y); bounds[2] = Math.min(bounds[2], z);
+				bounds[3] = Math.max(bounds[3], x); bounds[4] = Math.max(bounds[4], y); bounds[5] = Math.max(bounds[5], z);
+			}
+			return bounds;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import static com.jogamp.opengl.GL.GL_ELEMENT_ARRAY_BUFFER;
+import static com.jogamp.opengl.GL.GL_STATIC_DRAW;
+import static com.jogamp.opengl.GL.GL_UNSIGNED_SHORT;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.opengl.GL2;
+
+/**
+ * Keeps the direct buffers of meshes that are no longer displayed so that later meshes can
+ * reuse them. Allocating direct buffers is slow and their memory is only returned when they
+ * are garbage collected, so a graph that is rebuilt many times at the same resolution should
+ * not allocate new ones each time. Buffers are handed out by <code>Mesh</code> and come back
+ * when the mesh is released.
+ * <p>
+ * On the GL side, it also keeps a buffer object of the indices of each GridTopology its meshes
+ * draw, which every part of a grid of that size binds, so the indices are uploaded once rather than
+ * once per part. A few that no mesh uses are kept for the next meshes of the same sizes.
+ * @author Patrick Owen
+ */
+public class MeshBuffers
+{
+	//Largest number of unused buffers of each type kept around
+	private static final int MAX_FREE = 8;
+	
+	//Largest number of buffer objects of indices that no part uses kept around
+	private static final int MAX_UNUSED_INDICES = 8;
+	
+	private List<FloatBuffer> freeFloats;
+	private List<IntBuffer> freeInts;
+	
+	//Buffer objects of indices by the key of their grid, least recently acquired first
+	private Map<String, SharedIndices> indices;
+	
+	/**
+	 * Constructs a MeshBuffers with no buffers to reuse yet.
+	 */
+	public MeshBuffers()
+	{
+		freeFloats = new ArrayList<FloatBuffer>();
+		freeInts = new ArrayList<IntBuffer>();
+		indices = new LinkedHashMap<String, SharedIndices>(16, 0.75f, true);
+	}
+	
+	/**
+	 * Returns a direct buffer of at least the given capacity, reusing an unused one if possible.
+	 * The buffer's position is 0 and its limit is the requested size. Its contents are undefined.
+	 * @param size the number of floats needed
+	 * @return the buffer
+	 */
+	public synchronized FloatBuffer getFloats(int size)
+	{
+		int best = -1;
+		for (int i=0; i<freeFloats.size(); i++)
+		{
+			int capacity = freeFloats.get(i).capacity();
+			if (capacity >= size && (best == -1 || capacity < freeFloats.get(best).capacity()))
+				best = i;
+		}
+		
+		FloatBuffer buffer = best == -1 ? Buffers.newDirectFloatBuffer(size) : freeFloats.remove(best);
+		buffer.clear();
+		buffer.limit(size);
+		return buffer;
+	}
+	
+	/**
+	 * Returns a direct buffer of at least the given capacity, reusing an unused one if possible.
+	 * The buffer's position is 0 and its limit is the requested size. Its contents are undefined.
+	 * @param size the number of ints needed
+	 * @return the buffer
+	 */
+	public synchronized IntBuffer getInts(int size)
+	{
+		int best = -1;
+		for (int i=0; i<freeInts.size(); i++)
+		{
+			int capacity = freeInts.get(i).capacity();
+			if (capacity >= size && (best == -1 || capacity < freeInts.get(best).capacity()))
+				best = i;
+		}
+		
+		IntBuffer buffer = best == -1 ? Buffers.newDirectIntBuffer(size) : freeInts.remove(best);
+		buffer.clear();
+		buffer.limit(size);
+		return buffer;
+	}
+	
+	/**
+	 * Makes a buffer available for reuse. The buffer must not be used afterwards.
+	 * @param buffer the buffer, which came from <code>getFloats</code>
+	 */
+	public synchronized void recycle(FloatBuffer buffer)
+	{
+		//The oldest buffers are the least likely to match the current resolution.
+		if (freeFloats.size() == MAX_FREE)
+			freeFloats.remove(0);
+		freeFloats.add(buffer);
+	}
+	
+	/**
+	 * Makes a buffer available for reuse. The buffer must not be used afterwards.
+	 * @param buffer the buffer, which came from <code>getInts</code>
+	 */
+	public synchronized void recycle(IntBuffer buffer)
+	{
+		if (freeInts.size() == MAX_FREE)
+			freeInts.remove(0);
+		freeInts.add(buffer);
+	}
+	
+	/**
+	 * Returns the buffer object of the indices of a grid, uploading them if no part has them yet.
+	 * Each call must be matched by a call to <code>releaseIndices</code>. Must be called on the GL thread.
+	 * @param gl the GL2 object the parts are drawn with
+	 * @param topology the grid
+	 * @return the name of the buffer object
+	 */
+	public synchronized int acquireIndices(GL2 gl, GridTopology topology)
+	{
+		SharedIndices shared = indices.get(topology.getKey());
+		if (shared == null)
+		{
+			int[] name = new int[1];
+			gl.glGenBuffers(1, name, 0);
+			int indexSize = topology.getIndexType() == GL_UNSIGNED_SHORT ? 2 : 4;
+			gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, name[0]);
+			gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, (long)topology.getCount()*indexSize, topology.getIndices(), GL_STATIC_DRAW);
+			
+			shared = new SharedIndices(name[0]);
+			indices.put(topology.getKey(), shared);
+		}
+		shared.users++;
+		return shared.name;
+	}
+	
+	/**
+	 * Gives back the buffer object of the indices of a grid, which is deleted once no part uses it
+	 * and more than a few others are unused. Must be called on the GL thread.
+	 * @param gl the GL2 object the parts were drawn with
+	 * @param topology the grid
+	 */
+	public synchronized void releaseIndices(GL2 gl, GridTopology topology)
+	{
+		SharedIndices shared = indices.get(topology.getKey());
+		if (shared == null)
+			return;
+		shared.users--;
+		
+		int unused = 0;
+		for (SharedIndices s:indices.values())
+			if (s.users == 0)
+				unused++;
+		
+		//The least recently acquired go first.
+		Iterator<SharedIndices> iterator = indices.values().iterator();
+		while (unused > MAX_UNUSED_INDICES && iterator.hasNext())
+		{
+			SharedIndices s = iterator.next();
+			if (s.users != 0)
+				continue;
+			gl.glDeleteBuffers(1, new int[] {s.name}, 0);
+			iterator.remove();
+			unused--;
+		}
+	}
+	
+	/**
+	 * Forgets every buffer object of indices, deleting them, for when the GL context goes away.
+	 * Meshes drawn with them must have been disposed of first. Must be called on the GL thread.
+	 * @param gl the GL2 object the parts were drawn with
+	 */
+	public synchronized void disposeIndices(GL2 gl)
+	{
+		for (SharedIndices s:indices.values())
+			gl.glDeleteBuffers(1, new int[] {s.name}, 0);
+		indices.clear();
+	}
+	
+	//A buffer object of indices and the number of parts that draw with it
+	private static class SharedIndices
+	{
+		public final int name;
+		public int users;
+		
+		public SharedIndices(int name)
+		{
+			this.name = name;
+			users = 0;
+		}
+	}
+}
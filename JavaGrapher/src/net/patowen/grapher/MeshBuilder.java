@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Builds the mesh of a 3D graph from a snapshot of its parameters. Builders use no OpenGL, so a
+ * graph can be built where there is no display, as HeadlessGraph does for thumbnails. Graph3D
+ * runs its builder on a thread of its own and streams the meshes it builds to OpenGL. A builder
+ * keeps what it needs between builds, such as caches of samples, and is used by one thread at a time.
+ * @author Patrick Owen
+ */
+public abstract class MeshBuilder
+{
+	/*
+	 * u and v are the mouse x and y coordinates when the user is dynamically
+	 * editing the graph. They are set before each call to buildMesh.
+	 */
+	protected double u, v;
+	
+	private ResolutionChooser resolutions;
+	private volatile int viewHeight; //Height of the view in pixels
+	
+	/**
+	 * Constructs a MeshBuilder that builds at the configured resolutions until told otherwise.
+	 */
+	public MeshBuilder()
+	{
+		u = 0;
+		v = 0;
+		resolutions = new ResolutionChooser();
+		viewHeight = 1;
+	}
+	
+	/**
+	 * Defines the parameters of the graph with their defaults: the view and the options that every
+	 * 3D graph has, followed by the ones the builder reads.
+	 * @param parameters the parameters of the graph, with nothing defined yet
+	 */
+	public final void define(GraphParameters parameters)
+	{
+		parameters.defineDouble(Graph3D.X_CENTER, 0, Graph.CAMERA);
+		parameters.defineDouble(Graph3D.Y_CENTER, 0, Graph.CAMERA);
+		parameters.defineDouble(Graph3D.Z_CENTER, 0, Graph.CAMERA);
+		parameters.defineDouble(Graph3D.VIEW_DISTANCE, 4, Graph.CAMERA);
+		parameters.defineInt(Graph3D.GRID_NORMALS, 0, Graph.RESOLUTION);
+		defineParameters(parameters);
+	}
+	
+	/**
+	 * Defines the parameters and expressions the builder reads, with their defaults.
+	 * @param parameters the parameters of the graph
+	 */
+	protected abstract void defineParameters(GraphParameters parameters);
+	
+	/**
+	 * Returns whether the graph is drawn with the y and z axes switched, which is false unless overridden.
+	 * @return whether the y and z axes are switched
+	 */
+	public boolean isAxesInverted()
+	{
+		return false;
+	}
+	
+	/**
+	 * Sets the height of the view the graph is drawn in, for builders whose tolerances are in pixels.
+	 * @param height the height in pixels
+	 */
+	public void setViewHeight(int height)
+	{
+		viewHeight = Math.max(height, 1);
+	}
+	
+	/**
+	 * Returns the height of the view the graph is drawn in.
+	 * @return the height in pixels
+	 */
+	protected int getViewHeight()
+	{
+		return viewHeight;
+	}
+	
+	/**
+	 * Returns what scales the resolutions of each build. Builds are at the configured resolutions
+	 * until it is told to build at another detail.
+	 * @return the ResolutionChooser of the builder
+	 */
+	public ResolutionChooser getResolutions()
+	{
+		return resolutions;
+	}
+	
+	/**
+	 * Builds the geometry of the graph into an empty mesh.
+	 * @param state the snapshot to build the graph from
+	 * @param u the value of u to build with
+	 * @param v the value of v to build with
+	 * @param mesh the mesh to fill
+	 * @return the filled mesh
+	 * @throws CancellationException if the thread is interrupted
+	 */
+	public Mesh build(GraphState state, double u, double v, Mesh mesh)
+	{
+		this.u = u;
+		this.v = v;
+		buildMesh(state, mesh);
+		return mesh;
+	}
+	
+	/**
+	 * Builds the geometry of the graph. Called on a worker thread, and only when the expressions
+	 * need to be evaluated again, not for changes to the camera or axes. Everything the build
+	 * depends on should be read from the given snapshot. Long builds should call
+	 * <code>checkCancelled</code> regularly.
+	 * @param state The snapshot to build the graph from.
+	 * @param mesh The empty mesh to fill.
+	 */
+	protected abstract void buildMesh(GraphState state, Mesh mesh);
+	
+	/**
+	 * Stops the current mesh build if it has been superseded by newer changes. Call this
+	 * regularly from <code>buildMesh</code>, such as once per row of samples. Loops run
+	 * with <code>RowLoop</code> stop by themselves.
+	 * @throws CancellationException if the build is no longer needed
+	 */
+	protected static void checkCancelled()
+	{
+		if (Thread.currentThread().isInterrupted())
+			throw new CancellationException();
+	}
+	
+	/**
+	 * Returns the resolution to build at for a resolution parameter. This is the configured value,
+	 * except while u and v are dragged, when it is lowered so that each build fits in a frame, and
+	 * with automatic resolution, when it is scaled to fit the rebuild budget. Builders should read
+	 * their resolutions through this so that both work and so that the value built with can be shown.
+	 * @param state The snapshot being built.
+	 * @param index The index of the parameter holding the number of intervals.
+	 * @return the number of intervals to build with
+	 */
+	protected int scaleResolution(GraphState state, int index)
+	{
+		return resolutions.scale(index, state.getInt(index));
+	}
+	
+	/**
+	 * Returns the resolution to build at for a resolution parameter of one of several separate grids.
+	 * The samples of each group are counted as one grid, and the samples of different groups add up,
+	 * so that automatic resolution and dragging u and v fit the whole build to their budgets.
+	 * @param state The snapshot being built.
+	 * @param index The index of the parameter holding the number of intervals.
+	 * @param group The grid the resolution belongs to.
+	 * @return the number of intervals to build with
+	 */
+	protected int scaleResolution(GraphState state, int index, int group)
+	{
+		return resolutions.scale(index, state.getInt(index), group);
+	}
+}
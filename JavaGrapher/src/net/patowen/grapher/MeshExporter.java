@@ -0,0 +1,421 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Writes the triangles of a mesh to a file as binary STL, binary PLY or OBJ, for printing or for
+ * other programs. The exporter is a <code>Mesh.Sink</code>, so the triangles are written part by part
+ * while the mesh is built and each part's buffers are reused as soon as it is written. Nothing grows
+ * with the size of the mesh but the file, so exporting takes little memory however large the mesh is.
+ * Triangles with a vertex that is not finite are left out.
+ * <p>
+ * The counts in the headers of STL and PLY files are written once every part is in. The triangles
+ * of a PLY file come after all of its vertices, so they are kept in a temporary file next to it
+ * until then. Writing can be stopped by interrupting the thread, which deletes the unfinished file.
+ * @author Patrick Owen
+ */
+public class MeshExporter implements Mesh.Sink
+{
+	public static final int STL = 0, PLY = 1, OBJ = 2;
+	
+	//File extensions of the formats, by format
+	private static final String[] EXTENSIONS = {"stl", "ply", "obj"};
+	
+	//Floats per vertex, as in lit parts of a mesh
+	private static final int STRIDE = 6;
+	
+	//Bytes written to a file at a time
+	private static final int BUFFER_SIZE = 1 << 20;
+	
+	//Digits the counts in a PLY header are padded to, so that they can be filled in afterwards
+	private static final int COUNT_DIGITS = 10;
+	
+	private final int format;
+	
+	private File file, faceFile;
+	private Output output, faces;
+	
+	//Position of the counts in the header
+	private long countPosition;
+	
+	//Vertices and triangles written so far, counted on the writing thread
+	private volatile long vertices, triangles;
+	
+	//The error that stopped the writing, if any
+	private IOException failure;
+	
+	/**
+	 * Constructs a MeshExporter that has not started writing.
+	 * @param format STL, PLY or OBJ
+	 */
+	public MeshExporter(int format)
+	{
+		if (format < 0 || format >= EXTENSIONS.length)
+			throw new IllegalArgumentException("Unknown mesh format " + format);
+		this.format = format;
+		vertices = 0;
+		triangles = 0;
+	}
+	
+	/**
+	 * Returns the file extension of a format, without the dot.
+	 * @param format STL, PLY or OBJ
+	 * @return the extension
+	 */
+	public static String getExtension(int format)
+	{
+		return EXTENSIONS[format];
+	}
+	
+	/**
+	 * Returns the number of triangles written so far. How many there are in all is not known until the
+	 * mesh has been built.
+	 * @return the number of triangles
+	 */
+	public long getTriangles()
+	{
+		return triangles;
+	}
+	
+	/**
+	 * Starts writing a file, replacing it if it exists. Triangles can be added once this returns.
+	 * @param file the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void start(File file) throws IOException
+	{
+		this.file = file;
+		output = new Output(file);
+		boolean started = false;
+		try
+		{
+			if (format == STL)
+			{
+				byte[] header = new byte[80];
+				byte[] name = "Patrick's Grapher".getBytes("US-ASCII");
+				System.arraycopy(name, 0, header, 0, name.length);
+				output.reserve(84);
+				output.buffer.put(header);
+				countPosition = 80;
+				output.buffer.putInt(0);
+			}
+			else if (format == PLY)
+			{
+				String start = "ply\nformat binary_little_endian 1.0\ncomment Patrick's Grapher\nelement vertex ";
+				countPosition = start.length();
+				output.putText(start + pad(0) + "\n" +
+						"property float x\nproperty float y\nproperty float z\n" +
+						"property float nx\nproperty float ny\nproperty float nz\n" +
+						"element face " + pad(0) + "\n" +
+						"property list uchar int vertex_indices\nend_header\n");
+				
+				faceFile = File.createTempFile("grapher", ".faces", file.getAbsoluteFile().getParentFile());
+				faces = new Output(faceFile);
+			}
+			else
+			{
+				output.putText("# Patrick's Grapher\n");
+			}
+			started = true;
+		}
+		finally
+		{
+			if (!started)
+				close(false);
+		}
+	}
+	
+	/**
+	 * Writes the triangles of a part of a mesh as it is built. If they cannot be written, the build is
+	 * stopped with a CancellationException, and <code>cancel</code> throws the error.
+	 * @param part a mesh holding one part
+	 */
+	public void add(Mesh part)
+	{
+		try
+		{
+			part.export(this);
+		}
+		catch (IOException e)
+		{
+			failure = e;
+			throw new CancellationException();
+		}
+	}
+	
+	/**
+	 * Writes triangles to the file.
+	 * @param vertices the positions and normals of the vertices, six floats each
+	 * @param order the indices of the vertices of each triangle, in an IntBuffer or a ShortBuffer of unsigned indices
+	 * @param count the number of indices
+	 * @throws IOException if the file cannot be written or the thread is interrupted
+	 */
+	public void addTriangles(FloatBuffer vertices, Buffer order, int count) throws IOException
+	{
+		if (format == STL)
+			writeSTL(vertices, order, count);
+		else
+			writeIndexed(vertices, order, count);
+	}
+	
+	/**
+	 * Fills in the headers and closes the file once every triangle has been written.
+	 * @throws IOException if the file cannot be written or the thread is interrupted
+	 */
+	public void finish() throws IOException
+	{
+		boolean finished = false;
+		try
+		{
+			output.flush();
+			if (format == STL)
+			{
+				ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+				count.putInt(0, (int)triangles);
+				output.channel.write(count, countPosition);
+			}
+			else if (format == PLY)
+			{
+				//The triangles follow the vertices, and the counts are the same width as the ones they replace.
+				faces.flush();
+				long position = output.channel.size(), size = faces.channel.size();
+				for (long copied = 0; copied < size; )
+					copied += faces.channel.transferTo(copied, size-copied, output.channel.position(position+copied));
+				
+				String counts = pad(vertices) + "\n" +
+						"property float x\nproperty float y\nproperty float z\n" +
+						"property float nx\nproperty float ny\nproperty float nz\n" +
+						"element face " + pad(triangles);
+				output.channel.write(ByteBuffer.wrap(counts.getBytes("US-ASCII")), countPosition);
+			}
+			finished = true;
+		}
+		finally
+		{
+			close(finished);
+		}
+	}
+	
+	/**
+	 * Stops writing and deletes the unfinished file.
+	 * @throws IOException the error that stopped the writing, if any
+	 */
+	public void cancel() throws IOException
+	{
+		close(false);
+		if (failure != null)
+			throw failure;
+	}
+	
+	//Closes the files, deleting the temporary one, and the file being written as well if it is unfinished.
+	private void close(boolean finished) throws IOException
+	{
+		try
+		{
+			if (faces != null)
+				faces.close();
+			if (output != null)
+				output.close();
+		}
+		finally
+		{
+			faces = null;
+			output = null;
+			if (faceFile != null)
+				faceFile.delete();
+			if (!finished && file != null)
+				file.delete();
+		}
+	}
+	
+	//Writes each triangle with its normal, which is found from its corners, as binary STL does.
+	private void writeSTL(FloatBuffer v, Buffer order, int count) throws IOException
+	{
+		long written = 0;
+		for (int i=0; i+2<count; i+=3)
+		{
+			int a = index(order, i)*STRIDE, b = index(order, i+1)*STRIDE, c = index(order, i+2)*STRIDE;
+			if (!isFinite(v, a/STRIDE) || !isFinite(v, b/STRIDE) || !isFinite(v, c/STRIDE))
+				continue;
+			
+			float ux = v.get(b)-v.get(a), uy = v.get(b+1)-v.get(a+1), uz = v.get(b+2)-v.get(a+2);
+			float wx = v.get(c)-v.get(a), wy = v.get(c+1)-v.get(a+1), wz = v.get(c+2)-v.get(a+2);
+			float nx = uy*wz - uz*wy, ny = uz*wx - ux*wz, nz = ux*wy - uy*wx;
+			float length = (float)Math.sqrt(nx*nx + ny*ny + nz*nz);
+			if (length > 0)
+			{
+				nx /= length; ny /= length; nz /= length;
+			}
+			
+			ByteBuffer buffer = output.reserve(50);
+			buffer.putFloat(nx).putFloat(ny).putFloat(nz);
+			buffer.putFloat(v.get(a)).putFloat(v.get(a+1)).putFloat(v.get(a+2));
+			buffer.putFloat(v.get(b)).putFloat(v.get(b+1)).putFloat(v.get(b+2));
+			buffer.putFloat(v.get(c)).putFloat(v.get(c+1)).putFloat(v.get(c+2));
+			buffer.putShort((short)0);
+			written++;
+		}
+		triangles += written;
+	}
+	
+	/*
+	 * Writes the vertices that the written triangles of a part need, with their positions and normals,
+	 * followed by the triangles, numbered after the vertices of the parts before. OBJ triangles go
+	 * straight after their vertices, and PLY triangles go to the temporary file.
+	 */
+	private void writeIndexed(FloatBuffer v, Buffer order, int count) throws IOException
+	{
+		//Parts without triangles add no vertices.
+		int last = -1;
+		for (int i=0; i+2<count; i+=3)
+		{
+			int a = index(order, i), b = index(order, i+1), c = index(order, i+2);
+			if (isFinite(v, a) && isFinite(v, b) && isFinite(v, c))
+				last = Math.max(last, Math.max(a, Math.max(b, c)));
+		}
+		
+		for (int i=0; i<=last; i++)
+		{
+			//Vertices that no written triangle uses can hold anything, so ones that are not finite are zeroed.
+			int s = i*STRIDE;
+			boolean finite = isFinite(v, i);
+			if (format == PLY)
+			{
+				ByteBuffer buffer = output.reserve(STRIDE*4);
+				for (int k=0; k<STRIDE; k++)
+					buffer.putFloat(finite ? v.get(s+k) : 0);
+			}
+			else if (finite)
+			{
+				output.putText("v " + v.get(s) + " " + v.get(s+1) + " " + v.get(s+2) + "\n" +
+						"vn " + v.get(s+3) + " " + v.get(s+4) + " " + v.get(s+5) + "\n");
+			}
+			else
+			{
+				output.putText("v 0 0 0\nvn 0 0 1\n");
+			}
+		}
+		
+		//OBJ vertices are numbered from 1, and each has the normal of the same number.
+		long base = format == PLY ? vertices : vertices+1, written = 0;
+		for (int i=0; i+2<count; i+=3)
+		{
+			int a = index(order, i), b = index(order, i+1), c = index(order, i+2);
+			if (!isFinite(v, a) || !isFinite(v, b) || !isFinite(v, c))
+				continue;
+			if (format == PLY)
+			{
+				ByteBuffer buffer = faces.reserve(13);
+				buffer.put((byte)3);
+				buffer.putInt((int)(base+a)).putInt((int)(base+b)).putInt((int)(base+c));
+			}
+			else
+			{
+				long oa = base+a, ob = base+b, oc = base+c;
+				output.putText("f " + oa + "//" + oa + " " + ob + "//" + ob + " " + oc + "//" + oc + "\n");
+			}
+			written++;
+		}
+		vertices += last+1;
+		triangles += written;
+	}
+	
+	//Returns a count for a PLY header, padded with spaces in front to the width of the largest.
+	private static String pad(long count)
+	{
+		String digits = Long.toString(count);
+		StringBuilder padded = new StringBuilder();
+		for (int i=digits.length(); i<COUNT_DIGITS; i++)
+			padded.append(' ');
+		return padded.append(digits).toString();
+	}
+	
+	//Returns whether the position of a vertex is finite.
+	private static boolean isFinite(FloatBuffer vertices, int vertex)
+	{
+		int s = vertex*STRIDE;
+		float x = vertices.get(s), y = vertices.get(s+1), z = vertices.get(s+2);
+		return !Float.isNaN(x) && !Float.isInfinite(x) && !Float.isNaN(y) && !Float.isInfinite(y) && !Float.isNaN(z) && !Float.isInfinite(z);
+	}
+	
+	//Returns an index from an IntBuffer or a ShortBuffer of unsigned indices.
+	private static int index(Buffer order, int i)
+	{
+		if (order instanceof ShortBuffer)
+			return ((ShortBuffer)order).get(i) & 0xFFFF;
+		return ((IntBuffer)order).get(i);
+	}
+	
+	//A file written through one small buffer
+	private static class Output
+	{
+		public final ByteBuffer buffer;
+		public final FileChannel channel;
+		
+		public Output(File file) throws IOException
+		{
+			RandomAccessFile f = new RandomAccessFile(file, "rw");
+			f.setLength(0);
+			channel = f.getChannel();
+			buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		
+		//Returns the buffer with room for the given number of bytes, writing it out first if it is too full.
+		public ByteBuffer reserve(int bytes) throws IOException
+		{
+			if (buffer.remaining() < bytes)
+				flush();
+			return buffer;
+		}
+		
+		//Adds ASCII text to the buffer.
+		public void putText(String text) throws IOException
+		{
+			reserve(text.length());
+			for (int i=0; i<text.length(); i++)
+				buffer.put((byte)text.charAt(i));
+		}
+		
+		//Writes out everything in the buffer.
+		public void flush() throws IOException
+		{
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+		
+		public void close() throws IOException
+		{
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,556 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Finds where a ray first hits the triangles of a mesh, for showing the point of a graph under
+ * the mouse. The triangles are kept in a bounding volume hierarchy whose splits are chosen by the
+ * surface area heuristic over binned centroids, so a ray only visits the few boxes along its path,
+ * and a query over millions of triangles takes microseconds. Building it takes about a second per
+ * million triangles, so it is built on the thread that built the mesh once the mesh has been handed
+ * over to be drawn. A built MeshPicker is not modified and may be queried from any thread.
+ * @author Patrick Owen
+ */
+public class MeshPicker
+{
+	//Most triangles in a leaf split by position, and the most in a leaf that is never split
+	private static final int LEAF_SIZE = 4, MAX_LEAF_SIZE = 16;
+	
+	//Bins of centroids the splits are chosen from
+	private static final int BINS = 16;
+	
+	//Nodes with at least this many triangles check whether the build has been cancelled
+	private static final int CANCEL_CHECK_SIZE = 4096;
+	
+	private float[] positions; //x, y and z of each vertex
+	private float[] parameters; //s and t of each vertex, NaN where unknown
+	private int[] triangles; //Vertices of each triangle, in the order of the leaves
+	
+	//Nodes in depth-first order, so that the first child of a node comes right after it
+	private float[] boxes; //Smallest x, y and z of each node followed by the largest
+	private int[] nodes; //For leaves, the first triangle and the count; otherwise, the second child and -1
+	private int nodeCount, depth;
+	
+	//Bounding boxes, centroids and bins of the triangles, while building, moved along with the triangles
+	private float[] triangleBoxes, centroids;
+	private byte[] bins;
+	
+	//Totals for each bin of the node being split
+	private int[] binCounts;
+	private float[] binBoxes, binCentroidBoxes;
+	private double[] lowCosts;
+	
+	/**
+	 * Builds a MeshPicker over the given triangles. Triangles with a corner that is not finite are left out.
+	 * @param surfaces the triangles, as recorded by a pickable Mesh
+	 * @throws CancellationException if the calling thread is interrupted
+	 */
+	public MeshPicker(List<Surface> surfaces)
+	{
+		int vertexCount = 0, triangleCount = 0;
+		for (Surface surface:surfaces)
+		{
+			vertexCount += surface.positions.length/3;
+			triangleCount += surface.triangles.length/3;
+		}
+		
+		positions = new float[vertexCount*3];
+		parameters = new float[vertexCount*2];
+		triangles = new int[triangleCount*3];
+		int vc = 0, tc = 0;
+		for (Surface surface:surfaces)
+		{
+			int first = vc/3;
+			System.arraycopy(surface.positions, 0, positions, vc, surface.positions.length);
+			if (surface.parameters == null)
+				Arrays.fill(parameters, first*2, first*2 + surface.positions.length/3*2, Float.NaN);
+			else
+				System.arraycopy(surface.parameters, 0, parameters, first*2, surface.positions.length/3*2);
+			vc += surface.positions.length;
+			
+			for (int i=0; i<surface.triangles.length; i+=3)
+			{
+				int a = first + surface.triangles[i], b = first + surface.triangles[i+1], c = first + surface.triangles[i+2];
+				if (!isFinite(a) || !isFinite(b) || !isFinite(c))
+					continue;
+				triangles[tc++] = a; triangles[tc++] = b; triangles[tc++] = c;
+			}
+		}
+		triangleCount = tc/3;
+		
+		triangleBoxes = new float[triangleCount*6];
+		centroids = new float[triangleCount*3];
+		bins = new byte[triangleCount];
+		binCounts = new int[BINS];
+		binBoxes = new float[BINS*6];
+		binCentroidBoxes = new float[BINS*6];
+		lowCosts = new double[BINS];
+		for (int t=0; t<triangleCount; t++)
+		{
+			for (int k=0; k<3; k++)
+			{
+				float a = positions[triangles[t*3]*3+k], b = positions[triangles[t*3+1]*3+k], c = positions[triangles[t*3+2]*3+k];
+				triangleBoxes[t*6+k] = Math.min(a, Math.min(b, c));
+				triangleBoxes[t*6+3+k] = Math.max(a, Math.max(b, c));
+				centroids[t*3+k] = (a+b+c)/3;
+			}
+		}
+		
+		boxes = new float[Math.max(1, triangleCount/LEAF_SIZE*2)*6];
+		nodes = new int[boxes.length/3];
+		nodeCount = 0;
+		depth = 0;
+		if (triangleCount > 0)
+		{
+			float[] box = new float[6], centroidBox = new float[6];
+			findBounds(0, triangleCount, box, centroidBox);
+			build(0, triangleCount, box, centroidBox, 1);
+		}
+		
+		triangles = Arrays.copyOf(triangles, triangleCount*3);
+		triangleBoxes = null;
+		centroids = null;
+		bins = null;
+		binCounts = null;
+		binBoxes = binCentroidBoxes = null;
+		lowCosts = null;
+	}
+	
+	/**
+	 * Returns the first point at which a ray hits a triangle. The ray is <code>origin + distance*direction</code>.
+	 * @param ox the x-coordinate of the origin
+	 * @param oy the y-coordinate of the origin
+	 * @param oz the z-coordinate of the origin
+	 * @param dx the x-component of the direction
+	 * @param dy the y-component of the direction
+	 * @param dz the z-component of the direction
+	 * @param minDistance the smallest distance, in multiples of the direction, at which a hit counts
+	 * @param maxDistance the largest distance at which a hit counts
+	 * @return the hit, or null if the ray misses every triangle in the given range
+	 */
+	public Hit pick(double ox, double oy, double oz, double dx, double dy, double dz, double minDistance, double maxDistance)
+	{
+		if (nodeCount == 0)
+			return null;
+		
+		double[] origin = {ox, oy, oz}, inverse = {1/dx, 1/dy, 1/dz};
+		double best = maxDistance, bestU = 0, bestV = 0;
+		int bestTriangle = -1;
+		
+		//Nodes still to visit, with the distances at which the ray enters them
+		int[] stack = new int[depth+1];
+		double[] entries = new double[depth+1];
+		int sp = 0;
+		stack[sp] = 0;
+		entries[sp++] = enter(0, origin, inverse, minDistance, best);
+		while (sp > 0)
+		{
+			int node = stack[--sp];
+			if (entries[sp] >= best)
+				continue;
+			
+			if (nodes[node*2+1] >= 0)
+			{
+				int end = nodes[node*2] + nodes[node*2+1];
+				for (int t=nodes[node*2]; t<end; t++)
+				{
+					//Moller-Trumbore, from both sides
+					int a = triangles[t*3]*3, b = triangles[t*3+1]*3, c = triangles[t*3+2]*3;
+					double e1x = positions[b]-positions[a], e1y = positions[b+1]-positions[a+1], e1z = positions[b+2]-positions[a+2];
+					double e2x = positions[c]-positions[a], e2y = positions[c+1]-positions[a+1], e2z = positions[c+2]-positions[a+2];
+					double px = dy*e2z - dz*e2y, py = dz*e2x - dx*e2z, pz = dx*e2y - dy*e2x;
+					double det = e1x*px + e1y*py + e1z*pz;
+					if (det == 0)
+						continue;
+					
+					double sx = ox-positions[a], sy = oy-positions[a+1], sz = oz-positions[a+2];
+					double u = (sx*px + sy*py + sz*pz)/det;
+					if (u < 0 || u > 1)
+						continue;
+					double qx = sy*e1z - sz*e1y, qy = sz*e1x - sx*e1z, qz = sx*e1y - sy*e1x;
+					double v = (dx*qx + dy*qy + dz*qz)/det;
+					if (v < 0 || u+v > 1)
+						continue;
+					
+					double distance = (e2x*qx + e2y*qy + e2z*qz)/det;
+					if (distance >= minDistance && distance < best)
+					{
+						best = distance;
+						bestU = u;
+						bestV = v;
+						bestTriangle = t;
+					}
+				}
+			}
+			else
+			{
+				//Visit the nearer child first, so that the farther one can often be skipped.
+				int first = node+1, second = nodes[node*2];
+				double firstEntry = enter(first, origin, inverse, minDistance, best);
+				double secondEntry = enter(second, origin, inverse, minDistance, best);
+				if (firstEntry > secondEntry)
+				{
+					int swap = first; first = second; second = swap;
+					double swapEntry = firstEntry; firstEntry = secondEntry; secondEntry = swapEntry;
+				}
+				if (secondEntry != Double.POSITIVE_INFINITY)
+				{
+					stack[sp] = second;
+					entries[sp++] = secondEntry;
+				}
+				if (firstEntry != Double.POSITIVE_INFINITY)
+				{
+					stack[sp] = first;
+					entries[sp++] = firstEntry;
+				}
+			}
+		}
+		
+		if (bestTriangle < 0)
+			return null;
+		
+		int a = triangles[bestTriangle*3], b = triangles[bestTriangle*3+1], c = triangles[bestTriangle*3+2];
+		double w = 1-bestU-bestV;
+		return new Hit(ox + best*dx, oy + best*dy, oz + best*dz,
+				w*parameters[a*2] + bestU*parameters[b*2] + bestV*parameters[c*2],
+				w*parameters[a*2+1] + bestU*parameters[b*2+1] + bestV*parameters[c*2+1]);
+	}
+	
+	/**
+	 * Returns the number of triangles that can be picked.
+	 * @return the number of triangles
+	 */
+	public int getTriangleCount()
+	{
+		return triangles.length/3;
+	}
+	
+	/*
+	 * Returns the distance at which a ray enters the box of a node, or infinity if it misses the
+	 * box or only meets it outside the given range.
+	 */
+	private double enter(int node, double[] origin, double[] inverse, double minDistance, double maxDistance)
+	{
+		double near = minDistance, far = maxDistance;
+		for (int k=0; k<3; k++)
+		{
+			double t1 = (boxes[node*6+k] - origin[k])*inverse[k];
+			double t2 = (boxes[node*6+3+k] - origin[k])*inverse[k];
+			if (t1 > t2)
+			{
+				double swap = t1; t1 = t2; t2 = swap;
+			}
+			//Comparisons with NaN, from a ray along the face of a box, leave the range as it is.
+			if (t1 > near) near = t1;
+			if (t2 < far) far = t2;
+		}
+		return near <= far ? near : Double.POSITIVE_INFINITY;
+	}
+	
+	/*
+	 * Builds the node for the triangles from start up to end, and the nodes below it, moving the
+	 * triangles into the order of the leaves. The boxes around the triangles and around their
+	 * centroids are found by the parent, from the bins it split them by.
+	 */
+	private void build(int start, int end, float[] box, float[] centroidBox, int level)
+	{
+		if (end-start >= CANCEL_CHECK_SIZE && Thread.currentThread().isInterrupted())
+			throw new CancellationException();
+		
+		depth = Math.max(depth, level);
+		int node = nodeCount++;
+		if (nodeCount*6 > boxes.length)
+		{
+			boxes = Arrays.copyOf(boxes, boxes.length*2);
+			nodes = Arrays.copyOf(nodes, nodes.length*2);
+		}
+		System.arraycopy(box, 0, boxes, node*6, 6);
+		
+		int count = end-start;
+		int axis = 0;
+		for (int k=1; k<3; k++)
+			if (centroidBox[3+k]-centroidBox[k] > centroidBox[3+axis]-centroidBox[axis])
+				axis = k;
+		double low = centroidBox[axis], scale = BINS/(centroidBox[3+axis] - low);
+		
+		float[] lowBox = null, lowCentroidBox = null, highBox = null, highCentroidBox = null;
+		int middle = -1;
+		if (count > LEAF_SIZE && centroidBox[3+axis] > centroidBox[axis])
+		{
+			fillBins(start, end, axis, low, scale);
+			
+			//Cost of the triangles below each split, summed from the low end
+			float[] sweep = new float[6];
+			emptyBox(sweep, 0);
+			int below = 0;
+			for (int b=0; b<BINS-1; b++)
+			{
+				growBox(sweep, binBoxes, b);
+				below += binCounts[b];
+				lowCosts[b] = below == 0 ? 0 : area(sweep, 0)*below;
+			}
+			
+			double bestCost = Double.POSITIVE_INFINITY;
+			int bestSplit = -1, above = 0;
+			emptyBox(sweep, 0);
+			for (int b=BINS-1; b>0; b--)
+			{
+				growBox(sweep, binBoxes, b);
+				above += binCounts[b];
+				double cost = lowCosts[b-1] + area(sweep, 0)*above;
+				if (above > 0 && above < count && cost < bestCost)
+				{
+					bestCost = cost;
+					bestSplit = b;
+				}
+			}
+			
+			boolean worthSplitting = count > MAX_LEAF_SIZE || bestCost < area(box, 0)*count;
+			if (bestSplit >= 0 && worthSplitting)
+			{
+				middle = partition(start, end, bestSplit);
+				
+				lowBox = new float[6]; lowCentroidBox = new float[6]; highBox = new float[6]; highCentroidBox = new float[6];
+				emptyBox(lowBox, 0); emptyBox(lowCentroidBox, 0); emptyBox(highBox, 0); emptyBox(highCentroidBox, 0);
+				for (int b=0; b<BINS; b++)
+				{
+					growBox(b < bestSplit ? lowBox : highBox, binBoxes, b);
+					growBox(b < bestSplit ? lowCentroidBox : highCentroidBox, binCentroidBoxes, b);
+				}
+			}
+		}
+		
+		//Triangles whose centroids all coincide are split in half rather than kept in one large leaf.
+		if (middle < 0 && count > MAX_LEAF_SIZE)
+		{
+			middle = (start+end) >>> 1;
+			lowBox = new float[6]; lowCentroidBox = new float[6]; highBox = new float[6]; highCentroidBox = new float[6];
+			findBounds(start, middle, lowBox, lowCentroidBox);
+			findBounds(middle, end, highBox, highCentroidBox);
+		}
+		
+		if (middle < 0)
+		{
+			nodes[node*2] = start;
+			nodes[node*2+1] = count;
+			return;
+		}
+		
+		build(start, middle, lowBox, lowCentroidBox, level+1);
+		nodes[node*2] = nodeCount;
+		nodes[node*2+1] = -1;
+		build(middle, end, highBox, highCentroidBox, level+1);
+	}
+	
+	/*
+	 * Puts the triangles from start up to end into bins by their centroids along the given axis, and
+	 * counts the triangles in each bin and finds the boxes around them and around their centroids.
+	 */
+	private void fillBins(int start, int end, int axis, double low, double scale)
+	{
+		Arrays.fill(binCounts, 0);
+		for (int b=0; b<BINS; b++)
+		{
+			emptyBox(binBoxes, b);
+			emptyBox(binCentroidBoxes, b);
+		}
+		
+		for (int i=start; i<end; i++)
+		{
+			int b = Math.min(BINS-1, (int)((centroids[i*3+axis] - low)*scale));
+			bins[i] = (byte)b;
+			binCounts[b]++;
+			
+			//Comparisons rather than Math.min and Math.max, which are slower and need not handle NaN here
+			for (int k=0; k<3; k++)
+			{
+				float c = centroids[i*3+k];
+				if (triangleBoxes[i*6+k] < binBoxes[b*6+k]) binBoxes[b*6+k] = triangleBoxes[i*6+k];
+				if (triangleBoxes[i*6+3+k] > binBoxes[b*6+3+k]) binBoxes[b*6+3+k] = triangleBoxes[i*6+3+k];
+				if (c < binCentroidBoxes[b*6+k]) binCentroidBoxes[b*6+k] = c;
+				if (c > binCentroidBoxes[b*6+3+k]) binCentroidBoxes[b*6+3+k] = c;
+			}
+		}
+	}
+	
+	//Moves the triangles from start up to end in bins below the split before the rest, and returns where the rest start.
+	private int partition(int start, int end, int split)
+	{
+		int i = start, j = end-1;
+		while (true)
+		{
+			while (i <= j && bins[i] < split)
+				i++;
+			while (i <= j && bins[j] >= split)
+				j--;
+			if (i >= j)
+				return i;
+			swap(i++, j--);
+		}
+	}
+	
+	//Finds the boxes around the triangles from start up to end and around their centroids.
+	private void findBounds(int start, int end, float[] box, float[] centroidBox)
+	{
+		emptyBox(box, 0);
+		emptyBox(centroidBox, 0);
+		for (int i=start; i<end; i++)
+		{
+			for (int k=0; k<3; k++)
+			{
+				box[k] = Math.min(box[k], triangleBoxes[i*6+k]);
+				box[3+k] = Math.max(box[3+k], triangleBoxes[i*6+3+k]);
+				centroidBox[k] = Math.min(centroidBox[k], centroids[i*3+k]);
+				centroidBox[3+k] = Math.max(centroidBox[3+k], centroids[i*3+k]);
+			}
+		}
+	}
+	
+	//Swaps two triangles, along with everything known about them while building.
+	private void swap(int i, int j)
+	{
+		swap(triangles, i*3, j*3, 3);
+		swap(triangleBoxes, i*6, j*6, 6);
+		swap(centroids, i*3, j*3, 3);
+		byte bin = bins[i]; bins[i] = bins[j]; bins[j] = bin;
+	}
+	
+	//Swaps two runs of ints in an array.
+	private static void swap(int[] array, int i, int j, int length)
+	{
+		for (int k=0; k<length; k++)
+		{
+			int swap = array[i+k]; array[i+k] = array[j+k]; array[j+k] = swap;
+		}
+	}
+	
+	//Swaps two runs of floats in an array.
+	private static void swap(float[] array, int i, int j, int length)
+	{
+		for (int k=0; k<length; k++)
+		{
+			float swap = array[i+k]; array[i+k] = array[j+k]; array[j+k] = swap;
+		}
+	}
+	
+	//Returns whether a vertex has a finite position.
+	private boolean isFinite(int vertex)
+	{
+		float sum = positions[vertex*3] + positions[vertex*3+1] + positions[vertex*3+2];
+		return !Float.isNaN(sum) && !Float.isInfinite(sum);
+	}
+	
+	//Makes a box in an array of boxes empty, so that growing it gives the box it grows to contain.
+	private static void emptyBox(float[] boxes, int b)
+	{
+		for (int k=0; k<3; k++)
+		{
+			boxes[b*6+k] = Float.MAX_VALUE;
+			boxes[b*6+3+k] = -Float.MAX_VALUE;
+		}
+	}
+	
+	//Grows a box to contain a box in an array of boxes, unless that one is empty.
+	private static void growBox(float[] box, float[] boxes, int b)
+	{
+		if (boxes[b*6] > boxes[b*6+3])
+			return;
+		for (int k=0; k<3; k++)
+		{
+			box[k] = Math.min(box[k], boxes[b*6+k]);
+			box[3+k] = Math.max(box[3+k], boxes[b*6+3+k]);
+		}
+	}
+	
+	//Returns half the surface area of a box in an array of boxes.
+	private static double area(float[] boxes, int b)
+	{
+		double x = boxes[b*6+3]-boxes[b*6], y = boxes[b*6+4]-boxes[b*6+1], z = boxes[b*6+5]-boxes[b*6+2];
+		return x*y + y*z + z*x;
+	}
+	
+	/**
+	 * The triangles of one part of a mesh, copied so that they can be picked after the mesh
+	 * has been uploaded and its buffers reused.
+	 * @author Patrick Owen
+	 */
+	public static class Surface
+	{
+		public final float[] positions;
+		public final int[] triangles;
+		public final float[] parameters;
+		
+		/**
+		 * Copies the positions and triangles of a part of a mesh.
+		 * @param vertices the positions and normals of the vertices, six floats each
+		 * @param order the indices of the vertices of each triangle, as an IntBuffer or a ShortBuffer of unsigned indices
+		 * @param count the number of indices
+		 * @param parameters the s and t of each vertex, or null if they are not known
+		 */
+		public Surface(FloatBuffer vertices, Buffer order, int count, float[] parameters)
+		{
+			positions = new float[vertices.limit()/6*3];
+			for (int i=0; i<positions.length/3; i++)
+			{
+				positions[i*3] = vertices.get(i*6);
+				positions[i*3+1] = vertices.get(i*6+1);
+				positions[i*3+2] = vertices.get(i*6+2);
+			}
+			
+			triangles = new int[count/3*3];
+			for (int i=0; i<triangles.length; i++)
+			{
+				if (order instanceof ShortBuffer)
+					triangles[i] = ((ShortBuffer)order).get(i) & 0xFFFF;
+				else
+					triangles[i] = ((IntBuffer)order).get(i);
+			}
+			this.parameters = parameters;
+		}
+	}
+	
+	/**
+	 * Where a ray hit a mesh.
+	 * @author Patrick Owen
+	 */
+	public static class Hit
+	{
+		public final double x, y, z;
+		
+		//Parameters of the surface at the hit, or NaN if they are not known
+		public final double s, t;
+		
+		public Hit(double x, double y, double z, double s, double t)
+		{
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.s = s;
+			this.t = t;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import static net.patowen.grapher.ParaCurve3D.*;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import net.patowen.grapher.math.Expression;
+
+/**
+ * Builds the curve of a ParaCurve3D, sampled adaptively.
+ * @author Patrick Owen
+ */
+public class ParaCurve3DBuilder extends MeshBuilder
+{
+	//Function values
+	private Expression functionX, functionY, functionZ;
+	
+	//Info for future drawing
+	private AdaptiveCurveSampler sampler;
+	
+	//Graph bounds
+	private double tMin, tMax;
+	private int tRes;
+	
+	/**
+	 * Constructs a ParaCurve3DBuilder with nothing sampled yet.
+	 */
+	public ParaCurve3DBuilder()
+	{
+		sampler = new AdaptiveCurveSampler(3);
+	}
+	
+	protected void defineParameters(GraphParameters parameters)
+	{
+		parameters.defineExpression(0);
+		parameters.defineExpression(1);
+		parameters.defineExpression(2);
+		parameters.defineDouble(T_MIN, -1, BOUNDS);
+		parameters.defineDouble(T_MAX, 1, BOUNDS);
+		parameters.defineInt(T_RES, 1000, RESOLUTION);
+	}
+	
+	protected void buildMesh(GraphState state, Mesh mesh)
+	{
+		readState(state);
+		
+		if (functionX != null && functionY != null && functionZ != null)
+		{
+			/*
+			 * Tolerances are measured in pixels at the distance of the view center, using the 45 degree
+			 * field of view of the camera. tRes limits the number of samples rather than fixing it.
+			 */
+			double pixelsPerUnit = getViewHeight()/(2*Math.tan(Math.PI/8)*state.getDouble(VIEW_DISTANCE));
+			for (int d=0; d<3; d++)
+				sampler.setProjection(d, pixelsPerUnit, 0);
+			sampler.sample(new Expression[] {functionX, functionY, functionZ}, u, v, tMin, tMax, tRes+1);
+			checkCancelled();
+			
+			generateArrays(mesh);
+		}
+	}
+	
+	//Fills the mesh's buffers with the correct information for glDrawElements to draw the correct figure.
+	public void generateArrays(Mesh mesh)
+	{
+		int count = sampler.getCount();
+		FloatBuffer vertices = mesh.newFloatBuffer(count*3);
+		int vc = 0; //vertexCounter
+		
+		IntBuffer order = mesh.newIntBuffer(Math.max(count-1, 0)*2);
+		int oc = 0; //orderCounter
+		
+		//Vertices
+		for (int i=0; i<count; i++)
+		{
+			vertices.put(vc++, (float)sampler.getCoordinate(i, 0));
+			vertices.put(vc++, (float)sampler.getCoordinate(i, 1));
+			vertices.put(vc++, (float)sampler.getCoordinate(i, 2));
+		}
+		
+		//Order
+		for (int i=1; i<count; i++)
+		{
+			if (!sampler.isConnected(i))
+				continue;
+			
+			order.put(oc++, i-1);
+			order.put(oc++, i);
+		}
+		
+		mesh.addLines(vertices, order, oc);
+	}
+	
+	//Copies everything the update depends on from the snapshot being built.
+	private void readState(GraphState state)
+	{
+		functionX = state.getExpression(0);
+		functionY = state.getExpression(1);
+		functionZ = state.getExpression(2);
+		tMin = state.getDouble(T_MIN);
+		tMax = state.getDouble(T_MAX);
+		tRes = state.getInt(T_RES);
+	}
+}
@@ -21,7 +21,7 @@ package net.patowen.grapher;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
 
 import net.patowen.grapher.math.Expression;
 
@@ -35,11 +35,7 @@ public class ParaGraph extends Graph2D
 	
 	public static final int T_MIN = 100, T_MAX = 101, T_RES = 102;
 	
-	private Expression functionX;
-	private Expression functionY;
-	
-	private double tMin, tMax;
-	int tRes;
+	private AdaptiveCurveSampler sampler;
 	
 	/**
 	 * Constructs a ParaGraph and initializes its defaults.
@@ -48,95 +44,48 @@ public class ParaGraph extends Graph2D
 	{
 		super();
 		
-		functionX = null;
-		functionY = null;
+		defineExpression(0);
+		defineExpression(1);
+		
+		defineDouble(T_MIN, -1, BOUNDS);
+		defineDouble(T_MAX, 1, BOUNDS);
+		defineInt(T_RES, 1000, RESOLUTION);
 		
-		tMin = -1;
-		tMax = 1;
-		tRes = 1000;
+		sampler = new AdaptiveCurveSampler(2);
 		
 		repaint();
 	}
 	
-	public Expression getExpression(int index)
-	{
-		switch (index)
-		{
-		case 0: return functionX;
-		case 1: return functionY;
-		default: throw new IllegalArgumentException("Invalid index");
-		}
-	}
-	
-	public void setExpression(int index, Expression value)
-	{
-		switch (index)
-		{
-		case 0: functionX = value; break;
-		case 1: functionY = value; break;
-		default: throw new IllegalArgumentException("Invalid index");
-		}
-	}
-	
-	public void paintGraph(Graphics g)
+	public void paintGraph(Graphics g, GraphState state)
 	{
-		super.paintGraph(g);
+		super.paintGraph(g, state);
 		Graphics2D g2 = (Graphics2D)g;
+		Expression functionX = state.getExpression(0);
+		Expression functionY = state.getExpression(1);
 		
 		//Draw the graph
 		if (functionX != null && functionY != null)
 		{
 			g2.setColor(Color.BLACK);
-			double x1, x2, y1, y2;
-			for (int i=0; i<tRes; i++)
+			
+			//The resolution limits the number of samples rather than fixing it.
+			sampler.setProjection(0, getI(1)-getI(0), getI(0));
+			sampler.setProjection(1, getJ(1)-getJ(0), getJ(0));
+			sampler.setVisibleRange(0, 0, getWidth());
+			sampler.setVisibleRange(1, 0, getHeight());
+			sampler.sample(new Expression[] {functionX, functionY}, u, v,
+					state.getDouble(T_MIN), state.getDouble(T_MAX), state.getInt(T_RES)+1);
+			
+			Path2D.Double path = new Path2D.Double();
+			for (int i=0; i<sampler.getCount(); i++)
 			{
-				//Draw line segments between the correct points for each t-value.
-				double t1 = tMin+i*(tMax-tMin)/tRes, t2 = tMin+(i+1)*(tMax-tMin)/tRes;
-				x1 = functionX.eval(new double[]{t1, u, v});
-				x2 = functionX.eval(new double[]{t2, u, v});
-				y1 = functionY.eval(new double[]{t1, u, v});
-				y2 = functionY.eval(new double[]{t2, u, v});
-				if (!Double.isNaN(y1) && !Double.isNaN(y2) && !Double.isInfinite(y1) && !Double.isInfinite(y2))
-					g2.draw(new Line2D.Double(getI(x1), getJ(y1), getI(x2), getJ(y2)));
+				double x = getI(sampler.getCoordinate(i, 0)), y = getJ(sampler.getCoordinate(i, 1));
+				if (sampler.isConnected(i))
+					path.lineTo(x, y);
+				else
+					path.moveTo(x, y);
 			}
-		}
-	}
-	
-	public void setDouble(int index, double value)
-	{
-		switch (index)
-		{
-		case T_MIN: tMin = value; break;
-		case T_MAX: tMax = value; break;
-		default: super.setDouble(index, value);
-		}
-	}
-	
-	public void setInt(int index, int value)
-	{
-		switch (index)
-		{
-		case T_RES: tRes = value; break;
-		default: super.setInt(index, value);
-		}
-	}
-	
-	public double getDouble(int index)
-	{
-		switch (index)
-		{
-		case T_MIN: return tMin;
-		case T_MAX: return tMax;
-		default: return super.getDouble(index);
-		}
-	}
-	
-	public int getInt(int index)
-	{
-		switch (index)
-		{
-		case T_RES: return tRes;
-		default: return super.getInt(index);
+			g2.draw(path);
 		}
 	}
 }
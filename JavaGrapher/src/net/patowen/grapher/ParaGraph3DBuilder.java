@@ -0,0 +1,261 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import static net.patowen.grapher.ParaGraph3D.*;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import net.patowen.grapher.math.Expression;
+
+/**
+ * Builds the surface of a ParaGraph3D, either as a grid or tessellated adaptively.
+ * @author Patrick Owen
+ */
+public class ParaGraph3DBuilder extends MeshBuilder
+{
+	//Function values
+	private Expression functionX, functionY, functionZ;
+	
+	//Graph bounds
+	private double sMin, sMax, tMin, tMax;
+	private int sRes, tRes;
+	private boolean adaptive, gridNormals;
+	
+	private AdaptiveSurfaceTessellator tessellator;
+	private GridSampleCache samples; //Positions and normals of the last grid
+	
+	/**
+	 * Constructs a ParaGraph3DBuilder with nothing sampled yet.
+	 */
+	public ParaGraph3DBuilder()
+	{
+		tessellator = new AdaptiveSurfaceTessellator()
+		{
+			protected void evaluate(double s, double t, double[] sample)
+			{
+				sample[0] = value(functionX, s,t); sample[1] = value(functionY, s,t); sample[2] = value(functionZ, s,t);
+				sample[3] = partialS(functionX, s,t); sample[4] = partialS(functionY, s,t); sample[5] = partialS(functionZ, s,t);
+				sample[6] = partialT(functionX, s,t); sample[7] = partialT(functionY, s,t); sample[8] = partialT(functionZ, s,t);
+			}
+		};
+		//Positions are shared between grids with normals from derivatives and from the grid.
+		samples = new GridSampleCache(6, 3);
+	}
+	
+	protected void defineParameters(GraphParameters parameters)
+	{
+		parameters.defineExpression(0);
+		parameters.defineExpression(1);
+		parameters.defineExpression(2);
+		parameters.defineDouble(S_MIN, -1, BOUNDS);
+		parameters.defineDouble(T_MIN, -1, BOUNDS);
+		parameters.defineDouble(S_MAX, 1, BOUNDS);
+		parameters.defineDouble(T_MAX, 1, BOUNDS);
+		parameters.defineInt(S_RES, 50, RESOLUTION);
+		parameters.defineInt(T_RES, 50, RESOLUTION);
+		parameters.defineInt(ADAPTIVE, 0, RESOLUTION);
+	}
+	
+	protected void buildMesh(GraphState state, Mesh mesh)
+	{
+		readState(state);
+		
+		if (functionX != null && functionY != null && functionZ != null)
+		{
+			if (adaptive)
+				tessellator.tessellate(mesh, sMin, sMax, sRes, tMin, tMax, tRes);
+			else if (gridNormals)
+				generateArraysFromPositions(mesh);
+			else
+				generateArrays(mesh);
+		}
+	}
+	
+	/*
+	 * Samples the functions straight into the mesh's buffers, filling them with the correct information
+	 * for glDrawElements to draw the correct figure. The grid is built in chunks, so very high
+	 * resolutions need no more memory at once than a streamed mesh allows. Points that the last
+	 * grid already sampled, such as after the bounds are moved, are copied rather than evaluated,
+	 * and only their normals are evaluated if the last grid found its normals from the grid.
+	 */
+	public void generateArrays(Mesh mesh)
+	{
+		samples.start(Arrays.<Object>asList(functionX, functionY, functionZ, u, v), false, sMin, sMax, sRes, tMin, tMax, tRes);
+		
+		//Vertices and normals, interleaved
+		new GridChunks.Vertices()
+		{
+			protected void vertex(int i, int j, FloatBuffer vertices, int vc)
+			{
+				if (samples.load(i, j, vertices, vc))
+					return;
+				
+				double s = sMin + (sMax-sMin)*i/sRes, t = tMin + (tMax-tMin)*j/tRes;
+				double dx1, dy1, dz1, dx2, dy2, dz2;
+				
+				dx1 = partialS(functionX, s,t);
+				dy1 = partialS(functionY, s,t);
+				dz1 = partialS(functionZ, s,t);
+				
+				dx2 = partialT(functionX, s,t);
+				dy2 = partialT(functionY, s,t);
+				dz2 = partialT(functionZ, s,t);
+				
+				double nx, ny, nz, n;
+				nx = dy1*dz2 - dz1*dy2;
+				ny = dz1*dx2 - dx1*dz2;
+				nz = dx1*dy2 - dy1*dx2;
+				n = Math.sqrt(nx*nx + ny*ny + nz*nz);
+				
+				if (!samples.loadShared(i, j, vertices, vc))
+				{
+					vertices.put(vc, (float)value(functionX, s,t));
+					vertices.put(vc+1, (float)value(functionY, s,t));
+					vertices.put(vc+2, (float)value(functionZ, s,t));
+				}
+				
+				vertices.put(vc+3, (float)(nx/n));
+				vertices.put(vc+4, (float)(ny/n));
+				vertices.put(vc+5, (float)(nz/n));
+				
+				samples.store(i, j, vertices, vc);
+			}
+			
+			protected boolean parameters(int i, int j, float[] parameters, int index)
+			{
+				return gridParameters(i, j, parameters, index);
+			}
+		}.build(mesh, sRes, tRes);
+		
+		samples.finish();
+	}
+	
+	/*
+	 * Samples only the positions of the functions, and finds the normals from the positions around each vertex.
+	 * Derivatives are evaluated only on the edges of the grid and where the positions do not give a normal.
+	 * Positions the last grid already sampled are copied, whichever way it found its normals.
+	 */
+	private void generateArraysFromPositions(Mesh mesh)
+	{
+		samples.start(Arrays.<Object>asList(functionX, functionY, functionZ, u, v), true, sMin, sMax, sRes, tMin, tMax, tRes);
+		
+		new GridChunks.Positions()
+		{
+			protected void position(int i, int j, double[] positions, int index)
+			{
+				if (samples.loadShared(i, j, positions, index))
+					return;
+				
+				double s = sMin + (sMax-sMin)*i/sRes, t = tMin + (tMax-tMin)*j/tRes;
+				positions[index] = value(functionX, s,t);
+				positions[index+1] = value(functionY, s,t);
+				positions[index+2] = value(functionZ, s,t);
+			}
+			
+			protected void normal(int i, int j, double[] normal)
+			{
+				double s = sMin + (sMax-sMin)*i/sRes, t = tMin + (tMax-tMin)*j/tRes;
+				double dx1, dy1, dz1, dx2, dy2, dz2;
+				
+				dx1 = partialS(functionX, s,t);
+				dy1 = partialS(functionY, s,t);
+				dz1 = partialS(functionZ, s,t);
+				
+				dx2 = partialT(functionX, s,t);
+				dy2 = partialT(functionY, s,t);
+				dz2 = partialT(functionZ, s,t);
+				
+				double nx, ny, nz, n;
+				nx = dy1*dz2 - dz1*dy2;
+				ny = dz1*dx2 - dx1*dz2;
+				nz = dx1*dy2 - dy1*dx2;
+				n = Math.sqrt(nx*nx + ny*ny + nz*nz);
+				
+				normal[0] = nx/n;
+				normal[1] = ny/n;
+				normal[2] = nz/n;
+			}
+			
+			protected void filled(int i, int j, FloatBuffer vertices, int vc)
+			{
+				samples.store(i, j, vertices, vc);
+			}
+			
+			protected boolean parameters(int i, int j, float[] parameters, int index)
+			{
+				return gridParameters(i, j, parameters, index);
+			}
+		}.build(mesh, sRes, tRes);
+		
+		samples.finish();
+	}
+	
+	//Writes s and t of a vertex of the grid, for picking.
+	private boolean gridParameters(int i, int j, float[] parameters, int index)
+	{
+		parameters[index] = (float)(sMin + (sMax-sMin)*i/sRes);
+		parameters[index+1] = (float)(tMin + (tMax-tMin)*j/tRes);
+		return true;
+	}
+	
+	//Returns the value of the specified function with the specified parameters.
+	public double value(Expression function, double s, double t)
+	{
+		if (function == null) return Double.NaN;
+		return function.eval(new double[]{s, t, u, v});
+	}
+	
+	/*
+	 * Returns the partial derivative with respect to s of the
+	 * specified function with the specified parameters.
+	 */
+	public double partialS(Expression function, double s, double t)
+	{
+		if (function == null) return Double.NaN;
+		return function.derivative(new double[]{s, t, u, v}, 0);
+	}
+	
+	/*
+	 * Returns the partial derivative with respect to t of the
+	 * specified function with the specified parameters.
+	 */
+	public double partialT(Expression function, double s, double t)
+	{
+		if (function == null) return Double.NaN;
+		return function.derivative(new double[]{s, t, u, v}, 1);
+	}
+	
+	//Copies everything the update depends on from the snapshot being built.
+	private void readState(GraphState state)
+	{
+		functionX = state.getExpression(0);
+		functionY = state.getExpression(1);
+		functionZ = state.getExpression(2);
+		sMin = state.getDouble(S_MIN);
+		tMin = state.getDouble(T_MIN);
+		sMax = state.getDouble(S_MAX);
+		tMax = state.getDouble(T_MAX);
+		sRes = scaleResolution(state, S_RES);
+		tRes = scaleResolution(state, T_RES);
+		adaptive = state.getInt(ADAPTIVE) != 0;
+		gridNormals = state.getInt(GRID_NORMALS) != 0;
+	}
+}
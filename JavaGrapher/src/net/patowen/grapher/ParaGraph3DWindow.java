@@ -23,11 +23,16 @@ import static net.patowen.grapher.ParaGraph3D.*;
 import java.awt.BorderLayout;
 import java.awt.GridBagConstraints;
 import java.awt.Window;
+import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.FileWriter;
+import java.io.IOException;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
+import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JTextField;
 
@@ -39,8 +44,15 @@ public class ParaGraph3DWindow extends GraphWindow implements ActionListener
 {
 	private static final long serialVersionUID = 1L;
 	
+	//Values of u and of v in a precomputed sweep
+	private static final int SWEEP_STEPS = 21;
+	
+	private JCheckBoxMenuItem adaptiveButton, gridNormalsButton, sweepBlendingButton;
+	private JMenuItem sweepButton;
+	
 	private JLabel sMinLabel, sMaxLabel, sResLabel, tMinLabel, tMaxLabel, tResLabel, xCenterLabel, yCenterLabel, zCenterLabel;
 	private JTextField sMinField, sMaxField, sResField, tMinField, tMaxField, tResField, xCenterField, yCenterField, zCenterField;
+	private AutoResolutionPanel autoPanel;
 	
 	/**
 	 * Initializes a ParaGraph3DWindow.
@@ -58,6 +70,7 @@ public class ParaGraph3DWindow extends GraphWindow implements ActionListener
 		createPresetLinkInt("s-res", S_RES); createPresetLinkInt("t-res", T_RES);
 		createPresetLinkDouble("x-center", X_CENTER); createPresetLinkDouble("y-center", Y_CENTER);
 		createPresetLinkDouble("z-center", Z_CENTER); createPresetLinkDouble("view-dist", VIEW_DISTANCE);
+		createPresetLinkInt("auto-res", AUTO_RESOLUTION); createPresetLinkDouble("rebuild-budget", REBUILD_BUDGET);
 		
 		presetNames = new String[] {"Sphere", "Torus", "Mobius Strip", "Spiral"};
 		presetFiles = new String[] {"par3d1.txt", "par3d2.txt", "par3d3.txt", "par3d4.txt"};
@@ -77,7 +90,21 @@ public class ParaGraph3DWindow extends GraphWindow implements ActionListener
 		
 		setTextFields(new String[]{"x = ", "y = ", "z = "}, false);
 		
+		adaptiveButton = new JCheckBoxMenuItem("Adaptive Tessellation", false);
+		adaptiveButton.addActionListener(this);
+		gridNormalsButton = new JCheckBoxMenuItem("Normals from Grid", false);
+		gridNormalsButton.addActionListener(this);
+		sweepButton = new JMenuItem("Precompute u/v Sweep");
+		sweepButton.setToolTipText("Builds the graph for many values of u and v, so that dragging them is instant.");
+		sweepButton.addActionListener(this);
+		sweepBlendingButton = new JCheckBoxMenuItem("Blend Swept Meshes", false);
+		sweepBlendingButton.addActionListener(this);
+		
 		initialize();
+		graphMenu.add(adaptiveButton);
+		graphMenu.add(gridNormalsButton);
+		graphMenu.add(sweepButton);
+		graphMenu.add(sweepBlendingButton);
 	}
 	
 	public void prepareBoundsWindow(JDialog win)
@@ -105,6 +132,9 @@ public class ParaGraph3DWindow extends GraphWindow implements ActionListener
 		createLinkDouble(xCenterField, X_CENTER); createLinkDouble(yCenterField, Y_CENTER);
 		createLinkDouble(zCenterField, Z_CENTER);
 		
+		autoPanel = new AutoResolutionPanel((Graph3D)graph, S_RES, T_RES);
+		createLinkDouble(autoPanel.getBudgetField(), REBUILD_BUDGET);
+		
 		setBoundsApplyButton = new JButton("Apply");
 		
 		GridBagConstraints c = new GridBagConstraints();
@@ -133,7 +163,78 @@ public class ParaGraph3DWindow extends GraphWindow implements ActionListener
 		c.gridx = 0; c.gridy = 4; win.add(zCenterLabel, c);
 		c.gridx = 1; win.add(zCenterField,c);
 		
+		c.gridx = 0; c.gridy = 5; c.gridwidth = 4; win.add(autoPanel, c);
+		
 		c.fill = GridBagConstraints.NONE;
-		c.gridx = 0; c.gridy = 5; c.gridwidth = 4; win.add(setBoundsApplyButton,c);
+		c.gridx = 0; c.gridy = 6; win.add(setBoundsApplyButton,c);
+	}
+	
+	protected void applyBounds()
+	{
+		autoPanel.apply();
+	}
+	
+	public void actionPerformed(ActionEvent e)
+	{
+		super.actionPerformed(e);
+		
+		if (e.getSource() == adaptiveButton)
+		{
+			((ParaGraph3D)graph).setAdaptive(adaptiveButton.isSelected());
+		}
+		else if (e.getSource() == gridNormalsButton)
+		{
+			((ParaGraph3D)graph).setGridNormals(gridNormalsButton.isSelected());
+		}
+		else if (e.getSource() == sweepButton)
+		{
+			((ParaGraph3D)graph).precomputeSweep(SWEEP_STEPS);
+		}
+		else if (e.getSource() == sweepBlendingButton)
+		{
+			((ParaGraph3D)graph).setSweepBlending(sweepBlendingButton.isSelected());
+		}
+	}
+	
+	protected void saveData(FileWriter w) throws IOException
+	{
+		w.append("adaptive: ");
+		if (adaptiveButton.isSelected()) w.append("true");
+		else w.append("false");
+		
+		w.append(System.getProperty("line.separator"));
+		
+		w.append("grid-normals: ");
+		if (gridNormalsButton.isSelected()) w.append("true");
+		else w.append("false");
+		
+		w.append(System.getProperty("line.separator"));
+		
+		w.append("blend-sweep: ");
+		if (sweepBlendingButton.isSelected()) w.append("true");
+		else w.append("false");
+		
+		w.append(System.getProperty("line.separator"));
+	}
+	
+	protected void loadData(String name, String value)
+	{
+		ParaGraph3D graph = (ParaGraph3D)(this.graph);
+		
+		if (name.equals("adaptive"))
+		{
+			if (value.equals("true")) {adaptiveButton.setSelected(true); graph.setAdaptive(true);}
+			else if (value.equals("false")) {adaptiveButton.setSelected(false); graph.setAdaptive(false);}
+		}
+		else if (name.equals("grid-normals"))
+		{
+			if (value.equals("true")) {gridNormalsButton.setSelected(true); graph.setGridNormals(true);}
+			else if (value.equals("false")) {gridNormalsButton.setSelected(false); graph.setGridNormals(false);}
+		}
+		else if (name.equals("blend-sweep"))
+		{
+			if (value.equals("true")) {sweepBlendingButton.setSelected(true); graph.setSweepBlending(true);}
+			else if (value.equals("false")) {sweepBlendingButton.setSelected(false); graph.setSweepBlending(false);}
+		}
 	}
 }
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the mesh of a solid swept along an axis, such as a solid of revolution or a solid with
+ * known cross sections. A profile, such as a circle, is scaled and moved along the axis according
+ * to sampled functions, so that every row of the grid is a copy of the profile. Each layer of the
+ * solid is described in local coordinates (a, y, z), where a is along the axis, as the point
+ * (a, center + scale*py, scale*pz) for each point (py, pz) of the profile. The values of a, center and
+ * scale, and their derivatives along the rows, are given for each row. The profile's points and normals
+ * are computed once per profile and resolution and shared, so sweeping it only takes a few
+ * multiplications per vertex. The solid can be closed at its ends with caps.
+ * <p>
+ * Normals point against the outward normal of the profile wherever the scale is positive,
+ * which is the side the graphs using this have always lit.
+ * @author Patrick Owen
+ */
+public class ProfileSweep
+{
+	//Number of profiles kept, most recently used first
+	private static final int CACHE_SIZE = 16;
+	
+	private static final Map<String, Profile> cache = new LinkedHashMap<String, Profile>(CACHE_SIZE, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1973139872093412258L;
+		
+		protected boolean removeEldestEntry(Map.Entry<String, Profile> eldest)
+		{
+			return size() > CACHE_SIZE;
+		}
+	};
+	
+	private Profile profile;
+	private int rows;
+	private boolean axisLast;
+	private List<Layer> layers;
+	
+	/**
+	 * Constructs a ProfileSweep with no layers.
+	 * @param profile the profile to sweep
+	 * @param rows the number of intervals along the axis
+	 * @param axisLast whether the axis is the z-axis, with the profile's y and z becoming x and y,
+	 * rather than the x-axis
+	 */
+	public ProfileSweep(Profile profile, int rows, boolean axisLast)
+	{
+		this.profile = profile;
+		this.rows = rows;
+		this.axisLast = axisLast;
+		layers = new ArrayList<Layer>();
+	}
+	
+	/**
+	 * Adds a layer, which is a surface of the solid. The vertices of the layers are interleaved in the
+	 * order GridTopology expects, so the first layer added is the first layer of the topology.
+	 * @return the layer, with every value zero, to be filled in
+	 */
+	public Layer addLayer()
+	{
+		Layer layer = new Layer(rows);
+		layers.add(layer);
+		return layer;
+	}
+	
+	/**
+	 * Sweeps the profile along every layer and adds the surfaces to the mesh.
+	 * @param mesh the mesh to add the surfaces to
+	 */
+	public void sweep(Mesh mesh)
+	{
+		final int columns = profile.count, layerCount = layers.size();
+		final FloatBuffer vertices = mesh.newFloatBuffer((rows+1)*(columns+1)*layerCount*6);
+		
+		//Vertices and normals, interleaved. Each row starts at a known place, so rows can be filled in any order.
+		new RowLoop()
+		{
+			protected void row(int i)
+			{
+				for (int l=0; l<layerCount; l++)
+				{
+					Layer layer = layers.get(l);
+					double a = layer.axial[i], da = layer.axialSlope[i];
+					double c = layer.center[i], dc = layer.centerSlope[i];
+					double h = layer.scale[i], dh = layer.scaleSlope[i];
+					double sign = h < 0 ? -1 : 1;
+					
+					int vc = (i*(columns+1)*layerCount + l)*6; //vertexCounter
+					for (int j=0; j<=columns; j++)
+					{
+						double py = profile.y[j], pz = profile.z[j];
+						double ny = profile.normalY[j], nz = profile.normalZ[j];
+						
+						double dy = dc + dh*py, dz = dh*pz;
+						double na = dy*ny + dz*nz, nb = -da*ny, nc = -da*nz;
+						double n = sign*Math.sqrt(na*na + nb*nb + nc*nc);
+						
+						put(vertices, vc, a, c + h*py, h*pz);
+						put(vertices, vc+3, na/n, nb/n, nc/n);
+						vc += layerCount*6;
+					}
+				}
+			}
+		}.run(0, rows+1);
+		
+		mesh.addTriangles(vertices, GridTopology.get(rows, columns, layerCount));
+	}
+	
+	/**
+	 * Closes the ends of a solid by connecting two rings of the profile at each end with a strip, as
+	 * between the inner and outer surfaces of a washer. Each ring is the profile scaled about the axis.
+	 * The normal of each strip is (normalAxial, normalProfile*ny, normalProfile*nz) in local coordinates,
+	 * where (ny, nz) is the normal of the profile.
+	 * @param mesh the mesh to add the caps to
+	 * @param axial the position along the axis of the inner and outer rings at the start and then at the end
+	 * @param scale the scale of the same four rings
+	 * @param normalAxial the axial part of the normal of the starting and ending strip
+	 * @param normalProfile the part of the normal of the starting and ending strip along the profile's normal
+	 */
+	public void addStripCaps(Mesh mesh, double[] axial, double[] scale, double[] normalAxial, double[] normalProfile)
+	{
+		int columns = profile.count;
+		FloatBuffer vertices = mesh.newFloatBuffer((columns+1)*4*6);
+		int vc = 0; //vertexCounter
+		
+		for (int j=0; j<=columns; j++)
+		{
+			for (int k=0; k<4; k++)
+			{
+				put(vertices, vc, axial[k], scale[k]*profile.y[j], scale[k]*profile.z[j]);
+				put(vertices, vc+3, normalAxial[k/2], normalProfile[k/2]*profile.normalY[j], normalProfile[k/2]*profile.normalZ[j]);
+				vc += 6;
+			}
+		}
+		
+		IntBuffer order = mesh.newIntBuffer(columns*12);
+		int oc = 0; //orderCounter
+		for (int j=0; j<columns; j++)
+		{
+			int v1 = j*4, v2 = (j+1)*4;
+			order.put(oc++, v1); order.put(oc++, v1+1); order.put(oc++, v2+1);
+			order.put(oc++, v1); order.put(oc++, v2+1); order.put(oc++, v2);
+			
+			order.put(oc++, v2+2); order.put(oc++, v2+3); order.put(oc++, v1+3);
+			order.put(oc++, v2+2); order.put(oc++, v1+3); order.put(oc++, v1+2);
+		}
+		
+		mesh.addTriangles(vertices, order, oc);
+	}
+	
+	/**
+	 * Closes the ends of a solid of one layer by filling the profile at the first and last rows, as
+	 * at the ends of a solid with known cross sections. The profile must be convex.
+	 * @param mesh the mesh to add the caps to
+	 */
+	public void addFanCaps(Mesh mesh)
+	{
+		int columns = profile.count;
+		Layer layer = layers.get(0);
+		FloatBuffer vertices = mesh.newFloatBuffer(columns*2*6);
+		int vc = 0; //vertexCounter
+		
+		for (int j=0; j<columns; j++)
+		{
+			for (int end=0; end<2; end++)
+			{
+				int i = end == 0 ? 0 : rows;
+				double h = layer.scale[i];
+				put(vertices, vc, layer.axial[i], layer.center[i] + h*profile.y[j], h*profile.z[j]);
+				put(vertices, vc+3, end == 0 ? 1 : -1, 0, 0);
+				vc += 6;
+			}
+		}
+		
+		IntBuffer order = mesh.newIntBuffer(Math.max(columns-2, 0)*6);
+		int oc = 0; //orderCounter
+		for (int j=1; j<columns-1; j++)
+		{
+			int v1 = j*2, v2 = (j+1)*2;
+			order.put(oc++, 0); order.put(oc++, v1); order.put(oc++, v2);
+			order.put(oc++, 1); order.put(oc++, v2+1); order.put(oc++, v1+1);
+		}
+		
+		mesh.addTriangles(vertices, order, oc);
+	}
+	
+	//Writes a point given in local coordinates to the buffer.
+	private void put(FloatBuffer buffer, int index, double a, double y, double z)
+	{
+		if (axisLast)
+		{
+			buffer.put(index, (float)y);
+			buffer.put(index+1, (float)z);
+			buffer.put(index+2, (float)a);
+		}
+		else
+		{
+			buffer.put(index, (float)a);
+			buffer.put(index+1, (float)y);
+			buffer.put(index+2, (float)z);
+		}
+	}
+	
+	/**
+	 * Returns a circle of radius 1 around the axis, starting at y = 1 and turning toward z.
+	 * @param res the number of segments
+	 * @return the shared profile
+	 */
+	public static Profile circle(int res)
+	{
+		String key = "circle," + res;
+		synchronized (cache)
+		{
+			Profile profile = cache.get(key);
+			if (profile == null)
+			{
+				double[] y = new double[res], z = new double[res];
+				for (int j=0; j<res; j++)
+				{
+					y[j] = Math.cos(j*2*Math.PI/res);
+					z[j] = Math.sin(j*2*Math.PI/res);
+				}
+				profile = new Profile(y, z, y, z);
+				cache.put(key, profile);
+			}
+			return profile;
+		}
+	}
+	
+	/**
+	 * Returns the half of a circle of radius 1 with z at least 0, closed along the y-axis.
+	 * The corners are listed twice, once for the normal of each side.
+	 * @param res the number of segments of the arc
+	 * @return the shared profile
+	 */
+	public static Profile semicircle(int res)
+	{
+		String key = "semicircle," + res;
+		synchronized (cache)
+		{
+			Profile profile = cache.get(key);
+			if (profile == null)
+			{
+				double[] y = new double[res+3], z = new double[res+3], normalY = new double[res+3], normalZ = new double[res+3];
+				for (int j=0; j<=res; j++)
+				{
+					y[j] = normalY[j] = Math.cos(j*Math.PI/res);
+					z[j] = normalZ[j] = Math.sin(j*Math.PI/res);
+				}
+				y[res+1] = -1; normalZ[res+1] = -1;
+				y[res+2] = 1; normalZ[res+2] = -1;
+				profile = new Profile(y, z, normalY, normalZ);
+				cache.put(key, profile);
+			}
+			return profile;
+		}
+	}
+	
+	/**
+	 * Returns a square of side 2 standing on the y-axis, with z from 0 to 2.
+	 * The corners are listed twice, once for the normal of each side.
+	 * @return the profile
+	 */
+	public static Profile square()
+	{
+		return new Profile(new double[] {1, 1, 1, 1, -1, -1, -1, -1}, new double[] {0, 0, 2, 2, 2, 2, 0, 0},
+				new double[] {0, 1, 1, 0, 0, -1, -1, 0}, new double[] {-1, 0, 0, 1, 1, 0, 0, -1});
+	}
+	
+	/**
+	 * Returns a square of side 2 centered on the y-axis, with z from -1 to 1.
+	 * The corners are listed twice, once for the normal of each side.
+	 * @return the profile
+	 */
+	public static Profile squareCenter()
+	{
+		return new Profile(new double[] {1, 1, 1, 1, -1, -1, -1, -1}, new double[] {-1, -1, 1, 1, 1, 1, -1, -1},
+				new double[] {0, 1, 1, 0, 0, -1, -1, 0}, new double[] {-1, 0, 0, 1, 1, 0, 0, -1});
+	}
+	
+	/**
+	 * Returns an equilateral triangle of side 2 standing on the y-axis.
+	 * The corners are listed twice, once for the normal of each side.
+	 * @return the profile
+	 */
+	public static Profile triangle()
+	{
+		double h = Math.sqrt(3);
+		return new Profile(new double[] {1, 1, 0, 0, -1, -1}, new double[] {0, 0, h, h, 0, 0},
+				new double[] {0, h/2, h/2, -h/2, -h/2, 0}, new double[] {-1, 0.5, 0.5, 0.5, 0.5, -1});
+	}
+	
+	/**
+	 * A closed curve in the plane perpendicular to the axis, with its outward normals.
+	 * The first point is repeated at the end, so that the grid can close the surface.
+	 */
+	public static class Profile
+	{
+		private final int count;
+		private final double[] y, z, normalY, normalZ;
+		
+		//Constructs a profile from its points, which must not be modified afterwards.
+		private Profile(double[] y, double[] z, double[] normalY, double[] normalZ)
+		{
+			count = y.length;
+			this.y = closed(y);
+			this.z = closed(z);
+			this.normalY = closed(normalY);
+			this.normalZ = closed(normalZ);
+		}
+		
+		/**
+		 * Returns the number of points of the profile, not counting the repeated first point.
+		 * @return the number of points
+		 */
+		public int getCount()
+		{
+			return count;
+		}
+		
+		//Returns a copy of the values with the first repeated at the end.
+		private static double[] closed(double[] values)
+		{
+			double[] closed = new double[values.length+1];
+			System.arraycopy(values, 0, closed, 0, values.length);
+			closed[values.length] = values[0];
+			return closed;
+		}
+	}
+	
+	/**
+	 * The values that place the profile in each row of one surface of the solid,
+	 * with their derivatives along the rows.
+	 */
+	public static class Layer
+	{
+		public final double[] axial, axialSlope;
+		public final double[] center, centerSlope;
+		public final double[] scale, scaleSlope;
+		
+		private Layer(int rows)
+		{
+			axial = new double[rows+1]; axialSlope = new double[rows+1];
+			center = new double[rows+1]; centerSlope = new double[rows+1];
+			scale = new double[rows+1]; scaleSlope = new double[rows+1];
+		}
+	}
+}
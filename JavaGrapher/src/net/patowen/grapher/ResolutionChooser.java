@@ -0,0 +1,228 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Chooses the resolutions a graph is built at so that its builds take a given amount of time.
+ * Every resolution a build uses passes through <code>scale</code>, which multiplies it by the
+ * detail of the build. Once a build is finished, its time is divided by its number of samples,
+ * the product of its resolutions plus one, to give the time per sample, and the next build can
+ * then be given the largest detail whose samples fit in its budget. Graphs made of several separate
+ * grids put the resolutions of each grid in its own group, and the samples of the groups add up
+ * rather than multiply. Since the time per sample
+ * depends mostly on the expressions, a small calibration build measures it again whenever they
+ * change. Used only from the thread that builds the graph.
+ * @author Patrick Owen
+ */
+public class ResolutionChooser
+{
+	//Resolutions are never scaled below the smaller of this and their configured value
+	private static final int MIN_RESOLUTION = 4;
+	
+	//Largest resolution a detail above 1 can scale up to, unless more is configured
+	private static final int MAX_AUTO_RESOLUTION = 1000;
+	
+	//Largest resolution of a calibration build
+	private static final int CALIBRATION_RESOLUTION = 32;
+	
+	private static final double MIN_DETAIL = 0.02, MAX_DETAIL = 1000;
+	
+	//The build in progress
+	private double detail;
+	private boolean calibrating;
+	private Map<Integer, Integer> configured, chosen;
+	private Map<Integer, Integer> groups; //Group of each resolution, by index
+	
+	//What the last finished build measured
+	private Map<Integer, Integer> timedResolutions, timedGroups;
+	private GraphState timedState;
+	private double sampleTime; //Nanoseconds per sample
+	
+	/**
+	 * Constructs a ResolutionChooser that has not timed any builds.
+	 */
+	public ResolutionChooser()
+	{
+		detail = 1;
+		calibrating = false;
+		configured = new HashMap<Integer, Integer>();
+		chosen = new HashMap<Integer, Integer>();
+		groups = new HashMap<Integer, Integer>();
+		timedResolutions = new HashMap<Integer, Integer>();
+		timedGroups = new HashMap<Integer, Integer>();
+		timedState = null;
+		sampleTime = 0;
+	}
+	
+	/**
+	 * Starts a build at the given detail.
+	 * @param detail the fraction of the configured resolutions to build at
+	 */
+	public void startBuild(double detail)
+	{
+		this.detail = detail;
+		calibrating = false;
+		configured.clear();
+		chosen.clear();
+		groups.clear();
+	}
+	
+	/**
+	 * Starts a calibration build, whose resolutions are small and only used to measure the time per sample.
+	 */
+	public void startCalibration()
+	{
+		startBuild(1);
+		calibrating = true;
+	}
+	
+	/**
+	 * Returns the resolution to build at for a configured resolution, and counts its samples toward the build.
+	 * @param index the index of the parameter holding the resolution
+	 * @param resolution the configured number of intervals
+	 * @return the number of intervals to build with
+	 */
+	public int scale(int index, int resolution)
+	{
+		return scale(index, resolution, 0);
+	}
+	
+	/**
+	 * Returns the resolution to build at for a configured resolution of one of several separate grids,
+	 * and counts its samples toward the build.
+	 * @param index the index of the parameter holding the resolution
+	 * @param resolution the configured number of intervals
+	 * @param group the grid the resolution belongs to
+	 * @return the number of intervals to build with
+	 */
+	public int scale(int index, int resolution, int group)
+	{
+		int scaled = calibrating ? Math.min(resolution, CALIBRATION_RESOLUTION) : scale(resolution, detail);
+		configured.put(index, resolution);
+		chosen.put(index, scaled);
+		groups.put(index, group);
+		return scaled;
+	}
+	
+	/**
+	 * Records how long the build took.
+	 * @param state the snapshot that was built
+	 * @param time the time the build took, in nanoseconds
+	 */
+	public void finishBuild(GraphState state, long time)
+	{
+		if (chosen.isEmpty())
+			return;
+		
+		double samples = count(chosen, groups, 1);
+		
+		//Times vary from build to build, so builds of the same expressions are averaged.
+		double measured = time/samples;
+		if (calibrating || timedState == null || !state.hasSameExpressions(timedState))
+			sampleTime = measured;
+		else
+			sampleTime = (sampleTime + measured)/2;
+		
+		timedResolutions = new HashMap<Integer, Integer>(configured);
+		timedGroups = new HashMap<Integer, Integer>(groups);
+		timedState = state;
+	}
+	
+	/**
+	 * Returns whether the time per sample needs to be measured before the given snapshot
+	 * can be fitted to a budget, which is the case if it has never been measured or the
+	 * expressions have changed since.
+	 * @param state the snapshot about to be built
+	 * @return whether a calibration build is needed
+	 */
+	public boolean needsCalibration(GraphState state)
+	{
+		return timedState == null || !state.hasSameExpressions(timedState);
+	}
+	
+	/**
+	 * Returns the largest detail at which a build of the last timed resolutions should take no longer than
+	 * the given time, or 1 if nothing has been timed yet.
+	 * @param budget the time the build may take, in nanoseconds
+	 * @return the detail to build at
+	 */
+	public double fitDetail(double budget)
+	{
+		if (timedState == null || timedResolutions.isEmpty())
+			return 1;
+		
+		double low = MIN_DETAIL, high = MAX_DETAIL;
+		if (samples(low)*sampleTime > budget)
+			return low;
+		
+		for (int i=0; i<40; i++)
+		{
+			double mid = Math.sqrt(low*high);
+			if (samples(mid)*sampleTime <= budget)
+				low = mid;
+			else
+				high = mid;
+		}
+		return low;
+	}
+	
+	/**
+	 * Returns the resolutions chosen for the current build.
+	 * @return a copy of the resolutions, by the index of their parameters
+	 */
+	public Map<Integer, Integer> getChosen()
+	{
+		return new HashMap<Integer, Integer>(chosen);
+	}
+	
+	//Returns the number of samples a build of the last timed resolutions would have at the given detail.
+	private double samples(double detail)
+	{
+		return count(timedResolutions, timedGroups, detail);
+	}
+	
+	//Returns the number of samples of resolutions scaled by the given detail, adding up the products of each group.
+	private static double count(Map<Integer, Integer> resolutions, Map<Integer, Integer> groups, double detail)
+	{
+		Map<Integer, Double> products = new HashMap<Integer, Double>();
+		for (Map.Entry<Integer, Integer> entry:resolutions.entrySet())
+		{
+			int group = groups.get(entry.getKey());
+			Double product = products.get(group);
+			products.put(group, (product == null ? 1 : product)*(scale(entry.getValue(), detail)+1));
+		}
+		
+		double samples = 0;
+		for (double product:products.values())
+			samples += product;
+		return samples;
+	}
+	
+	//Scales a configured resolution by the given detail.
+	private static int scale(int resolution, double detail)
+	{
+		int scaled = (int)Math.ceil(resolution*detail);
+		if (detail > 1)
+			scaled = Math.min(scaled, Math.max(resolution, MAX_AUTO_RESOLUTION));
+		return Math.max(Math.min(resolution, MIN_RESOLUTION), scaled);
+	}
+}
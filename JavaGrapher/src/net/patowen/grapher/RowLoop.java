@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A loop over rows that can be computed independently of each other, such as the rows of
+ * samples of a surface or the rows of its vertex arrays. The rows are split among the threads
+ * of a pool shared by all graphs, so each row may only write to its own part of any shared
+ * array. The loop stops early if the thread that started it is interrupted, which is how
+ * stale mesh builds are cancelled.
+ * @author Patrick Owen
+ */
+public abstract class RowLoop
+{
+	//One thread per core, shared by all graphs
+	private static final ForkJoinPool pool = new ForkJoinPool();
+	
+	//Each thread gets several pieces so that rows of uneven cost still balance out
+	private static final int PIECES_PER_THREAD = 4;
+	
+	/**
+	 * Computes one row. Different rows are computed on different threads at the same time.
+	 * @param i the index of the row
+	 */
+	protected abstract void row(int i);
+	
+	/**
+	 * Computes the rows from start up to but not including end and waits for all of them to finish.
+	 * @param start the index of the first row
+	 * @param end one more than the index of the last row
+	 * @throws CancellationException if the calling thread is interrupted before every row is done
+	 */
+	public void run(int start, int end)
+	{
+		if (start >= end)
+			return;
+		
+		int grain = Math.max(1, (end-start)/(pool.getParallelism()*PIECES_PER_THREAD));
+		AtomicBoolean cancelled = new AtomicBoolean();
+		ForkJoinTask<Void> task = pool.submit(new Rows(cancelled, start, end, grain));
+		
+		try
+		{
+			task.get();
+		}
+		catch (InterruptedException e)
+		{
+			//Rows still running may write to arrays the caller is about to reuse, so wait for them to stop.
+			cancelled.set(true);
+			task.quietlyJoin();
+			Thread.currentThread().interrupt();
+			throw new CancellationException();
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error)e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+	
+	//A range of rows, split in half until it is small enough to compute directly
+	private class Rows extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1973139872093412258L;
+		
+		private AtomicBoolean cancelled;
+		private int start, end, grain;
+		
+		public Rows(AtomicBoolean cancelled, int start, int end, int grain)
+		{
+			this.cancelled = cancelled;
+			this.start = start;
+			this.end = end;
+			this.grain = grain;
+		}
+		
+		protected void compute()
+		{
+			if (end-start <= grain)
+			{
+				for (int i=start; i<end; i++)
+				{
+					if (cancelled.get())
+						return;
+					row(i);
+				}
+			}
+			else
+			{
+				int middle = (start+end) >>> 1;
+				invokeAll(new Rows(cancelled, start, middle, grain), new Rows(cancelled, middle, end, grain));
+			}
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import com.jogamp.opengl.GL2;
+import static com.jogamp.opengl.GL2.*;
+
+/**
+ * Represents a 3D graph of several surfaces and curves in one view, so that they can be compared.
+ * Each layer is a parametric surface of s and t with its own expressions, resolutions and color, or
+ * a curve of t, with s at 0, if its s-resolution is 0. The samples of each layer are kept from build
+ * to build, so a change to one layer evaluates only that layer, and the others are copied. Each
+ * surface is built in chunks like the grid of a ParaGraph3D, so it needs no more memory at once than
+ * a streamed mesh allows and each chunk is culled on its own. All the curves are packed into one
+ * buffer of vertices and one of indices, so they are drawn with one draw call per color.
+ * @author Patrick Owen
+ */
+public class SceneGraph3D extends Graph3D
+{
+	private static final long serialVersionUID = 1973139872093412258L;
+	
+	public static final int LAYERS = 4;
+	public static final int S_MIN = 100, S_MAX = 101, T_MIN = 102, T_MAX = 103;
+	
+	//Parameters of each layer, found with layerParameter
+	public static final int S_RES = 0, T_RES = 1, HUE = 2;
+	
+	/**
+	 * Constructs a SceneGraph3D and initializes its defaults.
+	 */
+	public SceneGraph3D()
+	{
+		super(new SceneGraph3DBuilder());
+	}
+	
+	/**
+	 * Returns the index of a parameter of a layer. The expressions of layer l are x, y and z
+	 * at indices 3l, 3l+1 and 3l+2.
+	 * @param layer the layer, from 0 to LAYERS-1
+	 * @param parameter S_RES, T_RES or HUE
+	 * @return the index of the parameter
+	 */
+	public static int layerParameter(int layer, int parameter)
+	{
+		return SceneGraph3DBuilder.layerParameter(layer, parameter);
+	}
+	
+	public void glInitSpecial(GL2 gl)
+	{
+		gl.glEnableClientState(GL_VERTEX_ARRAY);
+		gl.glEnableClientState(GL_NORMAL_ARRAY);
+	}
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import static net.patowen.grapher.SceneGraph3D.*;
+
+import java.awt.Color;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.patowen.grapher.math.Expression;
+
+/**
+ * Builds the layers of a SceneGraph3D.
+ * @author Patrick Owen
+ */
+public class SceneGraph3DBuilder extends MeshBuilder
+{
+	//Saturation of the colors of the layers, light enough for the shading to show
+	private static final float SATURATION = 0.6f;
+	
+	//Largest number of vertices packed into one buffer, so that very fine scenes are split among several
+	private static final int MAX_PART_VERTICES = 1 << 21;
+	
+	//Curves kept for each layer, so that a preview build does not push out the full one
+	private static final int CACHED_CURVES = 2;
+	
+	//Samples of a curve evaluated by each task
+	private static final int CURVE_CHUNK = 1024;
+	
+	//Graph bounds, shared by all layers
+	private double sMin, sMax, tMin, tMax;
+	
+	private Layer[] layers;
+	
+	/**
+	 * Constructs a SceneGraph3DBuilder with nothing built yet.
+	 */
+	public SceneGraph3DBuilder()
+	{
+		layers = new Layer[LAYERS];
+		for (int l=0; l<LAYERS; l++)
+			layers[l] = new Layer();
+	}
+	
+	/**
+	 * Returns the index of a parameter of a layer, as SceneGraph3D.layerParameter does.
+	 * @param layer the layer, from 0 to LAYERS-1
+	 * @param parameter S_RES, T_RES or HUE
+	 * @return the index of the parameter
+	 */
+	public static int layerParameter(int layer, int parameter)
+	{
+		return 110 + layer*10 + parameter;
+	}
+	
+	/**
+	 * Defines the bounds and the expressions, resolutions and hue of every layer. Every layer starts out empty.
+	 */
+	protected void defineParameters(GraphParameters parameters)
+	{
+		parameters.defineDouble(S_MIN, -1, BOUNDS);
+		parameters.defineDouble(S_MAX, 1, BOUNDS);
+		parameters.defineDouble(T_MIN, -1, BOUNDS);
+		parameters.defineDouble(T_MAX, 1, BOUNDS);
+		
+		for (int l=0; l<LAYERS; l++)
+		{
+			parameters.defineExpression(l*3);
+			parameters.defineExpression(l*3+1);
+			parameters.defineExpression(l*3+2);
+			parameters.defineInt(layerParameter(l, S_RES), 50, RESOLUTION);
+			parameters.defineInt(layerParameter(l, T_RES), 50, RESOLUTION);
+			
+			//Colors are part of the mesh, but a new color only packs the kept geometry again.
+			parameters.defineDouble(layerParameter(l, HUE), (30 + l*150)%360, DATA);
+		}
+	}
+	
+	protected void buildMesh(GraphState state, Mesh mesh)
+	{
+		readState(state);
+		
+		List<Layer> curves = new ArrayList<Layer>();
+		for (Layer layer:layers)
+		{
+			if (layer.empty)
+				layer.forget();
+			else if (!layer.curve)
+				layer.buildSurface(mesh);
+			else if (layer.buildCurve() != null)
+				curves.add(layer);
+		}
+		
+		pack(mesh, curves);
+	}
+	
+	/*
+	 * Packs the geometry of curves into as few parts as possible. Curves are added to a part until
+	 * it is full, and a curve larger than a part gets a part of its own.
+	 */
+	private void pack(Mesh mesh, List<Layer> packed)
+	{
+		int first = 0;
+		while (first < packed.size())
+		{
+			int end = first+1;
+			int vertexCount = packed.get(first).geometry.vertexCount, indexCount = packed.get(first).geometry.order.length;
+			while (end < packed.size() && vertexCount + packed.get(end).geometry.vertexCount <= MAX_PART_VERTICES)
+			{
+				vertexCount += packed.get(end).geometry.vertexCount;
+				indexCount += packed.get(end).geometry.order.length;
+				end++;
+			}
+			
+			packPart(mesh, packed.subList(first, end), vertexCount, indexCount);
+			first = end;
+		}
+	}
+	
+	//Copies the geometry of curves into one part, with the indices of each curve moved past the vertices before it.
+	private void packPart(Mesh mesh, List<Layer> packed, int vertexCount, int indexCount)
+	{
+		FloatBuffer vertices = mesh.newFloatBuffer(vertexCount*3);
+		IntBuffer order = mesh.newIntBuffer(indexCount);
+		int[] ends = new int[packed.size()];
+		float[] colors = new float[packed.size()*3];
+		
+		int base = 0;
+		int oc = 0; //orderCounter
+		for (int k=0; k<packed.size(); k++)
+		{
+			Layer layer = packed.get(k);
+			Geometry geometry = layer.geometry;
+			vertices.put(geometry.vertices);
+			for (int index:geometry.order)
+				order.put(oc++, base + index);
+			
+			base += geometry.vertexCount;
+			ends[k] = oc;
+			System.arraycopy(layer.color, 0, colors, k*3, 3);
+		}
+		vertices.rewind();
+		
+		mesh.addLines(vertices, order, ends, colors);
+	}
+	
+	//Copies everything the update depends on from the snapshot being built.
+	private void readState(GraphState state)
+	{
+		sMin = state.getDouble(S_MIN);
+		sMax = state.getDouble(S_MAX);
+		tMin = state.getDouble(T_MIN);
+		tMax = state.getDouble(T_MAX);
+		for (int l=0; l<LAYERS; l++)
+			layers[l].readState(state, l);
+	}
+	
+	//One surface or curve of the scene, along with the samples of its last builds
+	private class Layer
+	{
+		//Read from the snapshot being built
+		public Expression functionX, functionY, functionZ;
+		public int sRes, tRes;
+		public boolean empty, curve;
+		public float[] color;
+		
+		//Geometry of the curve in progress, and of the last curves, most recently used first
+		public Geometry geometry;
+		private List<Geometry> cache = new ArrayList<Geometry>();
+		
+		//Positions and normals of the last surface
+		private GridSampleCache samples = new GridSampleCache(6);
+		
+		//Copies the values of the layer from the snapshot being built.
+		public void readState(GraphState state, int layer)
+		{
+			functionX = state.getExpression(layer*3);
+			functionY = state.getExpression(layer*3+1);
+			functionZ = state.getExpression(layer*3+2);
+			curve = state.getInt(layerParameter(layer, S_RES)) <= 0;
+			empty = functionX == null || functionY == null || functionZ == null || state.getInt(layerParameter(layer, T_RES)) <= 0;
+			
+			//Each layer is its own grid, so its samples add to those of the other layers.
+			sRes = empty || curve ? 0 : scaleResolution(state, layerParameter(layer, S_RES), layer);
+			tRes = empty ? 0 : scaleResolution(state, layerParameter(layer, T_RES), layer);
+			
+			float hue = (float)(state.getDouble(layerParameter(layer, HUE))/360);
+			color = Color.getHSBColor(hue, SATURATION, 1).getRGBColorComponents(null);
+		}
+		
+		//Forgets the samples kept from earlier builds, since the layer is empty.
+		public void forget()
+		{
+			geometry = null;
+			cache.clear();
+			samples = new GridSampleCache(6);
+		}
+		
+		//Returns the geometry of the curve, sampling it only if it was not kept from an earlier build.
+		public Geometry buildCurve()
+		{
+			List<Object> key = Arrays.<Object>asList(functionX, functionY, functionZ, tMin, tMax, tRes, u, v);
+			for (int k=0; k<cache.size(); k++)
+			{
+				if (cache.get(k).key.equals(key))
+				{
+					geometry = cache.remove(k);
+					cache.add(0, geometry);
+					return geometry;
+				}
+			}
+			
+			geometry = sampleCurve();
+			geometry.key = key;
+			cache.add(0, geometry);
+			while (cache.size() > CACHED_CURVES)
+				cache.remove(cache.size()-1);
+			return geometry;
+		}
+		
+		/*
+		 * Samples the positions and normals of a surface straight into the mesh's buffers, in chunks
+		 * of the layer's color. Points that the last surface of the layer already sampled, such as
+		 * after its color is changed or the bounds are moved, are copied rather than evaluated.
+		 */
+		public void buildSurface(Mesh mesh)
+		{
+			geometry = null;
+			samples.start(Arrays.<Object>asList(functionX, functionY, functionZ, u, v), sMin, sMax, sRes, tMin, tMax, tRes);
+			
+			new GridChunks.Vertices()
+			{
+				protected void vertex(int i, int j, FloatBuffer vertices, int vc)
+				{
+					if (samples.load(i, j, vertices, vc))
+						return;
+					
+					double[] point = {sMin + (sMax-sMin)*i/sRes, tMin + (tMax-tMin)*j/tRes, u, v};
+					double dx1, dy1, dz1, dx2, dy2, dz2;
+					dx1 = functionX.derivative(point, 0);
+					dy1 = functionY.derivative(point, 0);
+					dz1 = functionZ.derivative(point, 0);
+					
+					dx2 = functionX.derivative(point, 1);
+					dy2 = functionY.derivative(point, 1);
+					dz2 = functionZ.derivative(point, 1);
+					
+					double nx, ny, nz, n;
+					nx = dy1*dz2 - dz1*dy2;
+					ny = dz1*dx2 - dx1*dz2;
+					nz = dx1*dy2 - dy1*dx2;
+					n = Math.sqrt(nx*nx + ny*ny + nz*nz);
+					
+					vertices.put(vc, (float)functionX.eval(point));
+					vertices.put(vc+1, (float)functionY.eval(point));
+					vertices.put(vc+2, (float)functionZ.eval(point));
+					vertices.put(vc+3, (float)(nx/n));
+					vertices.put(vc+4, (float)(ny/n));
+					vertices.put(vc+5, (float)(nz/n));
+					
+					samples.store(i, j, vertices, vc);
+				}
+				
+				protected boolean parameters(int i, int j, float[] parameters, int index)
+				{
+					parameters[index] = (float)(sMin + (sMax-sMin)*i/sRes);
+					parameters[index+1] = (float)(tMin + (tMax-tMin)*j/tRes);
+					return true;
+				}
+				
+				protected void addChunk(Mesh mesh, FloatBuffer vertices, int startI, int startJ, int rows, int columns)
+				{
+					mesh.addTriangles(vertices, GridTopology.get(rows, columns, 1), findParameters(mesh, startI, startJ, rows, columns),
+							color[0], color[1], color[2]);
+				}
+			}.build(mesh, sRes, tRes);
+			
+			samples.finish();
+		}
+		
+		//Samples the positions of a curve at evenly spaced values of t and joins neighbouring samples that are defined.
+		private Geometry sampleCurve()
+		{
+			final Geometry path = new Geometry(tRes+1, 3);
+			
+			new RowLoop()
+			{
+				protected void row(int chunk)
+				{
+					double[] point = {0, 0, u, v};
+					int end = Math.min((chunk+1)*CURVE_CHUNK, path.vertexCount);
+					for (int i=chunk*CURVE_CHUNK; i<end; i++)
+					{
+						point[1] = tMin + (tMax-tMin)*i/tRes;
+						path.vertices[i*3] = (float)functionX.eval(point);
+						path.vertices[i*3+1] = (float)functionY.eval(point);
+						path.vertices[i*3+2] = (float)functionZ.eval(point);
+					}
+				}
+			}.run(0, (path.vertexCount+CURVE_CHUNK-1)/CURVE_CHUNK);
+			
+			int[] order = new int[tRes*2];
+			int oc = 0; //orderCounter
+			for (int i=1; i<=tRes; i++)
+			{
+				if (isDefined(path.vertices, (i-1)*3) && isDefined(path.vertices, i*3))
+				{
+					order[oc++] = i-1;
+					order[oc++] = i;
+				}
+			}
+			path.order = Arrays.copyOf(order, oc);
+			
+			return path;
+		}
+		
+		//Returns whether the position at an offset in an array of vertices is finite.
+		private boolean isDefined(float[] vertices, int offset)
+		{
+			float sum = vertices[offset] + vertices[offset+1] + vertices[offset+2];
+			return !Float.isNaN(sum) && !Float.isInfinite(sum);
+		}
+	}
+	
+	//The sampled vertices of a curve, ready to be packed
+	private static class Geometry
+	{
+		public List<Object> key; //Everything the samples depend on
+		public int vertexCount;
+		public float[] vertices; //Positions of the vertices
+		public int[] order; //Segments between defined vertices
+		
+		public Geometry(int vertexCount, int stride)
+		{
+			this.vertexCount = vertexCount;
+			vertices = new float[vertexCount*stride];
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import static net.patowen.grapher.SceneGraph3D.*;
+
+import java.awt.BorderLayout;
+import java.awt.GridBagConstraints;
+import java.awt.Window;
+import java.awt.event.ActionListener;
+
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JTextField;
+
+/**
+ * Represents the window for a 3D scene of several surfaces and curves. Each row of expressions is one
+ * layer, and layers whose expressions are left blank are not drawn. The manual contains information
+ * regarding this graph type.
+ * @author Patrick Owen
+ */
+public class SceneGraph3DWindow extends GraphWindow implements ActionListener
+{
+	private static final long serialVersionUID = 1L;
+	
+	private JLabel sMinLabel, sMaxLabel, tMinLabel, tMaxLabel, xCenterLabel, yCenterLabel, zCenterLabel;
+	private JTextField sMinField, sMaxField, tMinField, tMaxField, xCenterField, yCenterField, zCenterField;
+	private JLabel[] sResLabel, tResLabel, hueLabel;
+	private JTextField[] sResField, tResField, hueField;
+	
+	/**
+	 * Initializes a SceneGraph3DWindow.
+	 * @param owner the owner of the window.
+	 */
+	public SceneGraph3DWindow(Window owner)
+	{
+		super(owner, "3D Scene");
+		setLayout(new BorderLayout());
+		
+		variableList = new char[] {'s', 't', 'u', 'v'};
+		
+		createPresetLinkDouble("s-min", S_MIN); createPresetLinkDouble("s-max", S_MAX);
+		createPresetLinkDouble("t-min", T_MIN); createPresetLinkDouble("t-max", T_MAX);
+		for (int l=0; l<LAYERS; l++)
+		{
+			createPresetLinkInt("s-res" + (l+1), layerParameter(l, S_RES));
+			createPresetLinkInt("t-res" + (l+1), layerParameter(l, T_RES));
+			createPresetLinkDouble("hue" + (l+1), layerParameter(l, HUE));
+		}
+		createPresetLinkDouble("x-center", X_CENTER); createPresetLinkDouble("y-center", Y_CENTER);
+		createPresetLinkDouble("z-center", Z_CENTER); createPresetLinkDouble("view-dist", VIEW_DISTANCE);
+		
+		presetNames = new String[] {"Paraboloid and Saddle", "Sphere and Helix"};
+		presetFiles = new String[] {"scene3d1.txt", "scene3d2.txt"};
+		
+		try
+		{
+			graph = new SceneGraph3D();
+		}
+		catch (UnsatisfiedLinkError e)
+		{
+			JOptionPane.showMessageDialog(this, "The program cannot load its native libraries.\nUnless the" +
+					" jar file was messed with, this should not have happened.\nPlease contact Patrick Owen" +
+					" at superlala32@gmail.com", "Error", JOptionPane.ERROR_MESSAGE);
+			dispose();
+			throw e;
+		}
+		
+		String[] labels = new String[LAYERS*3];
+		for (int l=0; l<LAYERS; l++)
+		{
+			labels[l*3] = "x" + (l+1) + " = ";
+			labels[l*3+1] = "  y" + (l+1) + " = ";
+			labels[l*3+2] = "  z" + (l+1) + " = ";
+		}
+		blankExpressions = true;
+		setTextFields(labels, false, 3);
+		
+		initialize();
+	}
+	
+	public void prepareBoundsWindow(JDialog win)
+	{
+		sMinLabel = new JLabel("s-min: "); sMaxLabel = new JLabel("s-max: ");
+		tMinLabel = new JLabel("t-min: "); tMaxLabel = new JLabel("t-max: ");
+		xCenterLabel = new JLabel("x-center (view): "); yCenterLabel = new JLabel("y-center (view): ");
+		zCenterLabel = new JLabel("z-center (view): ");
+		
+		alignLabels(sMinLabel, sMaxLabel, tMinLabel, tMaxLabel, xCenterLabel, yCenterLabel, zCenterLabel);
+		
+		sMinField = new JTextField(10); sMaxField = new JTextField(10);
+		tMinField = new JTextField(10); tMaxField = new JTextField(10);
+		xCenterField = new JTextField(10); yCenterField = new JTextField(10);
+		zCenterField = new JTextField(10);
+		
+		createLinkDouble(sMinField, S_MIN); createLinkDouble(sMaxField, S_MAX);
+		createLinkDouble(tMinField, T_MIN); createLinkDouble(tMaxField, T_MAX);
+		createLinkDouble(xCenterField, X_CENTER); createLinkDouble(yCenterField, Y_CENTER);
+		createLinkDouble(zCenterField, Z_CENTER);
+		
+		//An s-resolution of 0 makes a layer a curve of t.
+		sResLabel = new JLabel[LAYERS]; tResLabel = new JLabel[LAYERS]; hueLabel = new JLabel[LAYERS];
+		sResField = new JTextField[LAYERS]; tResField = new JTextField[LAYERS]; hueField = new JTextField[LAYERS];
+		for (int l=0; l<LAYERS; l++)
+		{
+			sResLabel[l] = new JLabel("s-resolution " + (l+1) + ": ");
+			tResLabel[l] = new JLabel("t-resolution " + (l+1) + ": ");
+			hueLabel[l] = new JLabel("hue " + (l+1) + ": ");
+			alignLabels(sResLabel[l], tResLabel[l], hueLabel[l]);
+			
+			sResField[l] = new JTextField(6); tResField[l] = new JTextField(6); hueField[l] = new JTextField(6);
+			createLinkInt(sResField[l], layerParameter(l, S_RES));
+			createLinkInt(tResField[l], layerParameter(l, T_RES));
+			createLinkDouble(hueField[l], layerParameter(l, HUE));
+		}
+		
+		setBoundsApplyButton = new JButton("Apply");
+		
+		GridBagConstraints c = new GridBagConstraints();
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.gridx = 0; c.gridy = 0; win.add(sMinLabel, c);
+		c.gridx = 1; win.add(sMinField,c);
+		c.gridx = 2; win.add(sMaxLabel,c);
+		c.gridx = 3; win.add(sMaxField,c);
+		
+		c.gridx = 0; c.gridy = 1; win.add(tMinLabel, c);
+		c.gridx = 1; win.add(tMinField,c);
+		c.gridx = 2; win.add(tMaxLabel,c);
+		c.gridx = 3; win.add(tMaxField,c);
+		
+		for (int l=0; l<LAYERS; l++)
+		{
+			c.gridx = 0; c.gridy = 2+l; win.add(sResLabel[l], c);
+			c.gridx = 1; win.add(sResField[l],c);
+			c.gridx = 2; win.add(tResLabel[l],c);
+			c.gridx = 3; win.add(tResField[l],c);
+			c.gridx = 4; win.add(hueLabel[l],c);
+			c.gridx = 5; win.add(hueField[l],c);
+		}
+		
+		c.gridx = 0; c.gridy = 2+LAYERS; win.add(xCenterLabel, c);
+		c.gridx = 1; win.add(xCenterField,c);
+		c.gridx = 2; win.add(yCenterLabel,c);
+		c.gridx = 3; win.add(yCenterField,c);
+		
+		c.gridx = 0; c.gridy = 3+LAYERS; win.add(zCenterLabel, c);
+		c.gridx = 1; win.add(zCenterField,c);
+		
+		c.fill = GridBagConstraints.NONE;
+		c.gridx = 0; c.gridy = 4+LAYERS; c.gridwidth = 6; win.add(setBoundsApplyButton,c);
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import static net.patowen.grapher.ShellGraph3D.*;
+
+import net.patowen.grapher.math.Expression;
+
+/**
+ * Builds the solid of a ShellGraph3D.
+ * @author Patrick Owen
+ */
+public class ShellGraph3DBuilder extends MeshBuilder
+{
+	//Function values
+	private Expression function1;
+	private Expression function2;
+	
+	//Info for future drawing
+	private double[] y1, y2;
+	private double[] dx1, dx2;
+	
+	//Graph bounds
+	private double xMin, xMax;
+	private int xRes, rotRes;
+	private boolean gridNormals;
+	
+	protected void defineParameters(GraphParameters parameters)
+	{
+		parameters.defineExpression(0);
+		parameters.defineExpression(1);
+		parameters.defineDouble(X_MIN, 0, BOUNDS);
+		parameters.defineDouble(X_MAX, 1, BOUNDS);
+		parameters.defineInt(X_RES, 50, RESOLUTION);
+		parameters.defineInt(ROT_RES, 50, RESOLUTION);
+	}
+	
+	public boolean isAxesInverted()
+	{
+		return true;
+	}
+	
+	protected void buildMesh(GraphState state, Mesh mesh)
+	{
+		readState(state);
+		
+		if (function1 != null && function2 != null)
+		{
+			y1 = new double[xRes+1];
+			y2 = new double[xRes+1];
+			dx1 = new double[xRes+1];
+			dx2 = new double[xRes+1];
+			
+			new RowLoop()
+			{
+				protected void row(int i)
+				{
+					double x = xMin + (xMax-xMin)*i/xRes;
+					y1[i] = value1(x);
+					y2[i] = value2(x);
+					if (!gridNormals)
+					{
+						dx1[i] = partialX1(x);
+						dx2[i] = partialX2(x);
+					}
+				}
+			}.run(0, xRes+1);
+			
+			if (gridNormals)
+			{
+				//Derivatives are only needed at the ends and next to undefined values.
+				GridNormals.slopes(y1, (xMax-xMin)/xRes, dx1);
+				GridNormals.slopes(y2, (xMax-xMin)/xRes, dx2);
+				for (int i=0; i<=xRes; i++)
+				{
+					double x = xMin + (xMax-xMin)*i/xRes;
+					if (Double.isNaN(dx1[i])) dx1[i] = partialX1(x);
+					if (Double.isNaN(dx2[i])) dx2[i] = partialX2(x);
+				}
+			}
+			
+			generateArrays(mesh);
+		}
+	}
+	
+	//Sweeps a circle of radius x along both functions, forming the two layers of the grid, and closes the ends with bands.
+	private void generateArrays(Mesh mesh)
+	{
+		ProfileSweep sweep = new ProfileSweep(ProfileSweep.circle(rotRes), xRes, true);
+		ProfileSweep.Layer layer1 = sweep.addLayer(), layer2 = sweep.addLayer();
+		
+		for (int i=0; i<=xRes; i++)
+		{
+			double x = xMin + (xMax-xMin)*i/xRes;
+			layer1.axial[i] = y1[i]; layer1.axialSlope[i] = dx1[i];
+			layer2.axial[i] = y2[i]; layer2.axialSlope[i] = dx2[i];
+			layer1.scale[i] = layer2.scale[i] = x;
+			layer1.scaleSlope[i] = layer2.scaleSlope[i] = 1;
+		}
+		
+		sweep.sweep(mesh);
+		
+		double y1Min = Math.min(y1[0], y2[0]);
+		double y1Max = Math.max(y1[0], y2[0]);
+		
+		double y2Min = Math.min(y1[xRes], y2[xRes]);
+		double y2Max = Math.max(y1[xRes], y2[xRes]);
+		
+		sweep.addStripCaps(mesh, new double[] {y1Min, y1Max, y2Min, y2Max}, new double[] {xMin, xMin, xMax, xMax},
+				new double[] {0, 0}, new double[] {-1, 1});
+	}
+	
+	//Returns the value of y1 at the x-position specified.
+	private double value1(double x)
+	{
+		return function1.eval(new double[]{x, u, v});
+	}
+	
+	//Returns the value of y2 at the x-position specified.
+	private double value2(double x)
+	{
+		return function2.eval(new double[]{x, u, v});
+	}
+	
+	//Returns the derivative of y1 at the x-position specified.
+	private double partialX1(double x)
+	{
+		return function1.derivative(new double[]{x, u, v}, 0);
+	}
+	
+	//Returns the derivative of y2 at the x-position specified.
+	private double partialX2(double x)
+	{
+		return function2.derivative(new double[]{x, u, v}, 0);
+	}
+	
+	//Copies everything the update depends on from the snapshot being built.
+	private void readState(GraphState state)
+	{
+		function1 = state.getExpression(0);
+		function2 = state.getExpression(1);
+		xMin = state.getDouble(X_MIN);
+		xMax = state.getDouble(X_MAX);
+		xRes = scaleResolution(state, X_RES);
+		rotRes = scaleResolution(state, ROT_RES);
+		gridNormals = state.getInt(GRID_NORMALS) != 0;
+	}
+}
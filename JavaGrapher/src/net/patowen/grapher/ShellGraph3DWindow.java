@@ -23,9 +23,13 @@ import static net.patowen.grapher.ShellGraph3D.*;
 import java.awt.BorderLayout;
 import java.awt.GridBagConstraints;
 import java.awt.Window;
+import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.FileWriter;
+import java.io.IOException;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -39,8 +43,11 @@ public class ShellGraph3DWindow extends GraphWindow implements ActionListener
 {
 	private static final long serialVersionUID = 1L;
 	
+	private JCheckBoxMenuItem gridNormalsButton;
+	
 	private JLabel xMinLabel, xMaxLabel, xResLabel, rotResLabel, xCenterLabel, yCenterLabel, zCenterLabel;
 	private JTextField xMinField, xMaxField, xResField, rotResField, xCenterField, yCenterField, zCenterField;
+	private AutoResolutionPanel autoPanel;
 	
 	/**
 	 * Initializes a ShellGraph3DWindow.
@@ -57,6 +64,7 @@ public class ShellGraph3DWindow extends GraphWindow implements ActionListener
 		createPresetLinkInt("x-res", X_RES); createPresetLinkInt("rot-res", ROT_RES);
 		createPresetLinkDouble("x-center", X_CENTER); createPresetLinkDouble("y-center", Y_CENTER);
 		createPresetLinkDouble("z-center", Z_CENTER); createPresetLinkDouble("view-dist", VIEW_DISTANCE);
+		createPresetLinkInt("auto-res", AUTO_RESOLUTION); createPresetLinkDouble("rebuild-budget", REBUILD_BUDGET);
 		
 		try
 		{
@@ -73,7 +81,11 @@ public class ShellGraph3DWindow extends GraphWindow implements ActionListener
 		
 		setTextFields(new String[]{"y1 = ", "y2 = "}, false);
 		
+		gridNormalsButton = new JCheckBoxMenuItem("Normals from Grid", false);
+		gridNormalsButton.addActionListener(this);
+		
 		initialize();
+		graphMenu.add(gridNormalsButton);
 	}
 	
 	public void prepareBoundsWindow(JDialog win)
@@ -96,6 +108,9 @@ public class ShellGraph3DWindow extends GraphWindow implements ActionListener
 		createLinkDouble(xCenterField, X_CENTER); createLinkDouble(yCenterField, Y_CENTER);
 		createLinkDouble(zCenterField, Z_CENTER);
 		
+		autoPanel = new AutoResolutionPanel((Graph3D)graph, X_RES, ROT_RES);
+		createLinkDouble(autoPanel.getBudgetField(), REBUILD_BUDGET);
+		
 		setBoundsApplyButton = new JButton("Apply");
 		
 		GridBagConstraints c = new GridBagConstraints();
@@ -118,7 +133,44 @@ public class ShellGraph3DWindow extends GraphWindow implements ActionListener
 		c.gridx = 0; c.gridy = 3; win.add(zCenterLabel, c);
 		c.gridx = 1; win.add(zCenterField,c);
 		
+		c.gridx = 0; c.gridy = 4; c.gridwidth = 4; win.add(autoPanel, c);
+		
 		c.fill = GridBagConstraints.NONE;
-		c.gridx = 0; c.gridy = 4; c.gridwidth = 4; win.add(setBoundsApplyButton,c);
+		c.gridx = 0; c.gridy = 5; win.add(setBoundsApplyButton,c);
+	}
+	
+	protected void applyBounds()
+	{
+		autoPanel.apply();
+	}
+	
+	public void actionPerformed(ActionEvent e)
+	{
+		super.actionPerformed(e);
+		
+		if (e.getSource() == gridNormalsButton)
+		{
+			((ShellGraph3D)graph).setGridNormals(gridNormalsButton.isSelected());
+		}
+	}
+	
+	protected void saveData(FileWriter w) throws IOException
+	{
+		w.append("grid-normals: ");
+		if (gridNormalsButton.isSelected()) w.append("true");
+		else w.append("false");
+		
+		w.append(System.getProperty("line.separator"));
+	}
+	
+	protected void loadData(String name, String value)
+	{
+		ShellGraph3D graph = (ShellGraph3D)(this.graph);
+		
+		if (name.equals("grid-normals"))
+		{
+			if (value.equals("true")) {gridNormalsButton.setSelected(true); graph.setGridNormals(true);}
+			else if (value.equals("false")) {gridNormalsButton.setSelected(false); graph.setGridNormals(false);}
+		}
 	}
 }
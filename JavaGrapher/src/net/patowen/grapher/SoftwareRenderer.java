@@ -0,0 +1,639 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Draws meshes into an image without OpenGL, for snapshots where there is no GL context, such as
+ * on a machine without a display. It reproduces what Graph3D draws: the camera is set up with the
+ * equivalents of gluPerspective and gluLookAt, hidden surfaces are removed with a depth buffer,
+ * and triangles are lit as Graph3D lights them, a material of their color, white unless given, lit
+ * on both sides by a light at the eye with an ambient of 0.1 and a diffuse of 0.9, computed at each
+ * vertex and interpolated. Triangles are pushed back in depth as glPolygonOffset(1, 1) pushes them,
+ * so that lines drawn on a surface are not hidden by it. Each draw call is drawn into the image as
+ * soon as it is made, with the image split into tiles that are each drawn on their own thread, and
+ * nothing of it is kept afterward, so the memory used depends on the size of the image and not on
+ * how much is drawn.
+ * @author Patrick Owen
+ */
+public class SoftwareRenderer
+{
+	//Pixels along each side of a tile
+	private static final int TILE_SIZE = 32;
+	
+	//Smallest difference in depth that a depth buffer of 24 bits resolves
+	private static final double DEPTH_UNIT = 1.0/(1 << 24);
+	
+	//Vertices transformed by each task
+	private static final int VERTEX_CHUNK = 4096;
+	
+	//The light set up in Graph3D, shining on the white material Graph3D draws with
+	private static final float AMBIENT = 0.1f, DIFFUSE = 0.9f;
+	
+	private int width, height;
+	private double[] projection, modelview; //Column-major, as in OpenGL
+	private BufferedImage image;
+	private int[] pixels;
+	private float[] depths;
+	private int tilesX;
+	private Bin[] bins;
+	
+	/**
+	 * Constructs a SoftwareRenderer that draws an image of the given size with a black background,
+	 * with the identity as its camera.
+	 * @param width the width of the image in pixels
+	 * @param height the height of the image in pixels
+	 */
+	public SoftwareRenderer(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+		projection = new double[] {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+		modelview = projection.clone();
+		
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		depths = new float[width*height];
+		Arrays.fill(depths, 1);
+		
+		tilesX = (width+TILE_SIZE-1)/TILE_SIZE;
+		bins = new Bin[tilesX*((height+TILE_SIZE-1)/TILE_SIZE)];
+		for (int t=0; t<bins.length; t++)
+			bins[t] = new Bin();
+	}
+	
+	/**
+	 * Sets the projection as gluPerspective does after glLoadIdentity.
+	 * @param fovy the field of view in the y direction, in degrees
+	 * @param aspect the width of the view divided by its height
+	 * @param zNear the distance to the near clipping plane
+	 * @param zFar the distance to the far clipping plane
+	 */
+	public void perspective(double fovy, double aspect, double zNear, double zFar)
+	{
+		double f = 1/Math.tan(Math.toRadians(fovy)/2);
+		projection = new double[16];
+		projection[0] = f/aspect;
+		projection[5] = f;
+		projection[10] = (zFar+zNear)/(zNear-zFar);
+		projection[11] = -1;
+		projection[14] = 2*zFar*zNear/(zNear-zFar);
+	}
+	
+	/**
+	 * Sets the model-view transformation as gluLookAt does after glLoadIdentity.
+	 * @param eyeX the x-coordinate of the eye
+	 * @param eyeY the y-coordinate of the eye
+	 * @param eyeZ the z-coordinate of the eye
+	 * @param centerX the x-coordinate of the point looked at
+	 * @param centerY the y-coordinate of the point looked at
+	 * @param centerZ the z-coordinate of the point looked at
+	 * @param upX the x-component of the up direction
+	 * @param upY the y-component of the up direction
+	 * @param upZ the z-component of the up direction
+	 */
+	public void lookAt(double eyeX, double eyeY, double eyeZ, double centerX, double centerY, double centerZ,
+			double upX, double upY, double upZ)
+	{
+		double[] f = normalize(centerX-eyeX, centerY-eyeY, centerZ-eyeZ);
+		double[] up = normalize(upX, upY, upZ);
+		double[] s = normalize(f[1]*up[2] - f[2]*up[1], f[2]*up[0] - f[0]*up[2], f[0]*up[1] - f[1]*up[0]);
+		double[] u = {s[1]*f[2] - s[2]*f[1], s[2]*f[0] - s[0]*f[2], s[0]*f[1] - s[1]*f[0]};
+		
+		modelview = new double[16];
+		for (int k=0; k<3; k++)
+		{
+			modelview[k*4] = s[k];
+			modelview[k*4+1] = u[k];
+			modelview[k*4+2] = -f[k];
+		}
+		modelview[12] = -(s[0]*eyeX + s[1]*eyeY + s[2]*eyeZ);
+		modelview[13] = -(u[0]*eyeX + u[1]*eyeY + u[2]*eyeZ);
+		modelview[14] = f[0]*eyeX + f[1]*eyeY + f[2]*eyeZ;
+		modelview[15] = 1;
+	}
+	
+	/**
+	 * Draws lit triangles with the current camera.
+	 * @param vertices the positions and normals of the vertices, interleaved, six floats per vertex
+	 * @param order the indices of the vertices of each triangle, as an IntBuffer or a ShortBuffer of unsigned indices
+	 * @param count the number of indices
+	 */
+	public void drawTriangles(FloatBuffer vertices, Buffer order, int count)
+	{
+		drawTriangles(vertices, order, new int[] {count}, new float[] {1, 1, 1});
+	}
+	
+	/**
+	 * Draws lit triangles of several colors that share their vertices with the current camera, as
+	 * the material of each color. The vertices are transformed once for all of them.
+	 * @param vertices the positions and normals of the vertices, interleaved, six floats per vertex
+	 * @param order the indices of the vertices of each triangle, as an IntBuffer or a ShortBuffer of unsigned indices
+	 * @param ends the index after the last index of each color, in increasing order
+	 * @param colors the red, green and blue components of each color, from 0 to 1
+	 */
+	public void drawTriangles(FloatBuffer vertices, Buffer order, int[] ends, float[] colors)
+	{
+		Batch batch = transform(vertices, true);
+		int[] triangle = new int[3];
+		int start = 0;
+		for (int k=0; k<ends.length; k++)
+		{
+			for (int i=start; i+2<ends[k]; i+=3)
+			{
+				triangle[0] = index(order, i);
+				triangle[1] = index(order, i+1);
+				triangle[2] = index(order, i+2);
+				batch.addTriangle(triangle);
+			}
+			batch.endColor(colors[k*3], colors[k*3+1], colors[k*3+2]);
+			start = ends[k];
+		}
+		draw(batch);
+	}
+	
+	/**
+	 * Draws unlit lines of one color with the current camera.
+	 * @param vertices the positions of the vertices, three floats per vertex
+	 * @param order the indices of the ends of each line, as an IntBuffer or a ShortBuffer of unsigned indices
+	 * @param count the number of indices
+	 * @param r the red component of the color, from 0 to 1
+	 * @param g the green component of the color, from 0 to 1
+	 * @param b the blue component of the color, from 0 to 1
+	 */
+	public void drawLines(FloatBuffer vertices, Buffer order, int count, float r, float g, float b)
+	{
+		drawLines(vertices, order, new int[] {count}, new float[] {r, g, b});
+	}
+	
+	/**
+	 * Draws unlit lines of several colors that share their vertices with the current camera.
+	 * The vertices are transformed once for all of them.
+	 * @param vertices the positions of the vertices, three floats per vertex
+	 * @param order the indices of the ends of each line, as an IntBuffer or a ShortBuffer of unsigned indices
+	 * @param ends the index after the last index of each color, in increasing order
+	 * @param colors the red, green and blue components of each color, from 0 to 1
+	 */
+	public void drawLines(FloatBuffer vertices, Buffer order, int[] ends, float[] colors)
+	{
+		Batch batch = transform(vertices, false);
+		int start = 0;
+		for (int k=0; k<ends.length; k++)
+		{
+			for (int i=start; i+1<ends[k]; i+=2)
+				batch.addLine(index(order, i), index(order, i+1));
+			batch.endColor(colors[k*3], colors[k*3+1], colors[k*3+2]);
+			start = ends[k];
+		}
+		draw(batch);
+	}
+	
+	/**
+	 * Draws one unlit line with the current camera.
+	 * @param x1 the x-coordinate of the first end
+	 * @param y1 the y-coordinate of the first end
+	 * @param z1 the z-coordinate of the first end
+	 * @param x2 the x-coordinate of the second end
+	 * @param y2 the y-coordinate of the second end
+	 * @param z2 the z-coordinate of the second end
+	 * @param r the red component of the color, from 0 to 1
+	 * @param g the green component of the color, from 0 to 1
+	 * @param b the blue component of the color, from 0 to 1
+	 */
+	public void drawLine(double x1, double y1, double z1, double x2, double y2, double z2, float r, float g, float b)
+	{
+		FloatBuffer vertices = FloatBuffer.wrap(new float[] {(float)x1, (float)y1, (float)z1, (float)x2, (float)y2, (float)z2});
+		drawLines(vertices, IntBuffer.wrap(new int[] {0, 1}), 2, r, g, b);
+	}
+	
+	/**
+	 * Returns the image everything has been drawn into. Anything drawn afterward is drawn into the same image.
+	 * @return the image
+	 */
+	public BufferedImage finish()
+	{
+		return image;
+	}
+	
+	/*
+	 * Draws the primitives of a draw call into the image. Each primitive goes to every tile its
+	 * bounding box touches, in the order it was drawn, and then the tiles are drawn in parallel.
+	 */
+	private void draw(final Batch batch)
+	{
+		int size = batch.lines ? 2 : 3;
+		for (int p=0; p<batch.primitiveCount; p+=size)
+		{
+			float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+			float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+			for (int k=0; k<size; k++)
+			{
+				int v = batch.primitives[p+k]*4;
+				minX = Math.min(minX, batch.window[v]); maxX = Math.max(maxX, batch.window[v]);
+				minY = Math.min(minY, batch.window[v+1]); maxY = Math.max(maxY, batch.window[v+1]);
+			}
+			if (maxX < 0 || maxY < 0 || minX >= width || minY >= height)
+				continue;
+			
+			int tx0 = (int)Math.max(0, minX)/TILE_SIZE, tx1 = (int)Math.min(width-1, maxX)/TILE_SIZE;
+			int ty0 = (int)Math.max(0, minY)/TILE_SIZE, ty1 = (int)Math.min(height-1, maxY)/TILE_SIZE;
+			for (int ty=ty0; ty<=ty1; ty++)
+				for (int tx=tx0; tx<=tx1; tx++)
+					bins[ty*tilesX + tx].add(p);
+		}
+		
+		new RowLoop()
+		{
+			protected void row(int t)
+			{
+				int x0 = (t%tilesX)*TILE_SIZE, y0 = (t/tilesX)*TILE_SIZE;
+				int x1 = Math.min(x0+TILE_SIZE, width), y1 = Math.min(y0+TILE_SIZE, height);
+				Bin bin = bins[t];
+				for (int i=0; i<bin.count; i++)
+				{
+					if (batch.lines)
+						drawLine(batch, bin.items[i], x0, y0, x1, y1, pixels, depths);
+					else
+						drawTriangle(batch, bin.items[i], x0, y0, x1, y1, pixels, depths);
+				}
+				bin.count = 0;
+			}
+		}.run(0, bins.length);
+	}
+	
+	/*
+	 * Transforms the vertices of a draw call to clip and window coordinates and lights them,
+	 * in chunks on the shared pool.
+	 */
+	private Batch transform(final FloatBuffer vertices, final boolean lit)
+	{
+		final int stride = lit ? 6 : 3;
+		final Batch batch = new Batch(vertices.limit()/stride, !lit, width, height);
+		final double[] clipMatrix = multiply(projection, modelview);
+		final double[] m = modelview;
+		
+		new RowLoop()
+		{
+			protected void row(int chunk)
+			{
+				int end = Math.min((chunk+1)*VERTEX_CHUNK, batch.vertexCount);
+				double[] clip = new double[4];
+				for (int i=chunk*VERTEX_CHUNK; i<end; i++)
+				{
+					double x = vertices.get(i*stride), y = vertices.get(i*stride+1), z = vertices.get(i*stride+2);
+					for (int r=0; r<4; r++)
+						clip[r] = clipMatrix[r]*x + clipMatrix[4+r]*y + clipMatrix[8+r]*z + clipMatrix[12+r];
+					batch.setVertex(i, clip);
+					
+					if (!lit)
+						continue;
+					
+					//The light is at the eye, so it shines toward the vertex from the origin of eye coordinates.
+					double ex = m[0]*x + m[4]*y + m[8]*z + m[12];
+					double ey = m[1]*x + m[5]*y + m[9]*z + m[13];
+					double ez = m[2]*x + m[6]*y + m[10]*z + m[14];
+					double nx = vertices.get(i*6+3), ny = vertices.get(i*6+4), nz = vertices.get(i*6+5);
+					double enx = m[0]*nx + m[4]*ny + m[8]*nz;
+					double eny = m[1]*nx + m[5]*ny + m[9]*nz;
+					double enz = m[2]*nx + m[6]*ny + m[10]*nz;
+					double diffuse = -(enx*ex + eny*ey + enz*ez)/Math.sqrt(ex*ex + ey*ey + ez*ez);
+					
+					batch.front[i] = (float)Math.min(1, AMBIENT + DIFFUSE*Math.max(0, diffuse));
+					batch.back[i] = (float)Math.min(1, AMBIENT + DIFFUSE*Math.max(0, -diffuse));
+				}
+			}
+		}.run(0, (batch.vertexCount+VERTEX_CHUNK-1)/VERTEX_CHUNK);
+		
+		return batch;
+	}
+	
+	/*
+	 * Draws the part of a triangle inside a tile. The side facing the viewer is the front if its
+	 * vertices go counterclockwise on the screen, as in OpenGL, and its colors are interpolated in
+	 * a perspective-correct way. Like glPolygonOffset(1, 1), each triangle is pushed back by its
+	 * steepest change in depth per pixel plus the smallest difference in depth a buffer of 24 bits resolves.
+	 */
+	private void drawTriangle(Batch batch, int p, int x0, int y0, int x1, int y1, int[] pixels, float[] depths)
+	{
+		int a = batch.primitives[p]*4, b = batch.primitives[p+1]*4, c = batch.primitives[p+2]*4;
+		float[] w = batch.window;
+		double ax = w[a], ay = w[a+1], bx = w[b], by = w[b+1], cx = w[c], cy = w[c+1];
+		double area = (bx-ax)*(cy-ay) - (cx-ax)*(by-ay);
+		if (!(area != 0))
+			return;
+		
+		float[] shades = area > 0 ? batch.front : batch.back;
+		double ca = shades[a/4], cb = shades[b/4], cc = shades[c/4];
+		int color = batch.findColor(p)*3;
+		float red = batch.colors[color], green = batch.colors[color+1], blue = batch.colors[color+2];
+		
+		double az = w[a+2], bz = w[b+2], cz = w[c+2];
+		double dzdx = ((bz-az)*(cy-ay) - (cz-az)*(by-ay))/area;
+		double dzdy = ((cz-az)*(bx-ax) - (bz-az)*(cx-ax))/area;
+		double offset = Math.max(Math.abs(dzdx), Math.abs(dzdy)) + DEPTH_UNIT;
+		
+		int minX = Math.max(x0, (int)Math.floor(Math.min(ax, Math.min(bx, cx))));
+		int maxX = Math.min(x1-1, (int)Math.ceil(Math.max(ax, Math.max(bx, cx))));
+		int minY = Math.max(y0, (int)Math.floor(Math.min(ay, Math.min(by, cy))));
+		int maxY = Math.min(y1-1, (int)Math.ceil(Math.max(ay, Math.max(by, cy))));
+		
+		for (int y=minY; y<=maxY; y++)
+		{
+			double py = y+0.5;
+			for (int x=minX; x<=maxX; x++)
+			{
+				double px = x+0.5;
+				double la = ((bx-px)*(cy-py) - (cx-px)*(by-py))/area;
+				double lb = ((px-ax)*(cy-ay) - (cx-ax)*(py-ay))/area;
+				double lc = ((bx-ax)*(py-ay) - (px-ax)*(by-ay))/area;
+				if (la < 0 || lb < 0 || lc < 0)
+					continue;
+				
+				double depth = la*az + lb*bz + lc*cz;
+				int i = (height-1-y)*width + x;
+				if (!(depth >= 0 && depth + offset < depths[i]))
+					continue;
+				depths[i] = (float)(depth + offset);
+				
+				double qa = la*w[a+3], qb = lb*w[b+3], qc = lc*w[c+3];
+				float shade = (float)((qa*ca + qb*cb + qc*cc)/(qa + qb + qc));
+				pixels[i] = toRGB(shade*red, shade*green, shade*blue);
+			}
+		}
+	}
+	
+	//Draws the part of a line inside a tile, one pixel thick.
+	private void drawLine(Batch batch, int p, int x0, int y0, int x1, int y1, int[] pixels, float[] depths)
+	{
+		int a = batch.primitives[p]*4, b = batch.primitives[p+1]*4;
+		float[] w = batch.window;
+		int color = batch.findColor(p)*3;
+		int rgb = toRGB(batch.colors[color], batch.colors[color+1], batch.colors[color+2]);
+		double dx = w[b]-w[a], dy = w[b+1]-w[a+1], dz = w[b+2]-w[a+2];
+		int steps = (int)Math.ceil(Math.max(Math.abs(dx), Math.abs(dy)));
+		
+		for (int s=0; s<=steps; s++)
+		{
+			double t = steps == 0 ? 0 : (double)s/steps;
+			int x = (int)Math.floor(w[a] + dx*t), y = (int)Math.floor(w[a+1] + dy*t);
+			if (x < x0 || x >= x1 || y < y0 || y >= y1)
+				continue;
+			
+			double depth = w[a+2] + dz*t;
+			int i = (height-1-y)*width + x;
+			if (!(depth >= 0 && depth < depths[i]))
+				continue;
+			depths[i] = (float)depth;
+			pixels[i] = rgb;
+		}
+	}
+	
+	//Returns an index from an IntBuffer or a ShortBuffer of unsigned indices.
+	private static int index(Buffer order, int i)
+	{
+		if (order instanceof ShortBuffer)
+			return ((ShortBuffer)order).get(i) & 0xFFFF;
+		return ((IntBuffer)order).get(i);
+	}
+	
+	//Returns a color as OpenGL would store it in an 8-bit framebuffer.
+	private static int toRGB(float r, float g, float b)
+	{
+		return Math.round(r*255) << 16 | Math.round(g*255) << 8 | Math.round(b*255);
+	}
+	
+	//Returns the product of two column-major matrices.
+	private static double[] multiply(double[] m1, double[] m2)
+	{
+		double[] result = new double[16];
+		for (int col=0; col<4; col++)
+			for (int row=0; row<4; row++)
+				for (int k=0; k<4; k++)
+					result[col*4+row] += m1[k*4+row]*m2[col*4+k];
+		return result;
+	}
+	
+	//Returns a vector scaled to length 1.
+	private static double[] normalize(double x, double y, double z)
+	{
+		double n = Math.sqrt(x*x + y*y + z*z);
+		return new double[] {x/n, y/n, z/n};
+	}
+	
+	//The vertices of one draw call, transformed, and its primitives, clipped by the near plane
+	private static class Batch
+	{
+		public boolean lines;
+		public int width, height; //Size of the image
+		public int vertexCount;
+		public float[] clip; //x, y, z and w in clip coordinates
+		public float[] window; //x and y in pixels with y up, depth from 0 to 1, and 1/w
+		public float[] front, back; //Brightness of each side of lit vertices, or null if unlit
+		
+		public int[] primitives;
+		public int primitiveCount;
+		
+		//The offset in primitives after the last primitive of each color, and the colors
+		public int[] colorEnds;
+		public float[] colors;
+		public int colorCount;
+		
+		public Batch(int vertexCount, boolean lines, int width, int height)
+		{
+			this.width = width;
+			this.height = height;
+			this.lines = lines;
+			this.vertexCount = vertexCount;
+			clip = new float[vertexCount*4];
+			window = new float[vertexCount*4];
+			if (!lines)
+			{
+				front = new float[vertexCount];
+				back = new float[vertexCount];
+			}
+			primitives = new int[64];
+			colorEnds = new int[1];
+			colors = new float[3];
+		}
+		
+		//Gives the primitives added since the last color the given color.
+		public void endColor(float r, float g, float b)
+		{
+			if (colorCount == colorEnds.length)
+			{
+				colorEnds = Arrays.copyOf(colorEnds, colorCount*2);
+				colors = Arrays.copyOf(colors, colorCount*6);
+			}
+			colorEnds[colorCount] = primitiveCount;
+			colors[colorCount*3] = r;
+			colors[colorCount*3+1] = g;
+			colors[colorCount*3+2] = b;
+			colorCount++;
+		}
+		
+		//Returns the color of the primitive at an offset in primitives.
+		public int findColor(int p)
+		{
+			int low = 0, high = colorCount-1;
+			while (low < high)
+			{
+				int middle = (low+high) >>> 1;
+				if (p < colorEnds[middle])
+					high = middle;
+				else
+					low = middle+1;
+			}
+			return low;
+		}
+		
+		//Sets the clip and window coordinates of a vertex.
+		public void setVertex(int i, double[] c)
+		{
+			for (int k=0; k<4; k++)
+				clip[i*4+k] = (float)c[k];
+			window[i*4] = (float)((c[0]/c[3] + 1)/2*width);
+			window[i*4+1] = (float)((c[1]/c[3] + 1)/2*height);
+			window[i*4+2] = (float)((c[2]/c[3] + 1)/2);
+			window[i*4+3] = (float)(1/c[3]);
+		}
+		
+		//Adds a triangle, leaving out what is behind the near plane.
+		public void addTriangle(int[] triangle)
+		{
+			int inside = 0;
+			for (int v:triangle)
+			{
+				if (!isDefined(v))
+					return;
+				if (distance(v) >= 0)
+					inside++;
+			}
+			
+			if (inside == 3)
+			{
+				add(triangle[0]); add(triangle[1]); add(triangle[2]);
+				return;
+			}
+			if (inside == 0)
+				return;
+			
+			//Clip the triangle to a polygon of three or four vertices and split it into triangles.
+			int[] polygon = new int[4];
+			int n = 0;
+			for (int k=0; k<3; k++)
+			{
+				int v1 = triangle[k], v2 = triangle[(k+1)%3];
+				if (distance(v1) >= 0)
+					polygon[n++] = v1;
+				if ((distance(v1) >= 0) != (distance(v2) >= 0))
+					polygon[n++] = intersect(v1, v2);
+			}
+			for (int k=1; k+1<n; k++)
+			{
+				add(polygon[0]); add(polygon[k]); add(polygon[k+1]);
+			}
+		}
+		
+		//Adds a line, leaving out what is behind the near plane.
+		public void addLine(int v1, int v2)
+		{
+			if (!isDefined(v1) || !isDefined(v2))
+				return;
+			boolean in1 = distance(v1) >= 0, in2 = distance(v2) >= 0;
+			if (!in1 && !in2)
+				return;
+			add(in1 ? v1 : intersect(v1, v2));
+			add(in2 ? v2 : intersect(v1, v2));
+		}
+		
+		//Returns how far a vertex is in front of the near plane, in clip coordinates.
+		private float distance(int v)
+		{
+			return clip[v*4+2] + clip[v*4+3];
+		}
+		
+		//Returns whether a vertex has a position.
+		private boolean isDefined(int v)
+		{
+			for (int k=0; k<4; k++)
+			{
+				float c = clip[v*4+k];
+				if (Float.isNaN(c) || Float.isInfinite(c))
+					return false;
+			}
+			return true;
+		}
+		
+		//Adds the vertex where the edge between two vertices crosses the near plane, and returns its index.
+		private int intersect(int v1, int v2)
+		{
+			double t = distance(v1)/(distance(v1) - distance(v2));
+			if (vertexCount*4 == clip.length)
+			{
+				clip = Arrays.copyOf(clip, clip.length*2);
+				window = Arrays.copyOf(window, window.length*2);
+				if (front != null)
+				{
+					front = Arrays.copyOf(front, front.length*2);
+					back = Arrays.copyOf(back, back.length*2);
+				}
+			}
+			
+			double[] c = new double[4];
+			for (int k=0; k<4; k++)
+				c[k] = clip[v1*4+k] + (clip[v2*4+k]-clip[v1*4+k])*t;
+			int v = vertexCount++;
+			setVertex(v, c);
+			if (front != null)
+			{
+				front[v] = (float)(front[v1] + (front[v2]-front[v1])*t);
+				back[v] = (float)(back[v1] + (back[v2]-back[v1])*t);
+			}
+			return v;
+		}
+		
+		private void add(int v)
+		{
+			if (primitiveCount == primitives.length)
+				primitives = Arrays.copyOf(primitives, primitiveCount*2);
+			primitives[primitiveCount++] = v;
+		}
+	}
+	
+	//The offsets of the primitives of one draw call that touch one tile
+	private static class Bin
+	{
+		public int[] items = new int[16];
+		public int count;
+		
+		public void add(int primitive)
+		{
+			if (count == items.length)
+				items = Arrays.copyOf(items, items.length*2);
+			items[count++] = primitive;
+		}
+	}
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Meshes of a graph built in advance for a lattice of values of u and v, so that dragging u and v
+ * can show the nearest one at once instead of building a new mesh. Both u and v run from -1 to 1
+ * with the same number of steps. The meshes all share one shape revision, so they are only shown
+ * for snapshots that differ from the one they were built for in at most u and v. The cache holds
+ * as many bytes of meshes as it is given, dropping the least recently shown first.
+ * <p>
+ * Meshes are added by the building thread and shown, uploaded and disposed of on the GL thread.
+ * Meshes that are dropped are kept until the GL thread takes them to dispose of.
+ * @author Patrick Owen
+ */
+public class SweepCache
+{
+	private final long maxBytes;
+	
+	//The sweep the meshes belong to
+	private long shapeRevision;
+	private int steps;
+	
+	private Map<Long, Mesh> meshes; //By lattice point, least recently shown first
+	private long bytes;
+	private List<Mesh> added, dropped;
+	
+	/**
+	 * Constructs an empty SweepCache.
+	 * @param maxBytes the largest number of bytes of meshes to keep
+	 */
+	public SweepCache(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+		shapeRevision = -1;
+		steps = 0;
+		meshes = new LinkedHashMap<Long, Mesh>(16, 0.75f, true);
+		bytes = 0;
+		added = new ArrayList<Mesh>();
+		dropped = new ArrayList<Mesh>();
+	}
+	
+	/**
+	 * Starts a sweep, dropping the meshes of any other sweep.
+	 * @param shapeRevision the shape revision of the snapshot being swept
+	 * @param steps the number of values of u and of v, at least 2
+	 */
+	public synchronized void start(long shapeRevision, int steps)
+	{
+		if (shapeRevision != this.shapeRevision || steps != this.steps)
+			clear();
+		this.shapeRevision = shapeRevision;
+		this.steps = steps;
+	}
+	
+	/**
+	 * Drops every mesh if they were not built for the given shape revision, since they can never be shown again.
+	 * @param shapeRevision the shape revision of the latest snapshot
+	 */
+	public synchronized void clearUnless(long shapeRevision)
+	{
+		if (shapeRevision != this.shapeRevision)
+			clear();
+	}
+	
+	/**
+	 * Returns whether the given sweep is still the current one.
+	 * @param shapeRevision the shape revision of the sweep
+	 * @param steps the number of values of u and of v
+	 * @return whether the cache is collecting meshes for the sweep
+	 */
+	public synchronized boolean isCurrent(long shapeRevision, int steps)
+	{
+		return shapeRevision == this.shapeRevision && steps == this.steps;
+	}
+	
+	/**
+	 * Returns whether the cache has a mesh for a lattice point.
+	 * @param i the index of the value of u
+	 * @param j the index of the value of v
+	 * @return whether the mesh has been built and kept
+	 */
+	public synchronized boolean contains(int i, int j)
+	{
+		return meshes.containsKey(key(i, j));
+	}
+	
+	/**
+	 * Returns the value of u or v at a lattice index of the current sweep.
+	 * @param index the index of the value
+	 * @return the value, from -1 to 1
+	 */
+	public synchronized double getValue(int index)
+	{
+		return -1 + 2.0*index/(steps-1);
+	}
+	
+	/**
+	 * Adds the mesh of a lattice point, dropping the least recently shown meshes if there is no room.
+	 * A mesh for a sweep that is no longer current is dropped straight away.
+	 * @param shapeRevision the shape revision of the sweep the mesh was built for
+	 * @param i the index of the value of u
+	 * @param j the index of the value of v
+	 * @param mesh the finished mesh
+	 */
+	public synchronized void add(long shapeRevision, int i, int j, Mesh mesh)
+	{
+		if (!isCurrent(shapeRevision, steps))
+		{
+			dropped.add(mesh);
+			return;
+		}
+		
+		Mesh replaced = meshes.put(key(i, j), mesh);
+		if (replaced != null)
+			drop(replaced);
+		bytes += mesh.getSize();
+		added.add(mesh);
+		
+		Iterator<Mesh> eldest = meshes.values().iterator();
+		while (bytes > maxBytes && eldest.hasNext())
+		{
+			Mesh unused = eldest.next();
+			if (unused == mesh)
+				break;
+			eldest.remove();
+			drop(unused);
+		}
+	}
+	
+	/**
+	 * Returns whether the cache has meshes that can stand in for the given snapshot.
+	 * @param state the snapshot to show
+	 * @return whether any mesh was built for the snapshot's shape
+	 */
+	public synchronized boolean covers(GraphState state)
+	{
+		return state.getShapeRevision() == shapeRevision && !meshes.isEmpty();
+	}
+	
+	/**
+	 * Chooses the meshes to show for a snapshot. Without blending, this is the mesh at the nearest
+	 * lattice point that has one. With blending, it is the meshes of the four lattice points around
+	 * u and v, weighted bilinearly, leaving out any that are missing, or the nearest mesh if all are.
+	 * @param state the snapshot to show
+	 * @param blend whether to blend between neighbouring meshes
+	 * @param chosen filled with the meshes to show, which must have room for four
+	 * @param weights filled with the weight of each mesh, adding up to 1
+	 * @return the number of meshes chosen, which is 0 if the cache does not cover the snapshot
+	 */
+	public synchronized int choose(GraphState state, boolean blend, Mesh[] chosen, double[] weights)
+	{
+		if (!covers(state))
+			return 0;
+		
+		double fi = position(state.getU()), fj = position(state.getV());
+		int count = 0;
+		if (blend)
+		{
+			int i0 = Math.min((int)Math.floor(fi), steps-2), j0 = Math.min((int)Math.floor(fj), steps-2);
+			double total = 0;
+			for (int di=0; di<=1; di++)
+			{
+				for (int dj=0; dj<=1; dj++)
+				{
+					double weight = (di == 0 ? i0+1-fi : fi-i0)*(dj == 0 ? j0+1-fj : fj-j0);
+					Mesh mesh = meshes.get(key(i0+di, j0+dj));
+					if (mesh != null && weight > 0)
+					{
+						chosen[count] = mesh;
+						weights[count] = weight;
+						total += weight;
+						count++;
+					}
+				}
+			}
+			for (int k=0; k<count; k++)
+				weights[k] /= total;
+		}
+		
+		if (count == 0)
+		{
+			chosen[0] = nearest(fi, fj);
+			weights[0] = 1;
+			count = 1;
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns the meshes added since the last call, so that the GL thread can upload them
+	 * rather than keep their client-side buffers.
+	 * @return the added meshes
+	 */
+	public synchronized List<Mesh> takeAdded()
+	{
+		List<Mesh> taken = added;
+		added = new ArrayList<Mesh>();
+		return taken;
+	}
+	
+	/**
+	 * Returns the meshes dropped since the last call, for the GL thread to dispose of.
+	 * @return the dropped meshes
+	 */
+	public synchronized List<Mesh> takeDropped()
+	{
+		List<Mesh> taken = dropped;
+		dropped = new ArrayList<Mesh>();
+		return taken;
+	}
+	
+	/**
+	 * Drops every mesh, ending the current sweep.
+	 */
+	public synchronized void clear()
+	{
+		for (Mesh mesh:meshes.values())
+			drop(mesh);
+		meshes.clear();
+		shapeRevision = -1;
+	}
+	
+	//Returns the mesh of the lattice point nearest the given position that has one.
+	private Mesh nearest(double fi, double fj)
+	{
+		Mesh exact = meshes.get(key((int)Math.round(fi), (int)Math.round(fj)));
+		if (exact != null)
+			return exact;
+		
+		long best = 0;
+		double bestDistance = Double.POSITIVE_INFINITY;
+		for (long key:meshes.keySet())
+		{
+			double di = (key >> 32) - fi, dj = (int)key - fj;
+			if (di*di + dj*dj < bestDistance)
+			{
+				bestDistance = di*di + dj*dj;
+				best = key;
+			}
+		}
+		
+		//Getting the mesh marks it as recently shown.
+		return meshes.get(best);
+	}
+	
+	//Returns the position of a value of u or v in lattice steps, clamped to the lattice.
+	private double position(double value)
+	{
+		return Math.max(0, Math.min(steps-1, (value+1)/2*(steps-1)));
+	}
+	
+	//Takes a mesh out of the count and queues it to be disposed of.
+	private void drop(Mesh mesh)
+	{
+		bytes -= mesh.getSize();
+		added.remove(mesh);
+		dropped.add(mesh);
+	}
+	
+	private static long key(int i, int j)
+	{
+		return (long)i << 32 | j;
+	}
+}
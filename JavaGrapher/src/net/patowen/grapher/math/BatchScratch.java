@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013 Patrick Owen
+ * 
+ * This file is part of Patrick's Grapher.
+ * 
+ * Patrick's Grapher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * any later version.
+ * 
+ * Patrick's Grapher is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Patrick's Grapher.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.patowen.grapher.math;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Arrays for the intermediate values of <code>Expression.evalBatch</code>, kept from one call to the
+ * next. An Expression that needs an array for the values of a subexpression takes one and gives it back
+ * once it is done with it, so no more arrays are allocated than the expression tree is deep, and none
+ * after the first batch. A BatchScratch must only be used by one thread at a time.
+ * @author Patrick Owen
+ */
+public class BatchScratch
+{
+	private List<double[]> arrays;
+	private int taken;
+	
+	/**
+	 * Constructs a BatchScratch with no arrays yet.
+	 */
+	public BatchScratch()
+	{
+		arrays = new ArrayList<double[]>();
+		taken = 0;
+	}
+	
+	/**
+	 * Returns an array of at least the given length, whose contents are undefined, until it is given back.
+	 * @param n the number of values needed
+	 * @return the array
+	 */
+	public double[] take(int n)
+	{
+		if (taken == arrays.size())
+			arrays.add(new double[n]);
+		else if (arrays.get(taken).length < n)
+			arrays.set(taken, new double[n]);
+		return arrays.get(taken++);
+	}
+	
+	/**
+	 * Gives back the array taken most recently.
+	 */
+	public void give()
+	{
+		taken--;
+	}
+}
@@ -18,6 +18,7 @@
  */
 
 package net.patowen.grapher.math;
+import java.util.Arrays;
 
 /**
  * Constant is a class that implements Expression and stores a number. In a function, it represents
@@ -43,6 +44,11 @@ public class Constant implements Expression
 		return c; //Not affected by the argument
 	}
 	
+	public void evalBatch(double[][] x, double[] result, int n, BatchScratch scratch)
+	{
+		Arrays.fill(result, 0, n, c);
+	}
+	
 	public double derivative(double[] x, int var)
 	{
 		return 0;
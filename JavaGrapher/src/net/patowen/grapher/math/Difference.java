@@ -49,6 +49,16 @@ public class Difference implements Expression
 		return e1.eval(x) - e2.eval(x);
 	}
 	
+	public void evalBatch(double[][] x, double[] result, int n, BatchScratch scratch)
+	{
+		double[] temp = scratch.take(n);
+		e1.evalBatch(x, result, n, scratch);
+		e2.evalBatch(x, temp, n, scratch);
+		for (int k=0; k<n; k++)
+			result[k] -= temp[k];
+		scratch.give();
+	}
+	
 	public double derivative(double[] x, int var)
 	{
 		return e1.derivative(x, var) - e2.derivative(x, var);
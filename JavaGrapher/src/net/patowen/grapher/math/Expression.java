@@ -22,6 +22,7 @@ package net.patowen.grapher.math;
 /**
  * Expression is an interface that allows several different types of operations to be nested by implementing this class.
  * All functions that use nested functions call the eval method of its nested functions to evaluate its own parameters.
+ * Expressions are not modified after they are built, so the same Expression may be evaluated on several threads at once.
  * @author Patrick Owen
  */
 public interface Expression
@@ -35,6 +36,20 @@ public interface Expression
 	 */
 	public double eval(double[] x);
 	
+	/**
+	 * Evaluates the Expression at many points at once, which avoids walking the expression tree
+	 * once per point. The variables are given per variable rather than per point, so x[i][k] is
+	 * the value of variable i at point k. Points where the Expression cannot be evaluated are
+	 * set to Double.NaN. Arrays for the values of subexpressions are taken from the given scratch,
+	 * which the caller keeps from batch to batch.
+	 * @see Variable
+	 * @param x The arrays of variable values, indexed by variable and then by point.
+	 * @param result The array that receives the value of the function at each point.
+	 * @param n The number of points to evaluate.
+	 * @param scratch The arrays to hold intermediate values in, used by one thread at a time.
+	 */
+	public void evalBatch(double[][] x, double[] result, int n, BatchScratch scratch);
+	
 	/**
 	 * Returns the partial derivative of the Expression given an array of variables and
 	 * the variable that the derivative is taken with respect to. If the Expression
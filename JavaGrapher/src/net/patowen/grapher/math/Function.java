@@ -29,8 +29,6 @@ package net.patowen.grapher.math;
 public class Function implements Expression
 {
 	private Expression[] args;
-	private double[] argValues;
-	private double[] derValues;
 	private int functionType;
 	
 	/**
@@ -41,13 +39,13 @@ public class Function implements Expression
 	public Function(Expression[] args, int functionType)
 	{
 		this.args = args;
-		argValues = new double[this.args.length];
-		derValues = new double[this.args.length];
 		this.functionType = functionType;
 	}
 	
 	public double eval(double[] x)
 	{
+		//Scratch arrays are local so that the same Function can be evaluated on several threads.
+		double[] argValues = new double[args.length];
 		for (int i=0; i<args.length; i++)
 		{
 			argValues[i] = args[i].eval(x);
@@ -55,8 +53,23 @@ public class Function implements Expression
 		return FunctionList.eval(argValues, functionType);
 	}
 	
+	public void evalBatch(double[][] x, double[] result, int n, BatchScratch scratch)
+	{
+		double[][] argBatch = new double[args.length][];
+		for (int i=0; i<args.length; i++)
+		{
+			argBatch[i] = scratch.take(n);
+			args[i].evalBatch(x, argBatch[i], n, scratch);
+		}
+		FunctionList.evalBatch(argBatch, result, n, functionType);
+		for (int i=0; i<args.length; i++)
+			scratch.give();
+	}
+	
 	public double derivative(double[] x, int var)
 	{
+		double[] argValues = new double[args.length];
+		double[] derValues = new double[args.length];
 		for (int i=0; i<args.length; i++)
 		{
 			argValues[i] = args[i].eval(x);
@@ -18,6 +18,7 @@
  */
 
 package net.patowen.grapher.math;
+import java.util.Arrays;
 
 /**
  * FunctionList is a class referenced by the Function class. It stores the possible functions that can be applied.
@@ -81,6 +82,71 @@ public class FunctionList
 			return Double.NaN;
 	}
 	
+	/**
+	 * Evaluates the function at many points at once given the arguments and the function id. The
+	 * function id is only looked up once rather than once per point.
+	 * @param x The arguments of the function, indexed by argument and then by point
+	 * @param result The array that receives the value of the function at each point
+	 * @param n The number of points to evaluate
+	 * @param i The function id
+	 * @see Expression#evalBatch(double[][], double[], int, BatchScratch)
+	 */
+	public static void evalBatch(double[][] x, double[] result, int n, int i)
+	{
+		//max and min of nothing are undefined, as in the single-point versions
+		if (x.length != numArgs[i] && (numArgs[i] != -1 || x.length == 0))
+		{
+			Arrays.fill(result, 0, n, Double.NaN);
+			return;
+		}
+		
+		double[] a = x.length > 0 ? x[0] : null;
+		int k;
+		switch (i)
+		{
+		case  0: for (k=0; k<n; k++) result[k] = Math.abs(a[k]); break; //abs
+		case  1: for (k=0; k<n; k++) result[k] = Math.acos(a[k]); break; //arccos
+		case  2: for (k=0; k<n; k++) result[k] = Math.atan(1/a[k]); break; //arccot
+		case  3: for (k=0; k<n; k++) result[k] = Math.asin(1/a[k]); break; //arccsc
+		case  4: for (k=0; k<n; k++) result[k] = Math.acos(1/a[k]); break; //arcsec
+		case  5: for (k=0; k<n; k++) result[k] = Math.asin(a[k]); break; //arcsin
+		case  6: for (k=0; k<n; k++) result[k] = Math.atan(a[k]); break; //arctan
+		case  7: for (k=0; k<n; k++) result[k] = Math.ceil(a[k]); break; //ceil
+		case  8: for (k=0; k<n; k++) result[k] = Math.cos(a[k]); break; //cos
+		case  9: for (k=0; k<n; k++) result[k] = 1/Math.tan(a[k]); break; //cot
+		case 10: for (k=0; k<n; k++) result[k] = 1/Math.sin(a[k]); break; //csc
+		case 11: for (k=0; k<n; k++) result[k] = Math.floor(a[k]); break; //floor
+		case 12: //max
+			for (k=0; k<n; k++)
+			{
+				result[k] = a[k];
+				for (int j=1; j<x.length; j++)
+					result[k] = Math.max(result[k], x[j][k]);
+			}
+			break;
+		case 13: //min
+			for (k=0; k<n; k++)
+			{
+				result[k] = a[k];
+				for (int j=1; j<x.length; j++)
+					result[k] = Math.min(result[k], x[j][k]);
+			}
+			break;
+		case 14: for (k=0; k<n; k++) result[k] = a[k]-Math.floor(a[k]/x[1][k])*x[1][k]; break; //mod
+		case 15: for (k=0; k<n; k++) result[k] = Math.round(a[k]); break; //round
+		case 16: for (k=0; k<n; k++) result[k] = 1/Math.cos(a[k]); break; //sec
+		case 17: for (k=0; k<n; k++) result[k] = Math.sin(a[k]); break; //sin
+		case 18: for (k=0; k<n; k++) result[k] = a[k]*a[k]; break; //sqr
+		case 19: for (k=0; k<n; k++) result[k] = Math.sqrt(a[k]); break; //sqrt
+		case 20: for (k=0; k<n; k++) result[k] = Math.tan(a[k]); break; //tan
+		case 21: for (k=0; k<n; k++) result[k] = Math.exp(a[k]); break; //exp
+		case 22: for (k=0; k<n; k++) result[k] = Math.log(a[k]); break; //ln
+		case 23: Arrays.fill(result, 0, n, Math.PI); break; //pi
+		case 24: Arrays.fill(result, 0, n, Math.E); break; //e
+		default: Arrays.fill(result, 0, n, Double.NaN);
+		}
+	}
+	
 	/**
 	 * Evaluates the derivative of the function given the variables, derivatives, and function id.
 	 * Derivatives are used for shading, not mathematical analysis, so it may be defined when it
@@ -18,6 +18,7 @@
  */
 
 package net.patowen.grapher.math;
+import java.util.Arrays;
 
 /**
  * InvalidExpression is a class that implements Expression and is used to represent a function that was typed incorrectly.
@@ -33,6 +34,14 @@ public class InvalidExpression implements Expression
 		return Double.NaN;
 	}
 	
+	/**
+	 * Sets every result to Double.NaN, or Not-a-Number.
+	 */
+	public void evalBatch(double[][] x, double[] result, int n, BatchScratch scratch)
+	{
+		Arrays.fill(result, 0, n, Double.NaN);
+	}
+	
 	/**
 	 * Returns Double.NaN, or Not-a-Number.
 	 */
@@ -43,6 +43,13 @@ public class Negation implements Expression
 		return -e.eval(x);
 	}
 	
+	public void evalBatch(double[][] x, double[] result, int n, BatchScratch scratch)
+	{
+		e.evalBatch(x, result, n, scratch);
+		for (int k=0; k<n; k++)
+			result[k] = -result[k];
+	}
+	
 	public double derivative(double[] x, int var)
 	{
 		return -e.derivative(x, var);
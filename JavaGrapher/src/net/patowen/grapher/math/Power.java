@@ -46,6 +46,16 @@ public class Power implements Expression
 		return Math.pow(e1.eval(x), e2.eval(x));
 	}
 	
+	public void evalBatch(double[][] x, double[] result, int n, BatchScratch scratch)
+	{
+		double[] temp = scratch.take(n);
+		e1.evalBatch(x, result, n, scratch);
+		e2.evalBatch(x, temp, n, scratch);
+		for (int k=0; k<n; k++)
+			result[k] = Math.pow(result[k], temp[k]);
+		scratch.give();
+	}
+	
 	public double derivative(double[] x, int var)
 	{
 		//Multiple-case scenario to help prevent issues with division by zero.
@@ -46,6 +46,16 @@ public class Quotient implements Expression
 		return e1.eval(x) / e2.eval(x);
 	}
 	
+	public void evalBatch(double[][] x, double[] result, int n, BatchScratch scratch)
+	{
+		double[] temp = scratch.take(n);
+		e1.evalBatch(x, result, n, scratch);
+		e2.evalBatch(x, temp, n, scratch);
+		for (int k=0; k<n; k++)
+			result[k] /= temp[k];
+		scratch.give();
+	}
+	
 	public double derivative(double[] x, int var)
 	{
 		double v2 = e2.eval(x); //Evaluated beforehand for efficiency
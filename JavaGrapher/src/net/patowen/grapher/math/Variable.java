@@ -18,6 +18,7 @@
  */
 
 package net.patowen.grapher.math;
+import java.util.Arrays;
 
 /**
  * Variable is a class that implements Expression and stores the id of the variable.
@@ -45,6 +46,14 @@ public class Variable implements Expression
 		return Double.NaN;
 	}
 	
+	public void evalBatch(double[][] x, double[] result, int n, BatchScratch scratch)
+	{
+		if (x.length > type)
+			System.arraycopy(x[type], 0, result, 0, n);
+		else
+			Arrays.fill(result, 0, n, Double.NaN);
+	}
+	
 	public double derivative(double[] x, int var)
 	{
 		if (type == var)